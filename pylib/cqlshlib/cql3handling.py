@@ -73,6 +73,8 @@ class Cql3ParsingRuleSet(CqlParsingRuleSet):
         ('default_time_to_live', None),
         ('speculative_retry', None),
         ('memtable_flush_period_in_ms', None),
+        ('rows_per_partition_to_cache', None),
+        ('bloom_filter_type', None),
     )
 
     columnfamily_layout_map_options = (
@@ -438,8 +440,11 @@ def cf_prop_val_completer(ctxt, cass):
         return [Hint('<float_between_0_and_1>')]
     if this_opt in ('replicate_on_write', 'populate_io_cache_on_flush'):
         return ["'yes'", "'no'"]
+    if this_opt == 'bloom_filter_type':
+        return ["'standard'", "'blocked'"]
     if this_opt in ('min_compaction_threshold', 'max_compaction_threshold',
-                    'gc_grace_seconds', 'index_interval'):
+                    'gc_grace_seconds', 'index_interval',
+                    'rows_per_partition_to_cache'):
         return [Hint('<integer>')]
     return [Hint('<option_value>')]
 
@@ -666,6 +666,8 @@ class TestCqlshOutput(BaseTestCase):
               default_time_to_live=0 AND
               speculative_retry='NONE' AND
               memtable_flush_period_in_ms=0 AND
+              rows_per_partition_to_cache=0 AND
+              bloom_filter_type='STANDARD' AND
               compaction={'class': 'SizeTieredCompactionStrategy'} AND
               compression={'sstable_compression': 'LZ4Compressor'};
 
@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import org.cliffc.high_scale_lib.NonBlockingHashMap;
+import org.cliffc.high_scale_lib.NonBlockingHashSet;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.metrics.CacheMetrics;
+
+/**
+ * A node-wide cache of the decompressed chunks of compressed sstables (see CompressedRandomAccessReader), so that
+ * hot chunks don't get read, decompressed and checksummed again on every read.
+ *
+ * Chunks are kept off-heap, in reference counted memory like the values of SerializingCache: they are copied out
+ * under a reference, and freed once evicted and no longer being copied.
+ */
+public class ChunkCache implements ICache<ChunkCache.Key, byte[]>
+{
+    private static final int DEFAULT_CONCURENCY_LEVEL = 64;
+
+    /**
+     * The chunk cache, or null if chunk_cache_size_in_mb is 0.
+     */
+    public static final ChunkCache instance = DatabaseDescriptor.getChunkCacheSizeInMB() > 0
+                                            ? new ChunkCache(DatabaseDescriptor.getChunkCacheSizeInMB() * 1024 * 1024)
+                                            : null;
+
+    public final CacheMetrics metrics;
+
+    private final ConcurrentLinkedHashMap<Key, RefCountedMemory> map;
+    // the keys of map by sstable, so that invalidate() doesn't scan the whole cache on each sstable close. A key
+    // evicted while being put again may be missing, in which case its chunk is left to age out
+    private final ConcurrentMap<Long, Set<Key>> keysBySSTable = new NonBlockingHashMap<Long, Set<Key>>();
+
+    @VisibleForTesting
+    ChunkCache(long capacity)
+    {
+        EvictionListener<Key, RefCountedMemory> listener = new EvictionListener<Key, RefCountedMemory>()
+        {
+            public void onEviction(Key key, RefCountedMemory mem)
+            {
+                unindex(key);
+                mem.unreference();
+            }
+        };
+
+        this.map = new ConcurrentLinkedHashMap.Builder<Key, RefCountedMemory>()
+                   .weigher(new Weigher<RefCountedMemory>()
+                   {
+                       public int weightOf(RefCountedMemory value)
+                       {
+                           return (int) value.size();
+                       }
+                   })
+                   .maximumWeightedCapacity(capacity)
+                   .concurrencyLevel(DEFAULT_CONCURENCY_LEVEL)
+                   .listener(listener)
+                   .build();
+        metrics = new CacheMetrics("ChunkCache", this);
+    }
+
+    /**
+     * Copies the chunk cached for key at the beginning of buffer, which must be large enough for it.
+     *
+     * @return the length of the chunk, or -1 if it isn't cached
+     */
+    public int get(Key key, byte[] buffer)
+    {
+        metrics.requests.mark();
+        RefCountedMemory mem = map.get(key);
+        // the chunk may be evicted, and freed, before we get a reference to it
+        if (mem == null || !mem.reference())
+            return -1;
+
+        try
+        {
+            int length = (int) mem.size();
+            mem.getBytes(0, buffer, 0, length);
+            metrics.hits.mark();
+            return length;
+        }
+        finally
+        {
+            mem.unreference();
+        }
+    }
+
+    /**
+     * Caches the chunk made of the first length bytes of buffer.
+     */
+    public void put(Key key, byte[] buffer, int length)
+    {
+        RefCountedMemory mem;
+        try
+        {
+            mem = new RefCountedMemory(length);
+        }
+        catch (OutOfMemoryError e)
+        {
+            return;
+        }
+        mem.setBytes(0, buffer, 0, length);
+
+        index(key);
+        RefCountedMemory old = map.put(key, mem);
+        if (old != null)
+            old.unreference();
+    }
+
+    public byte[] get(Key key)
+    {
+        RefCountedMemory mem = map.get(key);
+        if (mem == null || !mem.reference())
+            return null;
+
+        try
+        {
+            byte[] chunk = new byte[(int) mem.size()];
+            mem.getBytes(0, chunk, 0, chunk.length);
+            return chunk;
+        }
+        finally
+        {
+            mem.unreference();
+        }
+    }
+
+    public void put(Key key, byte[] value)
+    {
+        put(key, value, value.length);
+    }
+
+    public boolean putIfAbsent(Key key, byte[] value)
+    {
+        RefCountedMemory mem = new RefCountedMemory(value.length);
+        mem.setBytes(0, value, 0, value.length);
+
+        index(key);
+        RefCountedMemory old = map.putIfAbsent(key, mem);
+        if (old == null)
+            return true;
+
+        mem.unreference();
+        return false;
+    }
+
+    public boolean replace(Key key, byte[] oldToReplace, byte[] value)
+    {
+        // if there is no old value in our map, we fail
+        RefCountedMemory old = map.get(key);
+        if (old == null)
+            return false;
+
+        // reference old guy before comparing it
+        if (!old.reference())
+            return false; // we have already freed hence noop.
+        byte[] oldValue;
+        try
+        {
+            oldValue = new byte[(int) old.size()];
+            old.getBytes(0, oldValue, 0, oldValue.length);
+        }
+        finally
+        {
+            old.unreference();
+        }
+        if (!Arrays.equals(oldValue, oldToReplace))
+            return false;
+
+        RefCountedMemory mem = new RefCountedMemory(value.length);
+        mem.setBytes(0, value, 0, value.length);
+        boolean success = map.replace(key, old, mem);
+
+        if (success)
+            old.unreference(); // so it will be eventually be cleaned
+        else
+            mem.unreference();
+        return success;
+    }
+
+    public void remove(Key key)
+    {
+        RefCountedMemory mem = map.remove(key);
+        if (mem != null)
+        {
+            unindex(key);
+            mem.unreference();
+        }
+    }
+
+    /**
+     * Drops the chunks cached for the sstable of the given CompressionMetadata.id, once the sstable is closed, as
+     * nothing will ever read them again.
+     */
+    public void invalidate(long sstableId)
+    {
+        Set<Key> keys = keysBySSTable.remove(sstableId);
+        if (keys == null)
+            return;
+
+        for (Key key : keys)
+            remove(key);
+    }
+
+    private void index(Key key)
+    {
+        Set<Key> keys = keysBySSTable.get(key.sstableId);
+        if (keys == null)
+        {
+            Set<Key> newKeys = new NonBlockingHashSet<Key>();
+            keys = keysBySSTable.putIfAbsent(key.sstableId, newKeys);
+            if (keys == null)
+                keys = newKeys;
+        }
+        keys.add(key);
+    }
+
+    private void unindex(Key key)
+    {
+        Set<Key> keys = keysBySSTable.get(key.sstableId);
+        if (keys != null)
+            keys.remove(key);
+    }
+
+    public long capacity()
+    {
+        return map.capacity();
+    }
+
+    public void setCapacity(long capacity)
+    {
+        map.setCapacity(capacity);
+    }
+
+    public int size()
+    {
+        return map.size();
+    }
+
+    public long weightedSize()
+    {
+        return map.weightedSize();
+    }
+
+    public void clear()
+    {
+        // map.clear() doesn't tell the listener, so the chunks would never be freed
+        for (Key key : map.keySet())
+            remove(key);
+    }
+
+    public Set<Key> keySet()
+    {
+        return map.keySet();
+    }
+
+    public Set<Key> hotKeySet(int n)
+    {
+        return map.descendingKeySetWithLimit(n);
+    }
+
+    public boolean containsKey(Key key)
+    {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Identifies a chunk by the position of its decompressed data in its sstable. Sstables are identified by their
+     * CompressionMetadata (see CompressionMetadata.id), which is shared by all the readers of an sstable, and never
+     * by another sstable, even one that would reuse its name.
+     */
+    public static class Key
+    {
+        public final long sstableId;
+        public final long position;
+
+        public Key(long sstableId, long position)
+        {
+            this.sstableId = sstableId;
+            this.position = position;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key that = (Key) o;
+            return sstableId == that.sstableId && position == that.position;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = (int) (sstableId ^ (sstableId >>> 32));
+            return 31 * result + (int) (position ^ (position >>> 32));
+        }
+
+        @Override
+        public String toString()
+        {
+            return "ChunkCache.Key(" + sstableId + ", " + position + ")";
+        }
+    }
+}
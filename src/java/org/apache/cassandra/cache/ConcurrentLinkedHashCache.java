@@ -21,6 +21,7 @@ import java.util.Set;
 
 import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
 import com.googlecode.concurrentlinkedhashmap.EntryWeigher;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 
 /** Wrapper so CLHM can implement ICache interface.
  *  (this is what you get for making library classes final.) */
@@ -28,10 +29,13 @@ public class ConcurrentLinkedHashCache<K extends IMeasurableMemory, V extends IM
 {
     public static final int DEFAULT_CONCURENCY_LEVEL = 64;
     private final ConcurrentLinkedHashMap<K, V> map;
+    // told about every value leaving the cache, not only the evicted ones, if not null
+    private final EvictionListener<K, V> listener;
 
-    private ConcurrentLinkedHashCache(ConcurrentLinkedHashMap<K, V> map)
+    private ConcurrentLinkedHashCache(ConcurrentLinkedHashMap<K, V> map, EvictionListener<K, V> listener)
     {
         this.map = map;
+        this.listener = listener;
     }
 
     /**
@@ -39,16 +43,31 @@ public class ConcurrentLinkedHashCache<K extends IMeasurableMemory, V extends IM
      */
     public static <K extends IMeasurableMemory, V extends IMeasurableMemory> ConcurrentLinkedHashCache<K, V> create(long weightedCapacity, EntryWeigher<K, V> entryWeiger)
     {
-        ConcurrentLinkedHashMap<K, V> map = new ConcurrentLinkedHashMap.Builder<K, V>()
-                                            .weigher(entryWeiger)
-                                            .maximumWeightedCapacity(weightedCapacity)
-                                            .concurrencyLevel(DEFAULT_CONCURENCY_LEVEL)
-                                            .build();
+        return create(weightedCapacity, entryWeiger, null);
+    }
 
-        return new ConcurrentLinkedHashCache<K, V>(map);
+    /**
+     * Initialize a cache with initial capacity with weightedCapacity, whose values are owned by the cache: listener
+     * is told about the values it evicts, removes or replaces, and about the ones it is given but doesn't keep.
+     */
+    public static <K extends IMeasurableMemory, V extends IMeasurableMemory> ConcurrentLinkedHashCache<K, V> create(long weightedCapacity, EntryWeigher<K, V> entryWeiger, EvictionListener<K, V> listener)
+    {
+        ConcurrentLinkedHashMap.Builder<K, V> builder = new ConcurrentLinkedHashMap.Builder<K, V>()
+                                                        .weigher(entryWeiger)
+                                                        .maximumWeightedCapacity(weightedCapacity)
+                                                        .concurrencyLevel(DEFAULT_CONCURENCY_LEVEL);
+        if (listener != null)
+            builder.listener(listener);
+
+        return new ConcurrentLinkedHashCache<K, V>(builder.build(), listener);
     }
 
     public static <K extends IMeasurableMemory, V extends IMeasurableMemory> ConcurrentLinkedHashCache<K, V> create(long weightedCapacity)
+    {
+        return create(weightedCapacity, (EvictionListener<K, V>) null);
+    }
+
+    public static <K extends IMeasurableMemory, V extends IMeasurableMemory> ConcurrentLinkedHashCache<K, V> create(long weightedCapacity, EvictionListener<K, V> listener)
     {
         return create(weightedCapacity, new EntryWeigher<K, V>()
         {
@@ -58,7 +77,13 @@ public class ConcurrentLinkedHashCache<K extends IMeasurableMemory, V extends IM
                 assert size <= Integer.MAX_VALUE : "Serialized size cannot be more than 2GB/Integer.MAX_VALUE";
                 return (int) size;
             }
-        });
+        }, listener);
+    }
+
+    private void discarded(K key, V value)
+    {
+        if (listener != null && value != null)
+            listener.onEviction(key, value);
     }
 
     public long capacity()
@@ -88,7 +113,14 @@ public class ConcurrentLinkedHashCache<K extends IMeasurableMemory, V extends IM
 
     public void clear()
     {
-        map.clear();
+        if (listener == null)
+        {
+            map.clear();
+            return;
+        }
+
+        for (K key : map.keySet())
+            remove(key);
     }
 
     public V get(K key)
@@ -98,22 +130,30 @@ public class ConcurrentLinkedHashCache<K extends IMeasurableMemory, V extends IM
 
     public void put(K key, V value)
     {
-        map.put(key, value);
+        V old = map.put(key, value);
+        if (old != value)
+            discarded(key, old);
     }
 
     public boolean putIfAbsent(K key, V value)
     {
-        return map.putIfAbsent(key, value) == null;
+        if (map.putIfAbsent(key, value) == null)
+            return true;
+
+        discarded(key, value);
+        return false;
     }
 
     public boolean replace(K key, V old, V value)
     {
-        return map.replace(key, old, value);
+        boolean replaced = map.replace(key, old, value);
+        discarded(key, replaced ? old : value);
+        return replaced;
     }
 
     public void remove(K key)
     {
-        map.remove(key);
+        discarded(key, map.remove(key));
     }
 
     public Set<K> keySet()
@@ -0,0 +1,813 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.io.util.Memory;
+import org.apache.cassandra.utils.MurmurHash;
+
+/**
+ * A key cache keeping both its keys and its values off-heap, so that large key caches cost the heap (and the
+ * collector) next to nothing. It is used instead of ConcurrentLinkedHashCache when key_cache_off_heap is set.
+ *
+ * The cache is split in segments, each of them guarded by its own lock and owning a slab of memory used as a
+ * circular log: entries, made of the partition key and the serialized RowIndexEntry, are appended at its head and
+ * evicted from its tail. Entries read since they were written get a second chance, being moved to the head instead
+ * of evicted (CLOCK) when there is room for it. Entries are found through an open addressing hash index of longs,
+ * holding the hash and the offset of each entry, so that a segment costs a couple of objects whatever its number
+ * of entries. The descriptor of an entry is stored as a small int, mapped to the descriptor for as long as entries
+ * of its sstable are cached.
+ *
+ * Values are deserialized on every hit, so the cached entries are copies: their promoted index is on-heap, but
+ * only for the duration of the read.
+ */
+public class OffHeapKeyCache implements ICache<KeyCacheKey, RowIndexEntry>
+{
+    private static final int SEGMENTS = ConcurrentLinkedHashCache.DEFAULT_CONCURENCY_LEVEL;
+    private static final int SEGMENT_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS);
+    private static final long MAX_SEGMENT_SIZE = 1L << 30;
+    private static final int INITIAL_INDEX_SIZE = 64;
+
+    // entry layout: length (int, including the header and alignment), flags (byte), hash (int), descriptor
+    // id (int), key length (int) and value length (int), followed by the key and the value
+    private static final int LENGTH = 0;
+    private static final int FLAGS = 4;
+    private static final int HASH = 5;
+    private static final int DESCRIPTOR = 9;
+    private static final int KEY_LENGTH = 13;
+    private static final int VALUE_LENGTH = 17;
+    private static final int HEADER_SIZE = 21;
+
+    private static final byte PADDING = 1;
+    private static final byte REMOVED = 2;
+    private static final byte ACCESSED = 4;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private volatile long capacity;
+
+    private final ConcurrentMap<Descriptor, DescriptorRef> refs = new ConcurrentHashMap<Descriptor, DescriptorRef>();
+    private final ConcurrentMap<Integer, DescriptorRef> refsById = new ConcurrentHashMap<Integer, DescriptorRef>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    public OffHeapKeyCache(long capacity)
+    {
+        this.capacity = capacity;
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(segmentSize(capacity));
+    }
+
+    private static long segmentSize(long capacity)
+    {
+        return Math.min(capacity / SEGMENTS, MAX_SEGMENT_SIZE) & ~7L;
+    }
+
+    public long capacity()
+    {
+        return capacity;
+    }
+
+    public void setCapacity(long capacity)
+    {
+        this.capacity = capacity;
+        for (Segment segment : segments)
+            segment.resize(segmentSize(capacity));
+    }
+
+    public void put(KeyCacheKey key, RowIndexEntry value)
+    {
+        DescriptorRef ref = reference(key.desc);
+        int hash = hash(ref.id, key.key);
+        segmentFor(hash).put(ref, hash, key.key, serialize(value), null, false);
+    }
+
+    public boolean putIfAbsent(KeyCacheKey key, RowIndexEntry value)
+    {
+        DescriptorRef ref = reference(key.desc);
+        int hash = hash(ref.id, key.key);
+        return segmentFor(hash).put(ref, hash, key.key, serialize(value), null, true);
+    }
+
+    public boolean replace(KeyCacheKey key, RowIndexEntry old, RowIndexEntry value)
+    {
+        DescriptorRef ref = reference(key.desc);
+        int hash = hash(ref.id, key.key);
+        return segmentFor(hash).put(ref, hash, key.key, serialize(value), serialize(old), false);
+    }
+
+    public RowIndexEntry get(KeyCacheKey key)
+    {
+        DescriptorRef ref = refs.get(key.desc);
+        if (ref == null)
+            return null;
+
+        int hash = hash(ref.id, key.key);
+        byte[] value = segmentFor(hash).get(ref.id, hash, key.key);
+        if (value == null)
+            return null;
+
+        try
+        {
+            return RowIndexEntry.serializer.deserialize(new DataInputStream(new FastByteArrayInputStream(value)), ref.desc.version);
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    public boolean containsKey(KeyCacheKey key)
+    {
+        DescriptorRef ref = refs.get(key.desc);
+        if (ref == null)
+            return false;
+
+        int hash = hash(ref.id, key.key);
+        return segmentFor(hash).contains(ref.id, hash, key.key);
+    }
+
+    public void remove(KeyCacheKey key)
+    {
+        DescriptorRef ref = refs.get(key.desc);
+        if (ref == null)
+            return;
+
+        int hash = hash(ref.id, key.key);
+        segmentFor(hash).remove(ref.id, hash, key.key);
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.count();
+        return size;
+    }
+
+    public long weightedSize()
+    {
+        long size = 0;
+        for (Segment segment : segments)
+            size += segment.weightedSize();
+        return size;
+    }
+
+    public void clear()
+    {
+        for (Segment segment : segments)
+            segment.clear();
+    }
+
+    public Set<KeyCacheKey> keySet()
+    {
+        Set<KeyCacheKey> keys = new HashSet<KeyCacheKey>();
+        for (Segment segment : segments)
+            keys.addAll(segment.keys(Integer.MAX_VALUE));
+        return keys;
+    }
+
+    /**
+     * @return the n most recently written (or moved) keys, taken round-robin from the segments
+     */
+    public Set<KeyCacheKey> hotKeySet(int n)
+    {
+        List<Deque<KeyCacheKey>> perSegment = new ArrayList<Deque<KeyCacheKey>>(SEGMENTS);
+        for (Segment segment : segments)
+            perSegment.add(segment.keys(n));
+
+        Set<KeyCacheKey> keys = new LinkedHashSet<KeyCacheKey>();
+        boolean added = true;
+        while (keys.size() < n && added)
+        {
+            added = false;
+            for (Deque<KeyCacheKey> segmentKeys : perSegment)
+            {
+                if (keys.size() == n)
+                    break;
+                KeyCacheKey key = segmentKeys.pollLast();
+                if (key != null)
+                {
+                    keys.add(key);
+                    added = true;
+                }
+            }
+        }
+        return keys;
+    }
+
+    private Segment segmentFor(int hash)
+    {
+        return segments[hash >>> SEGMENT_SHIFT];
+    }
+
+    private static int hash(int descriptorId, byte[] key)
+    {
+        return MurmurHash.hash32(ByteBuffer.wrap(key), 0, key.length, descriptorId);
+    }
+
+    private static byte[] serialize(RowIndexEntry value)
+    {
+        DataOutputBuffer out = new DataOutputBuffer(value.serializedSize());
+        try
+        {
+            RowIndexEntry.serializer.serialize(value, out);
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e);
+        }
+        return out.getLength() == out.getData().length ? out.getData() : Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+    /**
+     * @return the reference of desc, counting one more entry for it
+     */
+    private DescriptorRef reference(Descriptor desc)
+    {
+        while (true)
+        {
+            DescriptorRef ref = refs.get(desc);
+            if (ref == null)
+            {
+                DescriptorRef created = new DescriptorRef(nextId.getAndIncrement(), desc);
+                refsById.put(created.id, created);
+                ref = refs.putIfAbsent(desc, created);
+                if (ref == null)
+                    ref = created;
+                else
+                    refsById.remove(created.id);
+            }
+
+            if (ref.reference())
+                return ref;
+            // the last entry of the sstable has just been dropped, and ref is being released
+            refs.remove(desc, ref);
+        }
+    }
+
+    private void unreference(int descriptorId)
+    {
+        DescriptorRef ref = refsById.get(descriptorId);
+        if (ref != null && ref.unreference())
+        {
+            refs.remove(ref.desc, ref);
+            refsById.remove(ref.id);
+        }
+    }
+
+    private static class DescriptorRef
+    {
+        final int id;
+        final Descriptor desc;
+        // the number of cached entries of the sstable, or -1 once released
+        final AtomicInteger entries = new AtomicInteger();
+
+        DescriptorRef(int id, Descriptor desc)
+        {
+            this.id = id;
+            this.desc = desc;
+        }
+
+        boolean reference()
+        {
+            while (true)
+            {
+                int n = entries.get();
+                if (n < 0)
+                    return false;
+                if (entries.compareAndSet(n, n + 1))
+                    return true;
+            }
+        }
+
+        /**
+         * @return true if this was the last entry, and the reference is now released
+         */
+        boolean unreference()
+        {
+            return entries.decrementAndGet() == 0 && entries.compareAndSet(0, -1);
+        }
+    }
+
+    private final class Segment
+    {
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // null if the segment size is 0, in which case nothing is cached
+        private Memory slab;
+        // entries are appended at head and evicted from tail; used counts the bytes in between, including those of
+        // removed entries and padding, and live those of the entries still cached
+        private long head;
+        private long tail;
+        private long used;
+        private long live;
+        private int count;
+
+        // hash in the high 32 bits, offset / 8 + 1 in the low ones, 0 for an empty slot
+        private long[] index = new long[INITIAL_INDEX_SIZE];
+
+        Segment(long size)
+        {
+            slab = size > 0 ? Memory.allocate(size) : null;
+        }
+
+        byte[] get(int descriptorId, int hash, byte[] key)
+        {
+            lock.lock();
+            try
+            {
+                long offset = find(descriptorId, hash, key);
+                if (offset < 0)
+                    return null;
+
+                slab.setByte(offset + FLAGS, ACCESSED);
+                byte[] value = new byte[slab.getInt(offset + VALUE_LENGTH)];
+                slab.getBytes(offset + HEADER_SIZE + key.length, value, 0, value.length);
+                return value;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        boolean contains(int descriptorId, int hash, byte[] key)
+        {
+            lock.lock();
+            try
+            {
+                return find(descriptorId, hash, key) >= 0;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Caches value for the key, unless ifAbsent is set and the key is already cached, or expected is set and
+         * doesn't match the cached value. The caller's reference to the descriptor is released if the entry isn't
+         * added.
+         *
+         * @return true if the entry has been added
+         */
+        boolean put(DescriptorRef ref, int hash, byte[] key, byte[] value, byte[] expected, boolean ifAbsent)
+        {
+            boolean added = false;
+            lock.lock();
+            try
+            {
+                long existing = find(ref.id, hash, key);
+                if (existing >= 0 && ifAbsent)
+                    return false;
+                if (expected != null && (existing < 0 || !valueEquals(existing, key.length, expected)))
+                    return false;
+
+                if (existing >= 0)
+                {
+                    deleteSlot(hash, existing);
+                    drop(existing);
+                }
+
+                int length = align(HEADER_SIZE + key.length + value.length);
+                long offset = allocate(length);
+                if (offset < 0)
+                    return false;
+
+                slab.setInt(offset + LENGTH, length);
+                slab.setByte(offset + FLAGS, (byte) 0);
+                slab.setInt(offset + HASH, hash);
+                slab.setInt(offset + DESCRIPTOR, ref.id);
+                slab.setInt(offset + KEY_LENGTH, key.length);
+                slab.setInt(offset + VALUE_LENGTH, value.length);
+                slab.setBytes(offset + HEADER_SIZE, key, 0, key.length);
+                slab.setBytes(offset + HEADER_SIZE + key.length, value, 0, value.length);
+                live += length;
+                count++;
+                insertSlot(hash, offset);
+                added = true;
+                return true;
+            }
+            finally
+            {
+                lock.unlock();
+                if (!added)
+                    unreference(ref.id);
+            }
+        }
+
+        void remove(int descriptorId, int hash, byte[] key)
+        {
+            lock.lock();
+            try
+            {
+                long offset = find(descriptorId, hash, key);
+                if (offset >= 0)
+                {
+                    deleteSlot(hash, offset);
+                    drop(offset);
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        int count()
+        {
+            lock.lock();
+            try
+            {
+                return count;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        long weightedSize()
+        {
+            lock.lock();
+            try
+            {
+                return live;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        void clear()
+        {
+            lock.lock();
+            try
+            {
+                for (long offset : liveEntries())
+                    unreference(slab.getInt(offset + DESCRIPTOR));
+                reset();
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the n most recent keys of the segment, oldest first
+         */
+        Deque<KeyCacheKey> keys(int n)
+        {
+            Deque<KeyCacheKey> keys = new ArrayDeque<KeyCacheKey>();
+            lock.lock();
+            try
+            {
+                for (long offset : liveEntries())
+                {
+                    DescriptorRef ref = refsById.get(slab.getInt(offset + DESCRIPTOR));
+                    if (ref == null)
+                        continue;
+                    byte[] key = new byte[slab.getInt(offset + KEY_LENGTH)];
+                    slab.getBytes(offset + HEADER_SIZE, key, 0, key.length);
+                    if (keys.size() == n)
+                        keys.pollFirst();
+                    keys.addLast(new KeyCacheKey(ref.desc, ByteBuffer.wrap(key)));
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            return keys;
+        }
+
+        /**
+         * Moves the live entries to a new slab of the provided size, evicting the oldest ones if they don't fit.
+         */
+        void resize(long size)
+        {
+            lock.lock();
+            try
+            {
+                if (size == (slab == null ? 0 : slab.size()))
+                    return;
+
+                List<byte[]> entries = new ArrayList<byte[]>(count);
+                for (long offset : liveEntries())
+                {
+                    byte[] entry = new byte[slab.getInt(offset + LENGTH)];
+                    slab.getBytes(offset, entry, 0, entry.length);
+                    entries.add(entry);
+                }
+
+                if (slab != null)
+                    slab.free();
+                slab = size > 0 ? Memory.allocate(size) : null;
+                reset();
+
+                for (byte[] entry : entries)
+                {
+                    long offset = allocate(entry.length);
+                    if (offset < 0)
+                    {
+                        unreference(ByteBuffer.wrap(entry).getInt(DESCRIPTOR));
+                        continue;
+                    }
+                    slab.setBytes(offset, entry, 0, entry.length);
+                    live += entry.length;
+                    count++;
+                    insertSlot(slab.getInt(offset + HASH), offset);
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private void reset()
+        {
+            head = tail = used = live = 0;
+            count = 0;
+            index = new long[INITIAL_INDEX_SIZE];
+        }
+
+        /**
+         * @return the offsets of the live entries, oldest first
+         */
+        private List<Long> liveEntries()
+        {
+            List<Long> offsets = new ArrayList<Long>(count);
+            long offset = tail;
+            for (long remaining = used; remaining > 0; )
+            {
+                int length = slab.getInt(offset + LENGTH);
+                if ((slab.getByte(offset + FLAGS) & (PADDING | REMOVED)) == 0)
+                    offsets.add(offset);
+                remaining -= length;
+                offset = next(offset, length);
+            }
+            return offsets;
+        }
+
+        private long next(long offset, int length)
+        {
+            offset += length;
+            return offset == slab.size() ? 0 : offset;
+        }
+
+        /**
+         * Makes room for an entry of the provided (aligned) length, evicting entries from the tail as needed.
+         *
+         * @return the offset of the entry, or -1 if it is too large to be cached
+         */
+        private long allocate(int length)
+        {
+            if (slab == null || length > slab.size() / 8)
+                return -1;
+
+            while (true)
+            {
+                long offset = tryTake(length);
+                if (offset >= 0)
+                    return offset;
+                evictTail();
+            }
+        }
+
+        /**
+         * @return the offset of an entry of the provided length taken at the head, or -1 if there isn't enough
+         * contiguous free space for it
+         */
+        private long tryTake(int length)
+        {
+            long size = slab.size();
+            if (used == 0)
+                head = tail = 0;
+            if (used == size)
+                return -1;
+
+            if (head >= tail)
+            {
+                if (size - head >= length)
+                    return take(length);
+
+                // pad the end of the slab, and wrap around
+                if (head < size)
+                {
+                    slab.setInt(head + LENGTH, (int) (size - head));
+                    slab.setByte(head + FLAGS, PADDING);
+                    used += size - head;
+                }
+                head = 0;
+            }
+            return used < size && tail - head >= length ? take(length) : -1;
+        }
+
+        private long take(int length)
+        {
+            long offset = head;
+            head += length;
+            used += length;
+            return offset;
+        }
+
+        /**
+         * Frees the entry at the tail. If it has been read since it was written, it is moved to the head and
+         * cleared of its read mark instead of being evicted.
+         */
+        private void evictTail()
+        {
+            assert used > 0;
+            long offset = tail;
+            int length = slab.getInt(offset + LENGTH);
+            byte flags = slab.getByte(offset + FLAGS);
+
+            byte[] accessed = null;
+            if (flags == ACCESSED)
+            {
+                accessed = new byte[length];
+                slab.getBytes(offset, accessed, 0, length);
+            }
+            else if ((flags & (PADDING | REMOVED)) == 0)
+            {
+                deleteSlot(slab.getInt(offset + HASH), offset);
+                drop(offset);
+            }
+
+            tail = next(offset, length);
+            used -= length;
+
+            if (accessed != null)
+            {
+                // freeing its previous copy always leaves enough contiguous room for it
+                long moved = tryTake(length);
+                assert moved >= 0;
+                slab.setBytes(moved, accessed, 0, length);
+                slab.setByte(moved + FLAGS, (byte) 0);
+                int hash = slab.getInt(moved + HASH);
+                index[slotOf(hash, offset)] = slotValue(hash, moved);
+            }
+        }
+
+        /**
+         * Marks the entry at offset as removed, its slot in the index having been deleted already. Its space is
+         * reclaimed once it reaches the tail.
+         */
+        private void drop(long offset)
+        {
+            slab.setByte(offset + FLAGS, REMOVED);
+            live -= slab.getInt(offset + LENGTH);
+            count--;
+            unreference(slab.getInt(offset + DESCRIPTOR));
+        }
+
+        private boolean valueEquals(long offset, int keyLength, byte[] expected)
+        {
+            if (slab.getInt(offset + VALUE_LENGTH) != expected.length)
+                return false;
+            long start = offset + HEADER_SIZE + keyLength;
+            for (int i = 0; i < expected.length; i++)
+                if (slab.getByte(start + i) != expected[i])
+                    return false;
+            return true;
+        }
+
+        /**
+         * @return the offset of the entry of the key, or -1 if it isn't cached
+         */
+        private long find(int descriptorId, int hash, byte[] key)
+        {
+            if (slab == null)
+                return -1;
+
+            int mask = index.length - 1;
+            for (int i = hash & mask; index[i] != 0; i = (i + 1) & mask)
+            {
+                if ((int) (index[i] >>> 32) != hash)
+                    continue;
+
+                long offset = offsetOf(index[i]);
+                if (slab.getInt(offset + DESCRIPTOR) == descriptorId && keyEquals(offset, key))
+                    return offset;
+            }
+            return -1;
+        }
+
+        private boolean keyEquals(long offset, byte[] key)
+        {
+            if (slab.getInt(offset + KEY_LENGTH) != key.length)
+                return false;
+            for (int i = 0; i < key.length; i++)
+                if (slab.getByte(offset + HEADER_SIZE + i) != key[i])
+                    return false;
+            return true;
+        }
+
+        private void insertSlot(int hash, long offset)
+        {
+            if (2 * count > index.length)
+                rehash(index.length * 2);
+
+            int mask = index.length - 1;
+            int i = hash & mask;
+            while (index[i] != 0)
+                i = (i + 1) & mask;
+            index[i] = slotValue(hash, offset);
+        }
+
+        private int slotOf(int hash, long offset)
+        {
+            long value = slotValue(hash, offset);
+            int mask = index.length - 1;
+            int i = hash & mask;
+            while (index[i] != value)
+            {
+                assert index[i] != 0 : "No slot for entry at " + offset;
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        /**
+         * Deletes the slot of the entry at offset, shifting back the slots following it so that linear probing
+         * still finds them.
+         */
+        private void deleteSlot(int hash, long offset)
+        {
+            int mask = index.length - 1;
+            int i = slotOf(hash, offset);
+            for (int j = (i + 1) & mask; index[j] != 0; j = (j + 1) & mask)
+            {
+                int ideal = (int) (index[j] >>> 32) & mask;
+                // the slot can stay where it is if its ideal position is cyclically within (i, j]
+                boolean stays = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+                if (!stays)
+                {
+                    index[i] = index[j];
+                    i = j;
+                }
+            }
+            index[i] = 0;
+        }
+
+        private void rehash(int size)
+        {
+            long[] old = index;
+            index = new long[size];
+            int mask = size - 1;
+            for (long value : old)
+            {
+                if (value == 0)
+                    continue;
+                int i = (int) (value >>> 32) & mask;
+                while (index[i] != 0)
+                    i = (i + 1) & mask;
+                index[i] = value;
+            }
+        }
+    }
+
+    private static long slotValue(int hash, long offset)
+    {
+        return ((long) hash << 32) | ((offset >>> 3) + 1);
+    }
+
+    private static long offsetOf(long slot)
+    {
+        return ((slot & 0xFFFFFFFFL) - 1) << 3;
+    }
+
+    private static int align(int length)
+    {
+        return (length + 7) & ~7;
+    }
+}
@@ -86,6 +86,8 @@ public final class CFMetaData
     public final static SpeculativeRetry DEFAULT_SPECULATIVE_RETRY = new SpeculativeRetry(SpeculativeRetry.RetryType.PERCENTILE, 0.99);
     public final static int DEFAULT_INDEX_INTERVAL = 128;
     public final static boolean DEFAULT_POPULATE_IO_CACHE_ON_FLUSH = false;
+    public final static int DEFAULT_ROWS_PER_PARTITION_TO_CACHE = 0;
+    public final static BloomFilterType DEFAULT_BLOOM_FILTER_TYPE = BloomFilterType.STANDARD;
 
     // Note that this is the default only for user created tables
     public final static String DEFAULT_COMPRESSOR = LZ4Compressor.class.getCanonicalName();
@@ -137,6 +139,8 @@ public final class CFMetaData
                                                                     + "speculative_retry text,"
                                                                     + "populate_io_cache_on_flush boolean,"
                                                                     + "index_interval int,"
+                                                                    + "rows_per_partition_to_cache int,"
+                                                                    + "bloom_filter_type text,"
                                                                     + "dropped_columns map<text, bigint>,"
                                                                     + "PRIMARY KEY (keyspace_name, columnfamily_name)"
                                                                     + ") WITH COMMENT='ColumnFamily definitions' AND gc_grace_seconds=8640");
@@ -296,6 +300,26 @@ public final class CFMetaData
         }
     }
 
+    public enum BloomFilterType
+    {
+        /** hashes spread over the whole filter */
+        STANDARD,
+        /** hashes of a key confined to a single cache line of the filter, see BlockedBloomFilter */
+        BLOCKED;
+
+        public static BloomFilterType fromString(String type) throws ConfigurationException
+        {
+            try
+            {
+                return valueOf(type.toUpperCase());
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new ConfigurationException(String.format("%s not found, available types: %s.", type, StringUtils.join(values(), ", ")));
+            }
+        }
+    }
+
     public static class SpeculativeRetry
     {
         public enum RetryType
@@ -390,6 +414,8 @@ public final class CFMetaData
     private volatile int defaultTimeToLive = DEFAULT_DEFAULT_TIME_TO_LIVE;
     private volatile SpeculativeRetry speculativeRetry = DEFAULT_SPECULATIVE_RETRY;
     private volatile boolean populateIoCacheOnFlush = DEFAULT_POPULATE_IO_CACHE_ON_FLUSH;
+    private volatile int rowsPerPartitionToCache = DEFAULT_ROWS_PER_PARTITION_TO_CACHE;
+    private volatile BloomFilterType bloomFilterType = DEFAULT_BLOOM_FILTER_TYPE;
     private volatile Map<ByteBuffer, Long> droppedColumns = new HashMap<>();
     private volatile Map<String, TriggerDefinition> triggers = new HashMap<>();
 
@@ -440,6 +466,8 @@ public final class CFMetaData
     public CFMetaData defaultTimeToLive(int prop) {defaultTimeToLive = prop; return this;}
     public CFMetaData speculativeRetry(SpeculativeRetry prop) {speculativeRetry = prop; return this;}
     public CFMetaData populateIoCacheOnFlush(boolean prop) {populateIoCacheOnFlush = prop; return this;}
+    public CFMetaData rowsPerPartitionToCache(int prop) {rowsPerPartitionToCache = prop; return this;}
+    public CFMetaData bloomFilterType(BloomFilterType prop) {bloomFilterType = prop; return this;}
     public CFMetaData droppedColumns(Map<ByteBuffer, Long> cols) {droppedColumns = cols; return this;}
     public CFMetaData triggers(Map<String, TriggerDefinition> prop) {triggers = prop; return this;}
 
@@ -592,6 +620,8 @@ public final class CFMetaData
                       .speculativeRetry(oldCFMD.speculativeRetry)
                       .memtableFlushPeriod(oldCFMD.memtableFlushPeriod)
                       .populateIoCacheOnFlush(oldCFMD.populateIoCacheOnFlush)
+                      .rowsPerPartitionToCache(oldCFMD.rowsPerPartitionToCache)
+                      .bloomFilterType(oldCFMD.bloomFilterType)
                       .droppedColumns(new HashMap<>(oldCFMD.droppedColumns))
                       .triggers(new HashMap<>(oldCFMD.triggers))
                       .rebuild();
@@ -734,6 +764,14 @@ public final class CFMetaData
                : bloomFilterFpChance;
     }
 
+    /**
+     * @return the type of the bloom filters of the sstables written from now on
+     */
+    public BloomFilterType getBloomFilterType()
+    {
+        return bloomFilterType;
+    }
+
     public Caching getCaching()
     {
         return caching;
@@ -744,6 +782,15 @@ public final class CFMetaData
         return indexInterval;
     }
 
+    /**
+     * @return the number of CQL3 rows (or cells for non-CQL3 tables) the row cache keeps from the head of each
+     * partition, or 0 if it keeps whole partitions
+     */
+    public int getRowsPerPartitionToCache()
+    {
+        return rowsPerPartitionToCache;
+    }
+
     public SpeculativeRetry getSpeculativeRetry()
     {
         return speculativeRetry;
@@ -802,6 +849,8 @@ public final class CFMetaData
             .append(indexInterval, rhs.indexInterval)
             .append(speculativeRetry, rhs.speculativeRetry)
             .append(populateIoCacheOnFlush, rhs.populateIoCacheOnFlush)
+            .append(rowsPerPartitionToCache, rhs.rowsPerPartitionToCache)
+            .append(bloomFilterType, rhs.bloomFilterType)
             .append(droppedColumns, rhs.droppedColumns)
             .append(triggers, rhs.triggers)
             .isEquals();
@@ -835,6 +884,8 @@ public final class CFMetaData
             .append(indexInterval)
             .append(speculativeRetry)
             .append(populateIoCacheOnFlush)
+            .append(rowsPerPartitionToCache)
+            .append(bloomFilterType)
             .append(droppedColumns)
             .append(triggers)
             .toHashCode();
@@ -1023,6 +1074,8 @@ public final class CFMetaData
         defaultTimeToLive = cfm.defaultTimeToLive;
         speculativeRetry = cfm.speculativeRetry;
         populateIoCacheOnFlush = cfm.populateIoCacheOnFlush;
+        rowsPerPartitionToCache = cfm.rowsPerPartitionToCache;
+        bloomFilterType = cfm.bloomFilterType;
 
         if (!cfm.droppedColumns.isEmpty())
             droppedColumns = cfm.droppedColumns;
@@ -1394,6 +1447,9 @@ public final class CFMetaData
         if (bloomFilterFpChance != null && bloomFilterFpChance == 0)
             throw new ConfigurationException("Zero false positives is impossible; bloom filter false positive chance bffpc must be 0 < bffpc <= 1");
 
+        if (rowsPerPartitionToCache < 0)
+            throw new ConfigurationException("rows_per_partition_to_cache must be 0 (whole partitions) or positive");
+
         return this;
     }
 
@@ -1569,6 +1625,8 @@ public final class CFMetaData
         cf.addColumn(Column.create(json(compactionStrategyOptions), timestamp, cfName, "compaction_strategy_options"));
         cf.addColumn(Column.create(indexInterval, timestamp, cfName, "index_interval"));
         cf.addColumn(Column.create(speculativeRetry.toString(), timestamp, cfName, "speculative_retry"));
+        cf.addColumn(Column.create(rowsPerPartitionToCache, timestamp, cfName, "rows_per_partition_to_cache"));
+        cf.addColumn(Column.create(bloomFilterType.toString(), timestamp, cfName, "bloom_filter_type"));
 
         for (Map.Entry<ByteBuffer, Long> entry : droppedColumns.entrySet())
             cf.addColumn(new Column(makeDroppedColumnName(entry.getKey()), LongType.instance.decompose(entry.getValue()), timestamp));
@@ -1627,6 +1685,10 @@ public final class CFMetaData
             }
             if (result.has("populate_io_cache_on_flush"))
                 cfm.populateIoCacheOnFlush(result.getBoolean("populate_io_cache_on_flush"));
+            if (result.has("rows_per_partition_to_cache"))
+                cfm.rowsPerPartitionToCache(result.getInt("rows_per_partition_to_cache"));
+            if (result.has("bloom_filter_type"))
+                cfm.bloomFilterType(BloomFilterType.fromString(result.getString("bloom_filter_type")));
 
             /*
              * The info previously hold by key_aliases, column_aliases and value_alias is now stored in column_metadata (because 1) this
@@ -2107,6 +2169,8 @@ public final class CFMetaData
             .append("speculative_retry", speculativeRetry)
             .append("indexInterval", indexInterval)
             .append("populateIoCacheOnFlush", populateIoCacheOnFlush)
+            .append("rowsPerPartitionToCache", rowsPerPartitionToCache)
+            .append("bloomFilterType", bloomFilterType)
             .append("droppedColumns", droppedColumns)
             .append("triggers", triggers)
             .toString();
@@ -73,6 +73,7 @@ public class Config
     public Integer concurrent_replicates = 32;
 
     public Integer memtable_flush_writers = null; // will get set to the length of data dirs in DatabaseDescriptor
+    public int memtable_flush_splits = 1;
     public Integer memtable_total_space_in_mb;
 
     public Integer storage_port = 7000;
@@ -128,6 +129,8 @@ public class Config
     public Integer commitlog_sync_period_in_ms;
     public int commitlog_segment_size_in_mb = 32;
     public int commitlog_periodic_queue_size = 1024 * FBUtilities.getAvailableProcessors();
+    public boolean commitlog_concurrent_writes = false;
+    public String commitlog_compression;
 
     public String endpoint_snitch;
     public Boolean dynamic_snitch = true;
@@ -162,10 +165,14 @@ public class Config
     public Long key_cache_size_in_mb = null;
     public volatile int key_cache_save_period = 14400;
     public int key_cache_keys_to_save = Integer.MAX_VALUE;
+    public boolean key_cache_off_heap = false;
 
     public long row_cache_size_in_mb = 0;
+    public long chunk_cache_size_in_mb = 0;
     public volatile int row_cache_save_period = 0;
     public int row_cache_keys_to_save = Integer.MAX_VALUE;
+    public Long index_summary_capacity_in_mb = null;
+    public int index_summary_resize_interval_in_minutes = 60;
     public String memory_allocator = NativeAllocator.class.getSimpleName();
     public boolean populate_io_cache_on_flush = false;
 
@@ -174,10 +181,12 @@ public class Config
     public boolean preheat_kernel_page_cache = false;
 
     public Integer file_cache_size_in_mb;
+    public int scan_read_ahead_buffers = 0;
 
     public boolean inter_dc_tcp_nodelay = true;
 
     public String memtable_allocator = "SlabAllocator";
+    public MemtablePartitionType memtable_partition_type = MemtablePartitionType.snaptree;
 
     private static boolean outboundBindAny = false;
 
@@ -215,6 +224,12 @@ public class Config
         all, none, dc
     }
 
+    public static enum MemtablePartitionType
+    {
+        snaptree,
+        btree
+    }
+
     public static enum DiskAccessMode
     {
         auto,
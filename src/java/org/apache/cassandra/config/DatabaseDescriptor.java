@@ -36,6 +36,7 @@ import org.apache.cassandra.config.EncryptionOptions.ServerEncryptionOptions;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DefsTables;
 import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.db.commitlog.CommitLogDescriptor;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.FSWriteError;
@@ -85,6 +86,7 @@ public class DatabaseDescriptor
     private static RequestSchedulerOptions requestSchedulerOptions;
 
     private static long keyCacheSizeInMB;
+    private static long indexSummaryCapacityInMB;
     private static IAllocator memoryAllocator;
 
     private static String localDC;
@@ -171,6 +173,18 @@ public class DatabaseDescriptor
             logger.debug("Syncing log with a period of " + conf.commitlog_sync_period_in_ms);
         }
 
+        if (conf.commitlog_compression != null)
+        {
+            try
+            {
+                CommitLogDescriptor.createCompressor(conf.commitlog_compression);
+            }
+            catch (IllegalStateException e)
+            {
+                throw new ConfigurationException("Invalid commitlog_compression " + conf.commitlog_compression);
+            }
+        }
+
         if (conf.commitlog_total_space_in_mb == null)
             conf.commitlog_total_space_in_mb = System.getProperty("os.arch").contains("64") ? 1024 : 32;
 
@@ -274,6 +288,8 @@ public class DatabaseDescriptor
         {
             conf.memtable_flush_writers = conf.data_file_directories.length;
         }
+        if (conf.memtable_flush_splits < 1)
+            throw new ConfigurationException("memtable_flush_splits must be at least 1");
 
         /* Local IP or hostname to bind services to */
         if (conf.listen_address != null)
@@ -456,6 +472,30 @@ public class DatabaseDescriptor
                     + conf.key_cache_size_in_mb + "', supported values are <integer> >= 0.");
         }
 
+        if (conf.scan_read_ahead_buffers < 0)
+            throw new ConfigurationException("scan_read_ahead_buffers option was set incorrectly to '"
+                                             + conf.scan_read_ahead_buffers + "', supported values are <integer> >= 0.");
+
+        if (conf.chunk_cache_size_in_mb < 0)
+            throw new ConfigurationException("chunk_cache_size_in_mb option was set incorrectly to '"
+                                             + conf.chunk_cache_size_in_mb + "', supported values are <integer> >= 0.");
+
+        try
+        {
+            // if index_summary_capacity_in_mb is left empty, the capacity should be 5% of the heap (in MB)
+            indexSummaryCapacityInMB = (conf.index_summary_capacity_in_mb == null)
+                ? Math.max(1, (int) (Runtime.getRuntime().maxMemory() * 0.05 / 1024 / 1024))
+                : conf.index_summary_capacity_in_mb;
+
+            if (indexSummaryCapacityInMB < 0)
+                throw new NumberFormatException(); // to escape duplicating error message
+        }
+        catch (NumberFormatException e)
+        {
+            throw new ConfigurationException("index_summary_capacity_in_mb option was set incorrectly to '"
+                    + conf.index_summary_capacity_in_mb + "', supported values are <integer> >= 0.");
+        }
+
         memoryAllocator = FBUtilities.newOffHeapAllocator(conf.memory_allocator);
 
         if(conf.encryption_options != null)
@@ -859,6 +899,17 @@ public class DatabaseDescriptor
             return conf.memtable_flush_writers;
     }
 
+    public static int getFlushSplits()
+    {
+        return conf.memtable_flush_splits;
+    }
+
+    @VisibleForTesting
+    public static void setFlushSplits(int splits)
+    {
+        conf.memtable_flush_splits = splits;
+    }
+
     public static int getInMemoryCompactionLimit()
     {
         return conf.in_memory_compaction_limit_in_mb * 1024 * 1024;
@@ -1062,6 +1113,16 @@ public class DatabaseDescriptor
         return conf.commitlog_sync;
     }
 
+    public static boolean getCommitLogConcurrentWrites()
+    {
+        return conf.commitlog_concurrent_writes;
+    }
+
+    public static String getCommitLogCompression()
+    {
+        return conf.commitlog_compression;
+    }
+
     public static Config.DiskAccessMode getDiskAccessMode()
     {
         return conf.disk_access_mode;
@@ -1205,6 +1266,11 @@ public class DatabaseDescriptor
         return conf.file_cache_size_in_mb;
     }
 
+    public static int getScanReadAheadBuffers()
+    {
+        return conf.scan_read_ahead_buffers;
+    }
+
     public static int getTotalMemtableSpaceInMB()
     {
         // should only be called if estimatesRealMemtableSize() is true
@@ -1252,11 +1318,31 @@ public class DatabaseDescriptor
         conf.key_cache_keys_to_save = keyCacheKeysToSave;
     }
 
+    public static boolean getKeyCacheOffHeap()
+    {
+        return conf.key_cache_off_heap;
+    }
+
     public static long getRowCacheSizeInMB()
     {
         return conf.row_cache_size_in_mb;
     }
 
+    public static long getChunkCacheSizeInMB()
+    {
+        return conf.chunk_cache_size_in_mb;
+    }
+
+    public static long getIndexSummaryCapacityInMB()
+    {
+        return indexSummaryCapacityInMB;
+    }
+
+    public static int getIndexSummaryResizeIntervalInMinutes()
+    {
+        return conf.index_summary_resize_interval_in_minutes;
+    }
+
     public static int getRowCacheSavePeriod()
     {
         return conf.row_cache_save_period;
@@ -1312,6 +1398,11 @@ public class DatabaseDescriptor
         return conf.preheat_kernel_page_cache;
     }
 
+    public static Config.MemtablePartitionType getMemtablePartitionType()
+    {
+        return conf.memtable_partition_type;
+    }
+
     public static Allocator getMemtableAllocator()
     {
         try
@@ -851,7 +851,19 @@ properties[PropertyDefinitions props]
 
 property[PropertyDefinitions props]
     : k=cident '=' (simple=propertyValue { try { $props.addProperty(k.toString(), simple); } catch (SyntaxException e) { addRecognitionError(e.getMessage()); } }
-                   |   map=map_literal   { try { $props.addProperty(k.toString(), convertPropertyMap(map)); } catch (SyntaxException e) { addRecognitionError(e.getMessage()); } })
+                   |   map=map_literal   { try { $props.addProperty(k.toString(), convertPropertyMap(map)); } catch (SyntaxException e) { addRecognitionError(e.getMessage()); } }
+                   |   list=propertyList { try { $props.addProperty(k.toString(), list); } catch (SyntaxException e) { addRecognitionError(e.getMessage()); } })
+    ;
+
+propertyList returns [List<String> list]
+    : '[' { $list = new ArrayList<String>(); }
+          ( v1=propertyListValue { $list.add(v1); } ( ',' vn=propertyListValue { $list.add(vn); } )* )?
+      ']'
+    ;
+
+propertyListValue returns [String str]
+    : c=constant { $str = c.getRawText(); }
+    | i=cident   { $str = i.toString(); }
     ;
 
 propertyValue returns [String str]
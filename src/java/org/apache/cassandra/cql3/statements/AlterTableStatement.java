@@ -27,6 +27,7 @@ import org.apache.cassandra.auth.Permission;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.cql3.*;
+import org.apache.cassandra.db.index.composites.CompositesIndex;
 import org.apache.cassandra.db.marshal.*;
 import org.apache.cassandra.exceptions.*;
 import org.apache.cassandra.service.ClientState;
@@ -216,6 +217,11 @@ public class AlterTableStatement extends SchemaAlteringStatement
                                 toDelete = columnDef;
                         }
                         assert toDelete != null;
+                        for (ColumnDefinition columnDef : cfm.regularColumns())
+                        {
+                            if (CompositesIndex.getIncludedColumns(columnDef).contains(columnName.toString()))
+                                throw new InvalidRequestException(String.format("Cannot drop column %s, it is included in index %s", columnName, columnDef.getIndexName()));
+                        }
                         cfm.removeColumnDefinition(toDelete);
                         cfm.recordColumnDrop(toDelete);
                         break;
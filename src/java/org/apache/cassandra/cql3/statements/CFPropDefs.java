@@ -42,6 +42,8 @@ public class CFPropDefs extends PropertyDefinitions
     public static final String KW_POPULATE_IO_CACHE_ON_FLUSH = "populate_io_cache_on_flush";
     public static final String KW_BF_FP_CHANCE = "bloom_filter_fp_chance";
     public static final String KW_MEMTABLE_FLUSH_PERIOD = "memtable_flush_period_in_ms";
+    public static final String KW_ROWS_PER_PARTITION_TO_CACHE = "rows_per_partition_to_cache";
+    public static final String KW_BF_TYPE = "bloom_filter_type";
 
     public static final String KW_COMPACTION = "compaction";
     public static final String KW_COMPRESSION = "compression";
@@ -67,6 +69,8 @@ public class CFPropDefs extends PropertyDefinitions
         keywords.add(KW_COMPACTION);
         keywords.add(KW_COMPRESSION);
         keywords.add(KW_MEMTABLE_FLUSH_PERIOD);
+        keywords.add(KW_ROWS_PER_PARTITION_TO_CACHE);
+        keywords.add(KW_BF_TYPE);
     }
 
     private Class<? extends AbstractCompactionStrategy> compactionStrategyClass = null;
@@ -113,8 +117,10 @@ public class CFPropDefs extends PropertyDefinitions
 
         validateMinimumInt(KW_DEFAULT_TIME_TO_LIVE, 0, CFMetaData.DEFAULT_DEFAULT_TIME_TO_LIVE);
         validateMinimumInt(KW_INDEX_INTERVAL, 1, CFMetaData.DEFAULT_INDEX_INTERVAL);
+        validateMinimumInt(KW_ROWS_PER_PARTITION_TO_CACHE, 0, CFMetaData.DEFAULT_ROWS_PER_PARTITION_TO_CACHE);
 
         SpeculativeRetry.fromString(getString(KW_SPECULATIVE_RETRY, SpeculativeRetry.RetryType.NONE.name()));
+        CFMetaData.BloomFilterType.fromString(getString(KW_BF_TYPE, CFMetaData.DEFAULT_BLOOM_FILTER_TYPE.name()));
     }
 
     public Class<? extends AbstractCompactionStrategy> getCompactionStrategy()
@@ -159,6 +165,7 @@ public class CFPropDefs extends PropertyDefinitions
         cfm.memtableFlushPeriod(getInt(KW_MEMTABLE_FLUSH_PERIOD, cfm.getMemtableFlushPeriod()));
         cfm.populateIoCacheOnFlush(getBoolean(KW_POPULATE_IO_CACHE_ON_FLUSH, cfm.populateIoCacheOnFlush()));
         cfm.indexInterval(getInt(KW_INDEX_INTERVAL, cfm.getIndexInterval()));
+        cfm.rowsPerPartitionToCache(getInt(KW_ROWS_PER_PARTITION_TO_CACHE, cfm.getRowsPerPartitionToCache()));
 
         if (compactionStrategyClass != null)
         {
@@ -167,6 +174,7 @@ public class CFPropDefs extends PropertyDefinitions
         }
 
         cfm.bloomFilterFpChance(getDouble(KW_BF_FP_CHANCE, cfm.getBloomFilterFpChance()));
+        cfm.bloomFilterType(CFMetaData.BloomFilterType.fromString(getString(KW_BF_TYPE, cfm.getBloomFilterType().toString())));
 
         if (!getCompressionOptions().isEmpty())
             cfm.compressionParameters(CompressionParameters.create(getCompressionOptions()));
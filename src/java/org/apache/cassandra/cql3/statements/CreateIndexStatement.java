@@ -18,6 +18,10 @@
 package org.apache.cassandra.cql3.statements;
 
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +30,7 @@ import org.apache.cassandra.auth.Permission;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.index.composites.CompositesIndex;
 import org.apache.cassandra.exceptions.*;
 import org.apache.cassandra.cql3.*;
 import org.apache.cassandra.service.ClientState;
@@ -33,6 +38,7 @@ import org.apache.cassandra.service.MigrationManager;
 import org.apache.cassandra.thrift.IndexType;
 import org.apache.cassandra.thrift.ThriftValidation;
 import org.apache.cassandra.transport.messages.ResultMessage;
+import org.apache.cassandra.utils.FBUtilities;
 
 /** A <code>CREATE INDEX</code> statement parsed from a CQL query. */
 public class CreateIndexStatement extends SchemaAlteringStatement
@@ -92,6 +98,32 @@ public class CreateIndexStatement extends SchemaAlteringStatement
 
         if (cd.type == ColumnDefinition.Type.PARTITION_KEY && cd.componentIndex == null)
             throw new InvalidRequestException(String.format("Cannot add secondary index to already primarily indexed column %s", columnName));
+
+        List<String> included = properties.getIncludedColumns();
+        if (included.isEmpty())
+            return;
+
+        if (cfm.getCfDef().isCompact || !cfm.getCfDef().isComposite)
+            throw new InvalidRequestException("Included columns are only supported on indexes of non-compact tables with clustering columns");
+
+        if (cd.type != ColumnDefinition.Type.REGULAR)
+            throw new InvalidRequestException(String.format("Included columns are only supported on indexes of regular columns, but %s is a %s column", columnName, cd.type));
+
+        Set<String> seen = new HashSet<>();
+        for (String name : included)
+        {
+            ColumnDefinition includedDef = cfm.getColumnDefinition(new ColumnIdentifier(name, true).key);
+            if (includedDef == null)
+                throw new InvalidRequestException(String.format("No column definition found for included column %s", name));
+            if (includedDef.type != ColumnDefinition.Type.REGULAR)
+                throw new InvalidRequestException(String.format("Cannot include %s column %s in an index, only regular columns can be included", includedDef.type, name));
+            if (includedDef.getValidator().isCollection())
+                throw new InvalidRequestException(String.format("Cannot include collection column %s in an index", name));
+            if (includedDef.name.equals(cd.name))
+                throw new InvalidRequestException(String.format("Cannot include the indexed column %s in its own index", name));
+            if (!seen.add(name))
+                throw new InvalidRequestException(String.format("Column %s is included more than once", name));
+        }
     }
 
     public void announceMigration() throws RequestValidationException
@@ -106,7 +138,7 @@ public class CreateIndexStatement extends SchemaAlteringStatement
         if (properties.isCustom)
             cd.setIndexType(IndexType.CUSTOM, properties.getOptions());
         else if (cfm.getCfDef().isComposite)
-            cd.setIndexType(IndexType.COMPOSITES, Collections.<String, String>emptyMap());
+            cd.setIndexType(IndexType.COMPOSITES, compositesIndexOptions());
         else
             cd.setIndexType(IndexType.KEYS, Collections.<String, String>emptyMap());
 
@@ -115,6 +147,14 @@ public class CreateIndexStatement extends SchemaAlteringStatement
         MigrationManager.announceColumnFamilyUpdate(cfm, false);
     }
 
+    private Map<String, String> compositesIndexOptions() throws RequestValidationException
+    {
+        List<String> included = properties.getIncludedColumns();
+        return included.isEmpty()
+             ? Collections.<String, String>emptyMap()
+             : Collections.singletonMap(CompositesIndex.INCLUDE_OPTION_NAME, FBUtilities.json(included));
+    }
+
     public ResultMessage.SchemaChange.Change changeType()
     {
         // Creating an index is akin to updating the CF
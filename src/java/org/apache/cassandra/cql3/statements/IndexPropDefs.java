@@ -25,6 +25,7 @@ import org.apache.cassandra.exceptions.*;
 public class IndexPropDefs extends PropertyDefinitions
 {
     public static final String KW_OPTIONS = "options";
+    public static final String KW_INCLUDE = "include";
 
     public static final Set<String> keywords = new HashSet<>();
     public static final Set<String> obsoleteKeywords = new HashSet<>();
@@ -35,6 +36,7 @@ public class IndexPropDefs extends PropertyDefinitions
     static
     {
         keywords.add(KW_OPTIONS);
+        keywords.add(KW_INCLUDE);
     }
 
     public void validate() throws RequestValidationException
@@ -47,9 +49,15 @@ public class IndexPropDefs extends PropertyDefinitions
         if (!isCustom && customClass != null)
             throw new InvalidRequestException("Cannot specify index class for a non-CUSTOM index");
 
-        if (!isCustom && !properties.isEmpty())
+        if (!isCustom && hasProperty(KW_OPTIONS))
             throw new InvalidRequestException("Cannot specify options for a non-CUSTOM index");
 
+        if (isCustom && hasProperty(KW_INCLUDE))
+            throw new InvalidRequestException("Cannot specify included columns for a CUSTOM index");
+
+        if (hasProperty(KW_INCLUDE) && getIncludedColumns().isEmpty())
+            throw new InvalidRequestException("The list of included columns cannot be empty");
+
         if (getRawOptions().containsKey(SecondaryIndex.CUSTOM_INDEX_OPTION_NAME))
             throw new InvalidRequestException(String.format("Cannot specify %s as a CUSTOM option",
                                                             SecondaryIndex.CUSTOM_INDEX_OPTION_NAME));
@@ -61,6 +69,12 @@ public class IndexPropDefs extends PropertyDefinitions
         return options == null ? Collections.<String, String>emptyMap() : options;
     }
 
+    public List<String> getIncludedColumns() throws SyntaxException
+    {
+        List<String> included = getList(KW_INCLUDE);
+        return included == null ? Collections.<String>emptyList() : included;
+    }
+
     public Map<String, String> getOptions() throws SyntaxException
     {
         Map<String, String> options = new HashMap<>(getRawOptions());
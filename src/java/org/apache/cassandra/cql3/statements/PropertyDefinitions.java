@@ -42,6 +42,12 @@ public class PropertyDefinitions
             throw new SyntaxException(String.format("Multiple definition for property '%s'", name));
     }
 
+    public void addProperty(String name, List<String> value) throws SyntaxException
+    {
+        if (properties.put(name, value) != null)
+            throw new SyntaxException(String.format("Multiple definition for property '%s'", name));
+    }
+
     public void validate(Set<String> keywords, Set<String> obsolete) throws SyntaxException
     {
         for (String name : properties.keySet())
@@ -76,6 +82,16 @@ public class PropertyDefinitions
         return (Map<String, String>)val;
     }
 
+    protected List<String> getList(String name) throws SyntaxException
+    {
+        Object val = properties.get(name);
+        if (val == null)
+            return null;
+        if (!(val instanceof List))
+            throw new SyntaxException(String.format("Invalid value for property '%s'. It should be a list.", name));
+        return (List<String>)val;
+    }
+
     public Boolean hasProperty(String name)
     {
         return properties.containsKey(name);
@@ -298,7 +298,22 @@ public class SelectStatement implements CQLStatement, MeasurableForPreparedCache
         AbstractBounds<RowPosition> keyBounds = getKeyBounds(variables);
         return keyBounds == null
              ? null
-             : new RangeSliceCommand(keyspace(), columnFamily(), now,  filter, keyBounds, expressions, limit, !parameters.isDistinct, false);
+             : new RangeSliceCommand(keyspace(), columnFamily(), now,  filter, keyBounds, expressions, limit, !parameters.isDistinct, false, getQueriedColumns());
+    }
+
+    /**
+     * The regular columns whose value the query needs, for index queries that a covering index may answer
+     * alone (see CoveringCompositesIndex), null otherwise.
+     */
+    private Set<ByteBuffer> getQueriedColumns()
+    {
+        if (!usesSecondaryIndexing || !cfDef.isComposite || cfDef.isCompact || parameters.isDistinct)
+            return null;
+
+        Set<ByteBuffer> columns = new HashSet<ByteBuffer>();
+        for (ColumnIdentifier id : selection.regularColumnsToFetch())
+            columns.add(id.key);
+        return columns;
     }
 
     private AbstractBounds<RowPosition> getKeyBounds(List<ByteBuffer> variables) throws InvalidRequestException
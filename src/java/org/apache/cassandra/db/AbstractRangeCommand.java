@@ -17,14 +17,22 @@
  */
 package org.apache.cassandra.db;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.filter.*;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.IReadCommand;
 import org.apache.cassandra.thrift.IndexExpression;
+import org.apache.cassandra.utils.ByteBufferUtil;
 
 public abstract class AbstractRangeCommand implements IReadCommand
 {
@@ -36,7 +44,18 @@ public abstract class AbstractRangeCommand implements IReadCommand
     public final IDiskAtomFilter predicate;
     public final List<IndexExpression> rowFilter;
 
+    /**
+     * The CQL3 columns the query needs the value of, if known, so index searches can tell whether
+     * a covering index can answer it alone. Null if unknown.
+     */
+    public final Set<ByteBuffer> queriedColumns;
+
     public AbstractRangeCommand(String keyspace, String columnFamily, long timestamp, AbstractBounds<RowPosition> keyRange, IDiskAtomFilter predicate, List<IndexExpression> rowFilter)
+    {
+        this(keyspace, columnFamily, timestamp, keyRange, predicate, rowFilter, null);
+    }
+
+    public AbstractRangeCommand(String keyspace, String columnFamily, long timestamp, AbstractBounds<RowPosition> keyRange, IDiskAtomFilter predicate, List<IndexExpression> rowFilter, Set<ByteBuffer> queriedColumns)
     {
         this.keyspace = keyspace;
         this.columnFamily = columnFamily;
@@ -44,6 +63,7 @@ public abstract class AbstractRangeCommand implements IReadCommand
         this.keyRange = keyRange;
         this.predicate = predicate;
         this.rowFilter = rowFilter;
+        this.queriedColumns = queriedColumns;
     }
 
     public String getKeyspace()
@@ -59,6 +79,47 @@ public abstract class AbstractRangeCommand implements IReadCommand
     public abstract boolean countCQL3Rows();
     public abstract List<Row> executeLocally();
 
+    static void serializeQueriedColumns(Set<ByteBuffer> queriedColumns, DataOutput out, int version) throws IOException
+    {
+        if (version < MessagingService.VERSION_21)
+            return;
+
+        out.writeBoolean(queriedColumns != null);
+        if (queriedColumns == null)
+            return;
+
+        out.writeInt(queriedColumns.size());
+        for (ByteBuffer name : queriedColumns)
+            ByteBufferUtil.writeWithShortLength(name, out);
+    }
+
+    static Set<ByteBuffer> deserializeQueriedColumns(DataInput in, int version) throws IOException
+    {
+        if (version < MessagingService.VERSION_21 || !in.readBoolean())
+            return null;
+
+        int size = in.readInt();
+        Set<ByteBuffer> queriedColumns = new HashSet<ByteBuffer>(size);
+        for (int i = 0; i < size; i++)
+            queriedColumns.add(ByteBufferUtil.readWithShortLength(in));
+        return queriedColumns;
+    }
+
+    static long serializedSizeOfQueriedColumns(Set<ByteBuffer> queriedColumns, int version)
+    {
+        if (version < MessagingService.VERSION_21)
+            return 0;
+
+        long size = TypeSizes.NATIVE.sizeof(queriedColumns != null);
+        if (queriedColumns == null)
+            return size;
+
+        size += TypeSizes.NATIVE.sizeof(queriedColumns.size());
+        for (ByteBuffer name : queriedColumns)
+            size += TypeSizes.NATIVE.sizeofWithShortLength(name);
+        return size;
+    }
+
     public long getTimeout()
     {
         return DatabaseDescriptor.getRangeRpcTimeout();
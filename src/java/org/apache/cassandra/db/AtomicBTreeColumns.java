@@ -0,0 +1,531 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterables;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.filter.ColumnSlice;
+import org.apache.cassandra.db.index.SecondaryIndexManager;
+import org.apache.cassandra.utils.Allocator;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.HeapAllocator;
+import org.apache.cassandra.utils.ObjectSizes;
+import org.apache.cassandra.utils.Pair;
+import org.apache.cassandra.utils.btree.BTree;
+import org.apache.cassandra.utils.btree.UpdateFunction;
+
+/**
+ * An AtomicColumns backed by an immutable BTree of columns.
+ *
+ * Like AtomicSortedColumns, updates build a new state and publish it with a CAS, but they merge a whole
+ * ColumnFamily into the tree in a single pass, copying only the nodes they modify, instead of cloning the map
+ * and inserting the columns one by one.
+ *
+ * Updates to a partition that keep losing the race to others (see recordContention()) waste more CPU and garbage
+ * than they are worth, so the partition then switches to taking a lock around updates, for as long as it lives.
+ *
+ * WARNING: as the columns are held in arrays, the collections returned by getSortedColumns() and
+ * getReverseSortedColumns() are read-only.
+ */
+public class AtomicBTreeColumns extends AtomicColumns
+{
+    /**
+     * The heap used by an empty instance: itself and its Holder (the empty tree is shared).
+     */
+    public static final long EMPTY_SIZE = ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize() + 4 + 1) // this
+                                        + ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize()); // Holder
+
+    /**
+     * The heap used by each column added, besides the data of its name and value: its slot in the tree (node headers
+     * and branches amount to a few percent on top of that), the Column itself and the ByteBuffers of its name and value.
+     */
+    public static final long COLUMN_OVERHEAD_SIZE = ObjectSizes.getReferenceSize()
+                                                  + ObjectSizes.getFieldSize(8 + 2 * ObjectSizes.getReferenceSize())
+                                                  + 2 * ObjectSizes.getBufferObjectSize();
+
+    // How much contention we put up with before locking: the number of failed updates a partition can accumulate in
+    // excess of one per CLOCK_SHIFT tick (~1ms).
+    private static final int CONTENTION_ALLOWANCE = Integer.getInteger("cassandra.btree_contention_allowance", 100);
+    private static final int CLOCK_SHIFT = 20;
+
+    private static final AtomicReferenceFieldUpdater<AtomicBTreeColumns, Holder> refUpdater = AtomicReferenceFieldUpdater.newUpdater(AtomicBTreeColumns.class, Holder.class, "ref");
+
+    public static final ColumnFamily.Factory<AtomicBTreeColumns> factory = new Factory<AtomicBTreeColumns>()
+    {
+        public AtomicBTreeColumns create(CFMetaData metadata, boolean insertReversed)
+        {
+            return new AtomicBTreeColumns(metadata);
+        }
+    };
+
+    private volatile Holder ref;
+
+    // the (wrapping) tick up to which failed updates are accounted for, see recordContention()
+    private volatile int contention;
+    private volatile boolean locking;
+
+    private AtomicBTreeColumns(CFMetaData metadata)
+    {
+        this(metadata, Holder.EMPTY);
+    }
+
+    private AtomicBTreeColumns(CFMetaData metadata, Holder holder)
+    {
+        super(metadata);
+        this.ref = holder;
+    }
+
+    private Comparator<Column> comparator()
+    {
+        return metadata.comparator.columnComparator;
+    }
+
+    public ColumnFamily.Factory getFactory()
+    {
+        return factory;
+    }
+
+    public ColumnFamily cloneMe()
+    {
+        // the holder is immutable
+        return new AtomicBTreeColumns(metadata, ref);
+    }
+
+    public DeletionInfo deletionInfo()
+    {
+        return ref.deletionInfo;
+    }
+
+    public void delete(DeletionTime delTime)
+    {
+        delete(new DeletionInfo(delTime));
+    }
+
+    protected void delete(RangeTombstone tombstone)
+    {
+        delete(new DeletionInfo(tombstone, getComparator()));
+    }
+
+    public void delete(DeletionInfo info)
+    {
+        if (info.isLive())
+            return;
+
+        while (true)
+        {
+            Holder current = ref;
+            DeletionInfo newDelInfo = current.deletionInfo.copy().add(info);
+            if (refUpdater.compareAndSet(this, current, current.with(newDelInfo)))
+                break;
+        }
+    }
+
+    public void setDeletionInfo(DeletionInfo newInfo)
+    {
+        ref = ref.with(newInfo);
+    }
+
+    public void purgeTombstones(int gcBefore)
+    {
+        while (true)
+        {
+            Holder current = ref;
+            if (!current.deletionInfo.hasPurgeableTombstones(gcBefore))
+                break;
+
+            DeletionInfo purgedInfo = current.deletionInfo.copy();
+            purgedInfo.purge(gcBefore);
+            if (refUpdater.compareAndSet(this, current, current.with(purgedInfo)))
+                break;
+        }
+    }
+
+    public void addColumn(Column column, Allocator allocator)
+    {
+        addAll(new Column[]{ column }, DeletionInfo.live(), allocator, Functions.<Column>identity(), SecondaryIndexManager.nullUpdater);
+    }
+
+    public void addAll(ColumnFamily cm, Allocator allocator, Function<Column, Column> transformation)
+    {
+        addAllWithSizeDelta(cm, allocator, transformation, SecondaryIndexManager.nullUpdater);
+    }
+
+    public Pair<Long, Long> addAllWithSizeDelta(ColumnFamily cm, Allocator allocator, Function<Column, Column> transformation, SecondaryIndexManager.Updater indexer)
+    {
+        Column[] updates = sortedColumns(cm);
+        DeletionInfo deletionInfo = cm.deletionInfo();
+
+        if (deletionInfo.hasRanges())
+        {
+            for (Column currentColumn : Iterables.concat(getSortedColumns(), Arrays.asList(updates)))
+            {
+                if (deletionInfo.isDeleted(currentColumn))
+                    indexer.remove(currentColumn);
+            }
+        }
+
+        ColumnUpdater updater = addAll(updates, deletionInfo, allocator, transformation, indexer);
+        indexer.updateRowLevelIndexes();
+        return Pair.create(updater.dataSize, updater.heapSize);
+    }
+
+    private ColumnUpdater addAll(Column[] updates, DeletionInfo deletionInfo, Allocator allocator, Function<Column, Column> transformation, SecondaryIndexManager.Updater indexer)
+    {
+        ColumnUpdater updater = new ColumnUpdater(allocator, transformation, indexer);
+        if (!locking && tryAddAll(updates, deletionInfo, updater, true))
+            return updater;
+
+        synchronized (this)
+        {
+            tryAddAll(updates, deletionInfo, updater, false);
+            return updater;
+        }
+    }
+
+    /**
+     * @param optimistic if true, give up once the partition switches to locking
+     * @return true if the updates have been applied
+     */
+    private boolean tryAddAll(Column[] updates, DeletionInfo deletionInfo, ColumnUpdater updater, boolean optimistic)
+    {
+        while (true)
+        {
+            Holder current = ref;
+            updater.reset(current);
+            DeletionInfo newDelInfo = deletionInfo.isLive() ? current.deletionInfo : current.deletionInfo.copy().add(deletionInfo);
+            Object[] tree = BTree.update(current.tree, comparator(), updates, updater);
+            if (tree != null && refUpdater.compareAndSet(this, current, new Holder(tree, newDelInfo)))
+                return true;
+
+            if (recordContention() && optimistic)
+                return false;
+        }
+    }
+
+    /**
+     * Charges a failed update to this partition. Each failure moves the contention tick one tick forward, from no
+     * earlier than CONTENTION_ALLOWANCE ticks ago, so that a partition whose updates fail more than once per tick for
+     * long enough gets its contention tick ahead of the clock, and switches to locking.
+     *
+     * The updates of contention are racy, but it is only a heuristic.
+     *
+     * @return true if the partition should now be updated under its lock
+     */
+    private boolean recordContention()
+    {
+        if (locking)
+            return true;
+
+        int now = (int) (System.nanoTime() >>> CLOCK_SHIFT);
+        int floor = now - CONTENTION_ALLOWANCE;
+        int tick = contention;
+        if (tick - floor < 0)
+            tick = floor;
+        contention = ++tick;
+        if (tick - now > 0)
+            locking = true;
+        return locking;
+    }
+
+    /**
+     * @return the columns of cm, sorted and reconciled if needed (as for UnsortedColumns)
+     */
+    private Column[] sortedColumns(ColumnFamily cm)
+    {
+        Column[] columns = new Column[cm.getColumnCount()];
+        int count = 0;
+        boolean sorted = true;
+        Comparator<Column> comparator = comparator();
+        for (Column column : cm)
+        {
+            if (count > 0 && comparator.compare(columns[count - 1], column) >= 0)
+                sorted = false;
+            columns[count++] = column;
+        }
+
+        if (sorted)
+            return count == columns.length ? columns : Arrays.copyOf(columns, count);
+
+        Arrays.sort(columns, 0, count, comparator);
+        int unique = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (unique > 0 && comparator.compare(columns[unique - 1], columns[i]) == 0)
+                columns[unique - 1] = columns[i].reconcile(columns[unique - 1], HeapAllocator.instance);
+            else
+                columns[unique++] = columns[i];
+        }
+        return Arrays.copyOf(columns, unique);
+    }
+
+    public boolean replace(final Column oldColumn, Column newColumn)
+    {
+        if (!oldColumn.name().equals(newColumn.name()))
+            throw new IllegalArgumentException();
+
+        final boolean[] replaced = new boolean[1];
+        UpdateFunction<Column> replacement = new UpdateFunction<Column>()
+        {
+            public Column apply(Column insert)
+            {
+                // we only update trees holding the column
+                throw new AssertionError();
+            }
+
+            public Column apply(Column existing, Column update)
+            {
+                replaced[0] = existing.equals(oldColumn);
+                return replaced[0] ? update : existing;
+            }
+
+            public boolean abortEarly()
+            {
+                return false;
+            }
+        };
+
+        while (true)
+        {
+            Holder current = ref;
+            replaced[0] = false;
+            if (BTree.find(current.tree, comparator(), oldColumn) == null)
+                return false;
+
+            Object[] tree = BTree.update(current.tree, comparator(), new Column[]{ newColumn }, replacement);
+            if (!replaced[0] || refUpdater.compareAndSet(this, current, current.with(tree)))
+                return replaced[0];
+        }
+    }
+
+    public void clear()
+    {
+        ref = Holder.EMPTY;
+    }
+
+    public Column getColumn(ByteBuffer name)
+    {
+        return BTree.find(ref.tree, comparator(), new Column(name, ByteBufferUtil.EMPTY_BYTE_BUFFER));
+    }
+
+    public Iterable<ByteBuffer> getColumnNames()
+    {
+        return Iterables.transform(getSortedColumns(), new Function<Column, ByteBuffer>()
+        {
+            public ByteBuffer apply(Column column)
+            {
+                return column.name();
+            }
+        });
+    }
+
+    public Collection<Column> getSortedColumns()
+    {
+        return new ColumnCollection(ref.tree, true);
+    }
+
+    public Collection<Column> getReverseSortedColumns()
+    {
+        return new ColumnCollection(ref.tree, false);
+    }
+
+    public int getColumnCount()
+    {
+        return BTree.count(ref.tree);
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        Holder current = ref;
+        return current.deletionInfo.isLive() && BTree.isEmpty(current.tree);
+    }
+
+    public Iterator<Column> iterator(ColumnSlice[] slices)
+    {
+        return new SliceIterator(ref.tree, slices, true);
+    }
+
+    public Iterator<Column> reverseIterator(ColumnSlice[] slices)
+    {
+        return new SliceIterator(ref.tree, slices, false);
+    }
+
+    public boolean isInsertReversed()
+    {
+        return false;
+    }
+
+    private static class Holder
+    {
+        // This is a small optimization: DeletionInfo is mutable, but we know that we will always copy it in that class,
+        // so we can safely alias one DeletionInfo.live() reference and avoid some allocations.
+        private static final Holder EMPTY = new Holder(BTree.empty(), DeletionInfo.live());
+
+        final Object[] tree;
+        final DeletionInfo deletionInfo;
+
+        Holder(Object[] tree, DeletionInfo deletionInfo)
+        {
+            this.tree = tree;
+            this.deletionInfo = deletionInfo;
+        }
+
+        Holder with(DeletionInfo info)
+        {
+            return new Holder(tree, info);
+        }
+
+        Holder with(Object[] newTree)
+        {
+            return new Holder(newTree, deletionInfo);
+        }
+    }
+
+    /**
+     * Merges the updates into the tree, keeping track of the size changes and of the index updates along the way.
+     */
+    private final class ColumnUpdater implements UpdateFunction<Column>
+    {
+        private final Allocator allocator;
+        private final Function<Column, Column> transformation;
+        private final SecondaryIndexManager.Updater indexer;
+
+        private Holder current;
+        private long dataSize;
+        private long heapSize;
+
+        private ColumnUpdater(Allocator allocator, Function<Column, Column> transformation, SecondaryIndexManager.Updater indexer)
+        {
+            this.allocator = allocator;
+            this.transformation = transformation;
+            this.indexer = indexer;
+        }
+
+        private void reset(Holder current)
+        {
+            this.current = current;
+            dataSize = 0;
+            heapSize = 0;
+        }
+
+        public Column apply(Column insert)
+        {
+            Column column = transformation.apply(insert);
+            indexer.insert(column);
+            dataSize += column.dataSize();
+            heapSize += COLUMN_OVERHEAD_SIZE;
+            return column;
+        }
+
+        public Column apply(Column existing, Column update)
+        {
+            Column column = transformation.apply(update);
+            Column reconciled = column.reconcile(existing, allocator);
+            // for memtable updates we only care about oldcolumn, reconciledcolumn, but when compacting
+            // we need to make sure we update indexes no matter the order we merge
+            if (reconciled == column)
+                indexer.update(existing, reconciled);
+            else
+                indexer.update(column, reconciled);
+            dataSize += reconciled.dataSize() - existing.dataSize();
+            return reconciled;
+        }
+
+        public boolean abortEarly()
+        {
+            // bail early if we know we've been beaten
+            return ref != current;
+        }
+    }
+
+    private class ColumnCollection extends AbstractCollection<Column>
+    {
+        private final Object[] tree;
+        private final boolean forwards;
+
+        private ColumnCollection(Object[] tree, boolean forwards)
+        {
+            this.tree = tree;
+            this.forwards = forwards;
+        }
+
+        public Iterator<Column> iterator()
+        {
+            return BTree.slice(tree, comparator(), null, null, forwards);
+        }
+
+        public int size()
+        {
+            return BTree.count(tree);
+        }
+
+        @Override
+        public boolean isEmpty()
+        {
+            return BTree.isEmpty(tree);
+        }
+    }
+
+    private class SliceIterator extends AbstractIterator<Column>
+    {
+        private final Object[] tree;
+        private final ColumnSlice[] slices;
+        private final boolean forwards;
+
+        private int idx = 0;
+        private Iterator<Column> currentSlice;
+
+        private SliceIterator(Object[] tree, ColumnSlice[] slices, boolean forwards)
+        {
+            this.tree = tree;
+            this.slices = slices;
+            this.forwards = forwards;
+        }
+
+        protected Column computeNext()
+        {
+            while (currentSlice == null || !currentSlice.hasNext())
+            {
+                if (idx >= slices.length)
+                    return endOfData();
+
+                // as for NavigableMapIterator, empty bounds extend to the beginning/end of the partition
+                ColumnSlice slice = slices[idx++];
+                currentSlice = BTree.slice(tree, comparator(), bound(slice.start), bound(slice.finish), forwards);
+            }
+            return currentSlice.next();
+        }
+
+        private Column bound(ByteBuffer name)
+        {
+            return name.remaining() == 0 ? null : new Column(name, ByteBufferUtil.EMPTY_BYTE_BUFFER);
+        }
+    }
+}
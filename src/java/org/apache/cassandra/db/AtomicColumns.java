@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import com.google.common.base.Function;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.index.SecondaryIndexManager;
+import org.apache.cassandra.utils.Allocator;
+import org.apache.cassandra.utils.Pair;
+
+/**
+ * A thread-safe ColumnFamily whose updates are atomic and isolated, as the partitions of memtables need.
+ * See AtomicSortedColumns and AtomicBTreeColumns, chosen by memtable_partition_type.
+ */
+public abstract class AtomicColumns extends ColumnFamily
+{
+    protected AtomicColumns(CFMetaData metadata)
+    {
+        super(metadata);
+    }
+
+    /**
+     *  This is only called by Memtable.resolve, so only AtomicColumns needs to implement it.
+     *
+     *  @return the difference in data size seen after merging the given columns, and the heap used by the objects
+     *  created for the new columns, excluding the data cloned by allocator. Replaced columns don't count since
+     *  the new objects replace the old ones.
+     */
+    public abstract Pair<Long, Long> addAllWithSizeDelta(ColumnFamily cm, Allocator allocator, Function<Column, Column> transformation, SecondaryIndexManager.Updater indexer);
+}
@@ -31,6 +31,8 @@ import org.apache.cassandra.db.filter.ColumnSlice;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.utils.Allocator;
+import org.apache.cassandra.utils.ObjectSizes;
+import org.apache.cassandra.utils.Pair;
 
 /**
  * A thread-safe and atomic ISortedColumns implementation.
@@ -47,8 +49,28 @@ import org.apache.cassandra.utils.Allocator;
  * isolated of other operations and could actually be fully ignored in the
  * face of a concurrent. Don't use it unless in a non-concurrent context.
  */
-public class AtomicSortedColumns extends ColumnFamily
+public class AtomicSortedColumns extends AtomicColumns
 {
+    /**
+     * The heap used by an empty instance: itself, its AtomicReference, its Holder and its empty SnapTreeMap. The
+     * size of the latter is approximated by those of its root holder node, copy-on-write manager and epoch.
+     */
+    public static final long EMPTY_SIZE = ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize()) // this
+                                        + ObjectSizes.getFieldSize(ObjectSizes.getReferenceSize()) // AtomicReference
+                                        + ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize()) // Holder
+                                        + ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize()) // SnapTreeMap
+                                        + ObjectSizes.getFieldSize(4 + 8 + 5 * ObjectSizes.getReferenceSize()) // root holder
+                                        + ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize()) // COWMgr
+                                        + ObjectSizes.getFieldSize(8 + 4 * ObjectSizes.getReferenceSize()); // epoch
+
+    /**
+     * The heap used by each column added, besides the data of its name and value: its SnapTreeMap node (height,
+     * shrinkOVL, key, value, parent, left and right), the Column itself and the ByteBuffers of its name and value.
+     */
+    public static final long COLUMN_OVERHEAD_SIZE = ObjectSizes.getFieldSize(4 + 8 + 5 * ObjectSizes.getReferenceSize())
+                                                  + ObjectSizes.getFieldSize(8 + 2 * ObjectSizes.getReferenceSize())
+                                                  + 2 * ObjectSizes.getBufferObjectSize();
+
     private final AtomicReference<Holder> ref;
 
     public static final ColumnFamily.Factory<AtomicSortedColumns> factory = new Factory<AtomicSortedColumns>()
@@ -152,12 +174,7 @@ public class AtomicSortedColumns extends ColumnFamily
         addAllWithSizeDelta(cm, allocator, transformation, SecondaryIndexManager.nullUpdater);
     }
 
-    /**
-     *  This is only called by Memtable.resolve, so only AtomicSortedColumns needs to implement it.
-     *
-     *  @return the difference in size seen after merging the given columns
-     */
-    public long addAllWithSizeDelta(ColumnFamily cm, Allocator allocator, Function<Column, Column> transformation, SecondaryIndexManager.Updater indexer)
+    public Pair<Long, Long> addAllWithSizeDelta(ColumnFamily cm, Allocator allocator, Function<Column, Column> transformation, SecondaryIndexManager.Updater indexer)
     {
         /*
          * This operation needs to atomicity and isolation. To that end, we
@@ -171,12 +188,13 @@ public class AtomicSortedColumns extends ColumnFamily
          * we bail early, avoiding unnecessary work if possible.
          */
         Holder current, modified;
-        long sizeDelta;
+        long sizeDelta, heapSizeDelta;
 
         main_loop:
         do
         {
             sizeDelta = 0;
+            heapSizeDelta = 0;
             current = ref.get();
             DeletionInfo newDelInfo = current.deletionInfo.copy().add(cm.deletionInfo());
             modified = new Holder(current.map.clone(), newDelInfo);
@@ -197,12 +215,14 @@ public class AtomicSortedColumns extends ColumnFamily
                 if (ref.get() != current)
                     continue main_loop;
             }
+            // modified is only ours until published, and only differs from current by the columns we inserted
+            heapSizeDelta = (modified.map.size() - current.map.size()) * COLUMN_OVERHEAD_SIZE;
         }
         while (!ref.compareAndSet(current, modified));
 
         indexer.updateRowLevelIndexes();
 
-        return sizeDelta;
+        return Pair.create(sizeDelta, heapSizeDelta);
     }
 
     public boolean replace(Column oldColumn, Column newColumn)
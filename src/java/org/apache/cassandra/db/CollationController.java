@@ -40,6 +40,7 @@ public class CollationController
     private final int gcBefore;
 
     private int sstablesIterated = 0;
+    private int sstablesPruned = 0;
 
     public CollationController(ColumnFamilyStore cfs, QueryFilter filter, int gcBefore)
     {
@@ -116,8 +117,34 @@ public class CollationController
                 if (((NamesQueryFilter) reducedFilter.filter).columns.isEmpty())
                     break;
 
-                Tracing.trace("Merging data from sstable {}", sstable.descriptor.generation);
                 OnDiskAtomIterator iter = reducedFilter.getSSTableColumnIterator(sstable);
+                if (!reducedFilter.shouldInclude(sstable))
+                {
+                    // an sstable holding none of the remaining columns can still hold a partition or range tombstone
+                    // shadowing them (maxLocalDeletionTime doesn't account for those), so we only skip it once we
+                    // know it has none. Unless it doesn't have the row at all, that means reading it, so it counts
+                    // as iterated like the non-intersecting sstables read for tombstones in collectAllData.
+                    ColumnFamily cf = iter.getColumnFamily();
+                    if (cf == null)
+                    {
+                        Tracing.trace("Skipping non-intersecting sstable {}", sstable.descriptor.generation);
+                        FileUtils.closeQuietly(iter);
+                        sstablesPruned++;
+                        continue;
+                    }
+                    if (!cf.isMarkedForDelete() && !iter.hasNext())
+                    {
+                        Tracing.trace("No tombstones in non-intersecting sstable {}", sstable.descriptor.generation);
+                        FileUtils.closeQuietly(iter);
+                        sstablesIterated++;
+                        continue;
+                    }
+                    Tracing.trace("Merging tombstones from non-intersecting sstable {}", sstable.descriptor.generation);
+                }
+                else
+                {
+                    Tracing.trace("Merging data from sstable {}", sstable.descriptor.generation);
+                }
                 iterators.add(iter);
                 if (iter.getColumnFamily() != null)
                 {
@@ -162,7 +189,7 @@ public class CollationController
         {
             for (OnDiskAtomIterator iter : iterators)
                 FileUtils.closeQuietly(iter);
-            SSTableReader.releaseReferences(view.sstables);
+            view.release();
         }
     }
 
@@ -286,6 +313,7 @@ public class CollationController
                     }
                 }
             }
+            sstablesPruned = nonIntersectingSSTables - includedDueToTombstones;
             if (Tracing.isTracing())
                 Tracing.trace("Skipped {}/{} non-slice-intersecting sstables, included {} due to tombstones", new Object[] {nonIntersectingSSTables, view.sstables.size(), includedDueToTombstones});
             // we need to distinguish between "there is no data at all for this row" (BF will let us rebuild that efficiently)
@@ -303,7 +331,7 @@ public class CollationController
         {
             for (OnDiskAtomIterator iter : iterators)
                 FileUtils.closeQuietly(iter);
-            SSTableReader.releaseReferences(view.sstables);
+            view.release();
         }
     }
 
@@ -311,4 +339,12 @@ public class CollationController
     {
         return sstablesIterated;
     }
+
+    /**
+     * @return the number of sstables that weren't read because their column bounds don't intersect the filter
+     */
+    public int getSstablesPruned()
+    {
+        return sstablesPruned;
+    }
 }
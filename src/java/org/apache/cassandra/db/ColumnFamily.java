@@ -378,7 +378,12 @@ public abstract class ColumnFamily implements Iterable<Column>, IRowCacheEntry
 
     public static ByteBuffer digest(ColumnFamily cf)
     {
-        MessageDigest digest = FBUtilities.threadLocalMD5Digest();
+        return digest(cf, DigestAlgorithm.MD5);
+    }
+
+    public static ByteBuffer digest(ColumnFamily cf, DigestAlgorithm algorithm)
+    {
+        MessageDigest digest = algorithm.threadLocalDigest();
         if (cf != null)
             cf.updateDigest(digest);
         return ByteBuffer.wrap(digest.digest());
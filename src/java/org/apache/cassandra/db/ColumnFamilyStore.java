@@ -25,6 +25,7 @@ import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import java.util.regex.Pattern;
 import javax.management.*;
 
@@ -46,6 +47,7 @@ import org.apache.cassandra.config.CFMetaData.SpeculativeRetry;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.cql3.CFDefinition;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
@@ -55,6 +57,7 @@ import org.apache.cassandra.db.index.SecondaryIndex;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.db.marshal.CounterColumnType;
 import org.apache.cassandra.dht.*;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.exceptions.ConfigurationException;
@@ -103,14 +106,15 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
     public final Directories directories;
 
-    /** ratio of in-memory memtable size, to serialized size */
-    volatile double liveRatio = 10.0; // reasonable default until we compute what it is based on actual data
-    /** ops count last time we computed liveRatio */
-    private final AtomicLong liveRatioComputedAt = new AtomicLong(32);
-
     public final ColumnFamilyMetrics metric;
     public volatile long sampleLatencyNanos;
 
+    // the column index block size picked for a set of live sstables, see getColumnIndexSize()
+    private volatile Pair<Set<SSTableReader>, Integer> columnIndexSize;
+
+    // the rows_per_partition_to_cache the cached rows of this CF have been read with
+    private volatile int rowsPerPartitionToCache;
+
     public void reload()
     {
         // metadata object has been mutated directly. make all the members jibe with new settings.
@@ -125,6 +129,13 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         maybeReloadCompactionStrategy();
 
+        // cached partition heads can't tell how many rows they were meant to hold anymore
+        if (rowsPerPartitionToCache != metadata.getRowsPerPartitionToCache())
+        {
+            rowsPerPartitionToCache = metadata.getRowsPerPartitionToCache();
+            invalidateRowCache();
+        }
+
         scheduleFlush();
 
         indexManager.reload();
@@ -239,6 +250,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         this.metadata = metadata;
         this.minCompactionThreshold = new DefaultInteger(metadata.getMinCompactionThreshold());
         this.maxCompactionThreshold = new DefaultInteger(metadata.getMaxCompactionThreshold());
+        this.rowsPerPartitionToCache = metadata.getRowsPerPartitionToCache();
         this.partitioner = partitioner;
         this.directories = directories;
         this.indexManager = new SecondaryIndexManager(this);
@@ -338,9 +350,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         data.unreferenceSSTables();
         indexManager.invalidate();
 
-        for (RowCacheKey key : CacheService.instance.rowCache.getKeySet())
-            if (key.cfId == metadata.cfId)
-                invalidateCachedRow(key);
+        invalidateRowCache();
     }
 
     /**
@@ -378,6 +388,58 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         return metric.meanRowSize.value();
     }
 
+    /**
+     * @return the size of the column index blocks of the partitions written by flushes and compactions. It is
+     * picked from the 99th percentile of the partition sizes of the live sstables so that:
+     * <ul>
+     *   <li>partitions barely over column_index_size_in_kb are not indexed, since that would hardly save any
+     *   read over just reading the whole partition;</li>
+     *   <li>the widest partitions don't have more than about ColumnIndex.TARGET_BLOCKS index entries.</li>
+     * </ul>
+     * It is never smaller than column_index_size_in_kb nor larger than ColumnIndex.MAX_BLOCK_SIZE.
+     */
+    public int getColumnIndexSize()
+    {
+        Set<SSTableReader> sstables = data.getView().sstables;
+        Pair<Set<SSTableReader>, Integer> current = columnIndexSize;
+        if (current != null && current.left == sstables)
+            return current.right;
+
+        int size = ColumnIndex.blockSize(partitionSizePercentile(sstables, 0.99));
+        columnIndexSize = Pair.create(sstables, size);
+        return size;
+    }
+
+    private static long partitionSizePercentile(Collection<SSTableReader> sstables, double percentile)
+    {
+        long[] offsets = null;
+        long[] buckets = null;
+        for (SSTableReader sstable : sstables)
+        {
+            EstimatedHistogram rowSizes = sstable.getEstimatedRowSize();
+            if (offsets == null)
+            {
+                offsets = rowSizes.getBucketOffsets();
+                buckets = new long[offsets.length + 1];
+            }
+            else if (rowSizes.getBucketOffsets().length != offsets.length)
+            {
+                continue;
+            }
+
+            long[] sstableBuckets = rowSizes.getBuckets(false);
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] += sstableBuckets[i];
+        }
+
+        if (offsets == null)
+            return 0;
+        // partitions over the largest bucket offset (the histogram overflowed) count as that offset
+        if (buckets[buckets.length - 1] > 0)
+            return offsets[offsets.length - 1];
+        return new EstimatedHistogram(offsets, buckets).percentile(percentile);
+    }
+
     public int getMeanColumns()
     {
         return data.getMeanColumns();
@@ -748,7 +810,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 // it from the memtable pending flush right away.
                 if (memtable.isClean())
                 {
-                    cfs.replaceFlushed(memtable, null);
+                    cfs.replaceFlushed(memtable, Collections.<SSTableReader>emptyList());
                     latch.countDown();
                 }
                 else
@@ -838,15 +900,71 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         FBUtilities.waitOnFuture(forceFlush());
     }
 
-    public void maybeUpdateRowCache(DecoratedKey key)
+    public void maybeUpdateRowCache(DecoratedKey key, ColumnFamily columnFamily)
     {
         if (!isRowCacheEnabled())
             return;
 
         RowCacheKey cacheKey = new RowCacheKey(metadata.cfId, key);
+
+        // unlike whole partitions, partition heads are small enough to be merged with the update rather than read
+        // again. Counter updates are deltas, which can't be merged.
+        if (rowsPerPartitionToCache > 0 && metadata.getDefaultValidator() != CounterColumnType.instance)
+        {
+            IRowCacheEntry cached = CacheService.instance.rowCache.getInternal(cacheKey);
+            if (cached == null)
+                return;
+
+            // a sentinel means a read is caching the partition, possibly without this update: invalidate it
+            if (cached instanceof ColumnFamily)
+            {
+                ColumnFamily updated = updateCachedHead((ColumnFamily) cached, columnFamily);
+                if (updated != null && CacheService.instance.rowCache.replace(cacheKey, cached, updated))
+                    return;
+            }
+        }
+
         invalidateCachedRow(cacheKey);
     }
 
+    /**
+     * @return the cached head of a partition once update applied to it, or null if we can't tell what it is
+     * without reading the partition again
+     */
+    private ColumnFamily updateCachedHead(ColumnFamily cached, ColumnFamily update)
+    {
+        int rowsToCache = rowsPerPartitionToCache;
+        SliceQueryFilter headFilter = rowCacheHeadFilter();
+        // see isFilterFullyCoveredBy() for the timestamp
+        boolean wholePartition = headFilter.getLiveCount(cached, Integer.MIN_VALUE) < rowsToCache;
+
+        ColumnFamily updated = cached.cloneMe();
+        if (wholePartition)
+        {
+            updated.addAll(update, HeapAllocator.instance);
+        }
+        else
+        {
+            // the head doesn't hold the rows following its last column, so it must not get any of their columns
+            ByteBuffer last = cached.getReverseSortedColumns().iterator().next().name();
+            ColumnFamily inHead = ArrayBackedSortedColumns.factory.create(metadata);
+            inHead.delete(update);
+            for (Column column : update)
+            {
+                if (metadata.comparator.compare(column.name(), last) <= 0)
+                    inHead.addColumn(column);
+            }
+            updated.addAll(inHead, HeapAllocator.instance);
+        }
+
+        headFilter.trim(updated, rowsToCache, Integer.MIN_VALUE);
+
+        // deletions have shrunk the head below what we cache, and we don't know the rows following it
+        if (!wholePartition && headFilter.getLiveCount(updated, Integer.MIN_VALUE) < rowsToCache)
+            return null;
+        return updated;
+    }
+
     /**
      * Insert/Update the column family for this key.
      * Caller is responsible for acquiring Keyspace.switchLock
@@ -859,23 +977,28 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         long start = System.nanoTime();
 
         Memtable mt = getMemtableThreadSafe();
-        mt.put(key, columnFamily, indexer);
-        maybeUpdateRowCache(key);
-        metric.writeLatency.addNano(System.nanoTime() - start);
-
-        // recompute liveRatio, if we have doubled the number of ops since last calculated
-        while (true)
+        // Covering indexes derive their entries from the state of the row prior to the update, so updates
+        // to a given partition must be serialized with respect to each other when such an index exists.
+        Lock lock = indexer == SecondaryIndexManager.nullUpdater ? null : indexManager.coveringIndexesLock(key);
+        if (lock == null)
         {
-            long last = liveRatioComputedAt.get();
-            long operations = metric.writeLatency.latency.count();
-            if (operations < 2 * last)
-                break;
-            if (liveRatioComputedAt.compareAndSet(last, operations))
+            mt.put(key, columnFamily, indexer);
+        }
+        else
+        {
+            lock.lock();
+            try
             {
-                logger.debug("computing liveRatio of {} at {} ops", this, operations);
-                mt.updateLiveRatio();
+                indexManager.updateCoveringIndexes(key, columnFamily);
+                mt.put(key, columnFamily, indexer);
+            }
+            finally
+            {
+                lock.unlock();
             }
         }
+        maybeUpdateRowCache(key, columnFamily);
+        metric.writeLatency.addNano(System.nanoTime() - start);
     }
 
     /**
@@ -1116,6 +1239,11 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         compactionStrategy.replaceFlushed(memtable, sstable);
     }
 
+    void replaceFlushed(Memtable memtable, Collection<SSTableReader> sstables)
+    {
+        compactionStrategy.replaceFlushed(memtable, sstables);
+    }
+
     public boolean isValid()
     {
         return valid;
@@ -1265,10 +1393,11 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     /**
      * fetch the row given by filter.key if it is in the cache; if not, read it from disk and cache it
      * @param cfId the column family to read the row from
-     * @param filter the columns being queried.  Note that we still cache entire rows, but if a row is uncached
-     *               and we race to cache it, only the winner will read the entire row
-     * @return the entire row for filter.key, if present in the cache (or we can cache it), or just the column
-     *         specified by filter otherwise
+     * @param filter the columns being queried.  Note that we still cache entire rows (or their heads, see
+     *               rowCacheFilter()), but if a row is uncached and we race to cache it, only the winner will
+     *               read the entire row
+     * @return the cached row for filter.key, if present in the cache (or we can cache it) and holding all the
+     *         columns specified by filter, or just those columns otherwise
      */
     private ColumnFamily getThroughCache(UUID cfId, QueryFilter filter)
     {
@@ -1288,8 +1417,13 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 Tracing.trace("Row cache miss (race)");
                 return getTopLevelColumns(filter, Integer.MIN_VALUE);
             }
-            Tracing.trace("Row cache hit");
-            return (ColumnFamily) cached;
+            if (isFilterFullyCoveredBy(filter.filter, (ColumnFamily) cached, filter.timestamp))
+            {
+                Tracing.trace("Row cache hit");
+                return (ColumnFamily) cached;
+            }
+            Tracing.trace("Row cache hit, but the cached partition head doesn't cover the query");
+            return getTopLevelColumns(filter, Integer.MIN_VALUE);
         }
 
         Tracing.trace("Row cache miss");
@@ -1298,12 +1432,13 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
         try
         {
-            ColumnFamily data = getTopLevelColumns(QueryFilter.getIdentityFilter(filter.key, name, filter.timestamp),
-                                                   Integer.MIN_VALUE);
+            ColumnFamily data = getTopLevelColumns(rowCacheFilter(filter.key, filter.timestamp), Integer.MIN_VALUE);
             if (sentinelSuccess && data != null)
                 CacheService.instance.rowCache.replace(key, sentinel, data);
 
-            return data;
+            if (data == null || isFilterFullyCoveredBy(filter.filter, data, filter.timestamp))
+                return data;
+            return getTopLevelColumns(filter, Integer.MIN_VALUE);
         }
         finally
         {
@@ -1312,6 +1447,43 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
     }
 
+    /**
+     * @return the filter reading what the row cache keeps of a partition: all of it, or only its first
+     * rows_per_partition_to_cache CQL3 rows
+     */
+    public QueryFilter rowCacheFilter(DecoratedKey key, long timestamp)
+    {
+        return rowsPerPartitionToCache == 0
+             ? QueryFilter.getIdentityFilter(key, name, timestamp)
+             : new QueryFilter(key, name, rowCacheHeadFilter(), timestamp);
+    }
+
+    private SliceQueryFilter rowCacheHeadFilter()
+    {
+        // count CQL3 rows the way SelectStatement does
+        CFDefinition cfDef = metadata.getCfDef();
+        int toGroup = cfDef.isCompact ? -1 : cfDef.columns.size();
+        return new SliceQueryFilter(ColumnSlice.ALL_COLUMNS_ARRAY, false, rowsPerPartitionToCache, toGroup);
+    }
+
+    /**
+     * @return whether cached, as read by rowCacheFilter(), holds all the columns filter could select
+     */
+    public boolean isFilterFullyCoveredBy(IDiskAtomFilter filter, ColumnFamily cached, long now)
+    {
+        if (rowsPerPartitionToCache == 0)
+            return true;
+
+        // A head with less rows than we cache is the whole partition. We count the expiring columns that were live
+        // when the head was cached (hence the Integer.MIN_VALUE timestamp), or we would take a head whose rows
+        // have expired since for the whole partition.
+        if (rowCacheHeadFilter().getLiveCount(cached, Integer.MIN_VALUE) < rowsPerPartitionToCache)
+            return true;
+
+        // expiring columns do count for the query itself, or a head could seem to hold more live rows than it has
+        return filter.isFullyCoveredBy(cached, now);
+    }
+
     public int gcBefore(long now)
     {
         return (int) (now / 1000) - metadata.getGcGraceSeconds();
@@ -1433,25 +1605,26 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
     private ViewFragment markReferenced(AbstractViewSSTableFinder finder)
     {
         List<SSTableReader> sstables;
-        DataTracker.View view;
+        Iterable<Memtable> memtables;
 
         while (true)
         {
-            view = data.getView();
+            DataTracker.View view = data.getView();
 
-            if (view.intervalTree.isEmpty())
-            {
-                sstables = Collections.emptyList();
-                break;
-            }
+            sstables = view.intervalTree.isEmpty()
+                     ? Collections.<SSTableReader>emptyList()
+                     : finder.findSSTables(view);
+            if (!SSTableReader.acquireReferences(sstables))
+                continue; // retry w/ new view
 
-            sstables = finder.findSSTables(view);
-            if (SSTableReader.acquireReferences(sstables))
+            // off-heap memtables are freed once flushed and released by their readers
+            memtables = ImmutableList.copyOf(Iterables.concat(Collections.singleton(view.memtable), view.memtablesPendingFlush));
+            if (Memtable.acquireReferences(memtables))
                 break;
-            // retry w/ new view
+            SSTableReader.releaseReferences(sstables);
         }
 
-        return new ViewFragment(sstables, Iterables.concat(Collections.singleton(view.memtable), view.memtablesPendingFlush));
+        return new ViewFragment(sstables, memtables);
     }
 
     /**
@@ -1521,7 +1694,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         }
         finally
         {
-            SSTableReader.releaseReferences(view.sstables);
+            view.release();
         }
     }
 
@@ -1530,7 +1703,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         Tracing.trace("Executing single-partition query on {}", name);
         CollationController controller = new CollationController(this, filter, gcBefore);
         ColumnFamily columns = controller.getTopLevelColumns();
-        metric.updateSSTableIterated(controller.getSstablesIterated());
+        metric.updateSSTableIterated(controller.getSstablesIterated(), controller.getSstablesPruned());
         return columns;
     }
 
@@ -1597,7 +1770,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
 
                 public void close() throws IOException
                 {
-                    SSTableReader.releaseReferences(view.sstables);
+                    view.release();
                     iterator.close();
                 }
             };
@@ -1605,7 +1778,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         catch (RuntimeException e)
         {
             // In case getIterator() throws, otherwise the iteror close method releases the references.
-            SSTableReader.releaseReferences(view.sstables);
+            view.release();
             throw e;
         }
     }
@@ -1645,9 +1818,21 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                                              List<IndexExpression> rowFilter,
                                              int maxResults,
                                              long now)
+    {
+        return makeExtendedFilter(keyRange, columnRange, columnStart, columnStop, rowFilter, maxResults, null, now);
+    }
+
+    public ExtendedFilter makeExtendedFilter(AbstractBounds<RowPosition> keyRange,
+                                             SliceQueryFilter columnRange,
+                                             ByteBuffer columnStart,
+                                             ByteBuffer columnStop,
+                                             List<IndexExpression> rowFilter,
+                                             int maxResults,
+                                             Set<ByteBuffer> queriedColumns,
+                                             long now)
     {
         DataRange dataRange = new DataRange.Paging(keyRange, columnRange, columnStart, columnStop, metadata.comparator);
-        return ExtendedFilter.create(this, dataRange, rowFilter, maxResults, true, now);
+        return ExtendedFilter.create(this, dataRange, rowFilter, maxResults, true, queriedColumns, now);
     }
 
     public List<Row> getRangeSlice(AbstractBounds<RowPosition> range,
@@ -1668,6 +1853,18 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                                              boolean countCQL3Rows,
                                              boolean isPaging,
                                              long timestamp)
+    {
+        return makeExtendedFilter(range, columnFilter, rowFilter, maxResults, countCQL3Rows, isPaging, null, timestamp);
+    }
+
+    public ExtendedFilter makeExtendedFilter(AbstractBounds<RowPosition> range,
+                                             IDiskAtomFilter columnFilter,
+                                             List<IndexExpression> rowFilter,
+                                             int maxResults,
+                                             boolean countCQL3Rows,
+                                             boolean isPaging,
+                                             Set<ByteBuffer> queriedColumns,
+                                             long timestamp)
     {
         DataRange dataRange;
         if (isPaging)
@@ -1682,7 +1879,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         {
             dataRange = new DataRange(range, columnFilter);
         }
-        return ExtendedFilter.create(this, dataRange, rowFilter, maxResults, countCQL3Rows, timestamp);
+        return ExtendedFilter.create(this, dataRange, rowFilter, maxResults, countCQL3Rows, queriedColumns, timestamp);
     }
 
     public List<Row> getRangeSlice(ExtendedFilter filter)
@@ -1903,6 +2100,13 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         CacheService.instance.rowCache.remove(key);
     }
 
+    public void invalidateRowCache()
+    {
+        for (RowCacheKey key : CacheService.instance.rowCache.getKeySet())
+            if (key.cfId == metadata.cfId)
+                invalidateCachedRow(key);
+    }
+
     public void invalidateCachedRow(DecoratedKey key)
     {
         UUID cfId = Schema.instance.getId(keyspace.getName(), this.name);
@@ -2022,11 +2226,7 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
                 SystemKeyspace.saveTruncationRecord(ColumnFamilyStore.this, truncatedAt, replayAfter);
 
                 logger.debug("cleaning out row cache");
-                for (RowCacheKey key : CacheService.instance.rowCache.getKeySet())
-                {
-                    if (key.cfId == metadata.cfId)
-                        invalidateCachedRow(key);
-                }
+                invalidateRowCache();
             }
         };
 
@@ -2346,6 +2546,15 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
             this.sstables = sstables;
             this.memtables = memtables;
         }
+
+        /**
+         * Releases the references acquired on the sstables and memtables by markReferenced().
+         */
+        public void release()
+        {
+            SSTableReader.releaseReferences(sstables);
+            Memtable.releaseReferences(memtables);
+        }
     }
 
     /**
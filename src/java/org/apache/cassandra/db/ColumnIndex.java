@@ -24,12 +24,24 @@ import java.util.*;
 
 import com.google.common.annotations.VisibleForTesting;
 
+import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.io.sstable.IndexHelper;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
 public class ColumnIndex
 {
+    /**
+     * The number of index blocks the widest partitions of a table should be split in (see blockSize()).
+     */
+    public static final int TARGET_BLOCKS = Math.max(1, Integer.getInteger("cassandra.column_index_target_blocks", 256));
+
+    /**
+     * The largest size of the index blocks, so that slicing wide partitions doesn't read too much data.
+     */
+    public static final int MAX_BLOCK_SIZE = Integer.getInteger("cassandra.column_index_max_size_in_kb", 1024) * 1024;
+
     public final List<IndexHelper.IndexInfo> columnsIndex;
 
     private static final ColumnIndex EMPTY = new ColumnIndex(Collections.<IndexHelper.IndexInfo>emptyList());
@@ -47,6 +59,41 @@ public class ColumnIndex
         return EMPTY;
     }
 
+    /**
+     * @param partitionSize the size of the wide partitions of a table, 0 if unknown
+     * @return the size of the index blocks for that table (see ColumnFamilyStore.getColumnIndexSize())
+     */
+    public static int blockSize(long partitionSize)
+    {
+        int minSize = DatabaseDescriptor.getColumnIndexSize();
+        int maxSize = Math.max(minSize, MAX_BLOCK_SIZE);
+
+        // most partitions fit in two blocks, don't index them at all
+        if (partitionSize > minSize && partitionSize <= 2L * minSize)
+            return (int) partitionSize + 1;
+
+        long size = partitionSize / TARGET_BLOCKS;
+        return (int) Math.max(minSize, Math.min(maxSize, size));
+    }
+
+    /**
+     * @return the index block size for the partitions of the provided table, as picked by its store if it is open,
+     * or column_index_size_in_kb otherwise (e.g. offline tools)
+     */
+    public static int blockSizeFor(CFMetaData metadata)
+    {
+        Keyspace keyspace = Schema.instance.getKeyspaceInstance(metadata.ksName);
+        if (keyspace == null)
+            return DatabaseDescriptor.getColumnIndexSize();
+
+        for (ColumnFamilyStore cfs : keyspace.getColumnFamilyStores())
+        {
+            if (cfs.metadata.cfId.equals(metadata.cfId))
+                return cfs.getColumnIndexSize();
+        }
+        return DatabaseDescriptor.getColumnIndexSize();
+    }
+
     /**
      * Help to create an index for a column family based on size of columns,
      * and write said columns to disk.
@@ -68,16 +115,19 @@ public class ColumnIndex
         private int atomCount;
         private final ByteBuffer key;
         private final DeletionInfo deletionInfo; // only used for serializing and calculating row header size
+        private final int columnIndexSize;
 
         public Builder(ColumnFamily cf,
                        ByteBuffer key,
-                       DataOutput output)
+                       DataOutput output,
+                       int columnIndexSize)
         {
             assert cf != null;
             assert key != null;
             assert output != null;
 
             this.key = key;
+            this.columnIndexSize = columnIndexSize;
             deletionInfo = cf.deletionInfo();
             this.indexOffset = rowHeaderSize(key, deletionInfo);
             this.result = new ColumnIndex(new ArrayList<IndexHelper.IndexInfo>());
@@ -177,7 +227,7 @@ public class ColumnIndex
             blockSize += size;
 
             // if we hit the column index size that we have to index after, go ahead and index it.
-            if (blockSize >= DatabaseDescriptor.getColumnIndexSize())
+            if (blockSize >= columnIndexSize)
             {
                 IndexHelper.IndexInfo cIndexInfo = new IndexHelper.IndexInfo(firstColumn.name(), column.name(), indexOffset + startPosition, endPosition - startPosition);
                 result.columnsIndex.add(cIndexInfo);
@@ -139,11 +139,15 @@ public class DataTracker
         }
         while (!view.compareAndSet(currentView, newView));
         notifyRenewed(currentView.memtable);
+        currentView.memtable.releaseReference();
     }
 
-    public void replaceFlushed(Memtable memtable, SSTableReader sstable)
+    /**
+     * Replaces a flushed memtable by the sstables it has been written to, all at once.
+     */
+    public void replaceFlushed(Memtable memtable, Collection<SSTableReader> sstables)
     {
-        // sstable may be null if we flushed batchlog and nothing needed to be retained
+        // sstables may be empty if we flushed batchlog and nothing needed to be retained
 
         if (!cfstore.isValid())
         {
@@ -151,31 +155,32 @@ public class DataTracker
             do
             {
                 currentView = view.get();
-                newView = currentView.replaceFlushed(memtable, sstable);
-                if (sstable != null)
-                    newView = newView.replace(Arrays.asList(sstable), Collections.<SSTableReader>emptyList());
+                newView = currentView.replaceFlushed(memtable, sstables);
+                if (!sstables.isEmpty())
+                    newView = newView.replace(sstables, Collections.<SSTableReader>emptyList());
             }
             while (!view.compareAndSet(currentView, newView));
+            memtable.releaseReference();
             return;
         }
 
         // back up before creating a new View (which makes the new one eligible for compaction)
-        if (sstable != null)
+        for (SSTableReader sstable : sstables)
             maybeIncrementallyBackup(sstable);
 
         View currentView, newView;
         do
         {
             currentView = view.get();
-            newView = currentView.replaceFlushed(memtable, sstable);
+            newView = currentView.replaceFlushed(memtable, sstables);
         }
         while (!view.compareAndSet(currentView, newView));
+        // new reads won't see the memtable anymore
+        memtable.releaseReference();
 
-        if (sstable != null)
-        {
-            addNewSSTablesSize(Arrays.asList(sstable));
+        addNewSSTablesSize(sstables);
+        for (SSTableReader sstable : sstables)
             notifyAdded(sstable);
-        }
     }
 
     public void maybeIncrementallyBackup(final SSTableReader sstable)
@@ -253,6 +258,29 @@ public class DataTracker
         notifySSTablesChanged(sstables, replacements, compactionType);
     }
 
+    /**
+     * Swaps readers of the same sstables, like those IndexSummaryManager opens with a resampled index summary: the
+     * sstables are neither obsoleted nor accounted for again, so the replaced readers are just released.
+     */
+    public void replaceReaders(Collection<SSTableReader> oldSSTables, Collection<SSTableReader> newSSTables)
+    {
+        View currentView, newView;
+        do
+        {
+            currentView = view.get();
+            newView = currentView.replace(oldSSTables, newSSTables);
+        }
+        while (!view.compareAndSet(currentView, newView));
+
+        for (SSTableReader sstable : newSSTables)
+            sstable.setTrackedBy(this);
+
+        notifySSTablesChanged(oldSSTables, newSSTables, OperationType.UNKNOWN);
+
+        for (SSTableReader sstable : oldSSTables)
+            sstable.releaseReference();
+    }
+
     public void addInitialSSTables(Collection<SSTableReader> sstables)
     {
         replace(Collections.<SSTableReader>emptyList(), sstables);
@@ -270,20 +298,24 @@ public class DataTracker
     }
 
     /**
-     * removes all sstables that are not busy compacting.
+     * removes all sstables that are not busy compacting, and releases the live memtable.
      */
     public void unreferenceSSTables()
     {
         Set<SSTableReader> notCompacting;
 
+        // the live memtable is replaced rather than just released, as this may be called more than once and a late
+        // write must not go to a memtable whose memory is freed
+        Memtable newMemtable = new Memtable(cfstore);
         View currentView, newView;
         do
         {
             currentView = view.get();
             notCompacting = currentView.nonCompactingSStables();
-            newView = currentView.replace(notCompacting, Collections.<SSTableReader>emptySet());
+            newView = currentView.replace(notCompacting, Collections.<SSTableReader>emptySet()).renewMemtable(newMemtable);
         }
         while (!view.compareAndSet(currentView, newView));
+        currentView.memtable.releaseReference();
 
         if (notCompacting.isEmpty())
         {
@@ -537,12 +569,13 @@ public class DataTracker
             return new View(newMemtable, memtablesPendingFlush, sstables, compacting, intervalTree);
         }
 
-        public View replaceFlushed(Memtable flushedMemtable, SSTableReader newSSTable)
+        public View replaceFlushed(Memtable flushedMemtable, Collection<SSTableReader> flushedSSTables)
         {
             Set<Memtable> newPending = ImmutableSet.copyOf(Sets.difference(memtablesPendingFlush, Collections.singleton(flushedMemtable)));
-            Set<SSTableReader> newSSTables = newSSTable == null
+            Set<SSTableReader> newSSTables = flushedSSTables.isEmpty()
                                            ? sstables
-                                           : newSSTables(newSSTable);
+                                           // not performance-sensitive, don't obsess over doing a selection merge here
+                                           : newSSTables(Collections.<SSTableReader>emptyList(), flushedSSTables);
             SSTableIntervalTree intervalTree = buildIntervalTree(newSSTables);
             return new View(memtable, newPending, newSSTables, compacting, intervalTree);
         }
@@ -566,13 +599,6 @@ public class DataTracker
             return new View(memtable, memtablesPendingFlush, sstables, compactingNew, intervalTree);
         }
 
-        private Set<SSTableReader> newSSTables(SSTableReader newSSTable)
-        {
-            assert newSSTable != null;
-            // not performance-sensitive, don't obsess over doing a selection merge here
-            return newSSTables(Collections.<SSTableReader>emptyList(), Collections.singletonList(newSSTable));
-        }
-
         private Set<SSTableReader> newSSTables(Collection<SSTableReader> oldSSTables, Iterable<SSTableReader> replacements)
         {
             ImmutableSet<SSTableReader> oldSet = ImmutableSet.copyOf(oldSSTables);
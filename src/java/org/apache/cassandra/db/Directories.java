@@ -168,6 +168,14 @@ public class Directories
      * @throws IOError if all directories are blacklisted.
      */
     public DataDirectory getWriteableLocation()
+    {
+        return getWriteableLocations().get(0);
+    }
+
+    /**
+     * @return the directories that can be written to, the best candidates first
+     */
+    public List<DataDirectory> getWriteableLocations()
     {
         List<DataDirectory> candidates = new ArrayList<DataDirectory>();
 
@@ -194,7 +202,7 @@ public class Directories
             }
         });
 
-        return candidates.get(0);
+        return candidates;
     }
 
 
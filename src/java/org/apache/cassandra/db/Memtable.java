@@ -18,20 +18,25 @@
 package org.apache.cassandra.db;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
-import org.cliffc.high_scale_lib.NonBlockingHashSet;
+import com.google.common.collect.AbstractIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutor;
 import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.db.marshal.AbstractType;
@@ -40,7 +45,10 @@ import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.io.sstable.SSTableWriter;
 import org.apache.cassandra.io.util.DiskAwareRunnable;
 import org.apache.cassandra.utils.Allocator;
-import org.github.jamm.MemoryMeter;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.HeapAllocator;
+import org.apache.cassandra.utils.ObjectSizes;
+import org.apache.cassandra.utils.Pair;
 
 public class Memtable
 {
@@ -66,39 +74,49 @@ public class Memtable
                                                new NamedThreadFactory("FlushWriter"),
                                                "internal");
 
-    // size in memory can never be less than serialized size
-    private static final double MIN_SANE_LIVE_RATIO = 1.0;
-    // max liveratio seen w/ 1-byte columns on a 64-bit jvm was 19. If it gets higher than 64 something is probably broken.
-    private static final double MAX_SANE_LIVE_RATIO = 64.0;
-
-    // We need to take steps to avoid retaining inactive membtables in memory, because counting is slow (can be
-    // minutes, for a large memtable and a busy server).  A strictly FIFO Memtable queue could keep memtables
-    // alive waiting for metering after they're flushed and would otherwise be GC'd.  Instead, the approach we take
-    // is to enqueue the CFS instead of the memtable, and to meter whatever the active memtable is when the executor
-    // starts to work on it.  We use a Set to make sure we don't enqueue redundant tasks for the same CFS.
-    private static final Set<ColumnFamilyStore> meteringInProgress = new NonBlockingHashSet<ColumnFamilyStore>();
-    private static final ExecutorService meterExecutor = new JMXEnabledThreadPoolExecutor(1,
-                                                                                          Integer.MAX_VALUE,
-                                                                                          TimeUnit.MILLISECONDS,
-                                                                                          new LinkedBlockingQueue<Runnable>(),
-                                                                                          new NamedThreadFactory("MemoryMeter"),
-                                                                                          "internal");
-    private final MemoryMeter meter;
-
-    volatile static ColumnFamilyStore activelyMeasuring;
+    // writes the ranges of the flushes that are split, see memtable_flush_splits
+    private static final ExecutorService rangeFlushWriter
+            = new JMXEnabledThreadPoolExecutor(DatabaseDescriptor.getFlushWriters() * DatabaseDescriptor.getFlushSplits(),
+                                               StageManager.KEEPALIVE,
+                                               TimeUnit.SECONDS,
+                                               new LinkedBlockingQueue<Runnable>(),
+                                               new NamedThreadFactory("RangeFlushWriter"),
+                                               "internal");
+    private static final long MIN_FLUSH_SPLIT_SIZE = 16L * 1024 * 1024;
+
+    // the representation of the partitions, see memtable_partition_type
+    private static final boolean useBTree = DatabaseDescriptor.getMemtablePartitionType() == Config.MemtablePartitionType.btree;
+    private static final ColumnFamily.Factory<? extends AtomicColumns> partitionFactory = useBTree ? AtomicBTreeColumns.factory : AtomicSortedColumns.factory;
+
+    /**
+     * The heap used by each partition, besides its key data and columns: its skip list node (and half an index node,
+     * on average), DecoratedKey, token, the ByteBuffer of its key and its empty AtomicColumns.
+     */
+    private static final long ROW_OVERHEAD_SIZE = ObjectSizes.getFieldSize(3 * ObjectSizes.getReferenceSize()) // node
+                                                + ObjectSizes.getFieldSize(3 * ObjectSizes.getReferenceSize()) / 2 // index
+                                                + ObjectSizes.getFieldSize(2 * ObjectSizes.getReferenceSize()) // DecoratedKey
+                                                + ObjectSizes.getFieldSize(ObjectSizes.getReferenceSize()) // Token
+                                                + ObjectSizes.getFieldSize(8) // Token value, for the long ones
+                                                + ObjectSizes.getBufferObjectSize()
+                                                + (useBTree ? AtomicBTreeColumns.EMPTY_SIZE : AtomicSortedColumns.EMPTY_SIZE);
 
     private final AtomicLong currentSize = new AtomicLong(0);
+    // the memory used by the memtable, counted as it is built (see resolve() and MeasuringAllocator)
+    private final AtomicLong heapSize = new AtomicLong(0);
+    private final AtomicLong offHeapSize = new AtomicLong(0);
     private final AtomicLong currentOperations = new AtomicLong(0);
 
     // We index the memtable by RowPosition only for the purpose of being able
     // to select key range using Token.KeyBound. However put() ensures that we
     // actually only store DecoratedKey.
-    private final ConcurrentNavigableMap<RowPosition, AtomicSortedColumns> rows = new ConcurrentSkipListMap<RowPosition, AtomicSortedColumns>();
+    private final ConcurrentNavigableMap<RowPosition, AtomicColumns> rows = new ConcurrentSkipListMap<RowPosition, AtomicColumns>();
     public final ColumnFamilyStore cfs;
     private final long creationTime = System.currentTimeMillis();
     private final long creationNano = System.nanoTime();
 
-    private final Allocator allocator = DatabaseDescriptor.getMemtableAllocator();
+    private final Allocator allocator = new MeasuringAllocator(DatabaseDescriptor.getMemtableAllocator());
+    // keys are returned by range scans as they are, so they can't be off-heap
+    private final Allocator keyAllocator = allocator.isOffHeap() ? new MeasuringAllocator(HeapAllocator.instance) : allocator;
     // We really only need one column by allocator but one by memtable is not a big waste and avoids needing allocators to know about CFS
     private final Function<Column, Column> localCopyFunction = new Function<Column, Column>()
     {
@@ -108,6 +126,10 @@ public class Memtable
         }
     };
 
+    // One reference for the memtable itself, released by DataTracker once it is flushed or discarded, and one for
+    // each read in progress (see ColumnFamilyStore.markReferenced()). The allocator is freed once all are released.
+    private final AtomicInteger references = new AtomicInteger(1);
+
     // Record the comparator of the CFS at the creation of the memtable. This
     // is only used when a user update the CF comparator, to know if the
     // memtable was created with the new or old comparator.
@@ -118,29 +140,24 @@ public class Memtable
         this.cfs = cfs;
         this.initialComparator = cfs.metadata.comparator;
         this.cfs.scheduleFlush();
-
-        Callable<Set<Object>> provider = new Callable<Set<Object>>()
-        {
-            public Set<Object> call() throws Exception
-            {
-                // avoid counting this once for each row
-                Set<Object> set = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
-                set.add(Memtable.this.cfs.metadata);
-                return set;
-            }
-        };
-        meter = new MemoryMeter().omitSharedBufferOverhead().withTrackerProvider(provider);
     }
 
+    /**
+     * @return the memory used by the memtable, on and off-heap.
+     */
     public long getLiveSize()
     {
-        long estimatedSize = (long) (currentSize.get() * cfs.liveRatio);
+        return getHeapSize() + getOffHeapSize();
+    }
 
-        // liveRatio is just an estimate; we can get a lower bound directly from the allocator
-        if (estimatedSize < allocator.getMinimumSize())
-            return allocator.getMinimumSize();
+    public long getHeapSize()
+    {
+        return heapSize.get();
+    }
 
-        return estimatedSize;
+    public long getOffHeapSize()
+    {
+        return offHeapSize.get();
     }
 
     public long getOperations()
@@ -158,41 +175,25 @@ public class Memtable
         resolve(key, columnFamily, indexer);
     }
 
-    public void updateLiveRatio() throws RuntimeException
-    {
-        if (!MemoryMeter.isInitialized())
-        {
-            // hack for openjdk.  we log a warning about this in the startup script too.
-            logger.error("MemoryMeter uninitialized (jamm not specified as java agent); assuming liveRatio of {}.  "
-                         + " Usually this means cassandra-env.sh disabled jamm because you are using a buggy JRE; "
-                         + " upgrade to the Sun JRE instead", cfs.liveRatio);
-            return;
-        }
-
-        if (!meteringInProgress.add(cfs))
-        {
-            logger.debug("Metering already pending or active for {}; skipping liveRatio update", cfs);
-            return;
-        }
-
-        meterExecutor.submit(new MeteringRunnable(cfs));
-    }
-
     private void resolve(DecoratedKey key, ColumnFamily cf, SecondaryIndexManager.Updater indexer)
     {
-        AtomicSortedColumns previous = rows.get(key);
+        AtomicColumns previous = rows.get(key);
 
         if (previous == null)
         {
-            AtomicSortedColumns empty = cf.cloneMeShallow(AtomicSortedColumns.factory, false);
+            AtomicColumns empty = cf.cloneMeShallow(partitionFactory, false);
             // We'll add the columns later. This avoids wasting works if we get beaten in the putIfAbsent
-            previous = rows.putIfAbsent(new DecoratedKey(key.token, allocator.clone(key.key)), empty);
+            previous = rows.putIfAbsent(new DecoratedKey(key.token, keyAllocator.clone(key.key)), empty);
             if (previous == null)
+            {
                 previous = empty;
+                heapSize.addAndGet(ROW_OVERHEAD_SIZE);
+            }
         }
 
-        long sizeDelta = previous.addAllWithSizeDelta(cf, allocator, localCopyFunction, indexer);
-        currentSize.addAndGet(sizeDelta);
+        Pair<Long, Long> sizeDelta = previous.addAllWithSizeDelta(cf, allocator, localCopyFunction, indexer);
+        currentSize.addAndGet(sizeDelta.left);
+        heapSize.addAndGet(sizeDelta.right);
         currentOperations.addAndGet((cf.getColumnCount() == 0)
                                     ? cf.isMarkedForDelete() ? 1 : 0
                                     : cf.getColumnCount());
@@ -203,7 +204,7 @@ public class Memtable
     {
         StringBuilder builder = new StringBuilder();
         builder.append("{");
-        for (Map.Entry<RowPosition, AtomicSortedColumns> entry : rows.entrySet())
+        for (Map.Entry<RowPosition, AtomicColumns> entry : rows.entrySet())
         {
             builder.append(entry.getKey()).append(": ").append(entry.getValue()).append(", ");
         }
@@ -218,37 +219,37 @@ public class Memtable
 
     public String toString()
     {
-        return String.format("Memtable-%s@%s(%s/%s serialized/live bytes, %s ops)",
-                             cfs.name, hashCode(), currentSize, getLiveSize(), currentOperations);
+        return String.format("Memtable-%s@%s(%s/%s/%s serialized/heap/off-heap bytes, %s ops)",
+                             cfs.name, hashCode(), currentSize, heapSize, offHeapSize, currentOperations);
     }
 
     /**
      * @param startWith Include data in the result from and including this key and to the end of the memtable
      * @return An iterator of entries with the data from the start key
      */
-    public Iterator<Map.Entry<DecoratedKey, AtomicSortedColumns>> getEntryIterator(final RowPosition startWith, final RowPosition stopAt)
+    public Iterator<Map.Entry<DecoratedKey, AtomicColumns>> getEntryIterator(final RowPosition startWith, final RowPosition stopAt)
     {
-        return new Iterator<Map.Entry<DecoratedKey, AtomicSortedColumns>>()
+        return new Iterator<Map.Entry<DecoratedKey, AtomicColumns>>()
         {
-            private Iterator<Map.Entry<RowPosition, AtomicSortedColumns>> iter = stopAt.isMinimum(cfs.partitioner)
+            private Iterator<Map.Entry<RowPosition, AtomicColumns>> iter = stopAt.isMinimum(cfs.partitioner)
                                                                                ? rows.tailMap(startWith).entrySet().iterator()
                                                                                : rows.subMap(startWith, true, stopAt, true).entrySet().iterator();
-            private Map.Entry<RowPosition, AtomicSortedColumns> currentEntry;
+            private Map.Entry<RowPosition, AtomicColumns> currentEntry;
 
             public boolean hasNext()
             {
                 return iter.hasNext();
             }
 
-            public Map.Entry<DecoratedKey, AtomicSortedColumns> next()
+            public Map.Entry<DecoratedKey, AtomicColumns> next()
             {
-                Map.Entry<RowPosition, AtomicSortedColumns> entry = iter.next();
+                Map.Entry<RowPosition, AtomicColumns> entry = iter.next();
                 // Store the reference to the current entry so that remove() can update the current size.
                 currentEntry = entry;
                 // Actual stored key should be true DecoratedKey
                 assert entry.getKey() instanceof DecoratedKey;
                 // Object cast is required since otherwise we can't turn RowPosition into DecoratedKey
-                return (Map.Entry<DecoratedKey, AtomicSortedColumns>) (Object)entry;
+                return (Map.Entry<DecoratedKey, AtomicColumns>) (Object)entry;
             }
 
             public void remove()
@@ -284,11 +285,103 @@ public class Memtable
         return creationTime;
     }
 
+    public boolean acquireReference()
+    {
+        while (true)
+        {
+            int n = references.get();
+            if (n <= 0)
+                return false;
+            if (references.compareAndSet(n, n + 1))
+                return true;
+        }
+    }
+
+    public void releaseReference()
+    {
+        int n = references.decrementAndGet();
+        assert n >= 0 : "Reference counter " + n + " for " + this;
+        if (n == 0)
+            allocator.free();
+    }
+
+    /**
+     * Acquires references on all the provided memtables, or on none of them if one is released already.
+     */
+    public static boolean acquireReferences(Iterable<Memtable> memtables)
+    {
+        List<Memtable> acquired = new ArrayList<Memtable>();
+        for (Memtable memtable : memtables)
+        {
+            if (!memtable.acquireReference())
+            {
+                releaseReferences(acquired);
+                return false;
+            }
+            acquired.add(memtable);
+        }
+        return true;
+    }
+
+    public static void releaseReferences(Iterable<Memtable> memtables)
+    {
+        for (Memtable memtable : memtables)
+            memtable.releaseReference();
+    }
+
+    /**
+     * Makes the cells read from the memtable safe to use after the read releases it.
+     *
+     * @return iter itself if the memtable is on-heap, otherwise an iterator returning heap copies of its cells
+     */
+    public OnDiskAtomIterator copyOnRead(final OnDiskAtomIterator iter)
+    {
+        if (!allocator.isOffHeap())
+            return iter;
+
+        return new CopyingIterator(iter);
+    }
+
+    private class CopyingIterator extends AbstractIterator<OnDiskAtom> implements OnDiskAtomIterator
+    {
+        private final OnDiskAtomIterator iter;
+
+        private CopyingIterator(OnDiskAtomIterator iter)
+        {
+            this.iter = iter;
+        }
+
+        protected OnDiskAtom computeNext()
+        {
+            if (!iter.hasNext())
+                return endOfData();
+
+            OnDiskAtom atom = iter.next();
+            return atom instanceof Column ? ((Column) atom).localCopy(cfs, HeapAllocator.instance) : atom;
+        }
+
+        public ColumnFamily getColumnFamily()
+        {
+            return iter.getColumnFamily();
+        }
+
+        public DecoratedKey getKey()
+        {
+            return iter.getKey();
+        }
+
+        public void close() throws IOException
+        {
+            iter.close();
+        }
+    }
+
     class FlushRunnable extends DiskAwareRunnable
     {
         private final CountDownLatch latch;
         private final Future<ReplayPosition> context;
         private final long estimatedSize;
+        private final int keyCount;
 
         FlushRunnable(CountDownLatch latch, Future<ReplayPosition> context)
         {
@@ -296,16 +389,16 @@ public class Memtable
             this.context = context;
 
             long keySize = 0;
+            int keyCount = 0;
             for (RowPosition key : rows.keySet())
             {
                 //  make sure we don't write non-sensical keys
                 assert key instanceof DecoratedKey;
                 keySize += ((DecoratedKey)key).key.remaining();
+                keyCount++;
             }
-            estimatedSize = (long) ((keySize // index entries
-                                    + keySize // keys in data file
-                                    + currentSize.get()) // data
-                                    * 1.2); // bloom filter and row index overhead
+            this.keyCount = keyCount;
+            estimatedSize = estimateWriteSize(keySize, currentSize.get());
         }
 
         public long getExpectedWriteSize()
@@ -313,11 +406,69 @@ public class Memtable
             return estimatedSize;
         }
 
+        @Override
+        protected void runMayThrow() throws Exception
+        {
+            List<Pair<SortedMap<RowPosition, AtomicColumns>, Integer>> ranges = splitForFlush();
+            if (ranges.size() == 1)
+            {
+                super.runMayThrow();
+                return;
+            }
+
+            logger.info("Writing {} in {} ranges", Memtable.this, ranges.size());
+            // spread the ranges over the directories, the best candidates first
+            List<Directories.DataDirectory> directories = cfs.directories.getWriteableLocations();
+            List<RangeFlushRunnable> tasks = new ArrayList<RangeFlushRunnable>(ranges.size());
+            List<Future<?>> futures = new ArrayList<Future<?>>(ranges.size());
+            for (Pair<SortedMap<RowPosition, AtomicColumns>, Integer> range : ranges)
+            {
+                long dataSize = currentSize.get() * range.right / keyCount;
+                RangeFlushRunnable task = new RangeFlushRunnable(range.left, range.right, dataSize, context, directories.get(tasks.size() % directories.size()));
+                tasks.add(task);
+                futures.add(rangeFlushWriter.submit(task));
+            }
+            // wait for all the ranges, even if one fails, so that none is still being written when we clean up
+            Throwable failure = null;
+            for (Future<?> future : futures)
+            {
+                try
+                {
+                    FBUtilities.waitOnFuture(future);
+                }
+                catch (Throwable t)
+                {
+                    if (failure == null)
+                        failure = t;
+                }
+            }
+
+            List<SSTableReader> sstables = new ArrayList<SSTableReader>(tasks.size());
+            for (RangeFlushRunnable task : tasks)
+            {
+                if (task.sstable != null)
+                    sstables.add(task.sstable);
+            }
+            if (failure != null)
+            {
+                // the memtable stays as it is, so remove the sstables of the ranges that were written
+                for (SSTableReader sstable : sstables)
+                {
+                    sstable.markObsolete();
+                    sstable.releaseReference();
+                }
+                throw Throwables.propagate(failure);
+            }
+            // all at once, so that reads never see part of the memtable's data missing
+            cfs.replaceFlushed(Memtable.this, sstables);
+            latch.countDown();
+        }
+
         protected void runWith(File sstableDirectory) throws Exception
         {
             assert sstableDirectory != null : "Flush task is not bound to any disk";
 
-            SSTableReader sstable = writeSortedContents(context, sstableDirectory);
+            SSTableReader sstable = writeSortedContents(rows, keyCount, context, sstableDirectory);
             cfs.replaceFlushed(Memtable.this, sstable);
             latch.countDown();
         }
@@ -327,135 +478,206 @@ public class Memtable
             return cfs.directories;
         }
 
-        private SSTableReader writeSortedContents(Future<ReplayPosition> context, File sstableDirectory)
-        throws ExecutionException, InterruptedException
+        /**
+         * Splits the memtable into as many consecutive ranges of rows as memtable_flush_splits, as long as their
+         * serialized size is at least MIN_FLUSH_SPLIT_SIZE.
+         *
+         * @return the ranges, with their number of rows
+         */
+        private List<Pair<SortedMap<RowPosition, AtomicColumns>, Integer>> splitForFlush()
         {
-            logger.info("Writing " + Memtable.this.toString());
-
-            SSTableReader ssTable;
-            // errors when creating the writer that may leave empty temp files.
-            SSTableWriter writer = createFlushWriter(cfs.getTempSSTablePath(sstableDirectory));
-            try
+            int splits = (int) Math.min(Math.min(DatabaseDescriptor.getFlushSplits(), keyCount), currentSize.get() / MIN_FLUSH_SPLIT_SIZE);
+            if (splits <= 1)
+                return Collections.singletonList(Pair.<SortedMap<RowPosition, AtomicColumns>, Integer>create(rows, keyCount));
+
+            List<Pair<SortedMap<RowPosition, AtomicColumns>, Integer>> ranges = new ArrayList<Pair<SortedMap<RowPosition, AtomicColumns>, Integer>>(splits);
+            RowPosition start = null;
+            int startIndex = 0;
+            int index = 0;
+            for (RowPosition key : rows.keySet())
             {
-                // (we can't clear out the map as-we-go to free up memory,
-                //  since the memtable is being used for queries in the "pending flush" category)
-                for (Map.Entry<RowPosition, AtomicSortedColumns> entry : rows.entrySet())
+                // the range ends right before the first key of the next one
+                if (index == (long) keyCount * (ranges.size() + 1) / splits)
                 {
-                    ColumnFamily cf = entry.getValue();
-                    if (cf.isMarkedForDelete())
-                    {
-                        // When every node is up, there's no reason to write batchlog data out to sstables
-                        // (which in turn incurs cost like compaction) since the BL write + delete cancel each other out,
-                        // and BL data is strictly local, so we don't need to preserve tombstones for repair.
-                        // If we have a data row + row level tombstone, then writing it is effectively an expensive no-op so we skip it.
-                        // See CASSANDRA-4667.
-                        if (cfs.name.equals(SystemKeyspace.BATCHLOG_CF) && cfs.keyspace.getName().equals(Keyspace.SYSTEM_KS) && !(cf.getColumnCount() == 0))
-                            continue;
-
-                        // Pedantically, you could purge column level tombstones that are past GcGRace when writing to the SSTable.
-                        // But it can result in unexpected behaviour where deletes never make it to disk,
-                        // as they are lost and so cannot override existing column values. So we only remove deleted columns if there
-                        // is a CF level tombstone to ensure the delete makes it into an SSTable.
-                        // We also shouldn't be dropping any columns obsoleted by partition and/or range tombstones in case
-                        // the table has secondary indexes, or else the stale entries wouldn't be cleaned up during compaction,
-                        // and will only be dropped during 2i query read-repair, if at all.
-                        if (!cfs.indexManager.hasIndexes())
-                            currentSize.addAndGet(-ColumnFamilyStore.removeDeletedColumnsOnly(cf, Integer.MIN_VALUE));
-                    }
-
-                    if (cf.getColumnCount() > 0 || cf.isMarkedForDelete())
-                        writer.append((DecoratedKey)entry.getKey(), cf);
+                    SortedMap<RowPosition, AtomicColumns> range = start == null ? rows.headMap(key) : rows.subMap(start, key);
+                    ranges.add(Pair.create(range, index - startIndex));
+                    start = key;
+                    startIndex = index;
+                    if (ranges.size() == splits - 1)
+                        break;
                 }
+                index++;
+            }
+            ranges.add(Pair.<SortedMap<RowPosition, AtomicColumns>, Integer>create(rows.tailMap(start), keyCount - startIndex));
+            return ranges;
+        }
+    }
 
-                if (writer.getFilePointer() > 0)
-                {
-                    ssTable = writer.closeAndOpenReader();
-                    logger.info(String.format("Completed flushing %s (%d bytes) for commitlog position %s",
-                                              ssTable.getFilename(), new File(ssTable.getFilename()).length(), context.get()));
-                }
-                else
+    /**
+     * Writes a range of rows of a split flush (see FlushRunnable.splitForFlush()) to the directory it is given, if
+     * it is still writeable.
+     */
+    private class RangeFlushRunnable extends DiskAwareRunnable
+    {
+        private final SortedMap<RowPosition, AtomicColumns> range;
+        private final int keyCount;
+        private final Future<ReplayPosition> context;
+        private final Directories.DataDirectory directory;
+        private final long estimatedSize;
+
+        private volatile SSTableReader sstable;
+
+        RangeFlushRunnable(SortedMap<RowPosition, AtomicColumns> range, int keyCount, long dataSize, Future<ReplayPosition> context, Directories.DataDirectory directory)
+        {
+            this.range = range;
+            this.keyCount = keyCount;
+            this.context = context;
+            this.directory = directory;
+
+            long keySize = 0;
+            for (RowPosition key : range.keySet())
+                keySize += ((DecoratedKey)key).key.remaining();
+            estimatedSize = estimateWriteSize(keySize, dataSize);
+        }
+
+        public long getExpectedWriteSize()
+        {
+            return estimatedSize;
+        }
+
+        @Override
+        protected Directories.DataDirectory getWriteableLocation()
+        {
+            return BlacklistedDirectories.isUnwritable(cfs.directories.getLocationForDisk(directory))
+                 ? super.getWriteableLocation()
+                 : directory;
+        }
+
+        protected void runWith(File sstableDirectory) throws Exception
+        {
+            sstable = writeSortedContents(range, keyCount, context, sstableDirectory);
+        }
+
+        protected Directories getDirectories()
+        {
+            return cfs.directories;
+        }
+    }
+
+    private static long estimateWriteSize(long keySize, long dataSize)
+    {
+        return (long) ((keySize // index entries
+                        + keySize // keys in data file
+                        + dataSize) // data
+                       * 1.2); // bloom filter and row index overhead
+    }
+
+    private SSTableReader writeSortedContents(SortedMap<RowPosition, AtomicColumns> toFlush, int keyCount, Future<ReplayPosition> context, File sstableDirectory)
+    throws ExecutionException, InterruptedException
+    {
+        logger.info("Writing " + (toFlush == rows ? Memtable.this.toString() : keyCount + " rows of " + Memtable.this));
+
+        SSTableReader ssTable;
+        // errors when creating the writer that may leave empty temp files.
+        SSTableWriter writer = createFlushWriter(cfs.getTempSSTablePath(sstableDirectory), keyCount, context);
+        try
+        {
+            // (we can't clear out the map as-we-go to free up memory,
+            //  since the memtable is being used for queries in the "pending flush" category)
+            for (Map.Entry<RowPosition, AtomicColumns> entry : toFlush.entrySet())
+            {
+                ColumnFamily cf = entry.getValue();
+                if (cf.isMarkedForDelete())
                 {
-                    writer.abort();
-                    ssTable = null;
-                    logger.info("Completed flushing; nothing needed to be retained.  Commitlog position was {}",
-                                context.get());
+                    // When every node is up, there's no reason to write batchlog data out to sstables
+                    // (which in turn incurs cost like compaction) since the BL write + delete cancel each other out,
+                    // and BL data is strictly local, so we don't need to preserve tombstones for repair.
+                    // If we have a data row + row level tombstone, then writing it is effectively an expensive no-op so we skip it.
+                    // See CASSANDRA-4667.
+                    if (cfs.name.equals(SystemKeyspace.BATCHLOG_CF) && cfs.keyspace.getName().equals(Keyspace.SYSTEM_KS) && !(cf.getColumnCount() == 0))
+                        continue;
+
+                    // Pedantically, you could purge column level tombstones that are past GcGRace when writing to the SSTable.
+                    // But it can result in unexpected behaviour where deletes never make it to disk,
+                    // as they are lost and so cannot override existing column values. So we only remove deleted columns if there
+                    // is a CF level tombstone to ensure the delete makes it into an SSTable.
+                    // We also shouldn't be dropping any columns obsoleted by partition and/or range tombstones in case
+                    // the table has secondary indexes, or else the stale entries wouldn't be cleaned up during compaction,
+                    // and will only be dropped during 2i query read-repair, if at all.
+                    if (!cfs.indexManager.hasIndexes())
+                        currentSize.addAndGet(-ColumnFamilyStore.removeDeletedColumnsOnly(cf, Integer.MIN_VALUE));
                 }
-                return ssTable;
+
+                if (cf.getColumnCount() > 0 || cf.isMarkedForDelete())
+                    writer.append((DecoratedKey)entry.getKey(), cf);
             }
-            catch (Throwable e)
+
+            if (writer.getFilePointer() > 0)
+            {
+                ssTable = writer.closeAndOpenReader();
+                logger.info(String.format("Completed flushing %s (%d bytes) for commitlog position %s",
+                                          ssTable.getFilename(), new File(ssTable.getFilename()).length(), context.get()));
+            }
+            else
             {
                 writer.abort();
-                throw Throwables.propagate(e);
+                ssTable = null;
+                logger.info("Completed flushing; nothing needed to be retained.  Commitlog position was {}",
+                            context.get());
             }
+            return ssTable;
         }
-
-        public SSTableWriter createFlushWriter(String filename) throws ExecutionException, InterruptedException
+        catch (Throwable e)
         {
-            SSTableMetadata.Collector sstableMetadataCollector = SSTableMetadata.createCollector(cfs.metadata.comparator).replayPosition(context.get());
-            return new SSTableWriter(filename,
-                                     rows.size(),
-                                     cfs.metadata,
-                                     cfs.partitioner,
-                                     sstableMetadataCollector);
+            writer.abort();
+            throw Throwables.propagate(e);
         }
     }
 
-    private static class MeteringRunnable implements Runnable
+    private SSTableWriter createFlushWriter(String filename, int keyCount, Future<ReplayPosition> context) throws ExecutionException, InterruptedException
     {
-        // we might need to wait in the meter queue for a while.  measure whichever memtable is active at that point,
-        // rather than keeping the original memtable referenced (and thus un-freeable) until this runs.
-        private final ColumnFamilyStore cfs;
+        SSTableMetadata.Collector sstableMetadataCollector = SSTableMetadata.createCollector(cfs.metadata.comparator).replayPosition(context.get());
+        return new SSTableWriter(filename,
+                                 keyCount,
+                                 cfs.metadata,
+                                 cfs.partitioner,
+                                 sstableMetadataCollector);
+    }
 
-        public MeteringRunnable(ColumnFamilyStore cfs)
+    /**
+     * Counts the data cloned into the memtable, on or off-heap depending on the wrapped allocator. The ByteBuffer
+     * objects are counted with the rows and columns.
+     */
+    private class MeasuringAllocator extends Allocator
+    {
+        private final Allocator allocator;
+
+        private MeasuringAllocator(Allocator allocator)
         {
-            this.cfs = cfs;
+            this.allocator = allocator;
         }
 
-        public void run()
+        public ByteBuffer allocate(int size)
         {
-            try
-            {
-                activelyMeasuring = cfs;
-                Memtable memtable = cfs.getMemtableThreadSafe();
-
-                long start = System.nanoTime();
-                // ConcurrentSkipListMap has cycles, so measureDeep will have to track a reference to EACH object it visits.
-                // So to reduce the memory overhead of doing a measurement, we break it up to row-at-a-time.
-                long deepSize = memtable.meter.measure(memtable.rows);
-                int objects = 0;
-                for (Map.Entry<RowPosition, AtomicSortedColumns> entry : memtable.rows.entrySet())
-                {
-                    deepSize += memtable.meter.measureDeep(entry.getKey()) + memtable.meter.measureDeep(entry.getValue());
-                    objects += entry.getValue().getColumnCount();
-                }
-                double newRatio = (double) deepSize / memtable.currentSize.get();
+            (allocator.isOffHeap() ? offHeapSize : heapSize).addAndGet(size);
+            return allocator.allocate(size);
+        }
 
-                if (newRatio < MIN_SANE_LIVE_RATIO)
-                {
-                    logger.debug("setting live ratio to minimum of {} instead of {}", MIN_SANE_LIVE_RATIO, newRatio);
-                    newRatio = MIN_SANE_LIVE_RATIO;
-                }
-                if (newRatio > MAX_SANE_LIVE_RATIO)
-                {
-                    logger.warn("setting live ratio to maximum of {} instead of {}", MAX_SANE_LIVE_RATIO, newRatio);
-                    newRatio = MAX_SANE_LIVE_RATIO;
-                }
+        public long getMinimumSize()
+        {
+            return allocator.getMinimumSize();
+        }
 
-                // we want to be very conservative about our estimate, since the penalty for guessing low is OOM
-                // death.  thus, higher estimates are believed immediately; lower ones are averaged w/ the old
-                if (newRatio > cfs.liveRatio)
-                    cfs.liveRatio = newRatio;
-                else
-                    cfs.liveRatio = (cfs.liveRatio + newRatio) / 2.0;
+        @Override
+        public boolean isOffHeap()
+        {
+            return allocator.isOffHeap();
+        }
 
-                logger.info("{} liveRatio is {} (just-counted was {}).  calculation took {}ms for {} cells",
-                            cfs, cfs.liveRatio, newRatio, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), objects);
-            }
-            finally
-            {
-                activelyMeasuring = null;
-                meteringInProgress.remove(cfs);
-            }
+        @Override
+        public void free()
+        {
+            allocator.free();
         }
     }
 }
@@ -37,10 +37,7 @@ public class MeteredFlusher implements Runnable
         long totalMemtableBytesAllowed = DatabaseDescriptor.getTotalMemtableSpaceInMB() * 1048576L;
 
         // first, find how much memory non-active memtables are using
-        long flushingBytes = Memtable.activelyMeasuring == null
-                           ? 0
-                           : Memtable.activelyMeasuring.getMemtableThreadSafe().getLiveSize();
-        flushingBytes += countFlushingBytes();
+        long flushingBytes = countFlushingBytes();
         if (flushingBytes > 0)
             logger.debug("Currently flushing {} bytes of {} max", flushingBytes, totalMemtableBytesAllowed);
 
@@ -54,7 +51,6 @@ public class MeteredFlusher implements Runnable
             {
                 long size = cfs.getTotalMemtableLiveSize();
                 int maxInFlight = (int) Math.ceil((double) (1 // live memtable
-                                                            + 1 // potentially a flushed memtable being counted by jamm
                                                             + DatabaseDescriptor.getFlushWriters()
                                                             + DatabaseDescriptor.getFlushQueueSize())
                                                   / (1 + cfs.indexManager.getIndexesBackedByCfs().size()));
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.cassandra.db.filter.*;
 import org.apache.cassandra.dht.AbstractBounds;
@@ -51,7 +52,21 @@ public class PagedRangeCommand extends AbstractRangeCommand
                              List<IndexExpression> rowFilter,
                              int limit)
     {
-        super(keyspace, columnFamily, timestamp, keyRange, predicate, rowFilter);
+        this(keyspace, columnFamily, timestamp, keyRange, predicate, start, stop, rowFilter, limit, null);
+    }
+
+    public PagedRangeCommand(String keyspace,
+                             String columnFamily,
+                             long timestamp,
+                             AbstractBounds<RowPosition> keyRange,
+                             SliceQueryFilter predicate,
+                             ByteBuffer start,
+                             ByteBuffer stop,
+                             List<IndexExpression> rowFilter,
+                             int limit,
+                             Set<ByteBuffer> queriedColumns)
+    {
+        super(keyspace, columnFamily, timestamp, keyRange, predicate, rowFilter, queriedColumns);
         this.start = start;
         this.stop = stop;
         this.limit = limit;
@@ -74,7 +89,8 @@ public class PagedRangeCommand extends AbstractRangeCommand
                                      newStart,
                                      newStop,
                                      rowFilter,
-                                     limit);
+                                     limit,
+                                     queriedColumns);
     }
 
     public AbstractRangeCommand withUpdatedLimit(int newLimit)
@@ -87,7 +103,8 @@ public class PagedRangeCommand extends AbstractRangeCommand
                                      start,
                                      stop,
                                      rowFilter,
-                                     newLimit);
+                                     newLimit,
+                                     queriedColumns);
     }
 
     public int limit()
@@ -104,7 +121,7 @@ public class PagedRangeCommand extends AbstractRangeCommand
     {
         ColumnFamilyStore cfs = Keyspace.open(keyspace).getColumnFamilyStore(columnFamily);
 
-        ExtendedFilter exFilter = cfs.makeExtendedFilter(keyRange, (SliceQueryFilter)predicate, start, stop, rowFilter, limit, timestamp);
+        ExtendedFilter exFilter = cfs.makeExtendedFilter(keyRange, (SliceQueryFilter)predicate, start, stop, rowFilter, limit, queriedColumns, timestamp);
         if (cfs.indexManager.hasIndexFor(rowFilter))
             return cfs.search(exFilter);
         else
@@ -144,6 +161,7 @@ public class PagedRangeCommand extends AbstractRangeCommand
             }
 
             out.writeInt(cmd.limit);
+            serializeQueriedColumns(cmd.queriedColumns, out, version);
         }
 
         public PagedRangeCommand deserialize(DataInput in, int version) throws IOException
@@ -170,7 +188,8 @@ public class PagedRangeCommand extends AbstractRangeCommand
             }
 
             int limit = in.readInt();
-            return new PagedRangeCommand(keyspace, columnFamily, timestamp, keyRange, predicate, start, stop, rowFilter, limit);
+            Set<ByteBuffer> queriedColumns = deserializeQueriedColumns(in, version);
+            return new PagedRangeCommand(keyspace, columnFamily, timestamp, keyRange, predicate, start, stop, rowFilter, limit, queriedColumns);
         }
 
         public long serializedSize(PagedRangeCommand cmd, int version)
@@ -197,6 +216,7 @@ public class PagedRangeCommand extends AbstractRangeCommand
             }
 
             size += TypeSizes.NATIVE.sizeof(cmd.limit);
+            size += serializedSizeOfQueriedColumns(cmd.queriedColumns, version);
             return size;
         }
     }
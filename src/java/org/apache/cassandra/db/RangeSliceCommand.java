@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.Schema;
@@ -79,7 +80,21 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
                              boolean countCQL3Rows,
                              boolean isPaging)
     {
-        super(keyspace, column_family, timestamp, range, predicate, row_filter);
+        this(keyspace, column_family, timestamp, predicate, range, row_filter, maxResults, countCQL3Rows, isPaging, null);
+    }
+
+    public RangeSliceCommand(String keyspace,
+                             String column_family,
+                             long timestamp,
+                             IDiskAtomFilter predicate,
+                             AbstractBounds<RowPosition> range,
+                             List<IndexExpression> row_filter,
+                             int maxResults,
+                             boolean countCQL3Rows,
+                             boolean isPaging,
+                             Set<ByteBuffer> queriedColumns)
+    {
+        super(keyspace, column_family, timestamp, range, predicate, row_filter, queriedColumns);
         this.maxResults = maxResults;
         this.countCQL3Rows = countCQL3Rows;
         this.isPaging = isPaging;
@@ -100,7 +115,8 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
                                      rowFilter,
                                      maxResults,
                                      countCQL3Rows,
-                                     isPaging);
+                                     isPaging,
+                                     queriedColumns);
     }
 
     public AbstractRangeCommand withUpdatedLimit(int newLimit)
@@ -113,7 +129,8 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
                                      rowFilter,
                                      newLimit,
                                      countCQL3Rows,
-                                     isPaging);
+                                     isPaging,
+                                     queriedColumns);
     }
 
     public int limit()
@@ -130,7 +147,7 @@ public class RangeSliceCommand extends AbstractRangeCommand implements Pageable
     {
         ColumnFamilyStore cfs = Keyspace.open(keyspace).getColumnFamilyStore(columnFamily);
 
-        ExtendedFilter exFilter = cfs.makeExtendedFilter(keyRange, predicate, rowFilter, maxResults, countCQL3Rows, isPaging, timestamp);
+        ExtendedFilter exFilter = cfs.makeExtendedFilter(keyRange, predicate, rowFilter, maxResults, countCQL3Rows, isPaging, queriedColumns, timestamp);
         if (cfs.indexManager.hasIndexFor(rowFilter))
             return cfs.search(exFilter);
         else
@@ -203,6 +220,7 @@ class RangeSliceCommandSerializer implements IVersionedSerializer<RangeSliceComm
         out.writeInt(sliceCommand.maxResults);
         out.writeBoolean(sliceCommand.countCQL3Rows);
         out.writeBoolean(sliceCommand.isPaging);
+        AbstractRangeCommand.serializeQueriedColumns(sliceCommand.queriedColumns, out, version);
     }
 
     public RangeSliceCommand deserialize(DataInput in, int version) throws IOException
@@ -263,7 +281,8 @@ class RangeSliceCommandSerializer implements IVersionedSerializer<RangeSliceComm
         int maxResults = in.readInt();
         boolean countCQL3Rows = in.readBoolean();
         boolean isPaging = in.readBoolean();
-        return new RangeSliceCommand(keyspace, columnFamily, timestamp, predicate, range, rowFilter, maxResults, countCQL3Rows, isPaging);
+        Set<ByteBuffer> queriedColumns = AbstractRangeCommand.deserializeQueriedColumns(in, version);
+        return new RangeSliceCommand(keyspace, columnFamily, timestamp, predicate, range, rowFilter, maxResults, countCQL3Rows, isPaging, queriedColumns);
     }
 
     public long serializedSize(RangeSliceCommand rsc, int version)
@@ -317,6 +336,7 @@ class RangeSliceCommandSerializer implements IVersionedSerializer<RangeSliceComm
         size += TypeSizes.NATIVE.sizeof(rsc.maxResults);
         size += TypeSizes.NATIVE.sizeof(rsc.countCQL3Rows);
         size += TypeSizes.NATIVE.sizeof(rsc.isPaging);
+        size += AbstractRangeCommand.serializedSizeOfQueriedColumns(rsc.queriedColumns, version);
         return size;
     }
 }
@@ -21,7 +21,9 @@ import java.io.*;
 import java.nio.ByteBuffer;
 
 import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.DigestAlgorithm;
 
 /*
  * The read response message is sent by the server when reading data
@@ -34,11 +36,18 @@ public class ReadResponse
 
     private final Row row;
     private final ByteBuffer digest;
+    private final DigestAlgorithm digestAlgorithm;
 
     public ReadResponse(ByteBuffer digest)
+    {
+        this(digest, DigestAlgorithm.MD5);
+    }
+
+    public ReadResponse(ByteBuffer digest, DigestAlgorithm digestAlgorithm)
     {
         assert digest != null;
         this.digest= digest;
+        this.digestAlgorithm = digestAlgorithm;
         this.row = null;
     }
 
@@ -47,6 +56,7 @@ public class ReadResponse
         assert row != null;
         this.row = row;
         this.digest = null;
+        this.digestAlgorithm = null;
     }
 
     public Row row()
@@ -59,6 +69,11 @@ public class ReadResponse
         return digest;
     }
 
+    public DigestAlgorithm digestAlgorithm()
+    {
+        return digestAlgorithm;
+    }
+
     public boolean isDigestQuery()
     {
         return digest != null;
@@ -75,6 +90,10 @@ class ReadResponseSerializer implements IVersionedSerializer<ReadResponse>
         out.writeBoolean(response.isDigestQuery());
         if (!response.isDigestQuery())
             Row.serializer.serialize(response.row(), out, version);
+        else if (version >= MessagingService.VERSION_21)
+            out.writeByte(response.digestAlgorithm().ordinal());
+        // else the digest is MD5 (see DigestAlgorithm.forReads), or the version of the peer changed in the meantime,
+        // and the digest mismatch just leads to a read repair
     }
 
     public ReadResponse deserialize(DataInput in, int version) throws IOException
@@ -90,13 +109,18 @@ class ReadResponseSerializer implements IVersionedSerializer<ReadResponse>
         assert isDigest == digestSize > 0;
 
         Row row = null;
+        DigestAlgorithm digestAlgorithm = DigestAlgorithm.MD5;
         if (!isDigest)
         {
             // This is coming from a remote host
             row = Row.serializer.deserialize(in, version, ColumnSerializer.Flag.FROM_REMOTE);
         }
+        else if (version >= MessagingService.VERSION_21)
+        {
+            digestAlgorithm = DigestAlgorithm.values()[in.readByte()];
+        }
 
-        return isDigest ? new ReadResponse(ByteBuffer.wrap(digest)) : new ReadResponse(row);
+        return isDigest ? new ReadResponse(ByteBuffer.wrap(digest), digestAlgorithm) : new ReadResponse(row);
     }
 
     public long serializedSize(ReadResponse response, int version)
@@ -108,6 +132,8 @@ class ReadResponseSerializer implements IVersionedSerializer<ReadResponse>
         size += typeSizes.sizeof(response.isDigestQuery());
         if (!response.isDigestQuery())
             size += Row.serializer.serializedSize(response.row(), version);
+        else if (version >= MessagingService.VERSION_21)
+            size += 1;
         return size;
     }
 }
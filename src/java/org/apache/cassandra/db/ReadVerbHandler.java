@@ -27,6 +27,7 @@ import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.DigestAlgorithm;
 
 public class ReadVerbHandler implements IVerbHandler<ReadCommand>
 {
@@ -53,17 +54,21 @@ public class ReadVerbHandler implements IVerbHandler<ReadCommand>
         }
 
         MessageOut<ReadResponse> reply = new MessageOut<ReadResponse>(MessagingService.Verb.REQUEST_RESPONSE,
-                                                                      getResponse(command, row),
+                                                                      getResponse(command, row, MessagingService.instance().getVersion(message.from)),
                                                                       ReadResponse.serializer);
         Tracing.trace("Enqueuing response to {}", message.from);
         MessagingService.instance().sendReply(reply, id, message.from);
     }
 
-    public static ReadResponse getResponse(ReadCommand command, Row row)
+    /**
+     * @param version the messaging version of the peer the response is for
+     */
+    public static ReadResponse getResponse(ReadCommand command, Row row, int version)
     {
         if (command.isDigestQuery())
         {
-            return new ReadResponse(ColumnFamily.digest(row.cf));
+            DigestAlgorithm algorithm = DigestAlgorithm.forReads(version);
+            return new ReadResponse(ColumnFamily.digest(row.cf, algorithm), algorithm);
         }
         else
         {
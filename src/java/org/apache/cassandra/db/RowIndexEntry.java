@@ -20,6 +20,7 @@ package org.apache.cassandra.db;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -30,6 +31,7 @@ import org.apache.cassandra.cache.IMeasurableMemory;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.IndexHelper;
 import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.ObjectSizes;
 
 public class RowIndexEntry implements IMeasurableMemory
@@ -62,7 +64,7 @@ public class RowIndexEntry implements IMeasurableMemory
         // since if there are insufficient columns to be worth indexing we're going to seek to
         // the beginning of the row anyway, so we might as well read the tombstone there as well.
         if (index.columnsIndex.size() > 1)
-            return new IndexedEntry(position, deletionTime, index.columnsIndex);
+            return new IndexedEntry(position, deletionTime, IndexHelper.SerializedIndex.create(index.columnsIndex));
         else
             return new RowIndexEntry(position);
     }
@@ -86,6 +88,36 @@ public class RowIndexEntry implements IMeasurableMemory
         return Collections.emptyList();
     }
 
+    /**
+     * @return this entry, with its promoted index moved off-heap if it has one in serialized form. Cached entries
+     * keep it there, so that the key cache of wide partitions doesn't fill the heap with column indexes. The
+     * promoted index of the returned entry is only safe to read between reference() and release(), and it must be
+     * released once more by its owner.
+     */
+    public RowIndexEntry withOffHeapIndex()
+    {
+        return this;
+    }
+
+    /**
+     * Keeps the promoted index of this entry readable, even if it is off-heap and its owner releases it, until the
+     * matching release().
+     *
+     * @return false if the off-heap promoted index has been freed already, in which case columnsIndex() must not be read
+     */
+    public boolean reference()
+    {
+        return true;
+    }
+
+    /**
+     * Releases a reference to the promoted index of an entry returned by withOffHeapIndex(), freeing it with the
+     * last one.
+     */
+    public void release()
+    {
+    }
+
     public long memorySize()
     {
         return ObjectSizes.getFieldSize(TypeSizes.NATIVE.sizeof(position));
@@ -102,8 +134,16 @@ public class RowIndexEntry implements IMeasurableMemory
             {
                 DeletionTime.serializer.serialize(rie.deletionTime(), out);
                 out.writeInt(rie.columnsIndex().size());
-                for (IndexHelper.IndexInfo info : rie.columnsIndex())
-                    info.serialize(out);
+                // entries are written the way they were read, i.e. in the format of their sstable
+                if (rie.columnsIndex() instanceof IndexHelper.SerializedIndex)
+                {
+                    ByteBufferUtil.write(((IndexHelper.SerializedIndex) rie.columnsIndex()).buffer(), out);
+                }
+                else
+                {
+                    for (IndexHelper.IndexInfo info : rie.columnsIndex())
+                        info.serialize(out);
+                }
             }
         }
 
@@ -117,6 +157,15 @@ public class RowIndexEntry implements IMeasurableMemory
                 DeletionTime deletionTime = DeletionTime.serializer.deserialize(in);
 
                 int entries = in.readInt();
+                if (version.hasColumnIndexOffsets)
+                {
+                    // keep the entries serialized, they are deserialized as they get searched
+                    TypeSizes typeSizes = TypeSizes.NATIVE;
+                    int indexSize = size - (int) DeletionTime.serializer.serializedSize(deletionTime, typeSizes) - typeSizes.sizeof(entries);
+                    ByteBuffer index = ByteBufferUtil.read(in, indexSize);
+                    return new IndexedEntry(position, deletionTime, new IndexHelper.SerializedIndex(index, entries));
+                }
+
                 List<IndexHelper.IndexInfo> columnsIndex = new ArrayList<IndexHelper.IndexInfo>(entries);
                 for (int i = 0; i < entries; i++)
                     columnsIndex.add(IndexHelper.IndexInfo.deserialize(in));
@@ -174,14 +223,45 @@ public class RowIndexEntry implements IMeasurableMemory
             return columnsIndex;
         }
 
+        @Override
+        public RowIndexEntry withOffHeapIndex()
+        {
+            if (!(columnsIndex instanceof IndexHelper.SerializedIndex))
+                return this;
+
+            IndexHelper.SerializedIndex offHeapIndex = ((IndexHelper.SerializedIndex) columnsIndex).offHeap();
+            return offHeapIndex == columnsIndex ? this : new IndexedEntry(position, deletionTime, offHeapIndex);
+        }
+
+        @Override
+        public boolean reference()
+        {
+            return !(columnsIndex instanceof IndexHelper.SerializedIndex)
+                   || ((IndexHelper.SerializedIndex) columnsIndex).reference();
+        }
+
+        @Override
+        public void release()
+        {
+            if (columnsIndex instanceof IndexHelper.SerializedIndex)
+                ((IndexHelper.SerializedIndex) columnsIndex).release();
+        }
+
         @Override
         public int promotedSize()
         {
             TypeSizes typeSizes = TypeSizes.NATIVE;
             long size = DeletionTime.serializer.serializedSize(deletionTime, typeSizes);
             size += typeSizes.sizeof(columnsIndex.size()); // number of entries
-            for (IndexHelper.IndexInfo info : columnsIndex)
-                size += info.serializedSize(typeSizes);
+            if (columnsIndex instanceof IndexHelper.SerializedIndex)
+            {
+                size += ((IndexHelper.SerializedIndex) columnsIndex).buffer().remaining();
+            }
+            else
+            {
+                for (IndexHelper.IndexInfo info : columnsIndex)
+                    size += info.serializedSize(typeSizes);
+            }
 
             return Ints.checkedCast(size);
         }
@@ -189,9 +269,18 @@ public class RowIndexEntry implements IMeasurableMemory
         @Override
         public long memorySize()
         {
-            long entrySize = 0;
-            for (IndexHelper.IndexInfo idx : columnsIndex)
-                entrySize += idx.memorySize();
+            long indexSize;
+            if (columnsIndex instanceof IndexHelper.SerializedIndex)
+            {
+                indexSize = ((IndexHelper.SerializedIndex) columnsIndex).memorySize();
+            }
+            else
+            {
+                long entrySize = 0;
+                for (IndexHelper.IndexInfo idx : columnsIndex)
+                    entrySize += idx.memorySize();
+                indexSize = ObjectSizes.getArraySize(columnsIndex.size(), ObjectSizes.getReferenceSize()) + entrySize + 4;
+            }
 
             return ObjectSizes.getSuperClassFieldSize(TypeSizes.NATIVE.sizeof(position))
                    + ObjectSizes.getFieldSize(// deletionTime
@@ -199,7 +288,7 @@ public class RowIndexEntry implements IMeasurableMemory
                                               // columnsIndex
                                               ObjectSizes.getReferenceSize())
                    + deletionTime.memorySize()
-                   + ObjectSizes.getArraySize(columnsIndex.size(), ObjectSizes.getReferenceSize()) + entrySize + 4;
+                   + indexSize;
         }
     }
 }
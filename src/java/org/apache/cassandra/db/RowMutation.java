@@ -22,12 +22,14 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.commons.lang3.StringUtils;
 
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -48,6 +50,9 @@ public class RowMutation implements IMutation
     // map of column family id to mutations for that column family.
     private final Map<UUID, ColumnFamily> modifications;
 
+    // the serialized forms of this mutation, by messaging version (see serializedBuffer())
+    private volatile AtomicReferenceArray<byte[]> serializedBuffers;
+
     public RowMutation(String keyspaceName, ByteBuffer key)
     {
         this(keyspaceName, key, new HashMap<UUID, ColumnFamily>());
@@ -109,6 +114,7 @@ public class RowMutation implements IMutation
     public void add(ColumnFamily columnFamily)
     {
         assert columnFamily != null;
+        serializedBuffers = null;
         ColumnFamily prev = modifications.put(columnFamily.id(), columnFamily);
         if (prev != null)
             // developer error
@@ -125,6 +131,8 @@ public class RowMutation implements IMutation
 
     public ColumnFamily addOrGet(CFMetaData cfm)
     {
+        // the caller is about to modify the column family
+        serializedBuffers = null;
         ColumnFamily cf = modifications.get(cfm.cfId);
         if (cf == null)
         {
@@ -181,6 +189,8 @@ public class RowMutation implements IMutation
         if (!keyspaceName.equals(rm.keyspaceName) || !key.equals(rm.key))
             throw new IllegalArgumentException();
 
+        serializedBuffers = null;
+
         for (Map.Entry<UUID, ColumnFamily> entry : rm.modifications.entrySet())
         {
             // It's slighty faster to assume the key wasn't present and fix if
@@ -206,6 +216,36 @@ public class RowMutation implements IMutation
         Keyspace.open(keyspaceName).apply(this, false);
     }
 
+    /**
+     * Returns the serialized form of this mutation for the provided messaging version. It is only computed the
+     * first time, so that the commit log, the messages to the replicas and the hints all share it rather than each
+     * serialize the mutation again (serializer uses it too).
+     *
+     * It is discarded when the mutation is modified through its own methods, but the column families it holds must
+     * not be modified directly once it has been serialized. The returned array must not be modified either.
+     */
+    public byte[] serializedBuffer(int version)
+    {
+        if (version > MessagingService.current_version)
+            return serializer.serializeUncached(this, version);
+
+        AtomicReferenceArray<byte[]> buffers = serializedBuffers;
+        if (buffers == null)
+        {
+            buffers = new AtomicReferenceArray<byte[]>(MessagingService.current_version + 1);
+            serializedBuffers = buffers;
+        }
+
+        // concurrent callers may both serialize the mutation, but they will get equal buffers, each safely published
+        byte[] buffer = buffers.get(version);
+        if (buffer == null)
+        {
+            buffer = serializer.serializeUncached(this, version);
+            buffers.set(version, buffer);
+        }
+        return buffer;
+    }
+
     public MessageOut<RowMutation> createMessage()
     {
         return createMessage(MessagingService.Verb.MUTATION);
@@ -254,6 +294,28 @@ public class RowMutation implements IMutation
     public static class RowMutationSerializer implements IVersionedSerializer<RowMutation>
     {
         public void serialize(RowMutation rm, DataOutput out, int version) throws IOException
+        {
+            out.write(rm.serializedBuffer(version));
+        }
+
+        private byte[] serializeUncached(RowMutation rm, int version)
+        {
+            try
+            {
+                int size = (int) serializedSizeUncached(rm, version);
+                DataOutputBuffer buffer = new DataOutputBuffer(size);
+                serializeUncached(rm, buffer, version);
+                assert buffer.getLength() == size && buffer.getData().length == size;
+                return buffer.getData();
+            }
+            catch (IOException e)
+            {
+                // We're doing in-memory serialization...
+                throw new AssertionError(e);
+            }
+        }
+
+        private void serializeUncached(RowMutation rm, DataOutput out, int version) throws IOException
         {
             if (version < MessagingService.VERSION_20)
                 out.writeUTF(rm.getKeyspaceName());
@@ -313,6 +375,11 @@ public class RowMutation implements IMutation
         }
 
         public long serializedSize(RowMutation rm, int version)
+        {
+            return rm.serializedBuffer(version).length;
+        }
+
+        private long serializedSizeUncached(RowMutation rm, int version)
         {
             TypeSizes sizes = TypeSizes.NATIVE;
             int size = 0;
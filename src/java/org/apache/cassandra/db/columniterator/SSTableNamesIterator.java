@@ -53,7 +53,7 @@ public class SSTableNamesIterator extends AbstractIterator<OnDiskAtom> implement
         this.columns = columns;
         this.key = key;
 
-        RowIndexEntry indexEntry = sstable.getPosition(key, SSTableReader.Operator.EQ);
+        RowIndexEntry indexEntry = sstable.getReferencedPosition(key);
         if (indexEntry == null)
             return;
 
@@ -68,6 +68,7 @@ public class SSTableNamesIterator extends AbstractIterator<OnDiskAtom> implement
         }
         finally
         {
+            indexEntry.release();
             if (fileToClose != null)
                 FileUtils.closeQuietly(fileToClose);
         }
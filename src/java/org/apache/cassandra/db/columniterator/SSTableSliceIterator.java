@@ -34,12 +34,29 @@ public class SSTableSliceIterator implements OnDiskAtomIterator
 {
     private final OnDiskAtomIterator reader;
     private final DecoratedKey key;
+    // the entry we looked up ourselves, released on close()
+    private RowIndexEntry referencedEntry;
 
     public SSTableSliceIterator(SSTableReader sstable, DecoratedKey key, ColumnSlice[] slices, boolean reversed)
     {
         this.key = key;
-        RowIndexEntry indexEntry = sstable.getPosition(key, SSTableReader.Operator.EQ);
-        this.reader = indexEntry == null ? null : createReader(sstable, indexEntry, null, slices, reversed);
+        RowIndexEntry indexEntry = sstable.getReferencedPosition(key);
+        this.referencedEntry = indexEntry;
+        if (indexEntry == null)
+        {
+            this.reader = null;
+            return;
+        }
+
+        try
+        {
+            this.reader = createReader(sstable, indexEntry, null, slices, reversed);
+        }
+        catch (RuntimeException e)
+        {
+            indexEntry.release();
+            throw e;
+        }
     }
 
     /**
@@ -57,6 +74,7 @@ public class SSTableSliceIterator implements OnDiskAtomIterator
     public SSTableSliceIterator(SSTableReader sstable, FileDataInput file, DecoratedKey key, ColumnSlice[] slices, boolean reversed, RowIndexEntry indexEntry)
     {
         this.key = key;
+        this.referencedEntry = null;
         reader = createReader(sstable, indexEntry, file, slices, reversed);
     }
 
@@ -94,8 +112,19 @@ public class SSTableSliceIterator implements OnDiskAtomIterator
 
     public void close() throws IOException
     {
-        if (reader != null)
-            reader.close();
+        try
+        {
+            if (reader != null)
+                reader.close();
+        }
+        finally
+        {
+            if (referencedEntry != null)
+            {
+                referencedEntry.release();
+                referencedEntry = null;
+            }
+        }
     }
 
 }
@@ -33,6 +33,13 @@ public abstract class AbstractCommitLogExecutorService extends AbstractExecutorS
         return completedTaskCount;
     }
 
+    /**
+     * The adders are run by the same thread as the other tasks, so there's nothing to wait for.
+     */
+    public void awaitWritesInProgress()
+    {
+    }
+
     public boolean isTerminated()
     {
         throw new UnsupportedOperationException();
@@ -56,7 +56,7 @@ public class CommitLog implements CommitLogMBean
     public static final int END_OF_SEGMENT_MARKER = 0;          // this is written out at the end of a segment
     public static final int END_OF_SEGMENT_MARKER_SIZE = 4;     // number of bytes of ^^^
 
-    public CommitLogSegment activeSegment;
+    public volatile CommitLogSegment activeSegment;
 
     private final CommitLogMetrics metrics;
 
@@ -67,9 +67,12 @@ public class CommitLog implements CommitLogMBean
         allocator = new CommitLogAllocator();
         activateNextSegment();
 
-        executor = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch
-                 ? new BatchCommitLogExecutorService()
-                 : new PeriodicCommitLogExecutorService(this);
+        if (DatabaseDescriptor.getCommitLogConcurrentWrites())
+            executor = new ConcurrentCommitLogService(this);
+        else if (DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch)
+            executor = new BatchCommitLogExecutorService();
+        else
+            executor = new PeriodicCommitLogExecutorService(this);
 
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
         try
@@ -143,8 +146,15 @@ public class CommitLog implements CommitLogMBean
     public int recover(File... clogs) throws IOException
     {
         CommitLogReplayer recovery = new CommitLogReplayer();
-        recovery.recover(clogs);
-        return recovery.blockForWrites();
+        try
+        {
+            recovery.recover(clogs);
+            return recovery.blockForWrites();
+        }
+        finally
+        {
+            recovery.shutdown();
+        }
     }
 
     /**
@@ -188,6 +198,9 @@ public class CommitLog implements CommitLogMBean
      */
     public void add(RowMutation rm)
     {
+        // serialize on the calling thread rather than on the commit log writer, the buffer is reused by the
+        // messages to the replicas and the hints anyway
+        rm.serializedBuffer(MessagingService.current_version);
         executor.add(new LogRecordAdder(rm));
     }
 
@@ -210,6 +223,8 @@ public class CommitLog implements CommitLogMBean
                 // flushed CF as clean, until we reach the segment file containing the ReplayPosition passed
                 // in the arguments. Any segments that become unused after they are marked clean will be
                 // recycled or discarded.
+                List<CommitLogSegment> unused = new ArrayList<CommitLogSegment>();
+                CommitLogSegment active = activeSegment;
                 for (Iterator<CommitLogSegment> iter = allocator.getActiveSegments().iterator(); iter.hasNext();)
                 {
                     CommitLogSegment segment = iter.next();
@@ -218,12 +233,11 @@ public class CommitLog implements CommitLogMBean
                     // If the segment is no longer needed, and we have another spare segment in the hopper
                     // (to keep the last segment from getting discarded), pursue either recycling or deleting
                     // this segment file.
-                    if (iter.hasNext())
+                    if (iter.hasNext() && segment != active)
                     {
                         if (segment.isUnused())
                         {
-                            logger.debug("Commit log segment {} is unused", segment);
-                            allocator.recycleSegment(segment);
+                            unused.add(segment);
                         }
                         else
                         {
@@ -242,6 +256,19 @@ public class CommitLog implements CommitLogMBean
                         break;
                 }
 
+                // With concurrent writers, a write that started before we read the active segment may still be
+                // going on in one of these, and mark it dirty once done
+                if (!unused.isEmpty())
+                    executor.awaitWritesInProgress();
+                for (CommitLogSegment segment : unused)
+                {
+                    if (segment.isUnused())
+                    {
+                        logger.debug("Commit log segment {} is unused", segment);
+                        allocator.recycleSegment(segment);
+                    }
+                }
+
                 return null;
             }
         };
@@ -284,6 +311,33 @@ public class CommitLog implements CommitLogMBean
         return metrics.totalCommitLogSize.value();
     }
 
+    /**
+     * Replaces the active segment with the next one, unless that has been done already. Used by concurrent writers
+     * finding the active segment full, which must not be part of a write in progress (see ConcurrentCommitLogService).
+     *
+     * @param full the segment found full
+     */
+    synchronized void advanceSegment(CommitLogSegment full)
+    {
+        if (activeSegment != full)
+            return;
+
+        activateNextSegment();
+        // wait for the last writes to the old segment before archiving it
+        executor.awaitWritesInProgress();
+        archive(full);
+    }
+
+    /**
+     * Runs the user defined archive command on a segment that is no longer written to, once everything written to
+     * it is on disk: compressed segments, in particular, only write their content to the file when synced.
+     */
+    private void archive(CommitLogSegment segment)
+    {
+        segment.sync();
+        archiver.maybeArchive(segment.getPath(), segment.getName());
+    }
+
     /**
      * Fetches a new segment file from the allocator and activates it.
      *
@@ -291,7 +345,10 @@ public class CommitLog implements CommitLogMBean
      */
     private void activateNextSegment()
     {
+        CommitLogSegment previous = activeSegment;
         activeSegment = allocator.fetchSegment();
+        if (previous != null)
+            previous.finish();
         logger.debug("Active segment is now {}", activeSegment);
     }
 
@@ -319,6 +376,15 @@ public class CommitLog implements CommitLogMBean
         allocator.awaitTermination();
     }
 
+    /**
+     * @return the size of the largest entry a segment can hold, after its header (whose size is the same for all the
+     * segments, as it only depends on the configuration)
+     */
+    int getMaxEntrySize()
+    {
+        return DatabaseDescriptor.getCommitLogSegmentSize() - activeSegment.descriptor.headerSize();
+    }
+
     // TODO this should be a Runnable since it doesn't actually return anything, but it's difficult to do that
     // without breaking the fragile CheaterFutureTask in BatchCLES.
     class LogRecordAdder implements Callable, Runnable
@@ -332,8 +398,8 @@ public class CommitLog implements CommitLogMBean
 
         public void run()
         {
-            long totalSize = RowMutation.serializer.serializedSize(rowMutation, MessagingService.current_version) + CommitLogSegment.ENTRY_OVERHEAD_SIZE;
-            if (totalSize > DatabaseDescriptor.getCommitLogSegmentSize())
+            long totalSize = rowMutation.serializedBuffer(MessagingService.current_version).length + CommitLogSegment.ENTRY_OVERHEAD_SIZE;
+            if (totalSize > getMaxEntrySize())
             {
                 logger.warn("Skipping commitlog append of extremely large mutation ({} bytes)", totalSize);
                 return;
@@ -345,7 +411,7 @@ public class CommitLog implements CommitLogMBean
                 activateNextSegment();
                 // Now we can run the user defined command just before switching to the new commit log.
                 // (Do this here instead of in the recycle call so we can get a head start on the archive.)
-                archiver.maybeArchive(oldSegment.getPath(), oldSegment.getName());
+                archive(oldSegment);
             }
             try
             {
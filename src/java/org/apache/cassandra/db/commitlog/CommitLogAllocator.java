@@ -152,7 +152,9 @@ public class CommitLogAllocator
             discardSegment(segment, false);
             return;
         }
-        if (isCapExceeded())
+        // concurrent writes rely on zero-filled segments (see CommitLogSegment), so they can't reuse old ones,
+        // and compressed segments are appended to rather than overwritten
+        if (isCapExceeded() || DatabaseDescriptor.getCommitLogConcurrentWrites() || segment instanceof CompressedCommitLogSegment)
         {
             discardSegment(segment, true);
             return;
@@ -179,7 +181,9 @@ public class CommitLogAllocator
     {
         // check against SEGMENT_SIZE avoids recycling odd-sized or empty segments from old C* versions and unit tests
         if (isCapExceeded() || file.length() != DatabaseDescriptor.getCommitLogSegmentSize()
-                || CommitLogDescriptor.fromFileName(file.getName()).getMessagingVersion() != MessagingService.current_version)
+                || CommitLogDescriptor.fromFileName(file.getName()).getMessagingVersion() != MessagingService.current_version
+                || DatabaseDescriptor.getCommitLogConcurrentWrites()
+                || DatabaseDescriptor.getCommitLogCompression() != null)
         {
             // (don't decrease managed size, since this was never a "live" segment)
             logger.debug("(Unopened) segment {} is no longer needed and will be deleted now", file);
@@ -160,7 +160,12 @@ public class CommitLogArchiver
             }
             for (File fromFile : files)
             {
-                File toFile = new File(DatabaseDescriptor.getCommitLogLocation(), new CommitLogDescriptor(CommitLogSegment.getNextId()).fileName());
+                // keep the version of the archived segment, which tells whether it has a header. The replay
+                // takes the id from that header, so renaming doesn't lose the id of such segments.
+                int version = CommitLogDescriptor.isValid(fromFile.getName())
+                            ? CommitLogDescriptor.fromFileName(fromFile.getName()).version
+                            : CommitLogDescriptor.current_version;
+                File toFile = new File(DatabaseDescriptor.getCommitLogLocation(), new CommitLogDescriptor(version, CommitLogSegment.getNextId()).fileName());
                 String command = restoreCommand.replace("%from", fromFile.getPath());
                 command = command.replace("%to", toFile.getPath());
                 try
@@ -20,10 +20,25 @@
  */
 package org.apache.cassandra.db.commitlog;
 
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.Checksum;
 
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
+import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.PureJavaCrc32;
 
 public class CommitLogDescriptor
 {
@@ -35,24 +50,157 @@ public class CommitLogDescriptor
 
     public static final int VERSION_12 = 2;
     public static final int VERSION_20 = 3;
+    public static final int VERSION_21 = 4;
     /**
      * Increment this number if there is a changes in the commit log disc layout or MessagingVersion changes.
      * Note: make sure to handle {@link #getMessagingVersion()}
      */
-    public static final int current_version = VERSION_20;
+    public static final int current_version = VERSION_21;
 
-    private final int version;
+    public final int version;
     public final long id;
+    /** The class of the ICompressor of the segment, or null if it isn't compressed */
+    public final String compression;
 
-    public CommitLogDescriptor(int version, long id)
+    public CommitLogDescriptor(int version, long id, String compression)
     {
         this.version = version;
         this.id = id;
+        this.compression = compression;
+    }
+
+    public CommitLogDescriptor(int version, long id)
+    {
+        this(version, id, null);
+    }
+
+    public CommitLogDescriptor(long id, String compression)
+    {
+        this(current_version, id, compression);
     }
 
     public CommitLogDescriptor(long id)
     {
-        this(current_version, id);
+        this(id, null);
+    }
+
+    /**
+     * @return true if segments of this version start with a header (see writeHeader())
+     */
+    public boolean hasHeader()
+    {
+        return version >= VERSION_21;
+    }
+
+    /**
+     * @return the size of the header written by writeHeader()
+     */
+    public int headerSize()
+    {
+        if (!hasHeader())
+            return 0;
+        return 4 + 8 + 2 + compressionBytes().length + 4;
+    }
+
+    private byte[] compressionBytes()
+    {
+        return compression == null ? new byte[0] : compression.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the segment header, which is never compressed: the version, the id, the class of the compressor (empty
+     * if none) and a checksum of all that.
+     */
+    public static void writeHeader(ByteBuffer out, CommitLogDescriptor descriptor)
+    {
+        assert descriptor.hasHeader();
+        byte[] compression = descriptor.compressionBytes();
+        out.putInt(descriptor.version);
+        out.putLong(descriptor.id);
+        out.putShort((short) compression.length);
+        out.put(compression);
+
+        Checksum checksum = new PureJavaCrc32();
+        FBUtilities.updateChecksumInt(checksum, descriptor.version);
+        FBUtilities.updateChecksumInt(checksum, (int) (descriptor.id >>> 32));
+        FBUtilities.updateChecksumInt(checksum, (int) descriptor.id);
+        checksum.update(compression, 0, compression.length);
+        out.putInt((int) checksum.getValue());
+    }
+
+    /**
+     * @return the descriptor written by writeHeader(), or null if the input doesn't start with a valid header
+     */
+    public static CommitLogDescriptor readHeader(DataInput in) throws IOException
+    {
+        try
+        {
+            int version = in.readInt();
+            long id = in.readLong();
+            int length = in.readShort();
+            if (length < 0)
+                return null;
+            byte[] compression = new byte[length];
+            in.readFully(compression);
+
+            Checksum checksum = new PureJavaCrc32();
+            FBUtilities.updateChecksumInt(checksum, version);
+            FBUtilities.updateChecksumInt(checksum, (int) (id >>> 32));
+            FBUtilities.updateChecksumInt(checksum, (int) id);
+            checksum.update(compression, 0, compression.length);
+            if (in.readInt() != (int) checksum.getValue())
+                return null;
+
+            return new CommitLogDescriptor(version, id, length == 0 ? null : new String(compression, StandardCharsets.UTF_8));
+        }
+        catch (EOFException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return the descriptor in the header of the provided file, or null if it has none
+     */
+    public static CommitLogDescriptor fromHeader(File file)
+    {
+        RandomAccessFile in = null;
+        try
+        {
+            in = new RandomAccessFile(file, "r");
+            return readHeader(in);
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
+    }
+
+    /**
+     * @return a new instance of the compressor of the segment, or null if it isn't compressed
+     */
+    public ICompressor getCompressor()
+    {
+        return createCompressor(compression);
+    }
+
+    public static ICompressor createCompressor(String compression)
+    {
+        if (compression == null)
+            return null;
+
+        try
+        {
+            return new CompressionParameters(compression, null, Collections.<String, String>emptyMap()).sstableCompressor;
+        }
+        catch (ConfigurationException e)
+        {
+            throw new IllegalStateException("Unknown commitlog compression " + compression, e);
+        }
     }
 
     public static CommitLogDescriptor fromFileName(String name)
@@ -70,13 +218,15 @@ public class CommitLogDescriptor
 
     public int getMessagingVersion()
     {
-        assert MessagingService.current_version == MessagingService.VERSION_20;
+        assert MessagingService.current_version == MessagingService.VERSION_21;
         switch (version)
         {
             case VERSION_12:
                 return MessagingService.VERSION_12;
             case VERSION_20:
                 return MessagingService.VERSION_20;
+            case VERSION_21:
+                return MessagingService.VERSION_21;
             default:
                 throw new IllegalStateException("Unknown commitlog version " + version);
         }
@@ -20,7 +20,7 @@ package org.apache.cassandra.db.commitlog;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Checksum;
 
@@ -33,40 +33,54 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.io.util.FastByteArrayInputStream;
+import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.RandomAccessReader;
 import org.apache.cassandra.utils.*;
 
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 
+/**
+ * Replays commit log segments.
+ *
+ * Up to cassandra.commitlog_replay_readers segments are read and deserialized concurrently, ahead of the one being
+ * replayed. The mutations are then applied in the order of the log, on one of the replay threads chosen by their
+ * partition key, so that the mutations to a partition are still applied in order.
+ */
 public class CommitLogReplayer
 {
     private static final Logger logger = LoggerFactory.getLogger(CommitLogReplayer.class);
     private static final int MAX_OUTSTANDING_REPLAY_COUNT = 1024;
+    private static final int REPLAY_READERS = Integer.getInteger("cassandra.commitlog_replay_readers",
+                                                                 Math.min(4, FBUtilities.getAvailableProcessors()));
 
     private final Set<Keyspace> keyspacesRecovered;
     private final List<Future<?>> futures;
-    private final Map<UUID, AtomicInteger> invalidMutations;
+    private final ConcurrentMap<UUID, AtomicInteger> invalidMutations;
     private final AtomicInteger replayedCount;
     private final Map<UUID, ReplayPosition> cfPositions;
     private final ReplayPosition globalPosition;
-    private final Checksum checksum;
-    private byte[] buffer;
+    private final ReplayFilter replayFilter;
+    private final ExecutorService[] appliers;
 
     public CommitLogReplayer()
     {
         this.keyspacesRecovered = new NonBlockingHashSet<Keyspace>();
         this.futures = new ArrayList<Future<?>>();
-        this.buffer = new byte[4096];
-        this.invalidMutations = new HashMap<UUID, AtomicInteger>();
+        this.invalidMutations = new ConcurrentHashMap<UUID, AtomicInteger>();
         // count the number of replayed mutation. We don't really care about atomicity, but we need it to be a reference.
         this.replayedCount = new AtomicInteger();
-        this.checksum = new PureJavaCrc32();
+        this.replayFilter = ReplayFilter.create();
+
+        // single-threaded, so that each one applies its mutations in order
+        appliers = new ExecutorService[DatabaseDescriptor.getConcurrentWriters()];
+        for (int i = 0; i < appliers.length; i++)
+            appliers[i] = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplay:" + i, 1);
 
         // compute per-CF and global replay positions
         cfPositions = new HashMap<UUID, ReplayPosition>();
@@ -93,8 +107,37 @@ public class CommitLogReplayer
 
     public void recover(File[] clogs) throws IOException
     {
-        for (final File file : clogs)
-            recover(file);
+        if (REPLAY_READERS <= 1)
+        {
+            for (final File file : clogs)
+                recover(file);
+            return;
+        }
+
+        ExecutorService readers = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayReader", REPLAY_READERS);
+        try
+        {
+            // read ahead at most REPLAY_READERS segments, to bound the memory used by their mutations
+            Deque<Future<List<ReplayedMutation>>> reads = new ArrayDeque<Future<List<ReplayedMutation>>>();
+            for (final File file : clogs)
+            {
+                reads.add(readers.submit(new Callable<List<ReplayedMutation>>()
+                {
+                    public List<ReplayedMutation> call() throws IOException
+                    {
+                        return read(file);
+                    }
+                }));
+                if (reads.size() > REPLAY_READERS)
+                    replay(FBUtilities.waitOnFuture(reads.poll()));
+            }
+            while (!reads.isEmpty())
+                replay(FBUtilities.waitOnFuture(reads.poll()));
+        }
+        finally
+        {
+            readers.shutdownNow();
+        }
     }
 
     public int blockForWrites()
@@ -102,8 +145,15 @@ public class CommitLogReplayer
         for (Map.Entry<UUID, AtomicInteger> entry : invalidMutations.entrySet())
             logger.info(String.format("Skipped %d mutations from unknown (probably removed) CF with id %s", entry.getValue().intValue(), entry.getKey()));
 
-        // wait for all the writes to finish on the mutation stage
-        FBUtilities.waitOnFutures(futures);
+        // wait for all the writes to finish on the replay threads
+        try
+        {
+            FBUtilities.waitOnFutures(futures);
+        }
+        finally
+        {
+            shutdown();
+        }
         logger.debug("Finished waiting on mutations from recovery");
 
         // flush replayed keyspaces
@@ -178,16 +228,39 @@ public class CommitLogReplayer
 
     public void recover(File file) throws IOException
     {
-        final ReplayFilter replayFilter = ReplayFilter.create();
+        replay(read(file));
+    }
 
+    /**
+     * Reads and deserializes the mutations of a segment that may need to be replayed.
+     */
+    private List<ReplayedMutation> read(File file) throws IOException
+    {
         logger.info("Replaying " + file.getPath());
+        List<ReplayedMutation> mutations = new ArrayList<ReplayedMutation>();
+        Checksum checksum = new PureJavaCrc32();
+        byte[] buffer = new byte[4096];
+
         CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
-        final long segment = desc.id;
         int version = desc.getMessagingVersion();
-        RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
+        FileDataInput reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
         try
         {
-            assert reader.length() <= Integer.MAX_VALUE;
+            assert file.length() <= Integer.MAX_VALUE;
+            if (desc.hasHeader())
+            {
+                // the header is authoritative, as restored archives may have been renamed
+                CommitLogDescriptor header = CommitLogDescriptor.readHeader(reader);
+                if (header == null)
+                {
+                    logger.warn("Skipping {}, which doesn't start with a valid commit log header", file);
+                    return mutations;
+                }
+                desc = header;
+            }
+            long segment = desc.id;
+
+            // skip fully flushed segments before going through (or decompressing) their content
             int replayPosition;
             if (globalPosition.segment < segment)
             {
@@ -200,12 +273,18 @@ public class CommitLogReplayer
             else
             {
                 logger.debug("skipping replay of fully-flushed {}", file);
-                return;
+                return mutations;
+            }
+
+            if (desc.compression != null)
+            {
+                FileUtils.closeQuietly(reader);
+                reader = CompressedCommitLogSegment.uncompress(file, desc);
             }
 
             if (logger.isDebugEnabled())
                 logger.debug("Replaying " + file + " starting at " + replayPosition);
-            reader.seek(replayPosition);
+            reader.seek(Math.max(replayPosition, desc.headerSize()));
 
             /* read the logs populate RowMutation and apply */
             while (!reader.isEOF())
@@ -281,11 +360,11 @@ public class CommitLogReplayer
                     AtomicInteger i = invalidMutations.get(ex.cfId);
                     if (i == null)
                     {
-                        i = new AtomicInteger(1);
-                        invalidMutations.put(ex.cfId, i);
+                        AtomicInteger previous = invalidMutations.putIfAbsent(ex.cfId, i = new AtomicInteger());
+                        if (previous != null)
+                            i = previous;
                     }
-                    else
-                        i.incrementAndGet();
+                    i.incrementAndGet();
                     continue;
                 }
                 catch (Throwable t)
@@ -310,62 +389,85 @@ public class CommitLogReplayer
                     logger.debug(String.format("replaying mutation for %s.%s: %s", rm.getKeyspaceName(), ByteBufferUtil.bytesToHex(rm.key()), "{" + StringUtils.join(rm.getColumnFamilies().iterator(), ", ")
                             + "}"));
 
-                final long entryLocation = reader.getFilePointer();
-                Runnable runnable = new WrappedRunnable()
+                mutations.add(new ReplayedMutation(rm, segment, reader.getFilePointer()));
+            }
+        }
+        finally
+        {
+            FileUtils.closeQuietly(reader);
+            logger.info("Finished reading " + file);
+        }
+        return mutations;
+    }
+
+    private void replay(List<ReplayedMutation> mutations)
+    {
+        for (ReplayedMutation mutation : mutations)
+        {
+            final RowMutation rm = mutation.rm;
+            final long segment = mutation.segment;
+            final long entryLocation = mutation.entryLocation;
+            Runnable runnable = new WrappedRunnable()
+            {
+                public void runMayThrow() throws IOException
                 {
-                    public void runMayThrow() throws IOException
+                    if (Schema.instance.getKSMetaData(rm.getKeyspaceName()) == null)
+                        return;
+                    if (pointInTimeExceeded(rm))
+                        return;
+
+                    final Keyspace keyspace = Keyspace.open(rm.getKeyspaceName());
+
+                    // Rebuild the row mutation, omitting column families that
+                    //    a) the user has requested that we ignore,
+                    //    b) have already been flushed,
+                    // or c) are part of a cf that was dropped.
+                    // Keep in mind that the cf.name() is suspect. do every thing based on the cfid instead.
+                    RowMutation newRm = null;
+                    for (ColumnFamily columnFamily : replayFilter.filter(rm))
                     {
-                        if (Schema.instance.getKSMetaData(rm.getKeyspaceName()) == null)
-                            return;
-                        if (pointInTimeExceeded(rm))
-                            return;
-
-                        final Keyspace keyspace = Keyspace.open(rm.getKeyspaceName());
-
-                        // Rebuild the row mutation, omitting column families that
-                        //    a) the user has requested that we ignore,
-                        //    b) have already been flushed,
-                        // or c) are part of a cf that was dropped.
-                        // Keep in mind that the cf.name() is suspect. do every thing based on the cfid instead.
-                        RowMutation newRm = null;
-                        for (ColumnFamily columnFamily : replayFilter.filter(rm))
-                        {
-                            if (Schema.instance.getCF(columnFamily.id()) == null)
-                                continue; // dropped
-
-                            ReplayPosition rp = cfPositions.get(columnFamily.id());
-
-                            // replay if current segment is newer than last flushed one or,
-                            // if it is the last known segment, if we are after the replay position
-                            if (segment > rp.segment || (segment == rp.segment && entryLocation > rp.position))
-                            {
-                                if (newRm == null)
-                                    newRm = new RowMutation(rm.getKeyspaceName(), rm.key());
-                                newRm.add(columnFamily);
-                                replayedCount.incrementAndGet();
-                            }
-                        }
-                        if (newRm != null)
+                        if (Schema.instance.getCF(columnFamily.id()) == null)
+                            continue; // dropped
+
+                        ReplayPosition rp = cfPositions.get(columnFamily.id());
+
+                        // replay if current segment is newer than last flushed one or,
+                        // if it is the last known segment, if we are after the replay position
+                        if (segment > rp.segment || (segment == rp.segment && entryLocation > rp.position))
                         {
-                            assert !newRm.isEmpty();
-                            Keyspace.open(newRm.getKeyspaceName()).apply(newRm, false);
-                            keyspacesRecovered.add(keyspace);
+                            if (newRm == null)
+                                newRm = new RowMutation(rm.getKeyspaceName(), rm.key());
+                            newRm.add(columnFamily);
+                            replayedCount.incrementAndGet();
                         }
                     }
-                };
-                futures.add(StageManager.getStage(Stage.MUTATION).submit(runnable));
-                if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
-                {
-                    FBUtilities.waitOnFutures(futures);
-                    futures.clear();
+                    if (newRm != null)
+                    {
+                        assert !newRm.isEmpty();
+                        Keyspace.open(newRm.getKeyspaceName()).apply(newRm, false);
+                        keyspacesRecovered.add(keyspace);
+                    }
                 }
+            };
+            // the mutations of a partition always go to the same thread, so they are applied in order
+            ExecutorService applier = appliers[Math.abs(rm.key().hashCode() % appliers.length)];
+            futures.add(applier.submit(runnable));
+            if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
+            {
+                FBUtilities.waitOnFutures(futures);
+                futures.clear();
             }
         }
-        finally
-        {
-            FileUtils.closeQuietly(reader);
-            logger.info("Finished reading " + file);
-        }
+    }
+
+    /**
+     * Stops the threads applying the mutations, once they are done with those submitted so far. Called by
+     * blockForWrites(), and to be called if the replay fails before getting to it.
+     */
+    public void shutdown()
+    {
+        for (ExecutorService applier : appliers)
+            applier.shutdown();
     }
 
     protected boolean pointInTimeExceeded(RowMutation frm)
@@ -380,6 +482,20 @@ public class CommitLogReplayer
         return false;
     }
 
+    private static class ReplayedMutation
+    {
+        private final RowMutation rm;
+        private final long segment;
+        private final long entryLocation;
+
+        private ReplayedMutation(RowMutation rm, long segment, long entryLocation)
+        {
+            this.rm = rm;
+            this.segment = segment;
+            this.entryLocation = entryLocation;
+        }
+    }
+
     private ColumnFamily getCFToRecover(String cfName, Collection<ColumnFamily> cfs)
     {
         for (ColumnFamily cf : cfs)
@@ -17,16 +17,17 @@
  */
 package org.apache.cassandra.db.commitlog;
 
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.Checksum;
 
@@ -39,16 +40,24 @@ import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.RowMutation;
 import org.apache.cassandra.io.FSWriteError;
-import org.apache.cassandra.io.util.ByteBufferOutputStream;
-import org.apache.cassandra.io.util.ChecksummedOutputStream;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.PureJavaCrc32;
 
 /*
  * A single commit log file on disk. Manages creation of the file and writing row mutations to disk,
  * as well as tracking the last mutation position of any "dirty" CFs covered by the segment file. Segment
  * files are initially allocated to a fixed size and can grow to accomidate a larger value if necessary.
+ *
+ * Space for each mutation is reserved with a CAS on the allocation position, so several threads can write
+ * to a segment concurrently (see ConcurrentCommitLogService). In that case there is no end of segment marker
+ * after each entry, as it could overwrite the beginning of a concurrent write: segments must be zero-filled,
+ * so the unwritten part reads as an end of segment marker.
+ *
+ * Segments of the current version start with a header (see CommitLogDescriptor.writeHeader()), and their
+ * positions, including ReplayPositions, account for it. This class writes to a memory-mapped file, see
+ * CompressedCommitLogSegment for the compressed format.
  */
 public class CommitLogSegment
 {
@@ -58,21 +67,24 @@ public class CommitLogSegment
     private final static AtomicInteger nextId = new AtomicInteger(1);
 
     // The commit log entry overhead in bytes (int: length + long: head checksum + long: tail checksum)
-    static final int ENTRY_OVERHEAD_SIZE = 4 + 8 + 8;
+    public static final int ENTRY_OVERHEAD_SIZE = 4 + 8 + 8;
 
     // cache which cf is dirty in this segment to avoid having to lookup all ReplayPositions to decide if we can delete this segment
-    private final HashMap<UUID, Integer> cfLastWrite = new HashMap<UUID, Integer>();
+    private final ConcurrentMap<UUID, Integer> cfLastWrite = new ConcurrentHashMap<UUID, Integer>();
 
     public final long id;
 
     private final File logFile;
-    private final RandomAccessFile logFileAccessor;
-
-    private boolean needsSync = false;
-
-    private final MappedByteBuffer buffer;
-    private final Checksum checksum;
-    private final DataOutputStream bufferStream;
+    protected final RandomAccessFile logFileAccessor;
+
+    // the content of the segment, only null once a compressed segment has been sealed (see sync(int))
+    protected ByteBuffer buffer;
+    private final int capacity = DatabaseDescriptor.getCommitLogSegmentSize();
+    private final AtomicInteger allocatePosition = new AtomicInteger();
+    // everything written before this position is on disk
+    private volatile int syncedPosition;
+    // set once the segment is no longer the active one
+    private volatile boolean finished;
     private boolean closed;
 
     public final CommitLogDescriptor descriptor;
@@ -82,7 +94,8 @@ public class CommitLogSegment
      */
     public static CommitLogSegment freshSegment()
     {
-        return new CommitLogSegment(null);
+        String compression = DatabaseDescriptor.getCommitLogCompression();
+        return compression == null ? new CommitLogSegment(null) : new CompressedCommitLogSegment(compression);
     }
 
     public static long getNextId()
@@ -95,9 +108,20 @@ public class CommitLogSegment
      * @param filePath  if not null, recycles the existing file by renaming it and truncating it to CommitLog.SEGMENT_SIZE.
      */
     CommitLogSegment(String filePath)
+    {
+        this(filePath, null);
+    }
+
+    /**
+     * Constructs a new segment file.
+     *
+     * @param filePath  see above, must be null for compressed segments.
+     * @param compression  the class of the ICompressor of the segment, null for a memory-mapped one.
+     */
+    protected CommitLogSegment(String filePath, String compression)
     {
         id = getNextId();
-        descriptor = new CommitLogDescriptor(id);
+        descriptor = new CommitLogDescriptor(id, compression);
         logFile = new File(DatabaseDescriptor.getCommitLogLocation(), descriptor.fileName());
         boolean isCreating = true;
 
@@ -122,16 +146,24 @@ public class CommitLogSegment
             if (isCreating)
                 logger.debug("Creating new commit log segment {}", logFile.getPath());
 
-            // Map the segment, extending or truncating it to the standard segment size
-            logFileAccessor.setLength(DatabaseDescriptor.getCommitLogSegmentSize());
+            if (compression == null)
+            {
+                // Map the segment, extending or truncating it to the standard segment size
+                logFileAccessor.setLength(DatabaseDescriptor.getCommitLogSegmentSize());
+                buffer = logFileAccessor.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DatabaseDescriptor.getCommitLogSegmentSize());
+            }
+            else
+            {
+                // compressed segments are written as they are synced, see CompressedCommitLogSegment
+                assert filePath == null;
+                buffer = ByteBuffer.allocate(DatabaseDescriptor.getCommitLogSegmentSize());
+            }
 
-            buffer = logFileAccessor.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, DatabaseDescriptor.getCommitLogSegmentSize());
-            checksum = new PureJavaCrc32();
-            bufferStream = new DataOutputStream(new ChecksummedOutputStream(new ByteBufferOutputStream(buffer), checksum));
+            CommitLogDescriptor.writeHeader(buffer, descriptor);
             buffer.putInt(CommitLog.END_OF_SEGMENT_MARKER);
             buffer.position(0);
-
-            needsSync = true;
+            allocatePosition.set(descriptor.headerSize());
+            syncedPosition = descriptor.headerSize();
         }
         catch (IOException e)
         {
@@ -157,14 +189,13 @@ public class CommitLogSegment
      */
     public CommitLogSegment recycle()
     {
-        // writes an end-of-segment marker at the very beginning of the file and closes it
-        buffer.position(0);
-        buffer.putInt(CommitLog.END_OF_SEGMENT_MARKER);
-        buffer.position(0);
+        assert buffer instanceof MappedByteBuffer;
+        // writes an end-of-segment marker right after the header and closes it
+        buffer.putInt(descriptor.headerSize(), CommitLog.END_OF_SEGMENT_MARKER);
 
         try
         {
-            sync();
+            flush(0, buffer.capacity());
         }
         catch (FSWriteError e)
         {
@@ -182,13 +213,31 @@ public class CommitLogSegment
      */
     public boolean hasCapacityFor(long size)
     {
-        return size <= buffer.remaining();
+        return size <= capacity - allocatePosition.get();
+    }
+
+    /**
+     * Reserves size bytes of this segment for a write.
+     *
+     * @return the position of the reserved space, or -1 if there isn't enough room left
+     */
+    public int allocate(int size)
+    {
+        while (true)
+        {
+            int position = allocatePosition.get();
+            int next = position + size;
+            if (next > capacity)
+                return -1;
+            if (allocatePosition.compareAndSet(position, next))
+                return position;
+        }
     }
 
     /**
      * mark all of the column families we're modifying as dirty at this position
      */
-    private void markDirty(RowMutation rowMutation, ReplayPosition repPos)
+    private void markDirty(RowMutation rowMutation, int position)
     {
         for (ColumnFamily columnFamily : rowMutation.getColumnFamilies())
         {
@@ -201,70 +250,139 @@ public class CommitLogSegment
             }
             else
             {
-                markCFDirty(cfm.cfId, repPos.position);
+                markCFDirty(cfm.cfId, position);
             }
         }
     }
 
    /**
      * Appends a row mutation onto the commit log.  Requres that hasCapacityFor has already been checked.
+     * Only for a single writer.
      *
      * @param   mutation   the mutation to append to the commit log.
      * @return  the position of the appended mutation
      */
     public ReplayPosition write(RowMutation mutation) throws IOException
+    {
+        int length = mutation.serializedBuffer(MessagingService.current_version).length;
+        int position = allocate(length + ENTRY_OVERHEAD_SIZE);
+        assert position >= 0;
+        write(mutation, length, position);
+
+        int end = position + length + ENTRY_OVERHEAD_SIZE;
+        if (capacity - end >= CommitLog.END_OF_SEGMENT_MARKER_SIZE)
+            buffer.putInt(end, CommitLog.END_OF_SEGMENT_MARKER);
+
+        return new ReplayPosition(id, position);
+    }
+
+    /**
+     * Writes a row mutation in the space reserved by allocate(), which may be done concurrently with other writes.
+     *
+     * @param   mutation   the mutation to append to the commit log.
+     * @param   length     the serialized size of the mutation
+     * @param   position   the position returned by allocate(length + ENTRY_OVERHEAD_SIZE)
+     */
+    public void write(RowMutation mutation, int length, int position) throws IOException
     {
         assert !closed;
-        ReplayPosition repPos = getContext();
-        markDirty(mutation, repPos);
+        markDirty(mutation, position);
 
-        checksum.reset();
+        byte[] serialized = mutation.serializedBuffer(MessagingService.current_version);
+        assert serialized.length == length;
+
+        ByteBuffer out = buffer.duplicate();
+        out.position(position);
+        out.limit(position + length + ENTRY_OVERHEAD_SIZE);
+        Checksum checksum = new PureJavaCrc32();
 
         // checksummed length
-        int length = (int) RowMutation.serializer.serializedSize(mutation, MessagingService.current_version);
-        bufferStream.writeInt(length);
-        buffer.putLong(checksum.getValue());
+        out.putInt(length);
+        FBUtilities.updateChecksumInt(checksum, length);
+        out.putLong(checksum.getValue());
 
         // checksummed mutation
-        RowMutation.serializer.serialize(mutation, bufferStream, MessagingService.current_version);
-        buffer.putLong(checksum.getValue());
+        out.put(serialized);
+        checksum.update(serialized, 0, length);
+        out.putLong(checksum.getValue());
+    }
+
+    /**
+     * Forces a disk flush for this segment file. All the writes to it must be complete.
+     */
+    public synchronized void sync()
+    {
+        sync(position());
+    }
+
+    /**
+     * Forces a disk flush for this segment file, on behalf of the writes ending before position, which must be
+     * complete.
+     */
+    public synchronized void sync(int position)
+    {
+        if (closed)
+            return;
 
-        if (buffer.remaining() >= 4)
+        if (position > syncedPosition)
         {
-            // writes end of segment marker and rewinds back to position where it starts
-            buffer.putInt(CommitLog.END_OF_SEGMENT_MARKER);
-            buffer.position(buffer.position() - CommitLog.END_OF_SEGMENT_MARKER_SIZE);
+            flush(syncedPosition, position);
+            syncedPosition = position;
         }
 
-        needsSync = true;
-        return repPos;
+        // Once a finished segment is synced, seal it by allocating what remains, as long as no write did so
+        // in the meantime. Compressed segments can then free their buffer.
+        if (finished && syncedPosition < capacity && allocatePosition.compareAndSet(syncedPosition, capacity))
+        {
+            syncedPosition = capacity;
+            sealed();
+        }
     }
 
     /**
-     * Forces a disk flush for this segment file.
+     * Writes the content of the segment between start and end to disk, syncing it.
      */
-    public void sync()
+    protected void flush(int start, int end)
     {
-        if (needsSync)
+        try
         {
-            try
-            {
-                buffer.force();
-            }
-            catch (Exception e) // MappedByteBuffer.force() does not declare IOException but can actually throw it
-            {
-                throw new FSWriteError(e, getPath());
-            }
-            needsSync = false;
+            ((MappedByteBuffer) buffer).force();
+        }
+        catch (Exception e) // MappedByteBuffer.force() does not declare IOException but can actually throw it
+        {
+            throw new FSWriteError(e, getPath());
         }
     }
 
+    /**
+     * Called once the segment is synced and can't be written to anymore.
+     */
+    protected void sealed()
+    {
+    }
+
+    /**
+     * Marks the segment as no longer being the active one, so it can be sealed once synced.
+     */
+    public void finish()
+    {
+        finished = true;
+    }
+
+    /**
+     * @return the position before which everything has been flushed to disk by sync(int)
+     */
+    public int getSyncedPosition()
+    {
+        return syncedPosition;
+    }
+
     /**
      * @return the current ReplayPosition for this log segment
      */
     public ReplayPosition getContext()
     {
-        return new ReplayPosition(id, buffer.position());
+        return new ReplayPosition(id, allocatePosition.get());
     }
 
     /**
@@ -286,14 +404,23 @@ public class CommitLogSegment
     /**
      * Close the segment file.
      */
-    public void close()
+    public synchronized void close()
     {
         if (closed)
             return;
 
+        // flush what was written and not synced yet, and count it all as synced: nothing is written to a closed
+        // segment, and the writes waiting for a sync of it (see ConcurrentCommitLogService) must not wait forever
+        int position = allocatePosition.get();
+        if (buffer != null && position > syncedPosition)
+            flush(syncedPosition, Math.min(position, capacity));
+        syncedPosition = capacity;
+
         try
         {
-            FileUtils.clean(buffer);
+            if (buffer instanceof MappedByteBuffer)
+                FileUtils.clean((MappedByteBuffer) buffer);
+            buffer = null;
             logFileAccessor.close();
             closed = true;
         }
@@ -311,7 +438,13 @@ public class CommitLogSegment
      */
     private void markCFDirty(UUID cfId, Integer position)
     {
-        cfLastWrite.put(cfId, position);
+        // concurrent writes may not come in position order, so only move forward
+        while (true)
+        {
+            Integer lastWritten = cfLastWrite.putIfAbsent(cfId, position);
+            if (lastWritten == null || lastWritten >= position || cfLastWrite.replace(cfId, lastWritten, position))
+                return;
+        }
     }
 
     /**
@@ -328,7 +461,8 @@ public class CommitLogSegment
 
         if (lastWritten != null && (!contains(context) || lastWritten < context.position))
         {
-            cfLastWrite.remove(cfId);
+            // don't remove a newer write
+            cfLastWrite.remove(cfId, lastWritten);
         }
     }
 
@@ -379,7 +513,7 @@ public class CommitLogSegment
 
     public int position()
     {
-        return buffer.position();
+        return allocatePosition.get();
     }
 
 
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.compress.CompressionParameters;
+import org.apache.cassandra.io.compress.ICompressor;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FileDataInput;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.io.util.MappedFileDataInput;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.PureJavaCrc32;
+
+/**
+ * A commit log segment compressed with the ICompressor set by commitlog_compression.
+ *
+ * Mutations are written to an in-memory buffer exactly as for regular segments, so positions still refer to the
+ * uncompressed content. Syncing compresses what was written since the previous sync and appends it to the file,
+ * after the uncompressed header, as frames of at most CompressionParameters.DEFAULT_CHUNK_LENGTH uncompressed bytes:
+ *
+ *   [uncompressed length][compressed length][CRC32 of both lengths and of the compressed bytes][compressed bytes]
+ *
+ * Since the file is only appended to, compressed segments are never recycled. Their buffer is freed once they
+ * have been synced for the last time.
+ */
+public class CompressedCommitLogSegment extends CommitLogSegment
+{
+    private static final int FRAME_HEADER_SIZE = 12;
+    private static final int FRAME_LENGTH = CompressionParameters.DEFAULT_CHUNK_LENGTH;
+
+    private final ICompressor compressor;
+    private final ICompressor.WrappedArray compressed;
+    private final Checksum checksum = new PureJavaCrc32();
+    private long filePosition;
+
+    CompressedCommitLogSegment(String compression)
+    {
+        super(null, compression);
+        compressor = descriptor.getCompressor();
+        compressed = new ICompressor.WrappedArray(new byte[FRAME_HEADER_SIZE + compressor.initialCompressedBufferLength(FRAME_LENGTH)]);
+
+        // the header is the only part of the file that isn't compressed
+        int headerSize = descriptor.headerSize();
+        try
+        {
+            logFileAccessor.getChannel().write(ByteBuffer.wrap(buffer.array(), 0, headerSize), 0);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, getPath());
+        }
+        filePosition = headerSize;
+    }
+
+    @Override
+    protected void flush(int start, int end)
+    {
+        try
+        {
+            for (int frameStart = start; frameStart < end; frameStart += FRAME_LENGTH)
+            {
+                int length = Math.min(FRAME_LENGTH, end - frameStart);
+                int compressedLength = compressor.compress(buffer.array(), frameStart, length, compressed, FRAME_HEADER_SIZE);
+
+                checksum.reset();
+                FBUtilities.updateChecksumInt(checksum, length);
+                FBUtilities.updateChecksumInt(checksum, compressedLength);
+                checksum.update(compressed.buffer, FRAME_HEADER_SIZE, compressedLength);
+
+                ByteBuffer frame = ByteBuffer.wrap(compressed.buffer, 0, FRAME_HEADER_SIZE + compressedLength);
+                frame.putInt(0, length);
+                frame.putInt(4, compressedLength);
+                frame.putInt(8, (int) checksum.getValue());
+                while (frame.hasRemaining())
+                    filePosition += logFileAccessor.getChannel().write(frame, filePosition);
+            }
+            logFileAccessor.getChannel().force(false);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, getPath());
+        }
+    }
+
+    @Override
+    protected void sealed()
+    {
+        // nothing can be written to the segment anymore, so only its file matters
+        buffer = null;
+    }
+
+    /**
+     * Decompresses a segment written by this class.
+     *
+     * @return the uncompressed content of the segment, positioned right after its header, up to the last valid frame
+     */
+    public static FileDataInput uncompress(File file, CommitLogDescriptor descriptor) throws IOException
+    {
+        ICompressor compressor = descriptor.getCompressor();
+        int headerSize = descriptor.headerSize();
+        DataOutputBuffer uncompressed = new DataOutputBuffer(FRAME_LENGTH);
+        byte[] input = new byte[0];
+        byte[] output = new byte[FRAME_LENGTH];
+        Checksum checksum = new PureJavaCrc32();
+
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try
+        {
+            in.seek(headerSize);
+            while (true)
+            {
+                int length;
+                int compressedLength;
+                try
+                {
+                    length = in.readInt();
+                    compressedLength = in.readInt();
+                    // a frame that wasn't (fully) synced, or garbage
+                    if (length <= 0 || length > FRAME_LENGTH || compressedLength < 0 || compressedLength > in.length() - in.getFilePointer())
+                        break;
+
+                    int claimedChecksum = in.readInt();
+                    if (compressedLength > input.length)
+                        input = new byte[compressedLength];
+                    in.readFully(input, 0, compressedLength);
+
+                    checksum.reset();
+                    FBUtilities.updateChecksumInt(checksum, length);
+                    FBUtilities.updateChecksumInt(checksum, compressedLength);
+                    checksum.update(input, 0, compressedLength);
+                    if (claimedChecksum != (int) checksum.getValue())
+                        break;
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+
+                if (compressor.uncompress(input, 0, compressedLength, output, 0) != length)
+                    break;
+                uncompressed.write(output, 0, length);
+            }
+        }
+        finally
+        {
+            FileUtils.closeQuietly(in);
+        }
+
+        ByteBuffer content = ByteBuffer.wrap(uncompressed.getData(), 0, uncompressed.getLength()).slice();
+        return new UncompressedSegmentInput(content, file.getPath(), headerSize);
+    }
+
+    /**
+     * The uncompressed content of a segment, which CommitLogReplayer reads mutations from with readFully: that is
+     * fine here since, unlike the mapped files of sstables, the content is a plain heap buffer.
+     */
+    private static class UncompressedSegmentInput extends MappedFileDataInput
+    {
+        private UncompressedSegmentInput(ByteBuffer content, String path, int headerSize)
+        {
+            super(content, path, headerSize, 0);
+        }
+
+        @Override
+        public void readFully(byte[] buffer, int offset, int count) throws IOException
+        {
+            if (count > bytesRemaining())
+                throw new EOFException();
+            readBytes(count).get(buffer, offset, count);
+        }
+    }
+}
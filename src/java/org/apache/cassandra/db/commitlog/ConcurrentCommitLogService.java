@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.RowMutation;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.WrappedRunnable;
+
+/**
+ * Lets the threads adding mutations write them to the commit log themselves, instead of handing them to a single
+ * COMMIT-LOG-WRITER thread (see commitlog_concurrent_writes).
+ *
+ * Each writer reserves the space for its mutation in the active segment with a CAS (CommitLogSegment.allocate()) and
+ * serializes it there, concurrently with the others. A COMMIT-LOG-SYNCER thread forces the segments to disk: in
+ * batch mode, as soon as a writer waits for it, so that all the writes done in the meantime are synced together
+ * (group commit); in periodic mode, every commitlog_sync_period_in_ms.
+ *
+ * Before syncing, the syncer must wait for the writes to the part of the segments it syncs. Writers register in the
+ * current WriteGroup for the duration of their write, and the syncer replaces that group by a new one and waits for
+ * the old one to drain, so new writes never delay a sync.
+ *
+ * Other tasks (getContext(), discarding segments) run on the calling thread, one at a time.
+ */
+class ConcurrentCommitLogService implements ICommitLogExecutorService
+{
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrentCommitLogService.class);
+
+    private final CommitLog commitLog;
+    private final boolean waitForSync;
+
+    private volatile WriteGroup currentGroup = new WriteGroup();
+
+    // guards syncRequested and signals both the sync requests and their completion
+    private final Object syncMonitor = new Object();
+    private boolean syncRequested = false;
+
+    private final AtomicLong completedWrites = new AtomicLong();
+    private final AtomicInteger waitingWrites = new AtomicInteger();
+
+    private final Thread syncThread;
+    private volatile boolean run = true;
+
+    public ConcurrentCommitLogService(CommitLog commitLog)
+    {
+        this.commitLog = commitLog;
+        this.waitForSync = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch;
+
+        Runnable runnable = new WrappedRunnable()
+        {
+            public void runMayThrow() throws Exception
+            {
+                while (run)
+                {
+                    if (waitForSync)
+                    {
+                        synchronized (syncMonitor)
+                        {
+                            if (!syncRequested)
+                                syncMonitor.wait(100);
+                            syncRequested = false;
+                        }
+                    }
+                    else
+                    {
+                        Uninterruptibles.sleepUninterruptibly(DatabaseDescriptor.getCommitLogSyncPeriod(), TimeUnit.MILLISECONDS);
+                    }
+                    sync();
+                }
+                sync();
+            }
+        };
+        syncThread = new Thread(runnable, "COMMIT-LOG-SYNCER");
+        syncThread.start();
+    }
+
+    public void add(CommitLog.LogRecordAdder adder)
+    {
+        RowMutation mutation = adder.rowMutation;
+        int length = mutation.serializedBuffer(MessagingService.current_version).length;
+        int totalSize = length + CommitLogSegment.ENTRY_OVERHEAD_SIZE;
+        if (totalSize > commitLog.getMaxEntrySize())
+        {
+            logger.warn("Skipping commitlog append of extremely large mutation ({} bytes)", totalSize);
+            return;
+        }
+
+        CommitLogSegment segment;
+        int position;
+        while (true)
+        {
+            WriteGroup group = startWrite();
+            segment = commitLog.activeSegment;
+            position = segment.allocate(totalSize);
+            if (position >= 0)
+            {
+                try
+                {
+                    segment.write(mutation, length, position);
+                }
+                catch (IOException e)
+                {
+                    throw new FSWriteError(e, segment.getPath());
+                }
+                finally
+                {
+                    group.finish();
+                }
+                break;
+            }
+
+            // the segment is full, move to the next one (we must not be part of a group while doing so, see advanceSegment())
+            group.finish();
+            commitLog.advanceSegment(segment);
+        }
+        completedWrites.incrementAndGet();
+
+        if (waitForSync)
+            waitForSync(segment, position + totalSize);
+    }
+
+    private WriteGroup startWrite()
+    {
+        while (true)
+        {
+            WriteGroup group = currentGroup;
+            group.start();
+            // if the group has been replaced in the meantime, it may have been waited for already
+            if (group == currentGroup)
+                return group;
+            group.finish();
+        }
+    }
+
+    private void waitForSync(CommitLogSegment segment, int position)
+    {
+        if (segment.getSyncedPosition() >= position)
+            return;
+
+        waitingWrites.incrementAndGet();
+        try
+        {
+            synchronized (syncMonitor)
+            {
+                syncRequested = true;
+                syncMonitor.notifyAll();
+                // a segment closed in the meantime counts as synced, and the sync thread notifies us after each of
+                // its passes, which in batch mode come at least every 100ms
+                while (segment.getSyncedPosition() < position)
+                    syncMonitor.wait();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+        finally
+        {
+            waitingWrites.decrementAndGet();
+        }
+    }
+
+    /**
+     * Forces the segments to disk up to where they were allocated when called, and wakes up the writes waiting for it.
+     */
+    private void sync()
+    {
+        List<CommitLogSegment> segments = new ArrayList<CommitLogSegment>();
+        List<Integer> positions = new ArrayList<Integer>();
+        synchronized (this)
+        {
+            // the positions must be read before waiting, so that all the writes allocated before them are waited for
+            for (CommitLogSegment segment : commitLog.allocator.getActiveSegments())
+            {
+                segments.add(segment);
+                positions.add(segment.position());
+            }
+            awaitWritesInProgress();
+        }
+
+        for (int i = 0; i < segments.size(); i++)
+            segments.get(i).sync(positions.get(i));
+
+        synchronized (syncMonitor)
+        {
+            syncMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for all the writes that have started so far to complete. Must not be called by a writer.
+     */
+    public synchronized void awaitWritesInProgress()
+    {
+        WriteGroup previous = currentGroup;
+        currentGroup = new WriteGroup();
+        previous.await();
+    }
+
+    /**
+     * Runs the task right away, on the calling thread.
+     */
+    public synchronized <T> Future<T> submit(Callable<T> task)
+    {
+        FutureTask<T> future = new FutureTask<T>(task);
+        future.run();
+        return future;
+    }
+
+    public long getCompletedTasks()
+    {
+        return completedWrites.get();
+    }
+
+    /**
+     * @return the number of writes waiting for a sync
+     */
+    public long getPendingTasks()
+    {
+        return waitingWrites.get();
+    }
+
+    public void shutdown()
+    {
+        run = false;
+    }
+
+    public void awaitTermination() throws InterruptedException
+    {
+        syncThread.join();
+    }
+
+    /**
+     * The writes started since the previous sync.
+     */
+    private static class WriteGroup
+    {
+        private final AtomicInteger running = new AtomicInteger();
+
+        void start()
+        {
+            running.incrementAndGet();
+        }
+
+        void finish()
+        {
+            running.decrementAndGet();
+        }
+
+        /**
+         * Waits for the running writes, which are just copies to memory, so we don't bother with anything better than
+         * polling. Only call once the group has been replaced, so no other write starts.
+         */
+        void await()
+        {
+            while (running.get() > 0)
+                LockSupport.parkNanos(10000);
+        }
+    }
+}
@@ -43,6 +43,12 @@ public interface ICommitLogExecutorService
      */
     public void add(CommitLog.LogRecordAdder adder);
 
+    /**
+     * Blocks until the adders started so far are complete. Tasks run by submit() can rely on this to know that no
+     * write is still in progress in a segment that is no longer the active one.
+     */
+    public void awaitWritesInProgress();
+
     /** shuts down the CommitLogExecutor in an orderly fashion */
     public void shutdown();
 
@@ -45,9 +45,10 @@ public abstract class AbstractCompactedRow implements Closeable
      *
      * write() may change internal state; it is NOT valid to call write() or update() a second time.
      *
+     * @param columnIndexSize the size of the column index blocks of the sstable being written
      * @return index information for the written row, or null if the compaction resulted in only expired tombstones.
      */
-    public abstract RowIndexEntry write(long currentPosition, DataOutput out) throws IOException;
+    public abstract RowIndexEntry write(long currentPosition, DataOutput out, int columnIndexSize) throws IOException;
 
     /**
      * update @param digest with the data bytes of the row (not including row key or row size).
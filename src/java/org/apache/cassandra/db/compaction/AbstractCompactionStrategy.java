@@ -200,8 +200,19 @@ public abstract class AbstractCompactionStrategy
      */
     public void replaceFlushed(Memtable memtable, SSTableReader sstable)
     {
-        cfs.getDataTracker().replaceFlushed(memtable, sstable);
-        if (sstable != null)
+        replaceFlushed(memtable, sstable == null ? Collections.<SSTableReader>emptyList() : Collections.singletonList(sstable));
+    }
+
+    /**
+     * Handle a memtable flushed to several sstables (see memtable_flush_splits).
+     *
+     * @param memtable the flushed memtable
+     * @param sstables the written sstables. can be empty if the memtable was clean.
+     */
+    public void replaceFlushed(Memtable memtable, Collection<SSTableReader> sstables)
+    {
+        cfs.getDataTracker().replaceFlushed(memtable, sstables);
+        if (!sstables.isEmpty())
             CompactionManager.instance.submitBackground(cfs);
     }
 
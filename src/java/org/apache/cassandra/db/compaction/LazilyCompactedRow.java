@@ -28,6 +28,7 @@ import java.util.List;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Iterators;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.columniterator.OnDiskAtomIterator;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
@@ -90,14 +91,14 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements Iterable
             emptyColumnFamily.purgeTombstones(controller.gcBefore);
     }
 
-    public RowIndexEntry write(long currentPosition, DataOutput out) throws IOException
+    public RowIndexEntry write(long currentPosition, DataOutput out, int columnIndexSize) throws IOException
     {
         assert !closed;
 
         ColumnIndex columnsIndex;
         try
         {
-            indexBuilder = new ColumnIndex.Builder(emptyColumnFamily, key.key, out);
+            indexBuilder = new ColumnIndex.Builder(emptyColumnFamily, key.key, out, columnIndexSize);
             columnsIndex = indexBuilder.buildForCompaction(iterator());
 
             // if there aren't any columns or tombstones, return null
@@ -148,8 +149,9 @@ public class LazilyCompactedRow extends AbstractCompactedRow implements Iterable
             throw new AssertionError(e);
         }
 
-        // initialize indexBuilder for the benefit of its tombstoneTracker, used by our reducing iterator
-        indexBuilder = new ColumnIndex.Builder(emptyColumnFamily, key.key, out);
+        // initialize indexBuilder for the benefit of its tombstoneTracker, used by our reducing iterator (the index
+        // itself is not written, so its block size doesn't matter)
+        indexBuilder = new ColumnIndex.Builder(emptyColumnFamily, key.key, out, DatabaseDescriptor.getColumnIndexSize());
         Iterator<OnDiskAtom> iter = iterator();
         while (iter.hasNext())
             iter.next().updateDigest(digest);
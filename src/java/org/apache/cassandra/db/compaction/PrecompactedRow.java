@@ -158,12 +158,12 @@ public class PrecompactedRow extends AbstractCompactedRow
         filter.collectReducedColumns(returnCF, reduced, CompactionManager.NO_GC, System.currentTimeMillis());
     }
 
-    public RowIndexEntry write(long currentPosition, DataOutput out) throws IOException
+    public RowIndexEntry write(long currentPosition, DataOutput out, int columnIndexSize) throws IOException
     {
         if (compactedCf == null)
             return null;
 
-        return SSTableWriter.rawAppend(compactedCf, currentPosition, key, out);
+        return SSTableWriter.rawAppend(compactedCf, currentPosition, key, out, columnIndexSize);
     }
 
     public void update(MessageDigest digest)
@@ -20,6 +20,7 @@ package org.apache.cassandra.db.filter;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -48,6 +49,7 @@ public abstract class ExtendedFilter
     public final DataRange dataRange;
     private final int maxResults;
     private final boolean countCQL3Rows;
+    private final Set<ByteBuffer> queriedColumns;
     private volatile int currentLimit;
 
     public static ExtendedFilter create(ColumnFamilyStore cfs,
@@ -56,14 +58,25 @@ public abstract class ExtendedFilter
                                         int maxResults,
                                         boolean countCQL3Rows,
                                         long timestamp)
+    {
+        return create(cfs, dataRange, clause, maxResults, countCQL3Rows, null, timestamp);
+    }
+
+    public static ExtendedFilter create(ColumnFamilyStore cfs,
+                                        DataRange dataRange,
+                                        List<IndexExpression> clause,
+                                        int maxResults,
+                                        boolean countCQL3Rows,
+                                        Set<ByteBuffer> queriedColumns,
+                                        long timestamp)
     {
         if (clause == null || clause.isEmpty())
-            return new EmptyClauseFilter(cfs, dataRange, maxResults, countCQL3Rows, timestamp);
+            return new EmptyClauseFilter(cfs, dataRange, maxResults, countCQL3Rows, queriedColumns, timestamp);
 
-        return new WithClauses(cfs, dataRange, clause, maxResults, countCQL3Rows, timestamp);
+        return new WithClauses(cfs, dataRange, clause, maxResults, countCQL3Rows, queriedColumns, timestamp);
     }
 
-    protected ExtendedFilter(ColumnFamilyStore cfs, DataRange dataRange, int maxResults, boolean countCQL3Rows, long timestamp)
+    protected ExtendedFilter(ColumnFamilyStore cfs, DataRange dataRange, int maxResults, boolean countCQL3Rows, Set<ByteBuffer> queriedColumns, long timestamp)
     {
         assert cfs != null;
         assert dataRange != null;
@@ -72,6 +85,7 @@ public abstract class ExtendedFilter
         this.maxResults = maxResults;
         this.timestamp = timestamp;
         this.countCQL3Rows = countCQL3Rows;
+        this.queriedColumns = queriedColumns;
         this.currentLimit = maxResults;
         if (countCQL3Rows)
             dataRange.updateColumnsLimit(maxResults);
@@ -92,6 +106,18 @@ public abstract class ExtendedFilter
         return currentLimit;
     }
 
+    /**
+     * The names of the CQL3 regular columns selected by the query, if known. Searchers can use this to answer
+     * a query without reading the base rows when their index holds all of those columns (and the ones of the
+     * clause).
+     *
+     * @return the queried columns, or null if they are unknown, in which case all columns must be assumed queried.
+     */
+    public Set<ByteBuffer> queriedColumns()
+    {
+        return queriedColumns;
+    }
+
     public IDiskAtomFilter columnFilter(ByteBuffer key)
     {
         return dataRange.columnFilter(key);
@@ -162,9 +188,10 @@ public abstract class ExtendedFilter
                            List<IndexExpression> clause,
                            int maxResults,
                            boolean countCQL3Rows,
+                           Set<ByteBuffer> queriedColumns,
                            long timestamp)
         {
-            super(cfs, range, maxResults, countCQL3Rows, timestamp);
+            super(cfs, range, maxResults, countCQL3Rows, queriedColumns, timestamp);
             assert clause != null;
             this.clause = clause;
             this.optimizedFilter = computeOptimizedFilter();
@@ -344,9 +371,9 @@ public abstract class ExtendedFilter
 
     private static class EmptyClauseFilter extends ExtendedFilter
     {
-        public EmptyClauseFilter(ColumnFamilyStore cfs, DataRange range, int maxResults, boolean countCQL3Rows, long timestamp)
+        public EmptyClauseFilter(ColumnFamilyStore cfs, DataRange range, int maxResults, boolean countCQL3Rows, Set<ByteBuffer> queriedColumns, long timestamp)
         {
-            super(cfs, range, maxResults, countCQL3Rows, timestamp);
+            super(cfs, range, maxResults, countCQL3Rows, queriedColumns, timestamp);
         }
 
         public List<IndexExpression> getClause()
@@ -74,6 +74,11 @@ public interface IDiskAtomFilter
     public void updateColumnsLimit(int newLimit);
 
     public int getLiveCount(ColumnFamily cf, long now);
+
+    /**
+     * @return whether cf, which holds the head of a partition, has all the data this filter could select in it
+     */
+    public boolean isFullyCoveredBy(ColumnFamily cf, long now);
     public ColumnCounter columnCounter(AbstractType<?> comparator, long now);
 
     public IDiskAtomFilter cloneShallow();
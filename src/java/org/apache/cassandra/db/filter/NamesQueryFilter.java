@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -147,11 +148,39 @@ public class NamesQueryFilter implements IDiskAtomFilter
         return false;
     }
 
-    public boolean shouldInclude(SSTableReader sstable)
+    public boolean isFullyCoveredBy(ColumnFamily cf, long now)
     {
+        // the head of a partition holds all the columns that don't sort after its last one
+        if (cf.getColumnCount() == 0)
+            return columns.isEmpty();
+
+        ByteBuffer last = cf.getReverseSortedColumns().iterator().next().name();
+        for (ByteBuffer column : columns)
+        {
+            if (cf.getComparator().compare(column, last) > 0)
+                return false;
+        }
         return true;
     }
 
+    public boolean shouldInclude(SSTableReader sstable)
+    {
+        List<ByteBuffer> minColumnNames = sstable.getSSTableMetadata().minColumnNames;
+        List<ByteBuffer> maxColumnNames = sstable.getSSTableMetadata().maxColumnNames;
+        assert minColumnNames.size() == maxColumnNames.size();
+        AbstractType<?> comparator = sstable.metadata.comparator;
+
+        if (minColumnNames.isEmpty() || maxColumnNames.isEmpty())
+            return true;
+
+        for (ByteBuffer column : columns)
+        {
+            if (comparator.intersects(minColumnNames, maxColumnNames, column))
+                return true;
+        }
+        return false;
+    }
+
     public boolean countCQL3Rows()
     {
         return countCQL3Rows;
@@ -219,6 +219,26 @@ public class SliceQueryFilter implements IDiskAtomFilter
         return columnCounter(cf.getComparator(), now).countAll(cf).live();
     }
 
+    public boolean isFullyCoveredBy(ColumnFamily cf, long now)
+    {
+        // the head of a partition covers a query for the head of the partition if it has as many live cells (or
+        // rows) as asked for, and any other query if the slices don't go past its last column
+        if (isHeadFilter() && count <= getLiveCount(cf, now))
+            return true;
+
+        ByteBuffer high = reversed ? start() : finish();
+        if (high.remaining() == 0 || cf.getColumnCount() == 0)
+            return false;
+
+        ByteBuffer last = cf.getReverseSortedColumns().iterator().next().name();
+        return cf.getComparator().compare(high, last) <= 0;
+    }
+
+    private boolean isHeadFilter()
+    {
+        return !reversed && slices.length == 1 && slices[0].start.remaining() == 0;
+    }
+
     public ColumnCounter columnCounter(AbstractType<?> comparator, long now)
     {
         if (compositesToGroup < 0)
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.index;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import com.google.common.base.Throwables;
+
+import org.apache.cassandra.concurrent.JMXEnabledThreadPoolExecutor;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamily;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.filter.QueryFilter;
+
+/**
+ * Reads the indexed rows of the next hits of an index query concurrently, so that a query hitting many random
+ * partitions is bounded by the I/O parallelism rather than by the sum of its seeks.
+ *
+ * Searchers call prefetch() for the upcoming hits and get() for the current one, which returns the hits in whatever
+ * order they are asked for, so the result order and limits are those of a sequential scan. At most
+ * cassandra.index_prefetch_size reads are in flight for a query (prefetchSize()).
+ *
+ * The reads run on a dedicated pool rather than on the READ stage, as the query itself runs on the latter and
+ * could otherwise wait on reads queued behind it. In any case, get() runs the read itself if no thread
+ * started it yet.
+ */
+public class IndexedRowPrefetcher
+{
+    private static final int PREFETCH_SIZE = Integer.getInteger("cassandra.index_prefetch_size", 16);
+
+    private static final JMXEnabledThreadPoolExecutor executor = new JMXEnabledThreadPoolExecutor(DatabaseDescriptor.getConcurrentReaders(),
+                                                                                                  StageManager.KEEPALIVE,
+                                                                                                  TimeUnit.SECONDS,
+                                                                                                  new LinkedBlockingQueue<Runnable>(),
+                                                                                                  new NamedThreadFactory("IndexPrefetch"),
+                                                                                                  "internal");
+
+    private final ColumnFamilyStore baseCfs;
+    private final Map<ByteBuffer, FutureTask<ColumnFamily>> pending = new HashMap<>();
+
+    public IndexedRowPrefetcher(ColumnFamilyStore baseCfs)
+    {
+        this.baseCfs = baseCfs;
+    }
+
+    /**
+     * @return the number of reads a query should have in flight, 0 or 1 meaning no prefetching.
+     */
+    public static int prefetchSize()
+    {
+        return PREFETCH_SIZE;
+    }
+
+    /**
+     * @return the number of reads started and not consumed by get() yet.
+     */
+    public int pendingCount()
+    {
+        return pending.size();
+    }
+
+    public boolean isPending(ByteBuffer id)
+    {
+        return pending.containsKey(id);
+    }
+
+    /**
+     * Starts reading the provided filter in the background.
+     *
+     * @param id identifies the read for get(), typically the name of the index entry
+     * @param filter the read of the indexed row. It must not be used by anything else until get() returns.
+     */
+    public void prefetch(ByteBuffer id, final QueryFilter filter)
+    {
+        if (pending.containsKey(id))
+            return;
+
+        FutureTask<ColumnFamily> task = new FutureTask<>(new Callable<ColumnFamily>()
+        {
+            public ColumnFamily call()
+            {
+                return baseCfs.getColumnFamily(filter);
+            }
+        });
+        pending.put(id, task);
+        executor.execute(task);
+    }
+
+    /**
+     * Returns the result of the read started by prefetch() for id, or of the provided filter if none was started.
+     */
+    public ColumnFamily get(ByteBuffer id, QueryFilter filter)
+    {
+        FutureTask<ColumnFamily> task = pending.remove(id);
+        if (task == null)
+            return baseCfs.getColumnFamily(filter);
+
+        // a no-op if a prefetching thread already started the read
+        task.run();
+        try
+        {
+            return task.get();
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+        catch (ExecutionException e)
+        {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Abandons the reads not consumed yet, typically because the query has reached its limit.
+     */
+    public void cancel()
+    {
+        for (FutureTask<ColumnFamily> task : pending.values())
+            task.cancel(false);
+        pending.clear();
+    }
+}
@@ -20,15 +20,19 @@ package org.apache.cassandra.db.index;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
 
+import com.google.common.util.concurrent.Striped;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.filter.ExtendedFilter;
+import org.apache.cassandra.db.index.composites.CoveringCompositesIndex;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.sstable.ReducingKeyIterator;
 import org.apache.cassandra.io.sstable.SSTableReader;
@@ -55,6 +59,12 @@ public class SecondaryIndexManager
         public void updateRowLevelIndexes() {}
     };
 
+    /**
+     * Serializes the updates of a partition when it has covering indexes, since maintaining them requires
+     * reading the partition before applying the update.
+     */
+    private static final Striped<Lock> coveringIndexesLocks = Striped.lazyWeakLock(DatabaseDescriptor.getConcurrentWriters() * 128);
+
     /**
      * Organizes the indexes by column name
      */
@@ -416,6 +426,20 @@ public class SecondaryIndexManager
                 if (appliedRowLevelIndexes.add(index.getClass()))
                     ((PerRowSecondaryIndex)index).index(key, cf);
             }
+            else if (index instanceof CoveringCompositesIndex)
+            {
+                DecoratedKey dk = baseCfs.partitioner.decorateKey(key);
+                Lock lock = coveringIndexesLocks.get(dk);
+                lock.lock();
+                try
+                {
+                    ((CoveringCompositesIndex) index).index(dk, cf);
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
             else
             {
                 for (Column column : cf)
@@ -425,6 +449,36 @@ public class SecondaryIndexManager
         }
     }
 
+    /**
+     * Returns the lock to hold while applying an update to the provided partition, or null if the partition
+     * has no covering index and so doesn't need one.
+     */
+    public Lock coveringIndexesLock(DecoratedKey key)
+    {
+        for (SecondaryIndex index : indexesByColumn.values())
+        {
+            if (index instanceof CoveringCompositesIndex)
+                return coveringIndexesLocks.get(key);
+        }
+        return null;
+    }
+
+    /**
+     * Updates the covering indexes with the provided update, before it is applied to the memtable.
+     * The caller must hold the lock returned by coveringIndexesLock().
+     *
+     * @param key the row key
+     * @param cf the update
+     */
+    public void updateCoveringIndexes(DecoratedKey key, ColumnFamily cf)
+    {
+        for (SecondaryIndex index : indexesByColumn.values())
+        {
+            if (index instanceof CoveringCompositesIndex)
+                ((CoveringCompositesIndex) index).update(key, cf);
+        }
+    }
+
     /**
      * Delete all columns from all indexes for this row.  For when cleanup rips a row out entirely.
      *
@@ -461,7 +515,7 @@ public class SecondaryIndexManager
      * This helper acts as a closure around the indexManager
      * and updated cf data to ensure that down in
      * Memtable's ColumnFamily implementation, the index
-     * can get updated. Note: only a CF backed by AtomicSortedColumns implements
+     * can get updated. Note: only a CF backed by AtomicColumns implements
      * this behaviour fully, other types simply ignore the index updater.
      */
     public Updater updaterFor(DecoratedKey key, ColumnFamily cf)
@@ -596,7 +650,7 @@ public class SecondaryIndexManager
                 return;
 
             for (SecondaryIndex index : indexFor(column.name()))
-                if (index instanceof PerColumnSecondaryIndex)
+                if (isLazilyUpdated(index))
                     ((PerColumnSecondaryIndex) index).insert(key.key, column);
         }
 
@@ -607,7 +661,7 @@ public class SecondaryIndexManager
             
             for (SecondaryIndex index : indexFor(column.name()))
             {
-                if (index instanceof PerColumnSecondaryIndex)
+                if (isLazilyUpdated(index))
                 {
                     // insert the new value before removing the old one, so we never have a period
                     // where the row is invisible to both queries (the opposite seems preferable); see CASSANDRA-5540
@@ -625,10 +679,16 @@ public class SecondaryIndexManager
                 return;
 
             for (SecondaryIndex index : indexFor(column.name()))
-                if (index instanceof PerColumnSecondaryIndex)
+                if (isLazilyUpdated(index))
                    ((PerColumnSecondaryIndex) index).delete(key.key, column);
         }
 
+        // covering indexes are updated as a whole before the memtable, see updateCoveringIndexes()
+        private boolean isLazilyUpdated(SecondaryIndex index)
+        {
+            return index instanceof PerColumnSecondaryIndex && !(index instanceof CoveringCompositesIndex);
+        }
+
         public void updateRowLevelIndexes()
         {
             for (SecondaryIndex index : rowLevelIndexMap.values())
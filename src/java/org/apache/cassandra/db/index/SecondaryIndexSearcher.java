@@ -29,6 +29,13 @@ import org.apache.cassandra.utils.FBUtilities;
 
 public abstract class SecondaryIndexSearcher
 {
+    /**
+     * Whether queries selecting only primary keys, and so answered from index entries, check that the indexed rows
+     * are still live. Without it, such queries are as fast as an index scan but may return rows that have been
+     * deleted or updated since they were indexed, until the stale entries are cleaned up.
+     */
+    public static final boolean VERIFY_INDEX_ONLY_KEYS = Boolean.parseBoolean(System.getProperty("cassandra.verify_index_only_keys", "true"));
+
     protected final SecondaryIndexManager indexManager;
     protected final Set<ByteBuffer> columns;
     protected final ColumnFamilyStore baseCfs;
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.index;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.DebuggableScheduledThreadPoolExecutor;
+import org.apache.cassandra.db.*;
+
+/**
+ * Removes the stale index entries found by index queries.
+ *
+ * Searchers used to delete such entries inline, which means one synchronous single-cell write into the index
+ * memtable for each stale entry, in the middle of the query. Instead, stale entries are queued here and a background
+ * task coalesces them into one mutation per index row, at a rate limited to cassandra.index_cleanup_rate entries
+ * per second.
+ *
+ * Cleanup is best-effort: if too many entries are waiting, new ones are dropped. This is harmless since the queries
+ * will find them again and stale entries are ignored anyway.
+ */
+public class StaleIndexEntryCleaner
+{
+    private static final Logger logger = LoggerFactory.getLogger(StaleIndexEntryCleaner.class);
+
+    private static final int MAX_PENDING_ENTRIES = Integer.getInteger("cassandra.index_cleanup_max_pending", 100000);
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final long CLEANUP_INTERVAL_MILLIS = 100;
+
+    // after the settings above, which the constructor uses
+    public static final StaleIndexEntryCleaner instance = new StaleIndexEntryCleaner();
+
+    private final BlockingQueue<StaleEntry> pending = new LinkedBlockingQueue<StaleEntry>(MAX_PENDING_ENTRIES);
+    private final RateLimiter limiter = RateLimiter.create(Integer.getInteger("cassandra.index_cleanup_rate", 10000));
+    private final DebuggableScheduledThreadPoolExecutor executor = new DebuggableScheduledThreadPoolExecutor("StaleIndexEntryCleaner");
+
+    private StaleIndexEntryCleaner()
+    {
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            public void run()
+            {
+                cleanup();
+            }
+        }, CLEANUP_INTERVAL_MILLIS, CLEANUP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the removal of a stale index entry.
+     *
+     * @param indexCfs the index the entry belongs to
+     * @param indexKey the row of the index holding the entry
+     * @param name the name of the entry
+     * @param timestamp the timestamp of the entry, used for the tombstone so that a newer entry is not removed
+     */
+    public void submit(ColumnFamilyStore indexCfs, DecoratedKey indexKey, ByteBuffer name, long timestamp)
+    {
+        indexCfs.metric.staleIndexEntriesFound.inc();
+        if (!pending.offer(new StaleEntry(indexCfs, indexKey, name, timestamp)) && logger.isTraceEnabled())
+            logger.trace("Too many stale index entries waiting for cleanup, skipping {} in {}", indexKey, indexCfs.name);
+    }
+
+    /**
+     * Removes all the entries queued so far. Synchronized so that, when this returns, the entries drained by a
+     * concurrent run of the background task have been removed too.
+     */
+    public synchronized void cleanup()
+    {
+        List<StaleEntry> batch = new ArrayList<StaleEntry>(MAX_BATCH_SIZE);
+        while (pending.drainTo(batch, MAX_BATCH_SIZE) > 0)
+        {
+            apply(batch);
+            batch.clear();
+        }
+    }
+
+    @VisibleForTesting
+    int pendingEntries()
+    {
+        return pending.size();
+    }
+
+    private void apply(List<StaleEntry> batch)
+    {
+        int localDeletionTime = (int) (System.currentTimeMillis() / 1000);
+        Map<ColumnFamilyStore, Map<DecoratedKey, ColumnFamily>> mutations = new HashMap<ColumnFamilyStore, Map<DecoratedKey, ColumnFamily>>();
+        for (StaleEntry entry : batch)
+        {
+            Map<DecoratedKey, ColumnFamily> rows = mutations.get(entry.indexCfs);
+            if (rows == null)
+            {
+                rows = new HashMap<DecoratedKey, ColumnFamily>();
+                mutations.put(entry.indexCfs, rows);
+            }
+
+            ColumnFamily cf = rows.get(entry.indexKey);
+            if (cf == null)
+            {
+                cf = TreeMapBackedSortedColumns.factory.create(entry.indexCfs.metadata);
+                rows.put(entry.indexKey, cf);
+            }
+            cf.addTombstone(entry.name, localDeletionTime, entry.timestamp);
+        }
+
+        for (Map.Entry<ColumnFamilyStore, Map<DecoratedKey, ColumnFamily>> mutation : mutations.entrySet())
+        {
+            ColumnFamilyStore indexCfs = mutation.getKey();
+            // the index may have been dropped in the meantime
+            if (!indexCfs.isValid())
+                continue;
+
+            for (Map.Entry<DecoratedKey, ColumnFamily> row : mutation.getValue().entrySet())
+            {
+                int count = row.getValue().getColumnCount();
+                limiter.acquire(count);
+                indexCfs.apply(row.getKey(), row.getValue(), SecondaryIndexManager.nullUpdater);
+                indexCfs.metric.staleIndexEntriesPurged.inc(count);
+            }
+            if (logger.isDebugEnabled())
+                logger.debug("removed stale entries from {} index rows of {}", mutation.getValue().size(), indexCfs.name);
+        }
+    }
+
+    private static class StaleEntry
+    {
+        private final ColumnFamilyStore indexCfs;
+        private final DecoratedKey indexKey;
+        private final ByteBuffer name;
+        private final long timestamp;
+
+        private StaleEntry(ColumnFamilyStore indexCfs, DecoratedKey indexKey, ByteBuffer name, long timestamp)
+        {
+            this.indexCfs = indexCfs;
+            this.indexKey = indexKey;
+            this.name = name;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -18,7 +18,9 @@
 package org.apache.cassandra.db.index.composites;
 
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -26,17 +28,29 @@ import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.cql3.ColumnNameBuilder;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.ExtendedFilter;
+import org.apache.cassandra.db.filter.IDiskAtomFilter;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
 import org.apache.cassandra.db.index.AbstractSimplePerColumnSecondaryIndex;
-import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.db.index.SecondaryIndexSearcher;
+import org.apache.cassandra.db.index.StaleIndexEntryCleaner;
 import org.apache.cassandra.db.marshal.*;
 import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.thrift.IndexExpression;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
 
 /**
  * Base class for secondary indexes where composites are involved.
  */
 public abstract class CompositesIndex extends AbstractSimplePerColumnSecondaryIndex
 {
+    /**
+     * The index option holding the JSON list of the columns included in a covering index
+     * (see CoveringCompositesIndex).
+     */
+    public static final String INCLUDE_OPTION_NAME = "include";
+
     private volatile CompositeType indexComparator;
 
     protected CompositeType getIndexComparator()
@@ -58,7 +72,9 @@ public abstract class CompositesIndex extends AbstractSimplePerColumnSecondaryIn
             case CLUSTERING_KEY:
                 return new CompositesIndexOnClusteringKey();
             case REGULAR:
-                return new CompositesIndexOnRegular();
+                return getIncludedColumns(cfDef).isEmpty()
+                     ? new CompositesIndexOnRegular()
+                     : new CoveringCompositesIndex();
             case PARTITION_KEY:
                 return new CompositesIndexOnPartitionKey();
             //case COMPACT_VALUE:
@@ -84,6 +100,18 @@ public abstract class CompositesIndex extends AbstractSimplePerColumnSecondaryIn
         throw new AssertionError();
     }
 
+    /**
+     * Returns the names of the columns included in the index on the provided column definition, an empty list
+     * if that index isn't a covering one.
+     */
+    public static List<String> getIncludedColumns(ColumnDefinition cfDef)
+    {
+        Map<String, String> options = cfDef.getIndexOptions();
+        if (options == null || !options.containsKey(INCLUDE_OPTION_NAME))
+            return Collections.emptyList();
+        return FBUtilities.fromJsonList(options.get(INCLUDE_OPTION_NAME));
+    }
+
     protected ByteBuffer makeIndexColumnName(ByteBuffer rowKey, Column column)
     {
         return makeIndexColumnNameBuilder(rowKey, column.name()).build();
@@ -95,15 +123,77 @@ public abstract class CompositesIndex extends AbstractSimplePerColumnSecondaryIn
 
     public abstract boolean isStale(IndexedEntry entry, ColumnFamily data, long now);
 
-    public void delete(IndexedEntry entry)
+    /**
+     * Returns true if the rows selected by the provided filter can be read from the entries of this index,
+     * without reading the indexed rows (see CoveringCompositesIndex).
+     */
+    public boolean canAnswerFromIndex(ExtendedFilter filter)
     {
-        int localDeletionTime = (int) (System.currentTimeMillis() / 1000);
-        ColumnFamily cfi = ArrayBackedSortedColumns.factory.create(indexCfs.metadata);
-        cfi.addTombstone(entry.indexEntry, localDeletionTime, entry.timestamp);
-        indexCfs.apply(entry.indexValue, cfi, SecondaryIndexManager.nullUpdater);
-        if (logger.isDebugEnabled())
-            logger.debug("removed index entry for cleaned-up value {}:{}", entry.indexValue, cfi);
+        return false;
+    }
 
+    /**
+     * Returns the data of the indexed CQL row, as stored in the provided index entry, or null if nothing of that
+     * row is live. Only supported if canAnswerFromIndex() is.
+     */
+    public ColumnFamily readFromIndex(IndexedEntry entry, Column indexEntry, long now)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns true if the provided filter only selects the primary key of the indexed CQL rows, and all its clauses
+     * can be checked against either that primary key or the value of the entry, so the matching rows can be built
+     * from the index entries (see makeKeysData()). Unless cassandra.verify_index_only_keys is false, the liveness of
+     * each row is still checked with a read of makeKeysFilter(), which is much cheaper than reading the whole row
+     * (see SecondaryIndexSearcher.VERIFY_INDEX_ONLY_KEYS).
+     */
+    public boolean canAnswerKeysFromIndex(ExtendedFilter filter)
+    {
+        Set<ByteBuffer> queried = filter.queriedColumns();
+        if (queried == null || !queried.isEmpty())
+            return false;
+
+        for (IndexExpression expression : filter.getClause())
+        {
+            ColumnDefinition def = baseCfs.metadata.getColumnDefinition(expression.column_name);
+            if (def == null || (def.type == ColumnDefinition.Type.REGULAR && !def.name.equals(columnDef.name)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the filter reading just enough of the indexed CQL row to tell if the provided entry is stale, or null
+     * if entries are trusted without any read. Only used if canAnswerKeysFromIndex() is true.
+     */
+    public IDiskAtomFilter makeKeysFilter(IndexedEntry entry)
+    {
+        if (!SecondaryIndexSearcher.VERIFY_INDEX_ONLY_KEYS)
+            return null;
+
+        // any live cell tells the row exists, and that's all isStale() checks
+        return new SliceQueryFilter(entry.indexedEntryStart(), entry.indexedEntryEnd(), false, 1);
+    }
+
+    /**
+     * Returns the data standing for the indexed CQL row of an entry when the row is not read at all, that is the row
+     * marker. Only used if canAnswerKeysFromIndex() is true.
+     */
+    public ColumnFamily makeKeysData(IndexedEntry entry)
+    {
+        ColumnFamily data = ArrayBackedSortedColumns.factory.create(baseCfs.metadata);
+        ByteBuffer marker = entry.indexedEntryNameBuilder.copy().add(ByteBufferUtil.EMPTY_BYTE_BUFFER).build();
+        data.addColumn(new Column(marker, ByteBufferUtil.EMPTY_BYTE_BUFFER, entry.timestamp));
+        return data;
+    }
+
+    /**
+     * Removes a stale entry found by a query. This is done in the background, see StaleIndexEntryCleaner.
+     */
+    public void delete(IndexedEntry entry)
+    {
+        StaleIndexEntryCleaner.instance.submit(indexCfs, entry.indexValue, entry.indexEntry, entry.timestamp);
     }
 
     protected AbstractType getExpressionComparator()
@@ -131,6 +221,9 @@ public abstract class CompositesIndex extends AbstractSimplePerColumnSecondaryIn
         // so skip it silently for backward compatibility sake.
         options.remove("prefix_size");
 
+        if (options.remove(INCLUDE_OPTION_NAME) != null && columnDef.type != ColumnDefinition.Type.REGULAR)
+            throw new ConfigurationException("Included columns are only supported by indexes on regular columns");
+
         if (!options.isEmpty())
             throw new ConfigurationException("Unknown options provided for COMPOSITES index: " + options.keySet());
     }
@@ -25,6 +25,8 @@ import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.cql3.ColumnNameBuilder;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.IDiskAtomFilter;
+import org.apache.cassandra.db.filter.NamesQueryFilter;
 import org.apache.cassandra.db.index.SecondaryIndex;
 import org.apache.cassandra.db.marshal.*;
 
@@ -91,6 +93,32 @@ public class CompositesIndexOnRegular extends CompositesIndex
             && comp.compare(components[columnDef.componentIndex], columnDef.name) == 0;
     }
 
+    /**
+     * Reads the indexed cell only, as isStale() needs nothing else.
+     */
+    @Override
+    public IDiskAtomFilter makeKeysFilter(IndexedEntry entry)
+    {
+        if (super.makeKeysFilter(entry) == null)
+            return null;
+
+        ByteBuffer name = entry.indexedEntryNameBuilder.copy().add(columnDef.name).build();
+        return new NamesQueryFilter(name);
+    }
+
+    /**
+     * Returns the indexed cell rather than the row marker, as the row may have none and the query may have other
+     * clauses on the indexed column.
+     */
+    @Override
+    public ColumnFamily makeKeysData(IndexedEntry entry)
+    {
+        ColumnFamily data = ArrayBackedSortedColumns.factory.create(baseCfs.metadata);
+        ByteBuffer name = entry.indexedEntryNameBuilder.copy().add(columnDef.name).build();
+        data.addColumn(new Column(name, entry.indexValue.key, entry.timestamp));
+        return data;
+    }
+
     public boolean isStale(IndexedEntry entry, ColumnFamily data, long now)
     {
         ByteBuffer bb = entry.indexedEntryNameBuilder.copy().add(columnDef.name).build();
@@ -30,6 +30,7 @@ import org.apache.cassandra.db.filter.ExtendedFilter;
 import org.apache.cassandra.db.filter.IDiskAtomFilter;
 import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.db.filter.SliceQueryFilter;
+import org.apache.cassandra.db.index.IndexedRowPrefetcher;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.db.index.SecondaryIndexSearcher;
 import org.apache.cassandra.db.marshal.CompositeType;
@@ -85,6 +86,16 @@ public class CompositesSearcher extends SecondaryIndexSearcher
         if (logger.isDebugEnabled())
             logger.debug("Most-selective indexed predicate is {}", index.expressionString(primary));
 
+        // If the index has everything the query needs, we don't have to read the indexed rows
+        final boolean readFromIndex = index.canAnswerFromIndex(filter);
+        if (readFromIndex)
+            logger.debug("Answering query from the entries of index {}", index.getIndexName());
+
+        // Or if we only need the primary keys of the indexed rows, in which case we at most check they are still live
+        final boolean readKeysFromIndex = !readFromIndex && index.canAnswerKeysFromIndex(filter);
+        if (readKeysFromIndex)
+            logger.debug("Answering query for primary keys only from the entries of index {}", index.getIndexName());
+
         /*
          * XXX: If the range requested is a token range, we'll have to start at the beginning (and stop at the end) of
          * the indexed row unfortunately (which will be inefficient), because we have not way to intuit the smallest
@@ -113,6 +124,11 @@ public class CompositesSearcher extends SecondaryIndexSearcher
             // We shouldn't fetch only 1 row as this provides buggy paging in case the first row doesn't satisfy all clauses
             private int rowsPerQuery = Math.max(Math.min(filter.maxRows(), filter.maxColumns() / meanColumns), 2);
 
+            // Reads the rows of the next hits while we process the current one (not needed if we read the index only)
+            private final IndexedRowPrefetcher prefetcher = readFromIndex || IndexedRowPrefetcher.prefetchSize() <= 1
+                                                          ? null
+                                                          : new IndexedRowPrefetcher(baseCfs);
+
             public boolean needsFiltering()
             {
                 return false;
@@ -235,21 +251,42 @@ public class CompositesSearcher extends SecondaryIndexSearcher
 
                         logger.trace("Adding index hit to current row for {}", indexComparator.getString(column.name()));
 
-                        // We always query the whole CQL3 row. In the case where the original filter was a name filter this might be
-                        // slightly wasteful, but this probably doesn't matter in practice and it simplify things.
-                        SliceQueryFilter dataFilter = new SliceQueryFilter(start,
-                                                                           entry.indexedEntryEnd(),
-                                                                           false,
-                                                                           Integer.MAX_VALUE,
-                                                                           baseCfs.metadata.clusteringKeyColumns().size());
-                        ColumnFamily newData = baseCfs.getColumnFamily(new QueryFilter(dk, baseCfs.name, dataFilter, filter.timestamp));
-                        if (newData == null || index.isStale(entry, newData, filter.timestamp))
+                        ColumnFamily newData;
+                        QueryFilter dataQuery = readFromIndex ? null : makeDataQuery(dk, entry);
+                        int counted;
+                        if (readFromIndex)
                         {
-                            index.delete(entry);
-                            continue;
+                            newData = index.readFromIndex(entry, column, filter.timestamp);
+                            if (newData == null)
+                                continue;
+                            counted = 1;
+                        }
+                        else if (dataQuery == null)
+                        {
+                            // a keys only query trusting the index
+                            newData = index.makeKeysData(entry);
+                            counted = 1;
                         }
+                        else
+                        {
+                            if (prefetcher == null)
+                            {
+                                newData = baseCfs.getColumnFamily(dataQuery);
+                            }
+                            else
+                            {
+                                prefetchNextHits();
+                                newData = prefetcher.get(column.name(), dataQuery);
+                            }
+                            if (newData == null || index.isStale(entry, newData, filter.timestamp))
+                            {
+                                index.delete(entry);
+                                continue;
+                            }
 
-                        assert newData != null : "An entry with not data should have been considered stale";
+                            assert newData != null : "An entry with not data should have been considered stale";
+                            counted = readKeysFromIndex ? 1 : dataQuery.filter.getLiveCount(newData, filter.timestamp);
+                        }
 
                         if (!filter.isSatisfiedBy(dk, newData, entry.indexedEntryNameBuilder))
                             continue;
@@ -257,12 +294,63 @@ public class CompositesSearcher extends SecondaryIndexSearcher
                         if (data == null)
                             data = TreeMapBackedSortedColumns.factory.create(baseCfs.metadata);
                         data.resolve(newData);
-                        columnsCount += dataFilter.lastCounted();
+                        columnsCount += counted;
                     }
                  }
              }
 
-            public void close() throws IOException {}
+            /*
+             * Returns the read of the indexed row of an entry, or null if the entry is enough to answer a keys only
+             * query.
+             */
+            private QueryFilter makeDataQuery(DecoratedKey dk, CompositesIndex.IndexedEntry entry)
+            {
+                IDiskAtomFilter dataFilter = readKeysFromIndex ? index.makeKeysFilter(entry) : makeDataFilter(entry);
+                return dataFilter == null ? null : new QueryFilter(dk, baseCfs.name, dataFilter, filter.timestamp);
+            }
+
+            // We always query the whole CQL3 row. In the case where the original filter was a name filter this might be
+            // slightly wasteful, but this probably doesn't matter in practice and it simplify things.
+            private SliceQueryFilter makeDataFilter(CompositesIndex.IndexedEntry entry)
+            {
+                return new SliceQueryFilter(entry.indexedEntryStart(),
+                                            entry.indexedEntryEnd(),
+                                            false,
+                                            Integer.MAX_VALUE,
+                                            baseCfs.metadata.clusteringKeyColumns().size());
+            }
+
+            /*
+             * Starts reading the rows of the index hits following the current one, skipping the ones that the loop above
+             * would skip. Since each hit is at least one CQL row, we never read ahead more hits than the remaining limit.
+             */
+            private void prefetchNextHits()
+            {
+                int toPrefetch = Math.min(IndexedRowPrefetcher.prefetchSize(), limit - columnsCount);
+                Iterator<Column> iter = indexColumns.iterator();
+                while (iter.hasNext() && prefetcher.pendingCount() < toPrefetch)
+                {
+                    Column column = iter.next();
+                    if (prefetcher.isPending(column.name()) || column.isMarkedForDelete(filter.timestamp))
+                        continue;
+
+                    CompositesIndex.IndexedEntry entry = index.decodeEntry(indexKey, column);
+                    DecoratedKey dk = baseCfs.partitioner.decorateKey(entry.indexedKey);
+                    if (!range.contains(dk) || !filter.columnFilter(dk.key).maySelectPrefix(baseComparator, entry.indexedEntryStart()))
+                        continue;
+
+                    QueryFilter dataQuery = makeDataQuery(dk, entry);
+                    if (dataQuery == null)
+                        return;
+                    prefetcher.prefetch(column.name(), dataQuery);
+                }
+            }
+
+            public void close() throws IOException
+            {
+                if (prefetcher != null)
+                    prefetcher.cancel();
+            }
         };
     }
 }
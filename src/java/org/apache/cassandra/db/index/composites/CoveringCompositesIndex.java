@@ -0,0 +1,463 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.index.composites;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.cql3.ColumnNameBuilder;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.*;
+import org.apache.cassandra.db.index.SecondaryIndexManager;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.thrift.IndexExpression;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * Index on a REGULAR column that also copies, into the value of each of its entries, the values of some other
+ * regular columns of the indexed CQL row (the columns declared by CREATE INDEX ... WITH include = [...]).
+ *
+ * Queries that only need the indexed column, the included columns and the primary key columns can then be
+ * answered from the index entries alone, without reading the base rows (see CompositesSearcher).
+ *
+ * For that to be correct, and contrarily to the other composites indexes, the entries of this index are never
+ * stale: every update to the base table reads the CQL rows it modifies (update(), called with the partition locked
+ * by SecondaryIndexManager.updateCoveringIndexes) to remove the entries that don't apply anymore and to rewrite
+ * the ones whose included values changed. Writes are thus more expensive in exchange for cheaper reads.
+ *
+ * The value of an entry is:
+ *   <timestamp><ttl><local expiration time> of the indexed cell, followed for each included column by
+ *   <flag>[<timestamp>[<ttl><local expiration time>]<length><value>]
+ * where flag is ABSENT if the column has no live value in the row, REGULAR or EXPIRING otherwise.
+ */
+public class CoveringCompositesIndex extends CompositesIndexOnRegular
+{
+    private static final byte ABSENT = 0;
+    private static final byte REGULAR = 1;
+    private static final byte EXPIRING = 2;
+
+    private List<ByteBuffer> includedColumns;
+
+    @Override
+    public void init()
+    {
+        super.init();
+        includedColumns = parseIncludedColumns();
+    }
+
+    private List<ByteBuffer> parseIncludedColumns()
+    {
+        List<ByteBuffer> names = new ArrayList<>();
+        for (String name : getIncludedColumns(columnDef))
+            names.add(ByteBufferUtil.bytes(name));
+        return names;
+    }
+
+    /**
+     * Returns true if the value of the provided CQL3 column is available in the entries of this index.
+     */
+    public boolean covers(ByteBuffer name)
+    {
+        return columnDef.name.equals(name) || includedColumns.contains(name);
+    }
+
+    @Override
+    public boolean canAnswerFromIndex(ExtendedFilter filter)
+    {
+        Set<ByteBuffer> queried = filter.queriedColumns();
+        if (queried == null)
+            return false;
+
+        for (ByteBuffer name : queried)
+        {
+            if (!covers(name))
+                return false;
+        }
+
+        for (IndexExpression expression : filter.getClause())
+        {
+            ColumnDefinition def = baseCfs.metadata.getColumnDefinition(expression.column_name);
+            if (def == null || (def.type == ColumnDefinition.Type.REGULAR && !covers(def.name)))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public ColumnFamily readFromIndex(IndexedEntry entry, Column indexEntry, long now)
+    {
+        ByteBuffer value = indexEntry.value().duplicate();
+        ColumnFamily data = TreeMapBackedSortedColumns.factory.create(baseCfs.metadata);
+
+        long timestamp = value.getLong();
+        int ttl = value.getInt();
+        int localExpirationTime = value.getInt();
+        // The row marker, so the CQL row exists even if none of its included columns has a value
+        data.addColumn(makeColumn(entry.indexedEntryNameBuilder.copy().add(ByteBufferUtil.EMPTY_BYTE_BUFFER).build(),
+                                  ByteBufferUtil.EMPTY_BYTE_BUFFER, timestamp, ttl, localExpirationTime));
+        data.addColumn(makeColumn(entry.indexedEntryNameBuilder.copy().add(columnDef.name).build(),
+                                  entry.indexValue.key, timestamp, ttl, localExpirationTime));
+
+        for (ByteBuffer name : includedColumns)
+        {
+            byte flag = value.get();
+            if (flag == ABSENT)
+                continue;
+
+            timestamp = value.getLong();
+            ttl = flag == EXPIRING ? value.getInt() : 0;
+            localExpirationTime = flag == EXPIRING ? value.getInt() : Integer.MAX_VALUE;
+            int length = value.getInt();
+            ByteBuffer included = value.duplicate();
+            included.limit(included.position() + length);
+            value.position(value.position() + length);
+            Column column = makeColumn(entry.indexedEntryNameBuilder.copy().add(name).build(), included, timestamp, ttl, localExpirationTime);
+            if (!column.isMarkedForDelete(now))
+                data.addColumn(column);
+        }
+
+        return data.hasOnlyTombstones(now) ? null : data;
+    }
+
+    private static Column makeColumn(ByteBuffer name, ByteBuffer value, long timestamp, int ttl, int localExpirationTime)
+    {
+        return ttl == 0
+             ? new Column(name, value, timestamp)
+             : new ExpiringColumn(name, value, timestamp, ttl, localExpirationTime);
+    }
+
+    /**
+     * Entries are maintained by update() which has the whole row, see SecondaryIndexManager.updateCoveringIndexes.
+     * Indexing a single column is thus done by reindexing its row.
+     */
+    @Override
+    public void insert(ByteBuffer rowKey, Column column)
+    {
+        DecoratedKey key = baseCfs.partitioner.decorateKey(rowKey);
+        SortedMap<ByteBuffer, ColumnNameBuilder> rows = newRowsMap();
+        addRow(rows, column.name());
+        update(key, rows, null);
+    }
+
+    @Override
+    public void update(ByteBuffer rowKey, Column column)
+    {
+        insert(rowKey, column);
+    }
+
+    /**
+     * Removes the entry for the provided column. This must only be called when the row the column belongs to is
+     * removed entirely from this node (i.e. by cleanup), as the column may still have the current value of the
+     * row otherwise.
+     */
+    @Override
+    public void delete(ByteBuffer rowKey, Column column)
+    {
+        // like the other composites indexes, at the timestamp of the column: an entry written later than it, because
+        // of an included value, outlives the tombstone, but it is never read as its row is outside the local ranges
+        deleteEntry(getIndexKeyFor(column.value()), makeIndexColumnName(rowKey, column), column.timestamp(), System.currentTimeMillis());
+    }
+
+    /**
+     * Indexes the CQL rows for which the provided page of a partition has a value of the indexed column. The rows
+     * are read again in full, so this doesn't depend on how the partition was paged.
+     */
+    public void index(DecoratedKey key, ColumnFamily page)
+    {
+        SortedMap<ByteBuffer, ColumnNameBuilder> rows = newRowsMap();
+        for (Column column : page)
+        {
+            if (indexes(column.name()))
+                addRow(rows, column.name());
+        }
+        update(key, rows, null);
+    }
+
+    /**
+     * Updates the entries for the CQL rows affected by the provided update, which must not have been applied yet.
+     */
+    public void update(DecoratedKey key, ColumnFamily update)
+    {
+        SortedMap<ByteBuffer, ColumnNameBuilder> rows = newRowsMap();
+        for (Column column : update)
+        {
+            if (isIndexedOrIncluded(column.name()))
+                addRow(rows, column.name());
+        }
+        update(key, rows, update);
+    }
+
+    private void update(DecoratedKey key, SortedMap<ByteBuffer, ColumnNameBuilder> rows, ColumnFamily update)
+    {
+        boolean hasDeletions = update != null && !update.deletionInfo().isLive();
+        if (rows.isEmpty() && !hasDeletions)
+            return;
+
+        long now = System.currentTimeMillis();
+        IDiskAtomFilter filter = hasDeletions ? makeSliceFilter(rows, update.deletionInfo()) : makeNamesFilter(rows);
+        ColumnFamily before = baseCfs.getColumnFamily(new QueryFilter(key, baseCfs.name, filter, now));
+
+        ColumnFamily after = TreeMapBackedSortedColumns.factory.create(baseCfs.metadata);
+        if (before == null)
+        {
+            before = after.cloneMeShallow();
+        }
+        else
+        {
+            after.resolve(before);
+            // Rows deleted by the update are only known from what they had before it
+            for (Column column : before)
+            {
+                if (isIndexedOrIncluded(column.name()))
+                    addRow(rows, column.name());
+            }
+        }
+        after.resolve(update);
+
+        for (ColumnNameBuilder row : rows.values())
+            updateEntry(key, row, before, after, now);
+    }
+
+    private void updateEntry(DecoratedKey key, ColumnNameBuilder row, ColumnFamily before, ColumnFamily after, long now)
+    {
+        ByteBuffer indexedName = row.copy().add(columnDef.name).build();
+        ByteBuffer entryName = makeIndexColumnNameBuilder(key.key, indexedName).build();
+        Column previous = liveColumn(before, indexedName, now);
+        Column current = liveColumn(after, indexedName, now);
+        // Entries are written, and removed, at the timestamp of the most recent write to the row they are made from,
+        // which can't be lower than that of the last write of the entry
+        long timestamp = rowTimestamp(row, after);
+
+        if (previous != null && (current == null || !previous.value().equals(current.value())))
+            deleteEntry(getIndexKeyFor(previous.value()), entryName, timestamp, now);
+
+        if (current == null)
+            return;
+
+        DecoratedKey indexKey = getIndexKeyFor(current.value());
+        ByteBuffer value = makeEntryValue(current, row, after, now);
+        Column existing = readEntry(indexKey, entryName, now);
+        if (existing != null && !existing.isMarkedForDelete(now) && existing.value().equals(value))
+            return;
+
+        ColumnFamily cfi = ArrayBackedSortedColumns.factory.create(indexCfs.metadata);
+        if (current instanceof ExpiringColumn)
+        {
+            ExpiringColumn ec = (ExpiringColumn)current;
+            cfi.addColumn(new ExpiringColumn(entryName, value, timestamp, ec.getTimeToLive(), ec.getLocalDeletionTime()));
+        }
+        else
+        {
+            cfi.addColumn(new Column(entryName, value, timestamp));
+        }
+        if (logger.isDebugEnabled())
+            logger.debug("applying covering index row {} in {}", indexCfs.metadata.getKeyValidator().getString(indexKey.key), cfi);
+        indexCfs.apply(indexKey, cfi, SecondaryIndexManager.nullUpdater);
+    }
+
+    private void deleteEntry(DecoratedKey indexKey, ByteBuffer entryName, long timestamp, long now)
+    {
+        Column existing = readEntry(indexKey, entryName, now);
+        if (existing == null || existing.isMarkedForDelete(now))
+            return;
+
+        ColumnFamily cfi = ArrayBackedSortedColumns.factory.create(indexCfs.metadata);
+        cfi.addTombstone(entryName, (int) (now / 1000), timestamp);
+        indexCfs.apply(indexKey, cfi, SecondaryIndexManager.nullUpdater);
+        if (logger.isDebugEnabled())
+            logger.debug("removed covering index entry for value {}:{}", indexKey, cfi);
+    }
+
+    private Column readEntry(DecoratedKey indexKey, ByteBuffer entryName, long now)
+    {
+        ColumnFamily cf = indexCfs.getColumnFamily(QueryFilter.getNamesFilter(indexKey, indexCfs.name, entryName, now));
+        return cf == null ? null : cf.getColumn(entryName);
+    }
+
+    private ByteBuffer makeEntryValue(Column indexed, ColumnNameBuilder row, ColumnFamily data, long now)
+    {
+        List<Column> included = new ArrayList<>(includedColumns.size());
+        int size = 8 + 4 + 4;
+        for (ByteBuffer name : includedColumns)
+        {
+            Column column = liveColumn(data, row.copy().add(name).build(), now);
+            included.add(column);
+            size += 1;
+            if (column != null)
+                size += 8 + (column instanceof ExpiringColumn ? 4 + 4 : 0) + 4 + column.value().remaining();
+        }
+
+        ByteBuffer value = ByteBuffer.allocate(size);
+        value.putLong(indexed.timestamp());
+        if (indexed instanceof ExpiringColumn)
+        {
+            value.putInt(((ExpiringColumn)indexed).getTimeToLive());
+            value.putInt(indexed.getLocalDeletionTime());
+        }
+        else
+        {
+            value.putInt(0);
+            value.putInt(Integer.MAX_VALUE);
+        }
+
+        for (Column column : included)
+        {
+            if (column == null)
+            {
+                value.put(ABSENT);
+                continue;
+            }
+
+            value.put(column instanceof ExpiringColumn ? EXPIRING : REGULAR);
+            value.putLong(column.timestamp());
+            if (column instanceof ExpiringColumn)
+            {
+                value.putInt(((ExpiringColumn)column).getTimeToLive());
+                value.putInt(column.getLocalDeletionTime());
+            }
+            value.putInt(column.value().remaining());
+            value.put(column.value().duplicate());
+        }
+        value.flip();
+        return value;
+    }
+
+    /**
+     * Returns the highest timestamp of the indexed and included cells of the row, tombstones included, and of the
+     * partition and range deletions covering them.
+     */
+    private long rowTimestamp(ColumnNameBuilder row, ColumnFamily data)
+    {
+        long timestamp = data.deletionInfo().getTopLevelDeletion().markedForDeleteAt;
+        timestamp = Math.max(timestamp, cellTimestamp(row.copy().add(columnDef.name).build(), data));
+        for (ByteBuffer name : includedColumns)
+            timestamp = Math.max(timestamp, cellTimestamp(row.copy().add(name).build(), data));
+        return timestamp;
+    }
+
+    private static long cellTimestamp(ByteBuffer name, ColumnFamily data)
+    {
+        long timestamp = Long.MIN_VALUE;
+        Column column = data.getColumn(name);
+        if (column != null)
+            timestamp = column.timestamp();
+        DeletionTime range = data.deletionInfo().rangeCovering(name);
+        if (range != null)
+            timestamp = Math.max(timestamp, range.markedForDeleteAt);
+        return timestamp;
+    }
+
+    private static Column liveColumn(ColumnFamily data, ByteBuffer name, long now)
+    {
+        Column column = data.getColumn(name);
+        return column == null || column.isMarkedForDelete(now) || data.deletionInfo().isDeleted(column) ? null : column;
+    }
+
+    private boolean isIndexedOrIncluded(ByteBuffer name)
+    {
+        ByteBuffer[] components = getBaseComparator().split(name);
+        return components.length > columnDef.componentIndex && covers(components[columnDef.componentIndex]);
+    }
+
+    private SortedMap<ByteBuffer, ColumnNameBuilder> newRowsMap()
+    {
+        return new TreeMap<>(baseCfs.getComparator());
+    }
+
+    private void addRow(SortedMap<ByteBuffer, ColumnNameBuilder> rows, ByteBuffer name)
+    {
+        ByteBuffer[] components = getBaseComparator().split(name);
+        CompositeType.Builder builder = getBaseComparator().builder();
+        for (int i = 0; i < columnDef.componentIndex; i++)
+            builder.add(components[i]);
+        ByteBuffer prefix = builder.build();
+        if (!rows.containsKey(prefix))
+            rows.put(prefix, builder);
+    }
+
+    private IDiskAtomFilter makeNamesFilter(SortedMap<ByteBuffer, ColumnNameBuilder> rows)
+    {
+        SortedSet<ByteBuffer> names = new TreeSet<>(baseCfs.getComparator());
+        for (ColumnNameBuilder row : rows.values())
+        {
+            names.add(row.copy().add(columnDef.name).build());
+            for (ByteBuffer name : includedColumns)
+                names.add(row.copy().add(name).build());
+        }
+        return new NamesQueryFilter(names);
+    }
+
+    /*
+     * When the update deletes rows we must also read the rows it deletes, which we only know through the ranges of
+     * the deletion. Note that a partition deletion requires reading the whole partition.
+     */
+    private IDiskAtomFilter makeSliceFilter(SortedMap<ByteBuffer, ColumnNameBuilder> rows, DeletionInfo deletion)
+    {
+        if (!deletion.getTopLevelDeletion().equals(DeletionTime.LIVE))
+            return new SliceQueryFilter(ColumnSlice.ALL_COLUMNS_ARRAY, false, Integer.MAX_VALUE);
+
+        List<ColumnSlice> slices = new ArrayList<>();
+        for (ColumnNameBuilder row : rows.values())
+            slices.add(new ColumnSlice(row.build(), row.buildAsEndOfRange()));
+        Iterator<RangeTombstone> iter = deletion.rangeIterator();
+        while (iter.hasNext())
+        {
+            RangeTombstone tombstone = iter.next();
+            slices.add(new ColumnSlice(tombstone.min, tombstone.max));
+        }
+        return new SliceQueryFilter(mergeSlices(slices), false, Integer.MAX_VALUE);
+    }
+
+    private ColumnSlice[] mergeSlices(List<ColumnSlice> slices)
+    {
+        final AbstractType<?> comparator = baseCfs.getComparator();
+        Collections.sort(slices, new Comparator<ColumnSlice>()
+        {
+            public int compare(ColumnSlice s1, ColumnSlice s2)
+            {
+                return comparator.compare(s1.start, s2.start);
+            }
+        });
+
+        List<ColumnSlice> merged = new ArrayList<>(slices.size());
+        ColumnSlice current = null;
+        for (ColumnSlice slice : slices)
+        {
+            if (current == null)
+            {
+                current = slice;
+            }
+            else if (current.finish.remaining() == 0 || comparator.compare(slice.start, current.finish) <= 0)
+            {
+                if (current.finish.remaining() > 0
+                    && (slice.finish.remaining() == 0 || comparator.compare(slice.finish, current.finish) > 0))
+                    current = new ColumnSlice(current.start, slice.finish);
+            }
+            else
+            {
+                merged.add(current);
+                current = slice;
+            }
+        }
+        if (current != null)
+            merged.add(current);
+        return merged.toArray(new ColumnSlice[merged.size()]);
+    }
+}
@@ -179,9 +179,8 @@ public class KeysSearcher extends SecondaryIndexSearcher
 
                         if (((KeysIndex)index).isIndexEntryStale(indexKey.key, data, filter.timestamp))
                         {
-                            // delete the index entry w/ its own timestamp
-                            Column dummyColumn = new Column(primary.column_name, indexKey.key, column.timestamp());
-                            ((PerColumnSecondaryIndex)index).delete(dk.key, dummyColumn);
+                            // delete the index entry w/ its own timestamp, in the background
+                            StaleIndexEntryCleaner.instance.submit(index.getIndexCfs(), indexKey, dk.key, column.timestamp());
                             continue;
                         }
                         return new Row(dk, data);
@@ -11,6 +11,7 @@ import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.cql3.CFDefinition;
+import org.apache.cassandra.db.ArrayBackedSortedColumns;
 import org.apache.cassandra.db.Column;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.ColumnFamilyStore;
@@ -27,6 +28,7 @@ import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.db.marshal.CompositeType;
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.Query;
@@ -209,21 +211,12 @@ public class LucenePerColumnSecondaryIndex extends PerColumnSecondaryIndex {
 	}
 
 	public Row getRow(ByteBuffer partitionKey, ByteBuffer clusteringKey) {
-
-		ByteBuffer[] clusteringKeyComponents = ByteBufferUtils.split(clusteringKey, nameComparator);
-		ByteBuffer[] finishComponents = new ByteBuffer[clusteringKeyComponents.length];
-		for (int i = 0; i < clusteringKeyComponents.length - 1; i++) {
-			finishComponents[i] = clusteringKeyComponents[i];
-		}
-		finishComponents[clusteringKeyComponents.length - 1] = lastColumnName;
-		ByteBuffer finishColumnName = CompositeType.build(finishComponents);
-
 		DecoratedKey decoratedKey = baseCfs.partitioner.decorateKey(partitionKey);
 		long timestamp = System.currentTimeMillis(); // Current time
 		QueryFilter f = QueryFilter.getSliceFilter(decoratedKey,
 		                                           cfName,
 		                                           clusteringKey,
-		                                           finishColumnName,
+		                                           finishColumnName(clusteringKey),
 		                                           false,
 		                                           Integer.MAX_VALUE,
 		                                           timestamp);
@@ -232,4 +225,54 @@ public class LucenePerColumnSecondaryIndex extends PerColumnSecondaryIndex {
 		return row;
 	}
 
+	/**
+	 * Returns the query reading the first live column of the specified CQL row, which is enough to know if the row
+	 * still exists.
+	 * 
+	 * @param partitionKey
+	 *            the row's partition key.
+	 * @param clusteringKey
+	 *            the row's clustering key, as stored in the index.
+	 * @param timestamp
+	 *            the query time.
+	 * @return the query reading the first live column of the specified CQL row.
+	 */
+	public QueryFilter getKeyFilter(ByteBuffer partitionKey, ByteBuffer clusteringKey, long timestamp) {
+		DecoratedKey decoratedKey = baseCfs.partitioner.decorateKey(partitionKey);
+		return QueryFilter.getSliceFilter(decoratedKey,
+		                                  cfName,
+		                                  clusteringKey,
+		                                  finishColumnName(clusteringKey),
+		                                  false,
+		                                  1,
+		                                  timestamp);
+	}
+
+	/**
+	 * Returns the specified CQL row without reading it, that is, with its row marker only. This is enough for queries
+	 * selecting the primary key only.
+	 * 
+	 * @param partitionKey
+	 *            the row's partition key.
+	 * @param clusteringKey
+	 *            the row's clustering key, as stored in the index, which is the name of the row marker.
+	 * @return the specified CQL row with its row marker only.
+	 */
+	public Row getKeyRow(ByteBuffer partitionKey, ByteBuffer clusteringKey) {
+		DecoratedKey decoratedKey = baseCfs.partitioner.decorateKey(partitionKey);
+		ColumnFamily cf = ArrayBackedSortedColumns.factory.create(tableMetadata);
+		cf.addColumn(new Column(clusteringKey, ByteBufferUtil.EMPTY_BYTE_BUFFER, 0));
+		return new Row(decoratedKey, cf);
+	}
+
+	private ByteBuffer finishColumnName(ByteBuffer clusteringKey) {
+		ByteBuffer[] clusteringKeyComponents = ByteBufferUtils.split(clusteringKey, nameComparator);
+		ByteBuffer[] finishComponents = new ByteBuffer[clusteringKeyComponents.length];
+		for (int i = 0; i < clusteringKeyComponents.length - 1; i++) {
+			finishComponents[i] = clusteringKeyComponents[i];
+		}
+		finishComponents[clusteringKeyComponents.length - 1] = lastColumnName;
+		return CompositeType.build(finishComponents);
+	}
+
 }
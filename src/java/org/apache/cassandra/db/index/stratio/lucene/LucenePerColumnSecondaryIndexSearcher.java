@@ -1,18 +1,24 @@
 package org.apache.cassandra.db.index.stratio.lucene;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.Row;
 import org.apache.cassandra.db.filter.ExtendedFilter;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.filter.SliceQueryFilter;
+import org.apache.cassandra.db.index.IndexedRowPrefetcher;
 import org.apache.cassandra.db.index.SecondaryIndex;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
 import org.apache.cassandra.db.index.SecondaryIndexSearcher;
 import org.apache.cassandra.db.index.stratio.lucene.mapping.ColumnMapper;
 import org.apache.cassandra.thrift.IndexExpression;
 import org.apache.cassandra.thrift.IndexOperator;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.Query;
 
@@ -39,6 +45,9 @@ public class LucenePerColumnSecondaryIndexSearcher extends SecondaryIndexSearche
 		ByteBuffer columnValue = indexExpression.value;
 		Query query = luceneMapper.query(columnValue);
 		List<Document> documents = luceneIndex.search(query, 100, luceneMapper.sort());
+		if (isKeysOnly(filter)) {
+			return searchKeys(documents, filter.timestamp);
+		}
 		List<org.apache.cassandra.db.Row> rows = new LinkedList<>();
 		for (Document document : documents) {
 			ByteBuffer partitionKey = luceneMapper.partitonKey(document);
@@ -49,6 +58,60 @@ public class LucenePerColumnSecondaryIndexSearcher extends SecondaryIndexSearche
 		return rows;
 	}
 
+	/**
+	 * Returns {@code true} if the specified filter selects the primary key of the matching CQL rows only, so they can
+	 * be built from the documents. The query itself is always answered by Lucene, so no other column is needed.
+	 * 
+	 * @param filter
+	 *            the query filter.
+	 * @return {@code true} if the specified filter selects the primary key of the matching CQL rows only.
+	 */
+	private boolean isKeysOnly(ExtendedFilter filter) {
+		Set<ByteBuffer> queriedColumns = filter.queriedColumns();
+		return queriedColumns != null && queriedColumns.isEmpty() && filter.getClause().size() == 1;
+	}
+
+	/**
+	 * Returns the rows of the specified documents without reading them. Unless
+	 * {@link SecondaryIndexSearcher#VERIFY_INDEX_ONLY_KEYS} is disabled, the rows are checked to be still live, reading
+	 * their first column all at once.
+	 * 
+	 * @param documents
+	 *            the matching documents.
+	 * @param timestamp
+	 *            the query time.
+	 * @return the rows of the specified documents, with their row marker only.
+	 */
+	private List<Row> searchKeys(List<Document> documents, long timestamp) {
+		List<Row> rows = new LinkedList<>();
+		if (!VERIFY_INDEX_ONLY_KEYS) {
+			for (Document document : documents) {
+				rows.add(currentIndex.getKeyRow(luceneMapper.partitonKey(document), luceneMapper.clusteringKey(document)));
+			}
+			return rows;
+		}
+
+		// Reads are identified by the position of their document, as clustering keys may repeat across partitions
+		IndexedRowPrefetcher prefetcher = new IndexedRowPrefetcher(baseCfs);
+		List<QueryFilter> filters = new ArrayList<>(documents.size());
+		for (Document document : documents) {
+			ByteBuffer partitionKey = luceneMapper.partitonKey(document);
+			ByteBuffer clusteringKey = luceneMapper.clusteringKey(document);
+			QueryFilter keyFilter = currentIndex.getKeyFilter(partitionKey, clusteringKey, timestamp);
+			prefetcher.prefetch(ByteBufferUtil.bytes(filters.size()), keyFilter);
+			filters.add(keyFilter);
+		}
+		for (int i = 0; i < filters.size(); i++) {
+			QueryFilter keyFilter = filters.get(i);
+			ColumnFamily cf = prefetcher.get(ByteBufferUtil.bytes(i), keyFilter);
+			if (cf != null && !cf.hasOnlyTombstones(timestamp)) {
+				ByteBuffer clusteringKey = ((SliceQueryFilter) keyFilter.filter).start();
+				rows.add(currentIndex.getKeyRow(keyFilter.key.key, clusteringKey));
+			}
+		}
+		return rows;
+	}
+
 	@Override
 	public boolean isIndexing(List<IndexExpression> clause) {
 		System.out.println("isIndexing(" + clause + ")");
@@ -333,4 +333,13 @@ public abstract class AbstractType<T> implements Comparator<ByteBuffer>
         }
         return false;
     }
+
+    /**
+     * @return whether a column named name could be found between minColumnNames and maxColumnNames
+     */
+    public boolean intersects(List<ByteBuffer> minColumnNames, List<ByteBuffer> maxColumnNames, ByteBuffer name)
+    {
+        assert minColumnNames.size() == 1;
+        return intersects(minColumnNames.get(0), maxColumnNames.get(0), name, name);
+    }
 }
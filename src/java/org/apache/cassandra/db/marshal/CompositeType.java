@@ -240,6 +240,20 @@ public class CompositeType extends AbstractCompositeType
         return false;
     }
 
+    @Override
+    public boolean intersects(List<ByteBuffer> minColumnNames, List<ByteBuffer> maxColumnNames, ByteBuffer name)
+    {
+        assert minColumnNames.size() == maxColumnNames.size();
+        ByteBuffer[] components = split(name);
+        for (int i = 0; i < minColumnNames.size(); i++)
+        {
+            ByteBuffer component = i < components.length ? components[i] : ByteBufferUtil.EMPTY_BYTE_BUFFER;
+            if (!types.get(i).intersects(minColumnNames.get(i), maxColumnNames.get(i), component, component))
+                return false;
+        }
+        return true;
+    }
+
     private static class StaticParsedComparator implements ParsedComparator
     {
         final AbstractType<?> type;
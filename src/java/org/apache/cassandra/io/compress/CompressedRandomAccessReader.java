@@ -19,10 +19,14 @@ package org.apache.cassandra.io.compress;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.zip.Adler32;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.CompressedPoolingSegmentedFile;
@@ -40,7 +44,22 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     {
         try
         {
-            return new CompressedRandomAccessReader(path, metadata, owner);
+            return new CompressedRandomAccessReader(path, metadata, owner, true);
+        }
+        catch (FileNotFoundException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param chunkSegments the memory mapped segments of the compressed file, by offset, that the chunks are read from
+     */
+    public static CompressedRandomAccessReader open(String path, CompressionMetadata metadata, CompressedPoolingSegmentedFile owner, TreeMap<Long, MappedByteBuffer> chunkSegments)
+    {
+        try
+        {
+            return new CompressedRandomAccessReader(path, metadata, owner, true, chunkSegments);
         }
         catch (FileNotFoundException e)
         {
@@ -52,7 +71,7 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     {
         try
         {
-            return new CompressedRandomAccessReader(dataFilePath, metadata, null);
+            return new CompressedRandomAccessReader(dataFilePath, metadata, null, false);
         }
         catch (FileNotFoundException e)
         {
@@ -71,10 +90,27 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     // raw checksum bytes
     private final ByteBuffer checksumBytes = ByteBuffer.wrap(new byte[4]);
 
-    protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner) throws FileNotFoundException
+    // whether the chunks we decompress should be cached: not for scans (compaction, streaming...), which would just
+    // evict the chunks of hot data
+    private final boolean cacheChunks;
+
+    // if the file is memory mapped, its segments by offset (see CompressedMmappedSegmentedFile), otherwise null
+    private final TreeMap<Long, MappedByteBuffer> chunkSegments;
+
+    /**
+     * @param cacheChunks whether to add the decompressed chunks to the ChunkCache (they are always looked up there)
+     */
+    protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner, boolean cacheChunks) throws FileNotFoundException
+    {
+        this(dataFilePath, metadata, owner, cacheChunks, null);
+    }
+
+    protected CompressedRandomAccessReader(String dataFilePath, CompressionMetadata metadata, PoolingSegmentedFile owner, boolean cacheChunks, TreeMap<Long, MappedByteBuffer> chunkSegments) throws FileNotFoundException
     {
         super(new File(dataFilePath), metadata.chunkLength(), owner);
         this.metadata = metadata;
+        this.cacheChunks = cacheChunks;
+        this.chunkSegments = chunkSegments;
         checksum = metadata.hasPostCompressionAdlerChecksums ? new Adler32() : new CRC32();
         compressed = ByteBuffer.wrap(new byte[metadata.compressor().initialCompressedBufferLength(metadata.chunkLength())]);
     }
@@ -98,8 +134,24 @@ public class CompressedRandomAccessReader extends RandomAccessReader
 
     private void decompressChunk(CompressionMetadata.Chunk chunk) throws IOException
     {
-        if (channel.position() != chunk.offset)
-            channel.position(chunk.offset);
+        // buffer offset is always aligned
+        long chunkOffset = current & ~(buffer.length - 1);
+
+        ChunkCache.Key key = null;
+        if (ChunkCache.instance != null)
+        {
+            key = new ChunkCache.Key(metadata.id, chunkOffset);
+            int length = ChunkCache.instance.get(key, buffer);
+            if (length >= 0)
+            {
+                validBufferBytes = length;
+                bufferOffset = chunkOffset;
+                return;
+            }
+        }
+
+        // the read-ahead window is sized in uncompressed buffers, so it covers a few more chunks than asked for
+        readAhead(chunk.offset);
 
         if (compressed.capacity() < chunk.length)
             compressed = ByteBuffer.wrap(new byte[chunk.length]);
@@ -107,8 +159,21 @@ public class CompressedRandomAccessReader extends RandomAccessReader
             compressed.clear();
         compressed.limit(chunk.length);
 
-        if (channel.read(compressed) != chunk.length)
-            throw new CorruptBlockException(getPath(), chunk);
+        ByteBuffer mappedChunk = chunkSegments == null ? null : mappedChunk(chunk);
+        if (mappedChunk == null)
+        {
+            if (channel.position() != chunk.offset)
+                channel.position(chunk.offset);
+
+            if (channel.read(compressed) != chunk.length)
+                throw new CorruptBlockException(getPath(), chunk);
+        }
+        else
+        {
+            // a memory copy rather than seeking and reading the channel (the compressors only decompress arrays)
+            mappedChunk.get(compressed.array(), 0, chunk.length);
+            compressed.position(chunk.length);
+        }
 
         // technically flip() is unnecessary since all the remaining work uses the raw array, but if that changes
         // in the future this will save a lot of hair-pulling
@@ -134,15 +199,37 @@ public class CompressedRandomAccessReader extends RandomAccessReader
                 checksum.update(buffer, 0, validBufferBytes);
             }
 
-            if (checksum(chunk) != (int) checksum.getValue())
+            int expected = mappedChunk == null ? checksum(chunk) : mappedChunk.getInt();
+            if (expected != (int) checksum.getValue())
                 throw new CorruptBlockException(getPath(), chunk);
 
             // reset checksum object back to the original (blank) state
             checksum.reset();
         }
 
-        // buffer offset is always aligned
-        bufferOffset = current & ~(buffer.length - 1);
+        bufferOffset = chunkOffset;
+
+        if (key != null && cacheChunks)
+            ChunkCache.instance.put(key, buffer, validBufferBytes);
+    }
+
+    /**
+     * @return the compressed bytes of chunk in its mapped segment, followed by its checksum
+     */
+    private ByteBuffer mappedChunk(CompressionMetadata.Chunk chunk) throws CorruptBlockException
+    {
+        Map.Entry<Long, MappedByteBuffer> segment = chunkSegments.floorEntry(chunk.offset);
+        if (segment == null)
+            throw new CorruptBlockException(getPath(), chunk);
+
+        ByteBuffer mapped = segment.getValue().duplicate();
+        int start = (int) (chunk.offset - segment.getKey());
+        if (start + chunk.length + 4 > mapped.capacity())
+            throw new CorruptBlockException(getPath(), chunk);
+
+        mapped.position(start);
+        mapped.limit(start + chunk.length + 4);
+        return mapped;
     }
 
     private int checksum(CompressionMetadata.Chunk chunk) throws IOException
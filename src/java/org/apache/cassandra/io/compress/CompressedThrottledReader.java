@@ -31,7 +31,7 @@ public class CompressedThrottledReader extends CompressedRandomAccessReader
 
     public CompressedThrottledReader(String file, CompressionMetadata metadata, RateLimiter limiter) throws FileNotFoundException
     {
-        super(file, metadata, null);
+        super(file, metadata, null, false);
         this.limiter = limiter;
     }
 
@@ -19,10 +19,12 @@ package org.apache.cassandra.io.compress;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.primitives.Longs;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.io.FSReadError;
@@ -40,6 +42,13 @@ import org.apache.cassandra.utils.Pair;
  */
 public class CompressionMetadata
 {
+    private static final AtomicLong idGenerator = new AtomicLong();
+
+    /**
+     * Unique to this instance, and so to the sstable, for the chunks of the sstable to be cached (see ChunkCache).
+     */
+    public final long id = idGenerator.incrementAndGet();
+
     public final long dataLength;
     public final long compressedFileLength;
     public final boolean hasPostCompressionAdlerChecksums;
@@ -218,6 +227,9 @@ public class CompressionMetadata
     public void close()
     {
         chunkOffsets.free();
+        // the sstable is no longer readable through this instance, so neither are its cached chunks
+        if (ChunkCache.instance != null)
+            ChunkCache.instance.invalidate(id);
     }
 
     public static class Writer extends RandomAccessFile
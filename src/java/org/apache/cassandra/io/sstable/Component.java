@@ -57,6 +57,8 @@ public class Component
         CRC("CRC.db"),
         // holds SSTable Index Summary (sampling of Index component)
         SUMMARY("Summary.db"),
+        // trie of the row keys with pointers to their positions in the Index component
+        PARTITION_INDEX("PartitionIndex.db"),
         // table of contents, stores the list of all components for the sstable
         TOC("TOC.txt"),
         // custom component, used by e.g. custom compaction strategy
@@ -87,6 +89,7 @@ public class Component
     public final static Component DIGEST = new Component(Type.DIGEST);
     public final static Component CRC = new Component(Type.CRC);
     public final static Component SUMMARY = new Component(Type.SUMMARY);
+    public final static Component PARTITION_INDEX = new Component(Type.PARTITION_INDEX);
     public final static Component TOC = new Component(Type.TOC);
 
     public final Type type;
@@ -139,6 +142,7 @@ public class Component
             case DIGEST:            component = Component.DIGEST;                       break;
             case CRC:               component = Component.CRC;                          break;
             case SUMMARY:           component = Component.SUMMARY;                      break;
+            case PARTITION_INDEX:   component = Component.PARTITION_INDEX;              break;
             case TOC:               component = Component.TOC;                          break;
             case CUSTOM:            component = new Component(Type.CUSTOM, path.right); break;
             default:
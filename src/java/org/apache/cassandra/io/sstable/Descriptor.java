@@ -44,7 +44,7 @@ public class Descriptor
     public static class Version
     {
         // This needs to be at the begining for initialization sake
-        public static final String current_version = "jb";
+        public static final String current_version = "je";
 
         // ic (1.2.5): omits per-row bloom filter of column names
         // ja (2.0.0): super columns are serialized as composites (note that there is no real format change,
@@ -57,6 +57,10 @@ public class Descriptor
         //             tracks max/min column values (according to comparator)
         // jb (2.0.1): switch from crc32 to adler32 for compression checksums
         //             checksum the compressed data
+        // jc (2.0.5): promoted column indexes end with the offsets of their entries, so they can be binary searched
+        //             without being deserialized
+        // jd (2.0.5): filters start with their type, as they may be blocked bloom filters
+        // je (2.0.5): partition index trie, for the partitioners with byte-comparable keys
 
         public static final Version CURRENT = new Version(current_version);
 
@@ -70,6 +74,9 @@ public class Descriptor
         public final boolean hasRowSizeAndColumnCount;
         public final boolean tracksMaxMinColumnNames;
         public final boolean hasPostCompressionAdlerChecksums;
+        public final boolean hasColumnIndexOffsets;
+        public final boolean hasFilterType;
+        public final boolean hasPartitionIndex;
 
         public Version(String version)
         {
@@ -82,6 +89,9 @@ public class Descriptor
             hasRowSizeAndColumnCount = version.compareTo("ja") < 0;
             tracksMaxMinColumnNames = version.compareTo("ja") >= 0;
             hasPostCompressionAdlerChecksums = version.compareTo("jb") >= 0;
+            hasColumnIndexOffsets = version.compareTo("jc") >= 0;
+            hasFilterType = version.compareTo("jd") >= 0;
+            hasPartitionIndex = version.compareTo("je") >= 0;
         }
 
         /**
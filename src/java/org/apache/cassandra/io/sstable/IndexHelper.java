@@ -19,13 +19,17 @@ package org.apache.cassandra.io.sstable;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.RandomAccess;
 
+import org.apache.cassandra.cache.RefCountedMemory;
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileMark;
 import org.apache.cassandra.io.util.FileUtils;
@@ -150,6 +154,145 @@ public class IndexHelper
         return reversed ? nameComparator.indexReverseComparator : nameComparator.indexComparator;
     }
 
+    /**
+     * A column index kept in its serialized form: its entries, followed by the offset of each of them. Entries are
+     * only deserialized when accessed, so that binary searching the index (see indexFor()) only deserializes
+     * O(log(n)) of them instead of the whole index.
+     *
+     * The index can also be kept in off-heap memory (see offHeap()), which is then reference counted.
+     */
+    public static class SerializedIndex extends AbstractList<IndexInfo> implements RandomAccess
+    {
+        private final ByteBuffer buffer;
+        private final int count;
+        // the memory buffer points to, if off-heap
+        private final RefCountedMemory memory;
+
+        public SerializedIndex(ByteBuffer buffer, int count)
+        {
+            this(buffer, count, null);
+        }
+
+        private SerializedIndex(ByteBuffer buffer, int count, RefCountedMemory memory)
+        {
+            assert buffer.remaining() >= count * TypeSizes.NATIVE.sizeof(count);
+            this.buffer = buffer;
+            this.count = count;
+            this.memory = memory;
+        }
+
+        public static SerializedIndex create(List<IndexInfo> columnsIndex)
+        {
+            TypeSizes typeSizes = TypeSizes.NATIVE;
+            int size = 0;
+            for (IndexInfo info : columnsIndex)
+                size += info.serializedSize(typeSizes) + typeSizes.sizeof(size);
+
+            DataOutputBuffer out = new DataOutputBuffer(size);
+            try
+            {
+                int[] offsets = new int[columnsIndex.size()];
+                for (int i = 0; i < offsets.length; i++)
+                {
+                    offsets[i] = out.getLength();
+                    columnsIndex.get(i).serialize(out);
+                }
+                for (int offset : offsets)
+                    out.writeInt(offset);
+            }
+            catch (IOException e)
+            {
+                // We're doing in-memory serialization...
+                throw new AssertionError(e);
+            }
+            assert out.getLength() == size;
+            return new SerializedIndex(ByteBuffer.wrap(out.getData(), 0, size), columnsIndex.size());
+        }
+
+        /**
+         * @return this index with its buffer copied to off-heap memory, unless it already is. That memory is only
+         * safe to read between reference() and release(), and the creator's reference must be freed with release().
+         */
+        public SerializedIndex offHeap()
+        {
+            if (memory != null || !buffer.hasRemaining())
+                return this;
+
+            RefCountedMemory copy = new RefCountedMemory(buffer.remaining());
+            ByteBuffer copyBuffer = copy.asByteBuffer(0, buffer.remaining());
+            copyBuffer.put(buffer.duplicate());
+            copyBuffer.flip();
+            return new SerializedIndex(copyBuffer, count, copy);
+        }
+
+        /**
+         * Keeps the off-heap memory of the index, if any, from being freed until the matching release(), so that it
+         * can be searched in place.
+         *
+         * @return false if that memory has been freed already, in which case the index must not be read
+         */
+        public boolean reference()
+        {
+            return memory == null || memory.reference();
+        }
+
+        /**
+         * Releases a reference to the off-heap memory of the index, freeing it with the last one.
+         */
+        public void release()
+        {
+            if (memory != null)
+                memory.unreference();
+        }
+
+        /**
+         * @return the serialized index, entries then offsets
+         */
+        public ByteBuffer buffer()
+        {
+            return buffer.duplicate();
+        }
+
+        public IndexInfo get(int i)
+        {
+            if (i < 0 || i >= count)
+                throw new IndexOutOfBoundsException(i + " not in [0, " + count + ")");
+
+            int start = buffer.position();
+            int offsetsStart = buffer.limit() - count * TypeSizes.NATIVE.sizeof(count);
+            int position = start + buffer.getInt(offsetsStart + i * TypeSizes.NATIVE.sizeof(count));
+
+            int firstNameLength = buffer.getShort(position) & 0xFFFF;
+            ByteBuffer firstName = slice(position + 2, firstNameLength);
+            position += 2 + firstNameLength;
+            int lastNameLength = buffer.getShort(position) & 0xFFFF;
+            ByteBuffer lastName = slice(position + 2, lastNameLength);
+            position += 2 + lastNameLength;
+            return new IndexInfo(firstName, lastName, buffer.getLong(position), buffer.getLong(position + 8));
+        }
+
+        private ByteBuffer slice(int position, int length)
+        {
+            ByteBuffer name = buffer.duplicate();
+            name.position(position);
+            name.limit(position + length);
+            return name;
+        }
+
+        public int size()
+        {
+            return count;
+        }
+
+        public long memorySize()
+        {
+            return ObjectSizes.getFieldSize(// buffer
+                                            ObjectSizes.getReferenceSize() +
+                                            TypeSizes.NATIVE.sizeof(count))
+                   + ObjectSizes.getSize(buffer);
+        }
+    }
+
     public static class IndexInfo
     {
         public final long width;
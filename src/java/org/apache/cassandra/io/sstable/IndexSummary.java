@@ -108,6 +108,11 @@ public class IndexSummary implements Closeable
         return summary_size;
     }
 
+    public long getOffHeapSize()
+    {
+        return bytes.size();
+    }
+
     public static class IndexSummarySerializer
     {
         public void serialize(IndexSummary t, DataOutputStream out) throws IOException
@@ -91,4 +91,23 @@ public class IndexSummaryBuilder
         }
         return new IndexSummary(partitioner, memory, keys.size(), indexInterval);
     }
+
+    /**
+     * Builds a summary keeping one of every {@code factor} entries of {@code existing}, without reading the primary
+     * index again.
+     */
+    public static IndexSummary downsample(IndexSummary existing, int factor, IPartitioner partitioner)
+    {
+        assert factor > 0 : factor;
+        int indexInterval = existing.getIndexInterval() * factor;
+        IndexSummaryBuilder builder = new IndexSummaryBuilder((long) existing.size() * existing.getIndexInterval(), indexInterval);
+        for (int i = 0; i < existing.size(); i += factor)
+        {
+            byte[] key = existing.getKey(i);
+            builder.keys.add(key);
+            builder.positions.add(existing.getPosition(i));
+            builder.offheapSize += key.length + TypeSizes.NATIVE.sizeof(0L);
+        }
+        return builder.build(partitioner);
+    }
 }
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.DataTracker;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.WrappedRunnable;
+
+/**
+ * Keeps the index summaries of all sstables within index_summary_capacity_in_mb, by resampling them periodically:
+ * the capacity is shared among sstables in proportion to their recent read rates, so that cold sstables keep fewer
+ * entries of their primary index than their table's index_interval asks for, and hot ones keep all of them.
+ *
+ * Effective intervals are the table's index_interval times a power of two, up to MAX_INTERVAL_MULTIPLIER, so that
+ * downsampling just drops entries from the current summary, and small changes in read rates don't trigger resampling.
+ * Upsampling reads the primary index again. Either way the sstable itself is left untouched: its reader is replaced
+ * by one sharing its files but with the new summary (see SSTableReader.cloneWithNewSummary).
+ */
+public class IndexSummaryManager
+{
+    private static final Logger logger = LoggerFactory.getLogger(IndexSummaryManager.class);
+
+    // the summaries of the coldest sstables keep one of every index_interval * MAX_INTERVAL_MULTIPLIER index entries
+    public static final int MAX_INTERVAL_MULTIPLIER = Integer.getInteger("cassandra.index_summary_max_interval_multiplier", 16);
+
+    public static final IndexSummaryManager instance = new IndexSummaryManager();
+
+    private IndexSummaryManager()
+    {
+        assert Integer.bitCount(MAX_INTERVAL_MULTIPLIER) == 1 : "index_summary_max_interval_multiplier must be a power of two";
+    }
+
+    public void start()
+    {
+        int period = DatabaseDescriptor.getIndexSummaryResizeIntervalInMinutes();
+        if (period <= 0)
+            return;
+
+        StorageService.optionalTasks.scheduleWithFixedDelay(new WrappedRunnable()
+        {
+            protected void runMayThrow() throws Exception
+            {
+                redistributeSummaries();
+            }
+        }, period, period, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Resamples the index summaries of all the sstables that aren't being compacted, to fit them in
+     * index_summary_capacity_in_mb along with the summaries of the others.
+     */
+    public void redistributeSummaries() throws IOException
+    {
+        Map<DataTracker, List<SSTableReader>> marked = new HashMap<>();
+        List<SSTableReader> sstables = new ArrayList<>();
+        long fixedSize = 0;
+        try
+        {
+            for (Keyspace keyspace : Keyspace.all())
+            {
+                for (ColumnFamilyStore cfs : keyspace.getColumnFamilyStores())
+                {
+                    for (ColumnFamilyStore store : cfs.concatWithIndexes())
+                    {
+                        DataTracker tracker = store.getDataTracker();
+                        List<SSTableReader> candidates = new ArrayList<>();
+                        for (SSTableReader sstable : tracker.getSSTables())
+                        {
+                            // read rates aren't tracked for the system keyspace
+                            if (sstable.readMeter == null)
+                                fixedSize += sstable.getIndexSummaryOffHeapSize();
+                            else
+                                candidates.add(sstable);
+                        }
+
+                        // leave the sstables being compacted alone, and keep the others from being compacted meanwhile
+                        Set<SSTableReader> uncompacting = new HashSet<>(candidates);
+                        uncompacting.retainAll(tracker.getUncompactingSSTables());
+                        if (!uncompacting.isEmpty() && tracker.markCompacting(uncompacting))
+                        {
+                            marked.put(tracker, new ArrayList<>(uncompacting));
+                            sstables.addAll(uncompacting);
+                        }
+                        else
+                        {
+                            uncompacting.clear();
+                        }
+
+                        for (SSTableReader sstable : candidates)
+                            if (!uncompacting.contains(sstable))
+                                fixedSize += sstable.getIndexSummaryOffHeapSize();
+                    }
+                }
+            }
+
+            long capacity = DatabaseDescriptor.getIndexSummaryCapacityInMB() * 1024 * 1024;
+            resample(marked, sstables, Math.max(0, capacity - fixedSize));
+        }
+        finally
+        {
+            for (Map.Entry<DataTracker, List<SSTableReader>> entry : marked.entrySet())
+                entry.getKey().unmarkCompacting(entry.getValue());
+        }
+    }
+
+    private void resample(Map<DataTracker, List<SSTableReader>> sstablesByTracker, List<SSTableReader> sstables, long capacity) throws IOException
+    {
+        if (sstables.isEmpty())
+            return;
+
+        int[] minIntervals = new int[sstables.size()];
+        long[] fullSizes = new long[sstables.size()];
+        double[] readRates = new double[sstables.size()];
+        for (int i = 0; i < sstables.size(); i++)
+        {
+            SSTableReader sstable = sstables.get(i);
+            minIntervals[i] = sstable.metadata.getIndexInterval();
+            fullSizes[i] = sstable.getIndexSummaryOffHeapSize() * sstable.getEffectiveIndexInterval() / minIntervals[i];
+            // key lookups don't use the summaries of the sstables having a partition index, so they are the first to shrink
+            readRates[i] = sstable.hasPartitionIndex() ? 0 : sstable.readMeter.fifteenMinuteRate();
+        }
+        int[] intervals = targetIntervals(minIntervals, fullSizes, readRates, capacity);
+
+        Map<SSTableReader, Integer> newIntervals = new HashMap<>();
+        for (int i = 0; i < sstables.size(); i++)
+            if (intervals[i] != sstables.get(i).getEffectiveIndexInterval())
+                newIntervals.put(sstables.get(i), intervals[i]);
+
+        if (newIntervals.isEmpty())
+            return;
+        logger.debug("Resampling the index summaries of {} out of {} sstables to fit them in {} bytes",
+                     newIntervals.size(), sstables.size(), capacity);
+
+        for (Map.Entry<DataTracker, List<SSTableReader>> entry : sstablesByTracker.entrySet())
+        {
+            List<SSTableReader> replaced = new ArrayList<>();
+            List<SSTableReader> replacements = new ArrayList<>();
+            boolean swapped = false;
+            try
+            {
+                for (SSTableReader sstable : entry.getValue())
+                {
+                    Integer interval = newIntervals.get(sstable);
+                    if (interval == null)
+                        continue;
+
+                    logger.debug("Resampling the index summary of {} from an interval of {} to {}",
+                                 sstable, sstable.getEffectiveIndexInterval(), interval);
+                    replacements.add(sstable.cloneWithNewSummary(interval));
+                    replaced.add(sstable);
+                }
+
+                // only hand the readers over once all of their replacements could be built, as the swap itself can't fail
+                for (int i = 0; i < replaced.size(); i++)
+                    replaced.get(i).markReplacedBy(replacements.get(i));
+                swapped = true;
+                if (!replaced.isEmpty())
+                    entry.getKey().replaceReaders(replaced, replacements);
+            }
+            finally
+            {
+                if (!swapped)
+                {
+                    for (SSTableReader replacement : replacements)
+                        replacement.discardClone();
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the index intervals fitting the summaries of a set of sstables in the given capacity: each sstable
+     * gets the size of its summary at the largest interval, and the rest of the capacity is shared in proportion to
+     * read rates, and then to sizes, up to the size of its summary at its minimum interval.
+     *
+     * @param minIntervals the index_interval of the table of each sstable
+     * @param fullSizes the size of the summary of each sstable at its minimum interval
+     * @param readRates the recent read rate of each sstable
+     * @param capacity the memory to fit the summaries in
+     * @return the interval to resample each summary at
+     */
+    @VisibleForTesting
+    static int[] targetIntervals(int[] minIntervals, long[] fullSizes, double[] readRates, long capacity)
+    {
+        int count = minIntervals.length;
+        double remaining = capacity;
+        for (int i = 0; i < count; i++)
+            remaining -= fullSizes[i] / MAX_INTERVAL_MULTIPLIER;
+
+        // share what remains of the capacity among the summaries, as extra size over their smallest one: first by read
+        // rate, and then by size if the sstables that were read don't need it all
+        double[] extras = new double[count];
+        double[] sizes = new double[count];
+        for (int i = 0; i < count; i++)
+        {
+            extras[i] = fullSizes[i] - fullSizes[i] / MAX_INTERVAL_MULTIPLIER;
+            sizes[i] = fullSizes[i];
+        }
+        double[] shares = new double[count];
+        remaining = share(readRates, extras, shares, remaining);
+        share(sizes, extras, shares, remaining);
+
+        int[] intervals = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            double target = fullSizes[i] / MAX_INTERVAL_MULTIPLIER + shares[i];
+            int multiplier = 1;
+            while (multiplier < MAX_INTERVAL_MULTIPLIER && fullSizes[i] / multiplier > target)
+                multiplier <<= 1;
+            intervals[i] = minIntervals[i] * multiplier;
+        }
+        return intervals;
+    }
+
+    /**
+     * Adds to each share the part of the remaining capacity it gets by weight, up to what it still needs, and returns
+     * what is left.
+     */
+    private static double share(final double[] weights, double[] extras, double[] shares, double remaining)
+    {
+        int count = weights.length;
+        final double[] needed = new double[count];
+        double totalWeight = 0;
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++)
+        {
+            needed[i] = extras[i] - shares[i];
+            totalWeight += weights[i];
+            order[i] = i;
+        }
+
+        // the summaries that would get more than they need by weight get just that, and what they leave goes to the
+        // others: as it can only make the following ones get more, we go through them by decreasing weight per size
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            public int compare(Integer i, Integer j)
+            {
+                return Double.compare(weights[j] * needed[i], weights[i] * needed[j]);
+            }
+        });
+
+        for (int i : order)
+        {
+            if (remaining <= 0 || totalWeight <= 0)
+                break;
+            double share = Math.min(needed[i], remaining * weights[i] / totalWeight);
+            shares[i] += share;
+            remaining -= share;
+            totalWeight -= weights[i];
+        }
+        return remaining;
+    }
+}
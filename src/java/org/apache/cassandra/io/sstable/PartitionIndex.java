@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.*;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.util.FileUtils;
+
+/**
+ * A trie of the keys of an sstable, mapping them to the position of their entries in the primary index, which is read
+ * directly from the mmapped PartitionIndex.db file: finding the entry of a key touches a node per byte of the prefix
+ * that distinguishes it from its neighbours, plus at most two entries of the primary index, instead of the binary
+ * search of the IndexSummary followed by the scan of up to index_interval entries.
+ *
+ * Keys are indexed by a byte-comparable form of their token followed by their bytes, which sorts them like
+ * DecoratedKey does. Only the Murmur3, Random and ByteOrdered partitioners have one.
+ *
+ * Nodes are written after their children (see PartitionIndexBuilder), and the file ends with the position of the root.
+ * Each node is made of:
+ *  - a header byte: HAS_PAYLOAD and the size code of the payload in bits 4-5, HAS_CHILDREN and the size code of the
+ *    pointers to the children in bits 0-1,
+ *  - the payload, i.e. the primary index position of the key whose prefix leads to the node, if any,
+ *  - if the node has children, their count minus one, the (unsigned, increasing) bytes leading to each child, and
+ *    the distance from the node back to each child.
+ */
+public class PartitionIndex implements Closeable
+{
+    static final int HAS_CHILDREN = 0x04;
+    static final int HAS_PAYLOAD = 0x40;
+
+    private static final int REGION_SHIFT = 30;
+    private static final long REGION_MASK = (1L << REGION_SHIFT) - 1;
+
+    private final String path;
+    private final MappedByteBuffer[] regions;
+    private final long root;
+
+    private PartitionIndex(String path, MappedByteBuffer[] regions, long length)
+    {
+        this.path = path;
+        this.regions = regions;
+        this.root = readSized(length - 8, 8);
+    }
+
+    public static boolean isSupported(IPartitioner partitioner)
+    {
+        return partitioner instanceof Murmur3Partitioner
+            || partitioner instanceof RandomPartitioner
+            || partitioner instanceof ByteOrderedPartitioner;
+    }
+
+    public static PartitionIndex open(File file)
+    {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"))
+        {
+            long length = raf.length();
+            MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((length + REGION_MASK) >>> REGION_SHIFT)];
+            for (int i = 0; i < regions.length; i++)
+            {
+                long start = (long) i << REGION_SHIFT;
+                regions[i] = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, Math.min(length - start, 1L << REGION_SHIFT));
+            }
+            return new PartitionIndex(file.getPath(), regions, length);
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, file);
+        }
+    }
+
+    /**
+     * @return the byte-comparable form of the key: its token, and then its bytes.
+     */
+    public static ByteBuffer byteComparable(DecoratedKey key)
+    {
+        Token token = key.getToken();
+        if (token instanceof BytesToken)
+            return key.key;
+
+        byte[] tokenBytes;
+        if (token instanceof LongToken)
+        {
+            // flip the sign bit, so that negative tokens sort first
+            tokenBytes = ByteBuffer.allocate(8).putLong(0, ((LongToken) token).token ^ Long.MIN_VALUE).array();
+        }
+        else if (token instanceof BigIntegerToken)
+        {
+            // tokens are positive and fit in 127 bits, so that the magnitude of all of them fits in 16 bytes
+            byte[] magnitude = ((BigIntegerToken) token).token.toByteArray();
+            tokenBytes = new byte[16];
+            int length = Math.min(magnitude.length, 16);
+            System.arraycopy(magnitude, magnitude.length - length, tokenBytes, 16 - length, length);
+        }
+        else
+        {
+            throw new UnsupportedOperationException("Keys of " + token.getClass().getSimpleName() + " tokens aren't byte-comparable");
+        }
+
+        ByteBuffer result = ByteBuffer.allocate(tokenBytes.length + key.key.remaining());
+        result.put(tokenBytes).put(key.key.duplicate());
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Returns the position in the primary index from which to look for a key: the entry there is either that key,
+     * or the first key greater than it, or the last key less than it, which is then followed by the first key greater
+     * than it, if any.
+     *
+     * @return the position of the entry, or -1 if the index is empty
+     */
+    public long floor(DecoratedKey key)
+    {
+        if (root < 0)
+            return -1;
+
+        ByteBuffer bytes = byteComparable(key);
+        // the greatest indexed prefix less than or equal to the key (or prefix of it) found so far: either the payload
+        // of a node on the path of the key, or the last payload under a child preceding that path
+        long payload = -1;
+        long precedingChild = -1;
+
+        long node = root;
+        for (int depth = 0; ; depth++)
+        {
+            int header = getByte(node);
+            long position = node + 1;
+            if ((header & HAS_PAYLOAD) != 0)
+            {
+                int payloadSize = sizeFromCode(header >>> 4);
+                payload = readSized(position, payloadSize);
+                precedingChild = -1;
+                position += payloadSize;
+            }
+
+            if ((header & HAS_CHILDREN) == 0 || depth == bytes.remaining())
+                break;
+
+            int childCount = getByte(position) + 1;
+            long transitions = position + 1;
+            int pointerSize = sizeFromCode(header);
+            int next = bytes.get(bytes.position() + depth) & 0xFF;
+
+            // the index of the child for the next byte of the key, or of the last one before it
+            int low = 0, high = childCount - 1;
+            while (low <= high)
+            {
+                int mid = (low + high) >>> 1;
+                int transition = getByte(transitions + mid);
+                if (transition <= next)
+                    low = mid + 1;
+                else
+                    high = mid - 1;
+            }
+            int index = low - 1;
+            if (index < 0)
+                break;
+
+            long child = node - readSized(transitions + childCount + (long) index * pointerSize, pointerSize);
+            if (getByte(transitions + index) != next)
+            {
+                precedingChild = child;
+                break;
+            }
+            if (index > 0)
+                precedingChild = node - readSized(transitions + childCount + (long) (index - 1) * pointerSize, pointerSize);
+            node = child;
+        }
+
+        return precedingChild < 0 ? payload : lastPayload(precedingChild);
+    }
+
+    private long lastPayload(long node)
+    {
+        while (true)
+        {
+            int header = getByte(node);
+            long position = node + 1;
+            if ((header & HAS_CHILDREN) == 0)
+                return readSized(position, sizeFromCode(header >>> 4));
+            if ((header & HAS_PAYLOAD) != 0)
+                position += sizeFromCode(header >>> 4);
+
+            int childCount = getByte(position) + 1;
+            int pointerSize = sizeFromCode(header);
+            node -= readSized(position + 1 + childCount + (long) (childCount - 1) * pointerSize, pointerSize);
+        }
+    }
+
+    private int getByte(long position)
+    {
+        return regions[(int) (position >>> REGION_SHIFT)].get((int) (position & REGION_MASK)) & 0xFF;
+    }
+
+    private long readSized(long position, int size)
+    {
+        long value = 0;
+        for (int i = 0; i < size; i++)
+            value = (value << 8) | getByte(position + i);
+        return value;
+    }
+
+    public void close()
+    {
+        if (!FileUtils.isCleanerAvailable())
+            return;
+        for (MappedByteBuffer region : regions)
+            FileUtils.clean(region);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PartitionIndex(" + path + ")";
+    }
+
+    // sizes are 1, 2, 4 or 8 bytes, written as codes 0 to 3
+
+    static int sizeOf(long value)
+    {
+        if ((value & ~0xFFL) == 0)
+            return 1;
+        if ((value & ~0xFFFFL) == 0)
+            return 2;
+        if ((value & ~0xFFFFFFFFL) == 0)
+            return 4;
+        return 8;
+    }
+
+    static int sizeCode(int size)
+    {
+        return Integer.numberOfTrailingZeros(size);
+    }
+
+    private static int sizeFromCode(int code)
+    {
+        return 1 << (code & 0x03);
+    }
+
+    static void writeSized(DataOutput out, long value, int size) throws IOException
+    {
+        for (int i = size - 1; i >= 0; i--)
+            out.writeByte((int) (value >>> (i * 8)));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.SequentialWriter;
+
+/**
+ * Writes the partition index trie of an sstable (see PartitionIndex), as its keys are appended in order.
+ *
+ * Each key is only indexed by the shortest prefix of its byte-comparable form that isn't a prefix of the previous
+ * key, so that the trie doesn't grow with the length of the keys. The nodes are written once the following keys
+ * don't go through them anymore, children before their parents, so that only the nodes on the path of the last key
+ * are kept in memory.
+ */
+public class PartitionIndexBuilder implements Closeable
+{
+    private final SequentialWriter out;
+
+    // the nodes on the path of the last prefix added, which are still to be written
+    private final List<PendingNode> pending = new ArrayList<>();
+    private byte[] path = new byte[0];
+    private ByteBuffer lastKey;
+
+    public PartitionIndexBuilder(File file, boolean skipIOCache)
+    {
+        out = SequentialWriter.open(file, skipIOCache);
+    }
+
+    /**
+     * @param key the next key of the sstable, which must be greater than the previous one
+     * @param indexPosition the position of the entry of the key in the primary index
+     */
+    public void append(DecoratedKey key, long indexPosition)
+    {
+        ByteBuffer comparable = PartitionIndex.byteComparable(key);
+        int common = 0;
+        if (lastKey != null)
+        {
+            common = commonPrefixLength(lastKey, comparable);
+            assert common < comparable.remaining() : "Keys must be appended in increasing order: " + key;
+        }
+
+        // the prefix up to the first byte that differs from the previous key, or none for the first one
+        int length = lastKey == null ? 0 : common + 1;
+        int kept = Math.min(common, path.length);
+        try
+        {
+            completeDownTo(kept);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, out.getPath());
+        }
+
+        byte[] newPath = new byte[length];
+        System.arraycopy(path, 0, newPath, 0, kept);
+        for (int depth = kept; depth < length; depth++)
+        {
+            newPath[depth] = comparable.get(comparable.position() + depth);
+            pending.add(new PendingNode());
+        }
+        if (pending.isEmpty())
+            pending.add(new PendingNode());
+        pending.get(length).payload = indexPosition;
+
+        path = newPath;
+        lastKey = comparable;
+    }
+
+    // writes the pending nodes deeper than depth, attaching each of them to its parent
+    private void completeDownTo(int depth) throws IOException
+    {
+        for (int i = pending.size() - 1; i > depth; i--)
+        {
+            long position = pending.remove(i).write(out.stream, out.getFilePointer());
+            pending.get(i - 1).addChild(path[i - 1], position);
+        }
+    }
+
+    private static int commonPrefixLength(ByteBuffer a, ByteBuffer b)
+    {
+        int length = Math.min(a.remaining(), b.remaining());
+        for (int i = 0; i < length; i++)
+        {
+            if (a.get(a.position() + i) != b.get(b.position() + i))
+                return i;
+        }
+        return length;
+    }
+
+    /**
+     * Writes the remaining nodes, ending with the root, and the position of the root.
+     */
+    public void close()
+    {
+        try
+        {
+            long root = -1;
+            if (!pending.isEmpty())
+            {
+                completeDownTo(0);
+                root = pending.remove(0).write(out.stream, out.getFilePointer());
+            }
+            out.stream.writeLong(root);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, out.getPath());
+        }
+        out.close();
+    }
+
+    private static class PendingNode
+    {
+        private long payload = -1;
+        private byte[] transitions = new byte[4];
+        private long[] children = new long[4];
+        private int childCount;
+
+        void addChild(byte transition, long position)
+        {
+            if (childCount == transitions.length)
+            {
+                transitions = Arrays.copyOf(transitions, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            transitions[childCount] = transition;
+            children[childCount] = position;
+            childCount++;
+        }
+
+        /**
+         * Writes the node at the given position of the file: see PartitionIndex for the format.
+         */
+        long write(DataOutput out, long position) throws IOException
+        {
+            int payloadSize = payload < 0 ? 0 : PartitionIndex.sizeOf(payload);
+            int pointerSize = childCount == 0 ? 0 : PartitionIndex.sizeOf(position - children[0]);
+            int header = (payload < 0 ? 0 : PartitionIndex.HAS_PAYLOAD | PartitionIndex.sizeCode(payloadSize) << 4)
+                       | (childCount == 0 ? 0 : PartitionIndex.HAS_CHILDREN | PartitionIndex.sizeCode(pointerSize));
+            out.writeByte(header);
+            if (payload >= 0)
+                PartitionIndex.writeSized(out, payload, payloadSize);
+            if (childCount > 0)
+            {
+                out.writeByte(childCount - 1);
+                out.write(transitions, 0, childCount);
+                // the first child was written first, so it is the farthest one
+                for (int i = 0; i < childCount; i++)
+                    PartitionIndex.writeSized(out, position - children[i], pointerSize);
+            }
+            return position;
+        }
+    }
+}
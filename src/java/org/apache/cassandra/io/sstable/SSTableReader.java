@@ -87,6 +87,7 @@ public class SSTableReader extends SSTable implements Closeable
     private SegmentedFile dfile;
 
     private IndexSummary indexSummary;
+    private PartitionIndex partitionIndex;
     private IFilter bf;
 
     private InstrumentingCache<KeyCacheKey, RowIndexEntry> keyCache;
@@ -109,6 +110,9 @@ public class SSTableReader extends SSTable implements Closeable
     public RestorableMeter readMeter;
     private ScheduledFuture readMeterSyncFuture;
 
+    // set once IndexSummaryManager replaces this reader by one with another index summary
+    private volatile SSTableReader replacedBy;
+
     public static long getApproximateKeyCount(Iterable<SSTableReader> sstables, CFMetaData metadata)
     {
         long count = 0;
@@ -303,15 +307,17 @@ public class SSTableReader extends SSTable implements Closeable
                                       SSTableMetadata sstableMetadata)
     {
         assert desc != null && partitioner != null && ifile != null && dfile != null && isummary != null && bf != null && sstableMetadata != null;
-        return new SSTableReader(desc,
-                                 components,
-                                 metadata,
-                                 partitioner,
-                                 ifile, dfile,
-                                 isummary,
-                                 bf,
-                                 maxDataAge,
-                                 sstableMetadata);
+        SSTableReader sstable = new SSTableReader(desc,
+                                                  components,
+                                                  metadata,
+                                                  partitioner,
+                                                  ifile, dfile,
+                                                  isummary,
+                                                  bf,
+                                                  maxDataAge,
+                                                  sstableMetadata);
+        sstable.loadPartitionIndex();
+        return sstable;
     }
 
 
@@ -338,18 +344,7 @@ public class SSTableReader extends SSTable implements Closeable
         }
 
         readMeter = SystemKeyspace.getSSTableReadMeter(desc.ksname, desc.cfname, desc.generation);
-        // sync the average read rate to system.sstable_activity every five minutes, starting one minute from now
-        readMeterSyncFuture = syncExecutor.scheduleAtFixedRate(new Runnable()
-        {
-            public void run()
-            {
-                if (!isCompacted.get())
-                {
-                    meterSyncThrottle.acquire();
-                    SystemKeyspace.persistSSTableReadMeter(desc.ksname, desc.cfname, desc.generation, readMeter);
-                }
-            }
-        }, 1, 5, TimeUnit.MINUTES);
+        readMeterSyncFuture = scheduleReadMeterSync();
     }
 
     private SSTableReader(Descriptor desc,
@@ -371,6 +366,45 @@ public class SSTableReader extends SSTable implements Closeable
         this.bf = bloomFilter;
     }
 
+    /**
+     * Open a reader of the same sstable as {@code replaced}, sharing its files, bloom filter and read meter, but with
+     * another index summary. The new reader holds a reference to the replaced one until it is released.
+     */
+    private SSTableReader(SSTableReader replaced, IndexSummary indexSummary)
+    {
+        super(replaced.descriptor, replaced.components, replaced.metadata, replaced.partitioner);
+        this.sstableMetadata = replaced.sstableMetadata;
+        this.maxDataAge = replaced.maxDataAge;
+        this.first = replaced.first;
+        this.last = replaced.last;
+        this.ifile = replaced.ifile;
+        this.dfile = replaced.dfile;
+        this.indexSummary = indexSummary;
+        this.partitionIndex = replaced.partitionIndex;
+        this.bf = replaced.bf;
+        this.keyCache = replaced.keyCache;
+
+        deletingTask = new SSTableDeletingTask(this);
+        readMeter = replaced.readMeter;
+        readMeterSyncFuture = readMeter == null ? null : scheduleReadMeterSync();
+    }
+
+    private ScheduledFuture scheduleReadMeterSync()
+    {
+        // sync the average read rate to system.sstable_activity every five minutes, starting one minute from now
+        return syncExecutor.scheduleAtFixedRate(new Runnable()
+        {
+            public void run()
+            {
+                if (!isCompacted.get())
+                {
+                    meterSyncThrottle.acquire();
+                    SystemKeyspace.persistSSTableReadMeter(descriptor.ksname, descriptor.cfname, descriptor.generation, readMeter);
+                }
+            }
+        }, 1, 5, TimeUnit.MINUTES);
+    }
+
     /**
      * Clean up all opened resources.
      *
@@ -387,6 +421,8 @@ public class SSTableReader extends SSTable implements Closeable
         // close the BF so it can be opened later.
         bf.close();
         indexSummary.close();
+        if (partitionIndex != null)
+            partitionIndex.close();
     }
 
     public void setTrackedBy(DataTracker tracker)
@@ -430,7 +466,7 @@ public class SSTableReader extends SSTable implements Closeable
         try
         {
             stream = new DataInputStream(new BufferedInputStream(new FileInputStream(descriptor.filenameFor(Component.FILTER))));
-            bf = FilterFactory.deserialize(stream, true);
+            bf = FilterFactory.deserialize(stream, true, descriptor.version.hasFilterType);
         }
         finally
         {
@@ -447,7 +483,7 @@ public class SSTableReader extends SSTable implements Closeable
     {
         SegmentedFile.Builder ibuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
         SegmentedFile.Builder dbuilder = compression
-                                         ? SegmentedFile.getCompressedBuilder()
+                                         ? SegmentedFile.getCompressedBuilder(DatabaseDescriptor.getDiskAccessMode())
                                          : SegmentedFile.getBuilder(DatabaseDescriptor.getDiskAccessMode());
 
         boolean summaryLoaded = loadSummary(this, ibuilder, dbuilder, metadata);
@@ -456,6 +492,7 @@ public class SSTableReader extends SSTable implements Closeable
 
         ifile = ibuilder.complete(descriptor.filenameFor(Component.PRIMARY_INDEX));
         dfile = dbuilder.complete(descriptor.filenameFor(Component.DATA));
+        loadPartitionIndex();
         if (saveSummaryIfCreated && (recreateBloomFilter || !summaryLoaded)) // save summary information to disk
             saveSummary(this, ibuilder, dbuilder);
     }
@@ -474,7 +511,7 @@ public class SSTableReader extends SSTable implements Closeable
                                : estimateRowsFromIndex(primaryIndex); // statistics is supposed to be optional
 
             if (recreateBloomFilter)
-                bf = FilterFactory.getFilter(estimatedKeys, metadata.getBloomFilterFpChance(), true);
+                bf = FilterFactory.getFilter(estimatedKeys, metadata.getBloomFilterFpChance(), true, metadata.getBloomFilterType() == CFMetaData.BloomFilterType.BLOCKED);
 
             IndexSummaryBuilder summaryBuilder = null;
             if (!summaryLoaded)
@@ -514,6 +551,12 @@ public class SSTableReader extends SSTable implements Closeable
         last = getMinimalKey(last);
     }
 
+    private void loadPartitionIndex()
+    {
+        if (descriptor.version.hasPartitionIndex && components.contains(Component.PARTITION_INDEX))
+            partitionIndex = PartitionIndex.open(new File(descriptor.filenameFor(Component.PARTITION_INDEX)));
+    }
+
     public static boolean loadSummary(SSTableReader reader, SegmentedFile.Builder ibuilder, SegmentedFile.Builder dbuilder, CFMetaData metadata)
     {
         File summariesFile = new File(reader.descriptor.filenameFor(Component.SUMMARY));
@@ -590,6 +633,94 @@ public class SSTableReader extends SSTable implements Closeable
         indexSummary = null;
     }
 
+    /**
+     * Returns a reader of this sstable whose index summary samples one of every {@code indexInterval} keys of the
+     * primary index, for IndexSummaryManager to replace this one with. The summary is downsampled in memory when the
+     * new interval is a multiple of the current one, and rebuilt from the primary index otherwise.
+     *
+     * This reader is left untouched until markReplacedBy is called, right before swapping the two in the DataTracker.
+     * A clone that doesn't get swapped in must be discarded with discardClone.
+     */
+    public SSTableReader cloneWithNewSummary(int indexInterval) throws IOException
+    {
+        int currentInterval = indexSummary.getIndexInterval();
+        IndexSummary newSummary = indexInterval % currentInterval == 0
+                                ? IndexSummaryBuilder.downsample(indexSummary, indexInterval / currentInterval, partitioner)
+                                : buildSummary(indexInterval);
+
+        return new SSTableReader(this, newSummary);
+    }
+
+    /**
+     * Hands the files of this reader over to replacement, a clone of it made by cloneWithNewSummary, which must then
+     * replace it in the DataTracker. This reader keeps working for the reads that hold a reference to it, and frees
+     * its summary when the last of them releases it.
+     */
+    public void markReplacedBy(SSTableReader replacement)
+    {
+        assert replacement.dfile == dfile && replacedBy == null;
+        // released when this reader is, so that the shared files outlive the reads still using it
+        replacement.references.incrementAndGet();
+        if (readMeterSyncFuture != null)
+            readMeterSyncFuture.cancel(false);
+        replacedBy = replacement;
+    }
+
+    /**
+     * Frees what a clone made by cloneWithNewSummary doesn't share with the reader it was meant to replace, when it
+     * doesn't end up replacing it.
+     */
+    public void discardClone()
+    {
+        if (readMeterSyncFuture != null)
+            readMeterSyncFuture.cancel(false);
+        FileUtils.closeQuietly(indexSummary);
+    }
+
+    private IndexSummary buildSummary(int indexInterval) throws IOException
+    {
+        RandomAccessReader primaryIndex = RandomAccessReader.open(new File(descriptor.filenameFor(Component.PRIMARY_INDEX)));
+        try
+        {
+            IndexSummaryBuilder summaryBuilder = new IndexSummaryBuilder(estimatedKeys(), indexInterval);
+            long indexSize = primaryIndex.length();
+            long indexPosition;
+            while ((indexPosition = primaryIndex.getFilePointer()) != indexSize)
+            {
+                ByteBuffer key = ByteBufferUtil.readWithShortLength(primaryIndex);
+                RowIndexEntry.serializer.skip(primaryIndex);
+                summaryBuilder.maybeAddEntry(partitioner.decorateKey(key), indexPosition);
+            }
+            return summaryBuilder.build(partitioner);
+        }
+        finally
+        {
+            FileUtils.closeQuietly(primaryIndex);
+        }
+    }
+
+    /**
+     * @return the number of primary index entries between two consecutive entries of the index summary
+     */
+    public int getEffectiveIndexInterval()
+    {
+        return indexSummary.getIndexInterval();
+    }
+
+    public long getIndexSummaryOffHeapSize()
+    {
+        return indexSummary.getOffHeapSize();
+    }
+
+    /**
+     * @return true if the entries of keys are found with the partition index trie, the index summary being only used
+     * for token bounds
+     */
+    public boolean hasPartitionIndex()
+    {
+        return partitionIndex != null;
+    }
+
     private void validate()
     {
         if (this.first.compareTo(this.last) > 0)
@@ -812,7 +943,7 @@ public class SSTableReader extends SSTable implements Closeable
 
         KeyCacheKey cacheKey = new KeyCacheKey(descriptor, key.key);
         logger.trace("Adding cache entry for {} -> {}", cacheKey, info);
-        keyCache.put(cacheKey, info);
+        keyCache.put(cacheKey, CacheService.keyCacheEntry(info));
     }
 
     public void preheat(Map<DecoratedKey, RowIndexEntry> cachedKeys) throws IOException
@@ -862,6 +993,22 @@ public class SSTableReader extends SSTable implements Closeable
         return null;
     }
 
+    /**
+     * Like getPosition(key, EQ), for the reads that search the promoted index of the entry. Cached entries may keep
+     * it off-heap until the cache evicts them, so it is referenced for the read to search it in place, and the
+     * caller must release() the entry when the read completes.
+     */
+    public RowIndexEntry getReferencedPosition(DecoratedKey key)
+    {
+        while (true)
+        {
+            RowIndexEntry entry = getPosition(key, Operator.EQ);
+            // an entry freed before we could reference it has been evicted, so looking again won't find it
+            if (entry == null || entry.reference())
+                return entry;
+        }
+    }
+
     /**
      * Get position updating key cache and stats.
      * @see #getPosition(org.apache.cassandra.db.RowPosition, org.apache.cassandra.io.sstable.SSTableReader.Operator, boolean)
@@ -904,8 +1051,11 @@ public class SSTableReader extends SSTable implements Closeable
             }
         }
 
-        // next, see if the sampled index says it's impossible for the key to be present
-        long sampledPosition = getIndexScanPosition(key);
+        // next, see if the sampled index says it's impossible for the key to be present: the partition index leads to
+        // the entry of the key or to one of its neighbours instead, so that there are at most two entries to scan
+        boolean usePartitionIndex = partitionIndex != null && key instanceof DecoratedKey;
+        long sampledPosition = usePartitionIndex ? partitionIndex.floor((DecoratedKey) key) : getIndexScanPosition(key);
+        int scanLimit = usePartitionIndex ? 1 : indexSummary.getIndexInterval();
         if (sampledPosition == -1)
         {
             if (op == Operator.EQ && updateCacheAndStats)
@@ -931,12 +1081,12 @@ public class SSTableReader extends SSTable implements Closeable
         // of the next interval).
         int i = 0;
         Iterator<FileDataInput> segments = ifile.iterator(sampledPosition);
-        while (segments.hasNext() && i <= indexSummary.getIndexInterval())
+        while (segments.hasNext() && i <= scanLimit)
         {
             FileDataInput in = segments.next();
             try
             {
-                while (!in.isEOF() && i <= indexSummary.getIndexInterval())
+                while (!in.isEOF() && i <= scanLimit)
                 {
                     i++;
 
@@ -1090,7 +1240,14 @@ public class SSTableReader extends SSTable implements Closeable
      */
     public void releaseReference()
     {
-        if (references.decrementAndGet() == 0 && isCompacted.get())
+        boolean released = references.decrementAndGet() == 0;
+        if (released && replacedBy != null)
+        {
+            // the files are still in use by the reader that replaced this one
+            FileUtils.closeQuietly(indexSummary);
+            replacedBy.releaseReference();
+        }
+        else if (released && isCompacted.get())
         {
             /**
              * Make OS a favour and suggest (using fadvice call) that we
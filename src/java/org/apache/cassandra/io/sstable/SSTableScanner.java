@@ -26,6 +26,7 @@ import java.util.List;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.util.concurrent.RateLimiter;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.DataRange;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.RowIndexEntry;
@@ -66,6 +67,7 @@ public class SSTableScanner implements ICompactionScanner
 
         this.dfile = limiter == null ? sstable.openDataReader() : sstable.openDataReader(limiter);
         this.ifile = sstable.openIndexReader();
+        enableReadAhead();
         this.sstable = sstable;
         this.dataRange = dataRange;
 
@@ -95,6 +97,7 @@ public class SSTableScanner implements ICompactionScanner
 
         this.dfile = limiter == null ? sstable.openDataReader() : sstable.openDataReader(limiter);
         this.ifile = sstable.openIndexReader();
+        enableReadAhead();
         this.sstable = sstable;
         this.dataRange = null;
 
@@ -108,6 +111,16 @@ public class SSTableScanner implements ICompactionScanner
         this.rangeIterator = boundsList.iterator();
     }
 
+    private void enableReadAhead()
+    {
+        int buffers = DatabaseDescriptor.getScanReadAheadBuffers();
+        if (buffers > 0)
+        {
+            dfile.enableReadAhead(buffers);
+            ifile.enableReadAhead(buffers);
+        }
+    }
+
     private void seekToCurrentRangeStart()
     {
         if (currentRange.left.isMinimum(sstable.partitioner))
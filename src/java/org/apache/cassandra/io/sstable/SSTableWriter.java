@@ -54,6 +54,8 @@ public class SSTableWriter extends SSTable
     private DecoratedKey lastWrittenKey;
     private FileMark dataMark;
     private final SSTableMetadata.Collector sstableMetadataCollector;
+    // picked once for the whole sstable, see ColumnIndex.blockSizeFor()
+    private final int columnIndexSize;
 
     public SSTableWriter(String filename, long keyCount)
     {
@@ -64,7 +66,7 @@ public class SSTableWriter extends SSTable
              SSTableMetadata.createCollector(Schema.instance.getCFMetaData(Descriptor.fromFilename(filename)).comparator));
     }
 
-    private static Set<Component> components(CFMetaData metadata)
+    private static Set<Component> components(CFMetaData metadata, IPartitioner<?> partitioner)
     {
         Set<Component> components = new HashSet<Component>(Arrays.asList(Component.DATA,
                                                                          Component.PRIMARY_INDEX,
@@ -75,6 +77,9 @@ public class SSTableWriter extends SSTable
         if (metadata.getBloomFilterFpChance() < 1.0)
             components.add(Component.FILTER);
 
+        if (PartitionIndex.isSupported(partitioner))
+            components.add(Component.PARTITION_INDEX);
+
         if (metadata.compressionParameters().sstableCompressor != null)
         {
             components.add(Component.COMPRESSION_INFO);
@@ -96,14 +101,14 @@ public class SSTableWriter extends SSTable
                          SSTableMetadata.Collector sstableMetadataCollector)
     {
         super(Descriptor.fromFilename(filename),
-              components(metadata),
+              components(metadata, partitioner),
               metadata,
               partitioner);
         iwriter = new IndexWriter(keyCount);
 
         if (compression)
         {
-            dbuilder = SegmentedFile.getCompressedBuilder();
+            dbuilder = SegmentedFile.getCompressedBuilder(DatabaseDescriptor.getDiskAccessMode());
             dataFile = CompressedSequentialWriter.open(getFilename(),
                                                        descriptor.filenameFor(Component.COMPRESSION_INFO),
                                                        !metadata.populateIoCacheOnFlush(),
@@ -118,6 +123,7 @@ public class SSTableWriter extends SSTable
         }
 
         this.sstableMetadataCollector = sstableMetadataCollector;
+        this.columnIndexSize = ColumnIndex.blockSizeFor(metadata);
     }
 
     public void mark()
@@ -166,7 +172,7 @@ public class SSTableWriter extends SSTable
         RowIndexEntry entry;
         try
         {
-            entry = row.write(currentPosition, dataFile.stream);
+            entry = row.write(currentPosition, dataFile.stream, columnIndexSize);
             if (entry == null)
                 return null;
         }
@@ -184,7 +190,7 @@ public class SSTableWriter extends SSTable
         long startPosition = beforeAppend(decoratedKey);
         try
         {
-            RowIndexEntry entry = rawAppend(cf, startPosition, decoratedKey, dataFile.stream);
+            RowIndexEntry entry = rawAppend(cf, startPosition, decoratedKey, dataFile.stream, columnIndexSize);
             afterAppend(decoratedKey, startPosition, entry);
         }
         catch (IOException e)
@@ -194,11 +200,11 @@ public class SSTableWriter extends SSTable
         sstableMetadataCollector.update(dataFile.getFilePointer() - startPosition, cf.getColumnStats());
     }
 
-    public static RowIndexEntry rawAppend(ColumnFamily cf, long startPosition, DecoratedKey key, DataOutput out) throws IOException
+    public static RowIndexEntry rawAppend(ColumnFamily cf, long startPosition, DecoratedKey key, DataOutput out, int columnIndexSize) throws IOException
     {
         assert cf.getColumnCount() > 0 || cf.isMarkedForDelete();
 
-        ColumnIndex.Builder builder = new ColumnIndex.Builder(cf, key.key, out);
+        ColumnIndex.Builder builder = new ColumnIndex.Builder(cf, key.key, out, columnIndexSize);
         ColumnIndex index = builder.build(cf);
 
         out.writeShort(END_OF_ROW);
@@ -228,7 +234,7 @@ public class SSTableWriter extends SSTable
 
         cf.delete(DeletionTime.serializer.deserialize(in));
 
-        ColumnIndex.Builder columnIndexer = new ColumnIndex.Builder(cf, key.key, dataFile.stream);
+        ColumnIndex.Builder columnIndexer = new ColumnIndex.Builder(cf, key.key, dataFile.stream, columnIndexSize);
 
         // read column count for version < ja
         int columnCount = Integer.MAX_VALUE;
@@ -410,6 +416,7 @@ public class SSTableWriter extends SSTable
         public final SegmentedFile.Builder builder;
         public final IndexSummaryBuilder summary;
         public final IFilter bf;
+        private final PartitionIndexBuilder partitionIndex;
         private FileMark mark;
 
         IndexWriter(long keyCount)
@@ -418,7 +425,10 @@ public class SSTableWriter extends SSTable
                                               !metadata.populateIoCacheOnFlush());
             builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
             summary = new IndexSummaryBuilder(keyCount, metadata.getIndexInterval());
-            bf = FilterFactory.getFilter(keyCount, metadata.getBloomFilterFpChance(), true);
+            bf = FilterFactory.getFilter(keyCount, metadata.getBloomFilterFpChance(), true, metadata.getBloomFilterType() == CFMetaData.BloomFilterType.BLOCKED);
+            partitionIndex = components.contains(Component.PARTITION_INDEX)
+                           ? new PartitionIndexBuilder(new File(descriptor.filenameFor(Component.PARTITION_INDEX)), !metadata.populateIoCacheOnFlush())
+                           : null;
         }
 
         public void append(DecoratedKey key, RowIndexEntry indexEntry)
@@ -440,6 +450,8 @@ public class SSTableWriter extends SSTable
 
             summary.maybeAddEntry(key, indexPosition);
             builder.addPotentialBoundary(indexPosition);
+            if (partitionIndex != null)
+                partitionIndex.append(key, indexPosition);
         }
 
         /**
@@ -466,6 +478,9 @@ public class SSTableWriter extends SSTable
                 }
             }
 
+            if (partitionIndex != null)
+                partitionIndex.close();
+
             // index
             long position = indexFile.getFilePointer();
             indexFile.close(); // calls force
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
+import org.apache.cassandra.io.compress.CompressionMetadata;
+
+/**
+ * A compressed file whose compressed chunks are read from memory mapped segments of the file, rather than through its
+ * channel. Segments are at most MmappedSegmentedFile.MAX_SEGMENT_SIZE long and never split a chunk (including its
+ * checksum), so that any chunk can be read from a single segment.
+ */
+public class CompressedMmappedSegmentedFile extends CompressedPoolingSegmentedFile
+{
+    private static final Logger logger = LoggerFactory.getLogger(CompressedMmappedSegmentedFile.class);
+
+    // the mapped segments, by offset in the compressed file
+    private final TreeMap<Long, MappedByteBuffer> chunkSegments;
+
+    public CompressedMmappedSegmentedFile(String path, CompressionMetadata metadata, TreeMap<Long, MappedByteBuffer> chunkSegments)
+    {
+        super(path, metadata);
+        this.chunkSegments = chunkSegments;
+    }
+
+    public static class Builder extends CompressedPoolingSegmentedFile.Builder
+    {
+        public SegmentedFile complete(String path)
+        {
+            CompressionMetadata metadata = CompressionMetadata.create(path);
+            return new CompressedMmappedSegmentedFile(path, metadata, createSegments(path, metadata));
+        }
+
+        @VisibleForTesting
+        public static TreeMap<Long, MappedByteBuffer> createSegments(String path, CompressionMetadata metadata)
+        {
+            RandomAccessFile raf;
+            try
+            {
+                raf = new RandomAccessFile(path, "r");
+            }
+            catch (FileNotFoundException e)
+            {
+                throw new RuntimeException(e);
+            }
+
+            TreeMap<Long, MappedByteBuffer> segments = new TreeMap<Long, MappedByteBuffer>();
+            try
+            {
+                FileChannel channel = raf.getChannel();
+                long start = 0;
+                for (long position = 0; position < metadata.dataLength; position += metadata.chunkLength())
+                {
+                    CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
+                    // the chunk and its checksum don't fit in the current segment, start a new one with it
+                    if (chunk.offset > start && chunk.offset + chunk.length + 4 - start > MmappedSegmentedFile.MAX_SEGMENT_SIZE)
+                    {
+                        segments.put(start, channel.map(FileChannel.MapMode.READ_ONLY, start, chunk.offset - start));
+                        start = chunk.offset;
+                    }
+                }
+                if (start < metadata.compressedFileLength)
+                    segments.put(start, channel.map(FileChannel.MapMode.READ_ONLY, start, metadata.compressedFileLength - start));
+            }
+            catch (IOException e)
+            {
+                throw new FSReadError(e, path);
+            }
+            finally
+            {
+                FileUtils.closeQuietly(raf);
+            }
+            return segments;
+        }
+    }
+
+    @Override
+    protected RandomAccessReader createReader(String path)
+    {
+        return CompressedRandomAccessReader.open(path, metadata, this, chunkSegments);
+    }
+
+    @Override
+    public void cleanup()
+    {
+        super.cleanup();
+
+        if (!FileUtils.isCleanerAvailable())
+            return;
+
+        // see MmappedSegmentedFile.cleanup()
+        try
+        {
+            for (Map.Entry<Long, MappedByteBuffer> segment : chunkSegments.entrySet())
+                FileUtils.clean(segment.getValue());
+            logger.debug("All segments have been unmapped successfully");
+        }
+        catch (Exception e)
+        {
+            // This is not supposed to happen
+            logger.error("Error while unmapping segments", e);
+        }
+    }
+}
@@ -34,7 +34,7 @@ public abstract class DiskAwareRunnable extends WrappedRunnable
         while (true)
         {
             writeSize = getExpectedWriteSize();
-            directory = getDirectories().getWriteableLocation();
+            directory = getWriteableLocation();
             if (directory != null || !reduceScopeForLimitedSpace())
                 break;
         }
@@ -54,6 +54,16 @@ public abstract class DiskAwareRunnable extends WrappedRunnable
         }
     }
 
+    /**
+     * @return the directory to run this task on, or null to have the task reduce its scope (see
+     * reduceScopeForLimitedSpace()). This picks the best non-blacklisted directory, and throws an IOError if all
+     * of them are blacklisted.
+     */
+    protected Directories.DataDirectory getWriteableLocation()
+    {
+        return getDirectories().getWriteableLocation();
+    }
+
     /**
      * Get sstable directories for the CF.
      * @return Directories instance for the CF.
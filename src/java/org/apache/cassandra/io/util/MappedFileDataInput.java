@@ -19,14 +19,13 @@ package org.apache.cassandra.io.util;
 
 import java.io.*;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
 import org.apache.cassandra.utils.ByteBufferUtil;
 
 public class MappedFileDataInput extends AbstractDataInput implements FileDataInput
 {
-    private final MappedByteBuffer buffer;
+    private final ByteBuffer buffer;
     private final String filename;
     private final long segmentOffset;
     private int position;
@@ -40,7 +39,7 @@ public class MappedFileDataInput extends AbstractDataInput implements FileDataIn
         this.position = position;
     }
 
-    public MappedFileDataInput(MappedByteBuffer buffer, String filename, long segmentOffset, int position)
+    public MappedFileDataInput(ByteBuffer buffer, String filename, long segmentOffset, int position)
     {
         assert buffer != null;
         this.buffer = buffer;
@@ -156,7 +155,7 @@ public class MappedFileDataInput extends AbstractDataInput implements FileDataIn
     }
 
     @Override
-    public final void readFully(byte[] buffer, int offset, int count) throws IOException
+    public void readFully(byte[] buffer, int offset, int count) throws IOException
     {
         throw new UnsupportedOperationException("use readBytes instead");
     }
@@ -17,6 +17,10 @@
  */
 package org.apache.cassandra.io.util;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import sun.misc.Unsafe;
 
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -30,6 +34,26 @@ public class Memory
     private static final IAllocator allocator = DatabaseDescriptor.getoffHeapMemoryAllocator();
     private static final long BYTE_ARRAY_BASE_OFFSET = unsafe.arrayBaseOffset(byte[].class);
 
+    private static final Class<?> DIRECT_BYTE_BUFFER_CLASS = ByteBuffer.allocateDirect(0).getClass();
+    private static final long BUFFER_ADDRESS_OFFSET;
+    private static final long BUFFER_CAPACITY_OFFSET;
+    private static final long BUFFER_LIMIT_OFFSET;
+    private static final long BUFFER_MARK_OFFSET;
+    static
+    {
+        try
+        {
+            BUFFER_ADDRESS_OFFSET = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+            BUFFER_CAPACITY_OFFSET = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("capacity"));
+            BUFFER_LIMIT_OFFSET = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("limit"));
+            BUFFER_MARK_OFFSET = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("mark"));
+        }
+        catch (NoSuchFieldException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
     protected long peer;
     // size of the memory region
     private final long size;
@@ -141,6 +165,36 @@ public class Memory
         unsafe.copyMemory(null, peer + memoryOffset, buffer, BYTE_ARRAY_BASE_OFFSET + bufferOffset, count);
     }
 
+    /**
+     * Returns a ByteBuffer over count bytes of this memory, starting at offset, without copying them. The buffer
+     * must not be used anymore once the memory is freed.
+     */
+    public ByteBuffer asByteBuffer(long offset, int count)
+    {
+        if (count > 0)
+        {
+            checkPosition(offset);
+            checkPosition(offset + count - 1);
+        }
+
+        ByteBuffer buffer;
+        try
+        {
+            buffer = (ByteBuffer) unsafe.allocateInstance(DIRECT_BYTE_BUFFER_CLASS);
+        }
+        catch (InstantiationException e)
+        {
+            throw new AssertionError(e);
+        }
+        unsafe.putLong(buffer, BUFFER_ADDRESS_OFFSET, peer + offset);
+        unsafe.putInt(buffer, BUFFER_CAPACITY_OFFSET, count);
+        unsafe.putInt(buffer, BUFFER_LIMIT_OFFSET, count);
+        unsafe.putInt(buffer, BUFFER_MARK_OFFSET, -1);
+        // the constructor, which we skipped, would have set the byte order
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
     private void checkPosition(long offset)
     {
         assert peer != 0 : "Memory was freed";
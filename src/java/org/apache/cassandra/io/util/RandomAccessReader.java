@@ -24,6 +24,8 @@ import java.nio.channels.FileChannel;
 import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.metrics.ReadAheadMetrics;
+import org.apache.cassandra.utils.CLibrary;
 
 public class RandomAccessReader extends RandomAccessFile implements FileDataInput
 {
@@ -53,6 +55,12 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
 
     protected final PoolingSegmentedFile owner;
 
+    // read-ahead of sequential reads (see enableReadAhead): the number of buffers the kernel is asked to prefetch past
+    // the one being read, and the end of the part of the file it was last asked for
+    private int readAheadBuffers;
+    private long readAheadLimit;
+    private int fd = -1;
+
     protected RandomAccessReader(File file, int bufferSize, PoolingSegmentedFile owner) throws FileNotFoundException
     {
         super(file, "r");
@@ -121,6 +129,7 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
             if (bufferOffset >= channel.size())
                 return;
 
+            readAhead(bufferOffset);
             channel.position(bufferOffset); // setting channel position
 
             int read = 0;
@@ -141,6 +150,75 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
         }
     }
 
+    /**
+     * Makes the kernel prefetch the given number of buffers past the one being read, so that sequential reads don't
+     * wait on the disk for every buffer. Readers handed back to a pool (see PoolingSegmentedFile) don't keep it.
+     *
+     * @param buffers the number of buffers to read ahead, 0 to disable it
+     */
+    public void enableReadAhead(int buffers)
+    {
+        assert buffers >= 0;
+        readAheadBuffers = buffers;
+        readAheadLimit = 0;
+        if (buffers > 0 && fd < 0)
+        {
+            try
+            {
+                fd = CLibrary.getfd(getFD());
+            }
+            catch (IOException e)
+            {
+                throw new FSReadError(e, filePath);
+            }
+        }
+    }
+
+    /**
+     * Asks the kernel to read the file ahead of the given position if it was enabled, and if what it was last asked
+     * for is less than half of the read-ahead window past that position: sequential reads then only give it a
+     * request every readAheadBuffers / 2 buffers, and seeking outside the window starts a new one.
+     *
+     * @param position the position of the part of the file about to be read
+     */
+    protected void readAhead(long position)
+    {
+        if (readAheadBuffers == 0)
+            return;
+
+        long window = Math.min((long) readAheadBuffers * buffer.length, Integer.MAX_VALUE);
+        long start;
+        if (position > readAheadLimit || position + window < readAheadLimit)
+            start = position;
+        else if (readAheadLimit - position >= window / 2)
+            return;
+        else
+            start = readAheadLimit;
+
+        long end = Math.min(position + window, fileLength);
+        if (end <= start)
+            return;
+
+        if (CLibrary.tryWillNeed(fd, start, (int) (end - start)))
+        {
+            ReadAheadMetrics.requests.mark();
+            ReadAheadMetrics.bytes.mark(end - start);
+            readAheadLimit = end;
+        }
+        else
+        {
+            // no point asking again for every buffer
+            ReadAheadMetrics.failures.mark();
+            readAheadBuffers = 0;
+        }
+    }
+
+    @VisibleForTesting
+    long getReadAheadLimit()
+    {
+        return readAheadLimit;
+    }
+
     @Override
     public long getFilePointer()
     {
@@ -227,6 +305,7 @@ public class RandomAccessReader extends RandomAccessFile implements FileDataInpu
         }
         else
         {
+            enableReadAhead(0);
             owner.recycle(this);
         }
     }
@@ -73,9 +73,11 @@ public abstract class SegmentedFile
                : new BufferedPoolingSegmentedFile.Builder();
     }
 
-    public static Builder getCompressedBuilder()
+    public static Builder getCompressedBuilder(Config.DiskAccessMode mode)
     {
-        return new CompressedPoolingSegmentedFile.Builder();
+        return mode == Config.DiskAccessMode.mmap
+               ? new CompressedMmappedSegmentedFile.Builder()
+               : new CompressedPoolingSegmentedFile.Builder();
     }
 
     public abstract FileDataInput getSegment(long position);
@@ -36,6 +36,10 @@ public class ColumnFamilyMetrics
 {
     /** Total amount of data stored in the memtable, including column related overhead. */
     public final Gauge<Long> memtableDataSize;
+    /** Heap used by the memtable. */
+    public final Gauge<Long> memtableHeapSize;
+    /** Off-heap memory used by the memtable (see memtable_allocator). */
+    public final Gauge<Long> memtableOffHeapSize;
     /** Total amount of data stored in the memtables (2i and pending flush memtables included). */
     public final Gauge<Long> allMemtablesDataSize;
     /** Total number of columns present in the memtable. */
@@ -50,6 +54,8 @@ public class ColumnFamilyMetrics
     public final Gauge<long[]> estimatedColumnCountHistogram;
     /** Histogram of the number of sstable data files accessed per read */
     public final Histogram sstablesPerReadHistogram;
+    /** Histogram of the number of sstable data files skipped per read because their column bounds don't intersect the query */
+    public final Histogram sstablesPrunedPerReadHistogram;
     /** (Local) read metrics */
     public final LatencyMetrics readLatency;
     /** (Local) write metrics */
@@ -87,11 +93,21 @@ public class ColumnFamilyMetrics
 
     public final Timer coordinatorReadLatency;
     public final Timer coordinatorScanLatency;
+    /** Estimated number of rows per token range returned to range queries coordinated by this node */
+    public final Gauge<Double> rowsPerRange;
+
+    // the estimate behind rowsPerRange, an exponentially weighted moving average of what range queries got
+    private volatile double rowsPerRangeEstimate = Double.NaN;
 
     private final MetricNameFactory factory;
 
     public final Counter speculativeRetries;
 
+    /** Stale entries found by queries on this CF, if it is a secondary index */
+    public final Counter staleIndexEntriesFound;
+    /** Stale entries removed from this CF, if it is a secondary index */
+    public final Counter staleIndexEntriesPurged;
+
     // for backward compatibility
     @Deprecated public final EstimatedHistogram sstablesPerRead = new EstimatedHistogram(35);
     @Deprecated public final EstimatedHistogram recentSSTablesPerRead = new EstimatedHistogram(35);
@@ -119,6 +135,20 @@ public class ColumnFamilyMetrics
                 return cfs.getDataTracker().getMemtable().getLiveSize();
             }
         });
+        memtableHeapSize = Metrics.newGauge(factory.createMetricName("MemtableHeapSize"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return cfs.getDataTracker().getMemtable().getHeapSize();
+            }
+        });
+        memtableOffHeapSize = Metrics.newGauge(factory.createMetricName("MemtableOffHeapSize"), new Gauge<Long>()
+        {
+            public Long value()
+            {
+                return cfs.getDataTracker().getMemtable().getOffHeapSize();
+            }
+        });
         allMemtablesDataSize = Metrics.newGauge(factory.createMetricName("AllMemtablesDataSize"), new Gauge<Long>()
         {
             public Long value()
@@ -156,6 +186,7 @@ public class ColumnFamilyMetrics
             }
         });
         sstablesPerReadHistogram = Metrics.newHistogram(factory.createMetricName("SSTablesPerReadHistogram"), true);
+        sstablesPrunedPerReadHistogram = Metrics.newHistogram(factory.createMetricName("SSTablesPrunedPerReadHistogram"), true);
         compressionRatio = Metrics.newGauge(factory.createMetricName("CompressionRatio"), new Gauge<Double>()
         {
             public Double value()
@@ -295,6 +326,15 @@ public class ColumnFamilyMetrics
             }
         });
         speculativeRetries = Metrics.newCounter(factory.createMetricName("SpeculativeRetries"));
+        rowsPerRange = Metrics.newGauge(factory.createMetricName("RowsPerRangeEstimate"), new Gauge<Double>()
+        {
+            public Double value()
+            {
+                return rowsPerRangeEstimate;
+            }
+        });
+        staleIndexEntriesFound = Metrics.newCounter(factory.createMetricName("StaleIndexEntriesFound"));
+        staleIndexEntriesPurged = Metrics.newCounter(factory.createMetricName("StaleIndexEntriesPurged"));
         keyCacheHitRate = Metrics.newGauge(factory.createMetricName("KeyCacheHitRate"), new RatioGauge()
         {
             protected double getNumerator()
@@ -319,13 +359,32 @@ public class ColumnFamilyMetrics
         coordinatorScanLatency = Metrics.newTimer(factory.createMetricName("CoordinatorScanLatency"), TimeUnit.MICROSECONDS, TimeUnit.SECONDS);
     }
 
-    public void updateSSTableIterated(int count)
+    public void updateSSTableIterated(int count, int pruned)
     {
         sstablesPerReadHistogram.update(count);
+        sstablesPrunedPerReadHistogram.update(pruned);
         recentSSTablesPerRead.add(count);
         sstablesPerRead.add(count);
     }
 
+    /**
+     * @return the estimated number of rows per token range a range query gets, NaN if no query was coordinated yet.
+     */
+    public double rowsPerRangeEstimate()
+    {
+        return rowsPerRangeEstimate;
+    }
+
+    /**
+     * Accounts the number of rows per token range a range query got.
+     */
+    public void updateRowsPerRangeEstimate(double rowsPerRange)
+    {
+        double current = rowsPerRangeEstimate;
+        // racy, but losing an update now and then doesn't matter for an estimate
+        rowsPerRangeEstimate = Double.isNaN(current) ? rowsPerRange : 0.75 * current + 0.25 * rowsPerRange;
+    }
+
     /**
      * Release all associated metrics.
      */
@@ -335,11 +394,14 @@ public class ColumnFamilyMetrics
         writeLatency.release();
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("MemtableColumnsCount"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("MemtableDataSize"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("MemtableHeapSize"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("MemtableOffHeapSize"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("MemtableSwitchCount"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("CompressionRatio"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("EstimatedRowSizeHistogram"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("EstimatedColumnCountHistogram"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("SSTablesPerReadHistogram"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("SSTablesPrunedPerReadHistogram"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("PendingTasks"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("LiveSSTableCount"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("LiveDiskSpaceUsed"));
@@ -358,6 +420,9 @@ public class ColumnFamilyMetrics
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("LiveScannedHistogram"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("CoordinatorReadLatency"));
         Metrics.defaultRegistry().removeMetric(factory.createMetricName("CoordinatorScanLatency"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("RowsPerRangeEstimate"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("StaleIndexEntriesFound"));
+        Metrics.defaultRegistry().removeMetric(factory.createMetricName("StaleIndexEntriesPurged"));
     }
 
     class ColumnFamilyMetricNameFactory implements MetricNameFactory
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Meter;
+
+/**
+ * Metrics for the read-ahead of sequential sstable scans.
+ */
+public class ReadAheadMetrics
+{
+    private static final MetricNameFactory factory = new DefaultNameFactory("ReadAhead");
+
+    /** Number of read-ahead requests given to the kernel */
+    public static final Meter requests = Metrics.newMeter(factory.createMetricName("Requests"), "requests", TimeUnit.SECONDS);
+    /** Number of bytes asked to be read ahead */
+    public static final Meter bytes = Metrics.newMeter(factory.createMetricName("Bytes"), "bytes", TimeUnit.SECONDS);
+    /** Number of read-ahead requests that couldn't be given, e.g. for lack of JNA */
+    public static final Meter failures = Metrics.newMeter(factory.createMetricName("Failures"), "failures", TimeUnit.SECONDS);
+}
@@ -38,6 +38,7 @@ import org.apache.cassandra.net.IAsyncCallback;
 import org.apache.cassandra.net.MessageIn;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.messages.ValidationRequest;
+import org.apache.cassandra.utils.DigestAlgorithm;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.MerkleTree;
 import org.apache.cassandra.utils.SimpleCondition;
@@ -61,6 +62,7 @@ public class RepairJob
     private final Condition requestsSent = new SimpleCondition();
     private CountDownLatch snapshotLatch = null;
     private int gcBefore = -1;
+    private DigestAlgorithm digestAlgorithm;
 
     private volatile boolean failed = false;
 
@@ -75,7 +77,7 @@ public class RepairJob
         {
             public void send(InetAddress endpoint)
             {
-                ValidationRequest request = new ValidationRequest(desc, gcBefore);
+                ValidationRequest request = new ValidationRequest(desc, gcBefore, digestAlgorithm);
                 MessagingService.instance().sendOneWay(request.createMessage(), endpoint);
             }
         };
@@ -110,6 +112,17 @@ public class RepairJob
 
         this.gcBefore = Keyspace.open(desc.keyspace).getColumnFamilyStore(desc.columnFamily).gcBefore(System.currentTimeMillis());
 
+        // the trees can only be compared if all of them hash rows the same way. getVersion assumes the current version
+        // for the peers we haven't exchanged versions with yet, but they may be older: fall back to the old algorithm
+        int version = MessagingService.current_version;
+        for (InetAddress endpoint : endpoints)
+        {
+            version = MessagingService.instance().knowsVersion(endpoint)
+                    ? Math.min(version, MessagingService.instance().getVersion(endpoint))
+                    : Math.min(version, MessagingService.VERSION_20);
+        }
+        this.digestAlgorithm = DigestAlgorithm.forRepair(version);
+
         for (InetAddress endpoint : allEndpoints)
             treeRequests.add(endpoint);
 
@@ -35,6 +35,7 @@ import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.compaction.AbstractCompactedRow;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.messages.ValidationComplete;
+import org.apache.cassandra.utils.DigestAlgorithm;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.MerkleTree;
 
@@ -54,6 +55,7 @@ public class Validator implements Runnable
     public final InetAddress initiator;
     public final MerkleTree tree;
     public final int gcBefore;
+    public final DigestAlgorithm digestAlgorithm;
 
     // null when all rows with the min token have been consumed
     private transient long validated;
@@ -65,21 +67,36 @@ public class Validator implements Runnable
      * Create Validator with default size of initial Merkle Tree.
      */
     public Validator(RepairJobDesc desc, InetAddress initiator, int gcBefore)
+    {
+        this(desc, initiator, gcBefore, DigestAlgorithm.SHA_256);
+    }
+
+    /**
+     * @param digestAlgorithm the algorithm rows are hashed with, which must be the same for all the trees of a repair
+     */
+    public Validator(RepairJobDesc desc, InetAddress initiator, int gcBefore, DigestAlgorithm digestAlgorithm)
     {
         this(desc,
              initiator,
              // TODO: memory usage (maxsize) should either be tunable per
              // CF, globally, or as shared for all CFs in a cluster
              new MerkleTree(DatabaseDescriptor.getPartitioner(), desc.range, MerkleTree.RECOMMENDED_DEPTH, (int)Math.pow(2, 15)),
-             gcBefore);
+             gcBefore,
+             digestAlgorithm);
     }
 
     public Validator(RepairJobDesc desc, InetAddress initiator, MerkleTree tree, int gcBefore)
+    {
+        this(desc, initiator, tree, gcBefore, DigestAlgorithm.SHA_256);
+    }
+
+    public Validator(RepairJobDesc desc, InetAddress initiator, MerkleTree tree, int gcBefore, DigestAlgorithm digestAlgorithm)
     {
         this.desc = desc;
         this.initiator = initiator;
         this.tree = tree;
         this.gcBefore = gcBefore;
+        this.digestAlgorithm = digestAlgorithm;
         validated = 0;
         range = null;
         ranges = null;
@@ -193,8 +210,8 @@ public class Validator implements Runnable
     private MerkleTree.RowHash rowHash(AbstractCompactedRow row)
     {
         validated++;
-        // MerkleTree uses XOR internally, so we want lots of output bits here
-        CountingDigest digest = new CountingDigest(FBUtilities.newMessageDigest("SHA-256"));
+        // MerkleTree uses XOR internally, so we want lots of output bits here: 128 at least
+        CountingDigest digest = new CountingDigest(digestAlgorithm.threadLocalDigest());
         row.update(digest);
         return new MerkleTree.RowHash(row.key.token, digest.digest(), digest.count);
     }
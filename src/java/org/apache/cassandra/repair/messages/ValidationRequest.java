@@ -22,7 +22,9 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.RepairJobDesc;
+import org.apache.cassandra.utils.DigestAlgorithm;
 
 /**
  * ValidationRequest
@@ -34,11 +36,18 @@ public class ValidationRequest extends RepairMessage
     public static MessageSerializer serializer = new ValidationRequestSerializer();
 
     public final int gcBefore;
+    public final DigestAlgorithm digestAlgorithm;
 
     public ValidationRequest(RepairJobDesc desc, int gcBefore)
+    {
+        this(desc, gcBefore, DigestAlgorithm.SHA_256);
+    }
+
+    public ValidationRequest(RepairJobDesc desc, int gcBefore, DigestAlgorithm digestAlgorithm)
     {
         super(Type.VALIDATION_REQUEST, desc);
         this.gcBefore = gcBefore;
+        this.digestAlgorithm = digestAlgorithm;
     }
 
     @Override
@@ -48,13 +57,13 @@ public class ValidationRequest extends RepairMessage
         if (o == null || getClass() != o.getClass()) return false;
 
         ValidationRequest that = (ValidationRequest) o;
-        return gcBefore == that.gcBefore;
+        return gcBefore == that.gcBefore && digestAlgorithm == that.digestAlgorithm;
     }
 
     @Override
     public int hashCode()
     {
-        return gcBefore;
+        return 31 * gcBefore + digestAlgorithm.hashCode();
     }
 
     public static class ValidationRequestSerializer implements MessageSerializer<ValidationRequest>
@@ -63,18 +72,27 @@ public class ValidationRequest extends RepairMessage
         {
             RepairJobDesc.serializer.serialize(message.desc, out, version);
             out.writeInt(message.gcBefore);
+            // older peers always use SHA_256, which RepairJob asks for if any of the participants is one of them
+            if (version >= MessagingService.VERSION_21)
+                out.writeByte(message.digestAlgorithm.ordinal());
         }
 
         public ValidationRequest deserialize(DataInput dis, int version) throws IOException
         {
             RepairJobDesc desc = RepairJobDesc.serializer.deserialize(dis, version);
-            return new ValidationRequest(desc, dis.readInt());
+            int gcBefore = dis.readInt();
+            DigestAlgorithm digestAlgorithm = version >= MessagingService.VERSION_21
+                                            ? DigestAlgorithm.values()[dis.readByte()]
+                                            : DigestAlgorithm.SHA_256;
+            return new ValidationRequest(desc, gcBefore, digestAlgorithm);
         }
 
         public long serializedSize(ValidationRequest message, int version)
         {
             long size = RepairJobDesc.serializer.serializedSize(message.desc, version);
             size += TypeSizes.NATIVE.sizeof(message.gcBefore);
+            if (version >= MessagingService.VERSION_21)
+                size += 1;
             return size;
         }
     }
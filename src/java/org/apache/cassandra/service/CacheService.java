@@ -32,6 +32,7 @@ import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
 import com.google.common.util.concurrent.Futures;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,7 +45,6 @@ import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.RowIndexEntry;
-import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.SSTableReader;
 import org.apache.cassandra.utils.ByteBufferUtil;
@@ -109,7 +109,16 @@ public class CacheService implements CacheServiceMBean
         // as values are constant size we can use singleton weigher
         // where 48 = 40 bytes (average size of the key) + 8 bytes (size of value)
         ICache<KeyCacheKey, RowIndexEntry> kc;
-        kc = ConcurrentLinkedHashCache.create(keyCacheInMemoryCapacity);
+        kc = DatabaseDescriptor.getKeyCacheOffHeap()
+           ? new OffHeapKeyCache(keyCacheInMemoryCapacity)
+           : ConcurrentLinkedHashCache.create(keyCacheInMemoryCapacity, new EvictionListener<KeyCacheKey, RowIndexEntry>()
+             {
+                 // entries keep their promoted index off-heap, see keyCacheEntry()
+                 public void onEviction(KeyCacheKey key, RowIndexEntry entry)
+                 {
+                     entry.release();
+                 }
+             });
         AutoSavingCache<KeyCacheKey, RowIndexEntry> keyCache = new AutoSavingCache<KeyCacheKey, RowIndexEntry>(kc, CacheType.KEY_CACHE, new KeyCacheSerializer());
 
         int keyCacheKeysToSave = DatabaseDescriptor.getKeyCacheKeysToSave();
@@ -231,6 +240,16 @@ public class CacheService implements CacheServiceMBean
         keyCache.scheduleSaving(getKeyCacheSavePeriodInSeconds(), count);
     }
 
+    /**
+     * @return the key cache entry for info: the off-heap key cache serializes it anyway, while the on-heap one keeps
+     * it as is, so it is better to move its promoted index off-heap first. The on-heap cache releases it once it
+     * no longer holds it, so it must be referenced while read, see SSTableReader.getReferencedPosition().
+     */
+    public static RowIndexEntry keyCacheEntry(RowIndexEntry info)
+    {
+        return DatabaseDescriptor.getKeyCacheOffHeap() ? info : info.withOffHeapIndex();
+    }
+
     public void invalidateKeyCache()
     {
         keyCache.clear();
@@ -324,7 +343,7 @@ public class CacheService implements CacheServiceMBean
                 public Pair<RowCacheKey, IRowCacheEntry> call() throws Exception
                 {
                     DecoratedKey key = cfs.partitioner.decorateKey(buffer);
-                    ColumnFamily data = cfs.getTopLevelColumns(QueryFilter.getIdentityFilter(key, cfs.name, Long.MIN_VALUE), Integer.MIN_VALUE);
+                    ColumnFamily data = cfs.getTopLevelColumns(cfs.rowCacheFilter(key, System.currentTimeMillis()), Integer.MIN_VALUE);
                     return Pair.create(new RowCacheKey(cfs.metadata.cfId, key), (IRowCacheEntry) data);
                 }
             });
@@ -336,13 +355,20 @@ public class CacheService implements CacheServiceMBean
         public void serialize(KeyCacheKey key, DataOutput out) throws IOException
         {
             RowIndexEntry entry = CacheService.instance.keyCache.get(key);
-            if (entry == null)
+            if (entry == null || !entry.reference())
                 return;
-            ByteBufferUtil.writeWithLength(key.key, out);
-            Descriptor desc = key.desc;
-            out.writeInt(desc.generation);
-            out.writeBoolean(true);
-            RowIndexEntry.serializer.serialize(entry, out);
+            try
+            {
+                ByteBufferUtil.writeWithLength(key.key, out);
+                Descriptor desc = key.desc;
+                out.writeInt(desc.generation);
+                out.writeBoolean(true);
+                RowIndexEntry.serializer.serialize(entry, out);
+            }
+            finally
+            {
+                entry.release();
+            }
         }
 
         public Future<Pair<KeyCacheKey, RowIndexEntry>> deserialize(DataInputStream input, ColumnFamilyStore cfs) throws IOException
@@ -362,7 +388,7 @@ public class CacheService implements CacheServiceMBean
                 RowIndexEntry.serializer.skipPromotedIndex(input);
                 return null;
             }
-            RowIndexEntry entry = RowIndexEntry.serializer.deserialize(input, reader.descriptor.version);
+            RowIndexEntry entry = keyCacheEntry(RowIndexEntry.serializer.deserialize(input, reader.descriptor.version));
             return Futures.immediateFuture(Pair.create(new KeyCacheKey(reader.descriptor, key), entry));
         }
 
@@ -18,12 +18,20 @@
 package org.apache.cassandra.service;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.ReadResponse;
 import org.apache.cassandra.db.Row;
 import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.DigestAlgorithm;
 
 public class RowDigestResolver extends AbstractRowResolver
 {
@@ -65,29 +73,31 @@ public class RowDigestResolver extends AbstractRowResolver
 
         // validate digests against each other; throw immediately on mismatch.
         // also extract the data reply, if any.
-        ColumnFamily data = null;
-        ByteBuffer digest = null;
+        // digests computed with different algorithms can't be compared (see DigestAlgorithm.forReads), so the data
+        // replies are hashed with each algorithm used by the digest replies.
+        Map<DigestAlgorithm, ByteBuffer> digests = new EnumMap<>(DigestAlgorithm.class);
+        List<ColumnFamily> datas = new ArrayList<>();
 
         for (MessageIn<ReadResponse> message : replies)
         {
             ReadResponse response = message.payload;
-
-            ByteBuffer newDigest;
             if (response.isDigestQuery())
-            {
-                newDigest = response.digest();
-            }
+                checkDigest(digests, response.digestAlgorithm(), response.digest());
             else
-            {
                 // note that this allows for multiple data replies, post-CASSANDRA-5932
-                data = response.row().cf;
-                newDigest = ColumnFamily.digest(data);
-            }
+                datas.add(response.row().cf);
+        }
 
-            if (digest == null)
-                digest = newDigest;
-            else if (!digest.equals(newDigest))
-                throw new DigestMismatchException(key, digest, newDigest);
+        // without digest replies, the data replies are just compared with each other
+        Set<DigestAlgorithm> algorithms = digests.isEmpty()
+                                        ? EnumSet.of(DigestAlgorithm.forReads(MessagingService.current_version))
+                                        : EnumSet.copyOf(digests.keySet());
+        ColumnFamily data = null;
+        for (ColumnFamily cf : datas)
+        {
+            data = cf;
+            for (DigestAlgorithm algorithm : algorithms)
+                checkDigest(digests, algorithm, ColumnFamily.digest(data, algorithm));
         }
 
         if (logger.isDebugEnabled())
@@ -95,6 +105,13 @@ public class RowDigestResolver extends AbstractRowResolver
         return new Row(key, data);
     }
 
+    private void checkDigest(Map<DigestAlgorithm, ByteBuffer> digests, DigestAlgorithm algorithm, ByteBuffer digest) throws DigestMismatchException
+    {
+        ByteBuffer previous = digests.put(algorithm, digest);
+        if (previous != null && !previous.equals(digest))
+            throw new DigestMismatchException(key, previous, digest);
+    }
+
     public boolean isDataPresent()
     {
         for (MessageIn<ReadResponse> message : replies)
@@ -80,7 +80,8 @@ public class RangeSliceQueryPager extends AbstractQueryPager
                                                           start,
                                                           sf.finish(),
                                                           command.rowFilter,
-                                                          pageSize);
+                                                          pageSize,
+                                                          command.queriedColumns);
 
         return localQuery
              ? pageCmd.executeLocally()
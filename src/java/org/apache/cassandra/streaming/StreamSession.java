@@ -30,6 +30,7 @@ import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Memtable;
 import org.apache.cassandra.db.RowPosition;
 import org.apache.cassandra.dht.AbstractBounds;
 import org.apache.cassandra.dht.Range;
@@ -252,6 +253,8 @@ public class StreamSession implements IEndpointStateChangeSubscriber, IFailureDe
                 rowBoundsList.add(range.toRowBounds());
             ColumnFamilyStore.ViewFragment view = cfStore.markReferenced(rowBoundsList);
             sstables.addAll(view.sstables);
+            // only the sstables are streamed, their references are released once transferred
+            Memtable.releaseReferences(view.memtables);
         }
         addTransferFiles(normalizedRanges, sstables);
     }
@@ -38,4 +38,20 @@ public abstract class Allocator
     public abstract ByteBuffer allocate(int size);
 
     public abstract long getMinimumSize();
+
+    /**
+     * @return true if the allocated buffers are off-heap, so must not be read once free() has been called.
+     */
+    public boolean isOffHeap()
+    {
+        return false;
+    }
+
+    /**
+     * Releases everything allocated so far. Only needed by off-heap allocators, which the caller must make sure
+     * nothing references anymore.
+     */
+    public void free()
+    {
+    }
 }
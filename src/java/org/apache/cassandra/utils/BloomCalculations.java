@@ -182,4 +182,24 @@ class BloomCalculations {
         }
         return Math.min(BloomCalculations.probs.length - 1, (int)v);
     }
+
+    /**
+     * Calculates the false positive rate of a blocked bloom filter (see BlockedBloomFilter): the load of a block
+     * follows a Poisson distribution, and a block loaded with n elements has the false positive rate of a standard
+     * filter of that size and load.
+     */
+    public static double blockedFalsePositiveRate(double bucketsPerElement, int k, int blockBits)
+    {
+        double meanLoad = blockBits / bucketsPerElement;
+        double rate = 0;
+        double loadProbability = Math.exp(-meanLoad);
+        // past a few times the mean load, the remaining probabilities are negligible
+        for (int load = 0; load < 10 * meanLoad + 10; load++)
+        {
+            if (load > 0)
+                loadProbability *= meanLoad / load;
+            rate += loadProbability * Math.pow(1 - Math.pow(1 - 1.0 / blockBits, (double) load * k), k);
+        }
+        return rate;
+    }
 }
@@ -161,6 +161,28 @@ public final class CLibrary
         }
     }
 
+    /**
+     * Asks the kernel to start reading the given part of a file into the page cache, without waiting for it.
+     *
+     * @return true if the advice was given
+     */
+    public static boolean tryWillNeed(int fd, long offset, int len)
+    {
+        if (fd < 0)
+            return false;
+
+        try
+        {
+            if (System.getProperty("os.name").toLowerCase().contains("linux"))
+                return posix_fadvise(fd, offset, len, POSIX_FADV_WILLNEED) == 0;
+        }
+        catch (UnsatisfiedLinkError e)
+        {
+            // JNA is unavailable, reads will just block on the disk
+        }
+        return false;
+    }
+
     public static int tryFcntl(int fd, int command, int flags)
     {
         // fcntl return value may or may not be useful, depending on the command
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.security.MessageDigest;
+
+import org.apache.cassandra.net.MessagingService;
+
+/**
+ * The algorithms rows are hashed with to compare replicas: by read repair, and by repair for its merkle trees.
+ * Peers using VERSION_21 of the messaging protocol or later use MURMUR3, the others MD5 for reads and SHA_256 for
+ * repair, which is what they used before.
+ */
+public enum DigestAlgorithm
+{
+    MD5, SHA_256, MURMUR3;
+
+    private final ThreadLocal<MessageDigest> localDigest = new ThreadLocal<MessageDigest>()
+    {
+        @Override
+        protected MessageDigest initialValue()
+        {
+            return newDigest();
+        }
+    };
+
+    public MessageDigest newDigest()
+    {
+        switch (this)
+        {
+            case MD5:
+                return FBUtilities.newMessageDigest("MD5");
+            case SHA_256:
+                return FBUtilities.newMessageDigest("SHA-256");
+            case MURMUR3:
+                return new Murmur3Digest();
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    /**
+     * @return a reset digest, to be used by the current thread before it asks for another one
+     */
+    public MessageDigest threadLocalDigest()
+    {
+        MessageDigest digest = localDigest.get();
+        digest.reset();
+        return digest;
+    }
+
+    /**
+     * @return the algorithm of the digests of the read responses sent to a peer using the given messaging version
+     */
+    public static DigestAlgorithm forReads(int version)
+    {
+        return version >= MessagingService.VERSION_21 ? MURMUR3 : MD5;
+    }
+
+    /**
+     * @return the algorithm the merkle trees of a repair can be built with, given the lowest messaging version of
+     * its participants
+     */
+    public static DigestAlgorithm forRepair(int version)
+    {
+        return version >= MessagingService.VERSION_21 ? MURMUR3 : SHA_256;
+    }
+}
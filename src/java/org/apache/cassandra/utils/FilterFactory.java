@@ -36,14 +36,43 @@ public class FilterFactory
     private static final Logger logger = LoggerFactory.getLogger(FilterFactory.class);
     private static final long BITSET_EXCESS = 20;
 
+    // the type of filter serialized, which starts filters since sstable version jd (see Descriptor.Version)
+    private static final byte MURMUR3 = 0;
+    private static final byte BLOCKED = 1;
+
+    /**
+     * Serializes bf in the current format, preceded by its type.
+     */
     public static void serialize(IFilter bf, DataOutput output) throws IOException
     {
-        Murmur3BloomFilter.serializer.serialize((Murmur3BloomFilter) bf, output);
+        if (bf instanceof BlockedBloomFilter)
+        {
+            output.writeByte(BLOCKED);
+            BlockedBloomFilter.serializer.serialize((BlockedBloomFilter) bf, output);
+        }
+        else
+        {
+            output.writeByte(MURMUR3);
+            Murmur3BloomFilter.serializer.serialize((Murmur3BloomFilter) bf, output);
+        }
     }
 
-    public static IFilter deserialize(DataInput input, boolean offheap) throws IOException
+    /**
+     * @param hasFilterType whether the filter is preceded by its type, which is not the case of the filters of
+     * sstables older than version jd, all of them being Murmur3BloomFilter
+     */
+    public static IFilter deserialize(DataInput input, boolean offheap, boolean hasFilterType) throws IOException
     {
-        return Murmur3BloomFilter.serializer.deserialize(input, offheap);
+        byte type = hasFilterType ? input.readByte() : MURMUR3;
+        switch (type)
+        {
+            case MURMUR3:
+                return Murmur3BloomFilter.serializer.deserialize(input, offheap);
+            case BLOCKED:
+                return BlockedBloomFilter.serializer.deserialize(input, offheap);
+            default:
+                throw new IOException("Unknown bloom filter type " + type);
+        }
     }
 
     /**
@@ -51,6 +80,14 @@ public class FilterFactory
      *         probability for the given number of elements.
      */
     public static IFilter getFilter(long numElements, int targetBucketsPerElem, boolean offheap)
+    {
+        return getFilter(numElements, targetBucketsPerElem, offheap, false);
+    }
+
+    /**
+     * @param blocked whether to confine the hashes of each key to a single block of the filter (see BlockedBloomFilter)
+     */
+    public static IFilter getFilter(long numElements, int targetBucketsPerElem, boolean offheap, boolean blocked)
     {
         int maxBucketsPerElement = Math.max(1, BloomCalculations.maxBucketsPerElement(numElements));
         int bucketsPerElement = Math.min(targetBucketsPerElem, maxBucketsPerElement);
@@ -59,7 +96,7 @@ public class FilterFactory
             logger.warn(String.format("Cannot provide an optimal BloomFilter for %d elements (%d/%d buckets per element).", numElements, bucketsPerElement, targetBucketsPerElem));
         }
         BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement);
-        return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap);
+        return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap, blocked);
     }
 
     /**
@@ -70,19 +107,46 @@ public class FilterFactory
      *         filter.
      */
     public static IFilter getFilter(long numElements, double maxFalsePosProbability, boolean offheap)
+    {
+        return getFilter(numElements, maxFalsePosProbability, offheap, false);
+    }
+
+    /**
+     * @param blocked whether to confine the hashes of each key to a single block of the filter (see BlockedBloomFilter)
+     */
+    public static IFilter getFilter(long numElements, double maxFalsePosProbability, boolean offheap, boolean blocked)
     {
         assert maxFalsePosProbability <= 1.0 : "Invalid probability";
         if (maxFalsePosProbability == 1.0)
             return new AlwaysPresentFilter();
         int bucketsPerElement = BloomCalculations.maxBucketsPerElement(numElements);
         BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement, maxFalsePosProbability);
-        return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap);
+        return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap, blocked);
     }
 
-    private static IFilter createFilter(int hash, long numElements, int bucketsPer, boolean offheap)
+    private static IFilter createFilter(int hash, long numElements, int bucketsPer, boolean offheap, boolean blocked)
     {
+        if (blocked)
+            bucketsPer = blockedBucketsPerElement(hash, bucketsPer);
         long numBits = (numElements * bucketsPer) + BITSET_EXCESS;
+        if (blocked)
+            numBits = (numBits + BlockedBloomFilter.BLOCK_BITS - 1) / BlockedBloomFilter.BLOCK_BITS * BlockedBloomFilter.BLOCK_BITS;
         IBitSet bitset = offheap ? new OffHeapBitSet(numBits) : new OpenBitSet(numBits);
-        return new Murmur3BloomFilter(hash, bitset);
+        return blocked ? new BlockedBloomFilter(hash, bitset) : new Murmur3BloomFilter(hash, bitset);
+    }
+
+    /**
+     * @return the number of buckets per element a blocked filter needs to match the false positive rate of a standard
+     * filter of bucketsPer buckets per element, which is higher since blocks are not evenly loaded
+     */
+    private static int blockedBucketsPerElement(int hash, int bucketsPer)
+    {
+        double target = BloomCalculations.probs[bucketsPer][hash];
+        int blockedBucketsPer = bucketsPer;
+        // beyond twice as large, the standard filter is a better deal
+        while (blockedBucketsPer < 2 * bucketsPer
+               && BloomCalculations.blockedFalsePositiveRate(blockedBucketsPer, hash, BlockedBloomFilter.BLOCK_BITS) > target)
+            blockedBucketsPer++;
+        return blockedBucketsPer;
     }
 }
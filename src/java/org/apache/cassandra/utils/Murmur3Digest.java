@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.security.MessageDigest;
+
+/**
+ * A MessageDigest computing the 128 bits MurmurHash 3.0 of the data it is updated with, as
+ * MurmurHash.hash3_x64_128 does with a seed of 0, but incrementally. It is not cryptographic, but much cheaper
+ * than MD5 to compute, which is all comparing replicas needs.
+ */
+public class Murmur3Digest extends MessageDigest
+{
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    // the bytes that don't make a full block of 16 yet
+    private final byte[] tail = new byte[16];
+    private int tailLength;
+
+    private long h1, h2;
+    private long length;
+
+    public Murmur3Digest()
+    {
+        super("Murmur3_x64_128");
+    }
+
+    @Override
+    protected int engineGetDigestLength()
+    {
+        return 16;
+    }
+
+    @Override
+    protected void engineUpdate(byte input)
+    {
+        tail[tailLength++] = input;
+        length++;
+        if (tailLength == 16)
+        {
+            mix(getLong(tail, 0), getLong(tail, 8));
+            tailLength = 0;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len)
+    {
+        length += len;
+        if (tailLength > 0)
+        {
+            int copied = Math.min(len, 16 - tailLength);
+            System.arraycopy(input, offset, tail, tailLength, copied);
+            tailLength += copied;
+            offset += copied;
+            len -= copied;
+            if (tailLength < 16)
+                return;
+
+            mix(getLong(tail, 0), getLong(tail, 8));
+            tailLength = 0;
+        }
+
+        for (; len >= 16; offset += 16, len -= 16)
+            mix(getLong(input, offset), getLong(input, offset + 8));
+
+        System.arraycopy(input, offset, tail, 0, len);
+        tailLength = len;
+    }
+
+    private void mix(long k1, long k2)
+    {
+        k1 *= C1; k1 = MurmurHash.rotl64(k1, 31); k1 *= C2; h1 ^= k1;
+        h1 = MurmurHash.rotl64(h1, 27); h1 += h2; h1 = h1 * 5 + 0x52dce729;
+        k2 *= C2; k2 = MurmurHash.rotl64(k2, 33); k2 *= C1; h2 ^= k2;
+        h2 = MurmurHash.rotl64(h2, 31); h2 += h1; h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long getLong(byte[] bytes, int offset)
+    {
+        long value = 0;
+        for (int i = 7; i >= 0; i--)
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        return value;
+    }
+
+    @Override
+    protected byte[] engineDigest()
+    {
+        // like MurmurHash.hash3_x64_128, the bytes of the tail are sign-extended
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = tailLength - 1; i >= 8; i--)
+            k2 ^= ((long) tail[i]) << ((i - 8) * 8);
+        for (int i = Math.min(tailLength, 8) - 1; i >= 0; i--)
+            k1 ^= ((long) tail[i]) << (i * 8);
+        if (tailLength > 8)
+        {
+            k2 *= C2; k2 = MurmurHash.rotl64(k2, 33); k2 *= C1; h2 ^= k2;
+        }
+        if (tailLength > 0)
+        {
+            k1 *= C1; k1 = MurmurHash.rotl64(k1, 31); k1 *= C2; h1 ^= k1;
+        }
+
+        h1 ^= length; h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = MurmurHash.fmix(h1);
+        h2 = MurmurHash.fmix(h2);
+        h1 += h2;
+        h2 += h1;
+
+        byte[] digest = new byte[16];
+        for (int i = 0; i < 8; i++)
+        {
+            digest[i] = (byte) (h1 >>> (56 - i * 8));
+            digest[i + 8] = (byte) (h2 >>> (56 - i * 8));
+        }
+        engineReset();
+        return digest;
+    }
+
+    @Override
+    protected void engineReset()
+    {
+        tailLength = 0;
+        h1 = h2 = length = 0;
+    }
+}
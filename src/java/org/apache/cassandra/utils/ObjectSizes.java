@@ -119,6 +119,27 @@ public class ObjectSizes
         return size;
     }
 
+    /**
+     * Memory a byte buffer object consumes, excluding the data it points to
+     * @return In-memory size of the byte buffer object
+     */
+    public static long getBufferObjectSize()
+    {
+        /* BB Class */
+        // final byte[] hb;
+        // final int offset;
+        // boolean isReadOnly;
+        long size = ObjectSizes.getFieldSize(1L + 4 + ObjectSizes.getReferenceSize());
+        /* Super Class */
+        // private int mark;
+        // private int position;
+        // private int limit;
+        // private int capacity;
+        // long address;
+        size += ObjectSizes.getSuperClassFieldSize(4L + 4 + 4 + 4 + 8);
+        return size;
+    }
+
     public static long roundTo(long x, int multiple)
     {
         return ((x + multiple - 1) / multiple) * multiple;
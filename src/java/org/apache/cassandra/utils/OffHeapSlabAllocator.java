@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.util.Memory;
+
+/**
+ * A SlabAllocator whose regions are off-heap Memory, allocated with the configured memory_allocator (see
+ * NativeAllocator and JEMallocAllocator).
+ * <p/>
+ * The heap only holds the ByteBuffer objects pointing to the regions, so the size of a memtable using it is mostly
+ * irrelevant to the garbage collector. In exchange, the regions have to be freed explicitly, which Memtable does
+ * once it has been flushed and no read is using it anymore.
+ */
+public class OffHeapSlabAllocator extends Allocator
+{
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapSlabAllocator.class);
+
+    private final static int REGION_SIZE = 1024 * 1024;
+    private final static int MAX_CLONED_SIZE = 128 * 1024; // bigger than this get their own Memory
+
+    private final AtomicReference<Region> currentRegion = new AtomicReference<Region>();
+    // everything to free, regions and bigger allocations alike
+    private final Queue<Memory> allocated = new ConcurrentLinkedQueue<Memory>();
+    private final AtomicLong size = new AtomicLong(0);
+    private volatile boolean freed;
+
+    public ByteBuffer allocate(int size)
+    {
+        assert size >= 0;
+        assert !freed;
+        if (size == 0)
+            return ByteBufferUtil.EMPTY_BYTE_BUFFER;
+
+        if (size > MAX_CLONED_SIZE)
+            return allocateMemory(size).asByteBuffer(0, size);
+
+        while (true)
+        {
+            Region region = getRegion();
+
+            // Try to allocate from this region
+            ByteBuffer cloned = region.allocate(size);
+            if (cloned != null)
+                return cloned;
+
+            // not enough space!
+            currentRegion.compareAndSet(region, null);
+        }
+    }
+
+    /**
+     * Get the current region, or, if there is no current region, allocate a new one
+     */
+    private Region getRegion()
+    {
+        while (true)
+        {
+            Region region = currentRegion.get();
+            if (region != null)
+                return region;
+
+            // Unlike SlabAllocator, we allocate the memory before racing to CAS the region in, since it is cheap
+            // compared to zeroing a heap region. Losers give their memory back right away.
+            Memory memory = Memory.allocate(REGION_SIZE);
+            region = new Region(memory);
+            if (currentRegion.compareAndSet(null, region))
+            {
+                allocated.add(memory);
+                size.addAndGet(REGION_SIZE);
+                logger.trace("{} bytes now allocated in {}", size, this);
+                return region;
+            }
+            memory.free();
+        }
+    }
+
+    private Memory allocateMemory(int size)
+    {
+        Memory memory = Memory.allocate(size);
+        allocated.add(memory);
+        this.size.addAndGet(size);
+        return memory;
+    }
+
+    /**
+     * @return how much off-heap memory has been allocated
+     */
+    public long getMinimumSize()
+    {
+        return size.get();
+    }
+
+    @Override
+    public boolean isOffHeap()
+    {
+        return true;
+    }
+
+    @Override
+    public void free()
+    {
+        freed = true;
+        Memory memory;
+        while ((memory = allocated.poll()) != null)
+            memory.free();
+        currentRegion.set(null);
+    }
+
+    /**
+     * A region of memory out of which allocations are sliced.
+     */
+    private static class Region
+    {
+        private final Memory memory;
+
+        /**
+         * Offset for the next allocation
+         */
+        private final AtomicInteger nextFreeOffset = new AtomicInteger(0);
+
+        private Region(Memory memory)
+        {
+            this.memory = memory;
+        }
+
+        /**
+         * Try to allocate <code>size</code> bytes from the region.
+         *
+         * @return the successful allocation, or null to indicate not-enough-space
+         */
+        public ByteBuffer allocate(int size)
+        {
+            while (true)
+            {
+                int oldOffset = nextFreeOffset.get();
+                if (oldOffset + size > REGION_SIZE)
+                    return null;
+
+                // Try to atomically claim this region
+                if (nextFreeOffset.compareAndSet(oldOffset, oldOffset + size))
+                    return memory.asByteBuffer(oldOffset, size);
+
+                // we raced and lost alloc, try again
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Region@" + System.identityHashCode(this) + " waste=" + (REGION_SIZE - nextFreeOffset.get());
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.btree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable B-tree of distinct values, whose nodes are plain object arrays:
+ * <ul>
+ *   <li>a leaf holds its values, followed by a null if there is an odd number of them, so that leaves always have an
+ *   even length;</li>
+ *   <li>a branch with n values holds them followed by its n + 1 children, so branches always have an odd length.</li>
+ * </ul>
+ * Updates never modify a tree, but build a new one sharing all the nodes they don't touch with the original.
+ * They are batched: update() merges a sorted array of values in a single pass over the tree.
+ */
+public class BTree
+{
+    /**
+     * The maximum number of values of a node.
+     */
+    static final int FAN_FACTOR = Integer.getInteger("cassandra.btree.fan_factor", 32);
+
+    private static final Object[] EMPTY_LEAF = new Object[0];
+
+    /**
+     * @return an empty tree
+     */
+    public static Object[] empty()
+    {
+        return EMPTY_LEAF;
+    }
+
+    /**
+     * @return a tree of the provided values, which must be sorted and distinct
+     */
+    public static <V> Object[] build(V[] sorted, Comparator<? super V> comparator)
+    {
+        return update(EMPTY_LEAF, comparator, sorted, new UpdateFunction<V>()
+        {
+            public V apply(V insert)
+            {
+                return insert;
+            }
+
+            public V apply(V existing, V update)
+            {
+                throw new AssertionError();
+            }
+
+            public boolean abortEarly()
+            {
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Merges the provided updates into a copy of btree.
+     *
+     * @param updates the values to merge, which must be sorted and distinct
+     * @param updateF decides the values of the new tree, for both the new values and those replacing an existing one
+     * @return the updated tree, or null if updateF aborted the update
+     */
+    public static <V> Object[] update(Object[] btree, Comparator<? super V> comparator, V[] updates, UpdateFunction<V> updateF)
+    {
+        if (updates.length == 0)
+            return btree;
+
+        List<Object> nodes = new ArrayList<Object>(1);
+        if (!update(btree, comparator, updates, 0, updates.length, updateF, nodes))
+            return null;
+
+        // the root has been split, so we need new levels on top of it
+        while (nodes.size() > 1)
+        {
+            List<Object> keys = new ArrayList<Object>(nodes.size() / 2);
+            List<Object> children = new ArrayList<Object>(nodes.size() / 2 + 1);
+            for (int i = 0; i < nodes.size(); i++)
+                ((i & 1) == 0 ? children : keys).add(nodes.get(i));
+            nodes.clear();
+            split(keys, children, nodes);
+        }
+        return (Object[]) nodes.get(0);
+    }
+
+    /**
+     * Adds to out the nodes replacing node once updated with updates[from, to), separated by their separating values:
+     * a single node unless it had to be split.
+     *
+     * @return false if the update has been aborted
+     */
+    @SuppressWarnings("unchecked")
+    private static <V> boolean update(Object[] node, Comparator<? super V> comparator, V[] updates, int from, int to, UpdateFunction<V> updateF, List<Object> out)
+    {
+        if (updateF.abortEarly())
+            return false;
+
+        int size = size(node);
+        List<Object> keys = new ArrayList<Object>(size + to - from);
+        if (isLeaf(node))
+        {
+            int i = 0;
+            int j = from;
+            while (i < size && j < to)
+            {
+                int c = comparator.compare((V) node[i], updates[j]);
+                if (c < 0)
+                    keys.add(node[i++]);
+                else if (c > 0)
+                    keys.add(updateF.apply(updates[j++]));
+                else
+                    keys.add(updateF.apply((V) node[i++], updates[j++]));
+            }
+            while (i < size)
+                keys.add(node[i++]);
+            while (j < to)
+                keys.add(updateF.apply(updates[j++]));
+
+            split(keys, null, out);
+            return true;
+        }
+
+        List<Object> children = new ArrayList<Object>(size + 1);
+        List<Object> childNodes = new ArrayList<Object>();
+        int j = from;
+        for (int i = 0; i <= size; i++)
+        {
+            Object[] child = (Object[]) node[size + i];
+
+            // the updates of child i are those before key i, which may itself be updated
+            int end = to;
+            boolean found = false;
+            if (i < size)
+            {
+                end = Arrays.binarySearch(updates, j, to, (V) node[i], comparator);
+                found = end >= 0;
+                if (!found)
+                    end = -end - 1;
+            }
+
+            if (end == j)
+            {
+                children.add(child);
+            }
+            else
+            {
+                childNodes.clear();
+                if (!update(child, comparator, updates, j, end, updateF, childNodes))
+                    return false;
+                children.add(childNodes.get(0));
+                for (int k = 1; k < childNodes.size(); k += 2)
+                {
+                    keys.add(childNodes.get(k));
+                    children.add(childNodes.get(k + 1));
+                }
+            }
+
+            if (i < size)
+                keys.add(found ? updateF.apply((V) node[i], updates[end]) : node[i]);
+            j = found ? end + 1 : end;
+            // the remaining children are untouched
+            if (j == to)
+            {
+                for (int k = i + 1; k < size; k++)
+                {
+                    keys.add(node[k]);
+                    children.add(node[size + k]);
+                }
+                if (i < size)
+                    children.add(node[size + size]);
+                break;
+            }
+        }
+
+        split(keys, children, out);
+        return true;
+    }
+
+    /**
+     * Adds to out the nodes holding keys (and children, for branches), separated by their separating keys. Splits
+     * them in as many nodes as needed to not exceed FAN_FACTOR keys per node, of similar sizes.
+     */
+    private static void split(List<Object> keys, List<Object> children, List<Object> out)
+    {
+        int count = keys.size();
+        int nodes = (count + 1 + FAN_FACTOR) / (FAN_FACTOR + 1);
+        int start = 0;
+        for (int n = nodes; n > 0; n--)
+        {
+            // the keys of the remaining nodes, which need n - 1 keys to separate them
+            int end = start + (count - start - (n - 1)) / n;
+            out.add(node(keys, children, start, end));
+            if (n > 1)
+                out.add(keys.get(end));
+            start = end + 1;
+        }
+    }
+
+    private static Object[] node(List<Object> keys, List<Object> children, int start, int end)
+    {
+        int size = end - start;
+        if (children == null)
+        {
+            Object[] leaf = new Object[size + (size & 1)];
+            for (int i = 0; i < size; i++)
+                leaf[i] = keys.get(start + i);
+            return leaf;
+        }
+
+        Object[] branch = new Object[2 * size + 1];
+        for (int i = 0; i < size; i++)
+            branch[i] = keys.get(start + i);
+        for (int i = 0; i <= size; i++)
+            branch[size + i] = children.get(start + i);
+        return branch;
+    }
+
+    /**
+     * @return the value of btree equal to the provided one, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V find(Object[] btree, Comparator<? super V> comparator, V value)
+    {
+        Object[] node = btree;
+        while (true)
+        {
+            int size = size(node);
+            int i = Arrays.binarySearch((V[]) node, 0, size, value, comparator);
+            if (i >= 0)
+                return (V) node[i];
+            if (isLeaf(node))
+                return null;
+            node = (Object[]) node[size - i - 1];
+        }
+    }
+
+    /**
+     * @param start the first value to return, or null to start from the first (or last, if !forwards) of btree
+     * @param end the last value to return, or null to stop at the last (or first, if !forwards) of btree
+     * @return the values of btree between start and end, inclusive
+     */
+    public static <V> Cursor<V> slice(Object[] btree, Comparator<? super V> comparator, V start, V end, boolean forwards)
+    {
+        return new Cursor<V>(btree, comparator, start, end, forwards);
+    }
+
+    /**
+     * @return the number of values of btree. This walks all its branches, so it is best avoided on large trees.
+     */
+    public static int count(Object[] btree)
+    {
+        int size = size(btree);
+        if (isLeaf(btree))
+            return size;
+
+        int count = size;
+        for (int i = 0; i <= size; i++)
+            count += count((Object[]) btree[size + i]);
+        return count;
+    }
+
+    public static boolean isEmpty(Object[] btree)
+    {
+        return btree.length == 0;
+    }
+
+    static boolean isLeaf(Object[] node)
+    {
+        return (node.length & 1) == 0;
+    }
+
+    /**
+     * @return the number of values of node itself
+     */
+    static int size(Object[] node)
+    {
+        if (!isLeaf(node))
+            return node.length / 2;
+
+        int length = node.length;
+        return length > 0 && node[length - 1] == null ? length - 1 : length;
+    }
+
+    static int height(Object[] btree)
+    {
+        int height = 1;
+        for (Object[] node = btree; !isLeaf(node); node = (Object[]) node[size(node)])
+            height++;
+        return height;
+    }
+}
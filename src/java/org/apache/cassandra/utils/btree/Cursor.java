@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.btree;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.apache.cassandra.utils.btree.BTree.isLeaf;
+import static org.apache.cassandra.utils.btree.BTree.size;
+
+/**
+ * Iterates over a range of a BTree, in either direction (see BTree.slice()).
+ *
+ * The path from the root to the current value is kept as a stack of nodes and positions. The position in a leaf is
+ * that of its next value; in a branch, it is that of the child being iterated over, the branch value after it (or
+ * before it, backwards) being the next one once the child is exhausted.
+ */
+public class Cursor<V> implements Iterator<V>
+{
+    private final Comparator<? super V> comparator;
+    private final V end;
+    private final boolean forwards;
+
+    private final Object[][] path;
+    private final int[] positions;
+    private int depth = -1;
+
+    private V next;
+
+    Cursor(Object[] btree, Comparator<? super V> comparator, V start, V end, boolean forwards)
+    {
+        this.comparator = comparator;
+        this.end = end;
+        this.forwards = forwards;
+
+        int height = BTree.height(btree);
+        path = new Object[height][];
+        positions = new int[height];
+        seek(btree, start);
+        next = computeNext();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void seek(Object[] node, V start)
+    {
+        if (start == null)
+        {
+            descend(node);
+            return;
+        }
+
+        while (true)
+        {
+            path[++depth] = node;
+            int size = size(node);
+            int i = Arrays.binarySearch((V[]) node, 0, size, start, comparator);
+            if (isLeaf(node))
+            {
+                if (i >= 0)
+                    positions[depth] = i;
+                else
+                    positions[depth] = forwards ? -i - 1 : -i - 2;
+                return;
+            }
+
+            if (i >= 0)
+            {
+                // the branch value comes next, as if we were done with the child before (or after) it
+                positions[depth] = forwards ? i : i + 1;
+                return;
+            }
+            positions[depth] = -i - 1;
+            node = (Object[]) node[size - i - 1];
+        }
+    }
+
+    /**
+     * Pushes the path to the first (or last, backwards) value of node.
+     */
+    private void descend(Object[] node)
+    {
+        while (true)
+        {
+            path[++depth] = node;
+            int size = size(node);
+            if (isLeaf(node))
+            {
+                positions[depth] = forwards ? 0 : size - 1;
+                return;
+            }
+            int child = forwards ? 0 : size;
+            positions[depth] = child;
+            node = (Object[]) node[size + child];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V computeNext()
+    {
+        while (depth >= 0)
+        {
+            Object[] node = path[depth];
+            int position = positions[depth];
+            int size = size(node);
+            if (isLeaf(node))
+            {
+                if (position >= 0 && position < size)
+                {
+                    positions[depth] = forwards ? position + 1 : position - 1;
+                    return checkEnd((V) node[position]);
+                }
+            }
+            else
+            {
+                int index = forwards ? position : position - 1;
+                if (index >= 0 && index < size)
+                {
+                    int child = forwards ? position + 1 : position - 1;
+                    positions[depth] = child;
+                    descend((Object[]) node[size + child]);
+                    return checkEnd((V) node[index]);
+                }
+            }
+            depth--;
+        }
+        return null;
+    }
+
+    private V checkEnd(V value)
+    {
+        if (end != null)
+        {
+            int c = comparator.compare(value, end);
+            if (forwards ? c > 0 : c < 0)
+            {
+                depth = -1;
+                return null;
+            }
+        }
+        return value;
+    }
+
+    public boolean hasNext()
+    {
+        return next != null;
+    }
+
+    public V next()
+    {
+        if (next == null)
+            throw new NoSuchElementException();
+        V value = next;
+        next = computeNext();
+        return value;
+    }
+
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+}
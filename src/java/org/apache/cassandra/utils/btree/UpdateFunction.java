@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.btree;
+
+/**
+ * Decides what ends up in a BTree being updated (see BTree.update()).
+ */
+public interface UpdateFunction<V>
+{
+    /**
+     * @return the value to insert for an update that has no equal in the tree
+     */
+    V apply(V insert);
+
+    /**
+     * @return the value replacing existing, given the equal update
+     */
+    V apply(V existing, V update);
+
+    /**
+     * @return true if the update should be abandoned, typically because another one has won the race to replace
+     * the tree
+     */
+    boolean abortEarly();
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.cassandra.utils;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 import org.junit.Test;
@@ -69,4 +70,51 @@ public class LongBloomFilterTest
         }
         logger.info("Bloom filter mean false positive: {}", sumfp / 10);
     }
+
+    /**
+     * Compares the lookup times of standard and blocked filters, for keys that aren't in them (the common case of
+     * sstables not having the partition read). The filters are made larger than the CPU caches, like those of
+     * large sstables. NB: needs to run with -mx1G
+     */
+    @Test
+    public void timeBlockedLookups()
+    {
+        int size = 10 * 1000 * 1000;
+        IFilter standard = FilterFactory.getFilter(size, 0.01, true, false);
+        IFilter blocked = FilterFactory.getFilter(size, 0.01, true, true);
+        KeyGenerator.RandomStringGenerator keys = new KeyGenerator.RandomStringGenerator(new Random().nextInt(), size);
+        while (keys.hasNext())
+        {
+            ByteBuffer key = keys.next();
+            standard.add(key);
+            blocked.add(key);
+        }
+
+        ByteBuffer[] otherKeys = new ByteBuffer[1000 * 1000];
+        KeyGenerator.RandomStringGenerator generator = new KeyGenerator.RandomStringGenerator(new Random().nextInt(), otherKeys.length);
+        for (int i = 0; i < otherKeys.length; i++)
+            otherKeys[i] = generator.next();
+
+        // warm up, then measure
+        for (int i = 0; i < 5; i++)
+        {
+            timeLookups(standard, otherKeys, i == 4 ? "standard" : null);
+            timeLookups(blocked, otherKeys, i == 4 ? "blocked" : null);
+        }
+    }
+
+    private static void timeLookups(IFilter filter, ByteBuffer[] keys, String name)
+    {
+        int present = 0;
+        long start = System.nanoTime();
+        for (ByteBuffer key : keys)
+        {
+            if (filter.isPresent(key))
+                present++;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (name != null)
+            logger.info("{} bloom filter: {} ns per lookup, {} false positive rate, {} bytes",
+                        name, elapsed / keys.length, (double) present / keys.length, filter.serializedSize());
+    }
 }
@@ -25,6 +25,7 @@ import java.util.*;
 
 import org.apache.cassandra.db.index.PerRowSecondaryIndexTest;
 import org.apache.cassandra.db.index.SecondaryIndex;
+import org.apache.cassandra.db.index.composites.CompositesIndex;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.slf4j.Logger;
@@ -277,7 +278,9 @@ public class SchemaLoader
                                            simple,
                                            opts_rf1,
                                            standardCFMD(ks_rcs, "CFWithoutCache").caching(CFMetaData.Caching.NONE),
-                                           standardCFMD(ks_rcs, "CachedCF").caching(CFMetaData.Caching.ALL)));
+                                           standardCFMD(ks_rcs, "CachedCF").caching(CFMetaData.Caching.ALL),
+                                           standardCFMD(ks_rcs, "CachedHeadCF").caching(CFMetaData.Caching.ALL)
+                                                                               .rowsPerPartitionToCache(10)));
 
         schema.add(KSMetaData.testMetadataNotDurable(ks_nocommit,
                                                      simple,
@@ -300,7 +303,9 @@ public class SchemaLoader
                                                               + "k int PRIMARY KEY,"
                                                               + "v1 text,"
                                                               + "v2 int"
-                                                              + ")", ks_cql)));
+                                                              + ")", ks_cql),
+                                           compositesIndexCFMD(ks_cql, "indexed", Collections.<String, String>emptyMap()),
+                                           compositesIndexCFMD(ks_cql, "covered", Collections.singletonMap(CompositesIndex.INCLUDE_OPTION_NAME, "[\"w\"]"))));
 
 
         if (Boolean.parseBoolean(System.getProperty("cassandra.test.compression", "false")))
@@ -309,6 +314,20 @@ public class SchemaLoader
         return schema;
     }
 
+    private static CFMetaData compositesIndexCFMD(String ksName, String cfName, Map<String, String> indexOptions)
+    {
+        CFMetaData cfm = CFMetaData.compile("CREATE TABLE " + cfName + " ("
+                                            + "k int,"
+                                            + "c int,"
+                                            + "v int,"
+                                            + "w text,"
+                                            + "x text,"
+                                            + "PRIMARY KEY (k, c)"
+                                            + ")", ksName);
+        cfm.getColumnDefinition(ByteBufferUtil.bytes("v")).setIndex(cfName + "_v_idx", IndexType.COMPOSITES, indexOptions);
+        return cfm;
+    }
+
     private static CFMetaData perRowIndexedCFMD(String ksName, String cfName, boolean withOldCfIds)
     {
         final Map<String, String> indexOptions = Collections.singletonMap(
@@ -23,6 +23,7 @@ package org.apache.cassandra.cache;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
@@ -31,6 +32,8 @@ import org.junit.Test;
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.db.ColumnFamily;
 
+import com.googlecode.concurrentlinkedhashmap.EntryWeigher;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 import com.googlecode.concurrentlinkedhashmap.Weighers;
 import org.apache.cassandra.db.TreeMapBackedSortedColumns;
 
@@ -115,6 +118,44 @@ public class CacheProviderTest extends SchemaLoader
         concurrentCase(cf, cache);
     }
     
+    @Test
+    public void testConcurrentLinkedHashCacheListener()
+    {
+        final List<MeasureableString> discarded = new ArrayList<MeasureableString>();
+        ICache<MeasureableString, MeasureableString> cache = ConcurrentLinkedHashCache.create(CAPACITY, new EntryWeigher<MeasureableString, MeasureableString>()
+        {
+            public int weightOf(MeasureableString key, MeasureableString value)
+            {
+                return 1;
+            }
+        }, new EvictionListener<MeasureableString, MeasureableString>()
+        {
+            public void onEviction(MeasureableString key, MeasureableString value)
+            {
+                discarded.add(value);
+            }
+        });
+
+        // the listener is told about every value the cache stops holding, or doesn't keep
+        MeasureableString value1 = new MeasureableString("value1");
+        MeasureableString value2 = new MeasureableString("value2");
+        MeasureableString value3 = new MeasureableString("value3");
+        cache.put(key1, value1);
+        cache.put(key1, value2);
+        assertFalse(cache.putIfAbsent(key1, value3));
+        cache.remove(key1);
+        assertEquals(Arrays.asList(value1, value3, value2), discarded);
+
+        discarded.clear();
+        for (MeasureableString key : Arrays.asList(key1, key2, key3, key4, key5))
+            cache.put(key, new MeasureableString(key.string));
+        assertEquals(CAPACITY, cache.size());
+        assertEquals(1, discarded.size());
+
+        cache.clear();
+        assertEquals(CAPACITY + 1, discarded.size());
+    }
+
     @Test
     public void testKeys()
     {
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChunkCacheTest
+{
+    private static byte[] chunk(int length, int seed)
+    {
+        byte[] chunk = new byte[length];
+        for (int i = 0; i < length; i++)
+            chunk[i] = (byte) (seed + i);
+        return chunk;
+    }
+
+    @Test
+    public void testGetAndPut()
+    {
+        ChunkCache cache = new ChunkCache(1024);
+        byte[] buffer = new byte[64];
+
+        ChunkCache.Key key = new ChunkCache.Key(1, 0);
+        assertEquals(-1, cache.get(key, buffer));
+
+        // only the first bytes of the buffer are the chunk
+        byte[] chunk = chunk(64, 1);
+        cache.put(key, chunk, 48);
+        assertEquals(48, cache.get(new ChunkCache.Key(1, 0), buffer));
+        assertArrayEquals(Arrays.copyOf(chunk, 48), Arrays.copyOf(buffer, 48));
+
+        // another sstable, or another chunk of the same one
+        assertEquals(-1, cache.get(new ChunkCache.Key(2, 0), buffer));
+        assertEquals(-1, cache.get(new ChunkCache.Key(1, 64), buffer));
+
+        cache.remove(key);
+        assertEquals(-1, cache.get(key, buffer));
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    public void testEviction()
+    {
+        ChunkCache cache = new ChunkCache(256);
+        byte[] buffer = new byte[64];
+        for (int i = 0; i < 8; i++)
+            cache.put(new ChunkCache.Key(1, i * 64), chunk(64, i));
+
+        assertEquals(4, cache.size());
+        assertEquals(256, cache.weightedSize());
+
+        // the most recent chunks are kept
+        assertEquals(-1, cache.get(new ChunkCache.Key(1, 0), buffer));
+        assertEquals(64, cache.get(new ChunkCache.Key(1, 7 * 64), buffer));
+        assertArrayEquals(chunk(64, 7), buffer);
+        assertArrayEquals(chunk(64, 7), cache.get(new ChunkCache.Key(1, 7 * 64)));
+    }
+
+    @Test
+    public void testReplace()
+    {
+        ChunkCache cache = new ChunkCache(1024);
+        ChunkCache.Key key = new ChunkCache.Key(1, 0);
+        assertFalse(cache.replace(key, chunk(64, 1), chunk(64, 2)));
+
+        cache.put(key, chunk(64, 1));
+        assertFalse(cache.replace(key, chunk(64, 3), chunk(64, 2)));
+        assertArrayEquals(chunk(64, 1), cache.get(key));
+
+        assertTrue(cache.replace(key, chunk(64, 1), chunk(32, 2)));
+        assertArrayEquals(chunk(32, 2), cache.get(key));
+        assertEquals(32, cache.weightedSize());
+    }
+
+    @Test
+    public void testInvalidate()
+    {
+        ChunkCache cache = new ChunkCache(1024);
+        for (int i = 0; i < 4; i++)
+        {
+            cache.put(new ChunkCache.Key(1, i * 64), chunk(64, i));
+            cache.put(new ChunkCache.Key(2, i * 64), chunk(64, i));
+        }
+
+        // only the chunks of the closed sstable go away
+        cache.invalidate(1);
+        assertEquals(4, cache.size());
+        assertEquals(256, cache.weightedSize());
+        for (int i = 0; i < 4; i++)
+        {
+            assertNull(cache.get(new ChunkCache.Key(1, i * 64)));
+            assertArrayEquals(chunk(64, i), cache.get(new ChunkCache.Key(2, i * 64)));
+        }
+
+        // chunks evicted or removed before the sstable is closed
+        cache.setCapacity(128);
+        cache.remove(new ChunkCache.Key(2, 3 * 64));
+        assertEquals(1, cache.size());
+        cache.invalidate(2);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testClear()
+    {
+        ChunkCache cache = new ChunkCache(1024);
+        for (int i = 0; i < 4; i++)
+            cache.put(new ChunkCache.Key(1, i * 64), chunk(64, i));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+        assertNull(cache.get(new ChunkCache.Key(1, 0)));
+    }
+}
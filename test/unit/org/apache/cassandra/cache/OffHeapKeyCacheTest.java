@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.io.File;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.RowIndexEntry;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.*;
+
+public class OffHeapKeyCacheTest
+{
+    private static final Descriptor DESC1 = new Descriptor(new File("."), "Keyspace1", "Standard1", 1, false);
+    private static final Descriptor DESC2 = new Descriptor(new File("."), "Keyspace1", "Standard1", 2, false);
+
+    private static KeyCacheKey key(Descriptor desc, int i)
+    {
+        return new KeyCacheKey(desc, ByteBufferUtil.bytes("key" + i));
+    }
+
+    private static void assertPosition(long position, RowIndexEntry entry)
+    {
+        assertNotNull(entry);
+        assertEquals(position, entry.position);
+    }
+
+    @Test
+    public void testGetAndPut()
+    {
+        OffHeapKeyCache cache = new OffHeapKeyCache(1024 * 1024);
+        assertNull(cache.get(key(DESC1, 1)));
+
+        cache.put(key(DESC1, 1), new RowIndexEntry(42));
+        assertPosition(42, cache.get(key(DESC1, 1)));
+        assertTrue(cache.containsKey(key(DESC1, 1)));
+
+        // same key in another sstable, or another key of the same sstable
+        assertNull(cache.get(key(DESC2, 1)));
+        assertNull(cache.get(key(DESC1, 2)));
+
+        cache.put(key(DESC1, 1), new RowIndexEntry(43));
+        assertPosition(43, cache.get(key(DESC1, 1)));
+        assertEquals(1, cache.size());
+
+        assertFalse(cache.putIfAbsent(key(DESC1, 1), new RowIndexEntry(44)));
+        assertTrue(cache.putIfAbsent(key(DESC2, 1), new RowIndexEntry(44)));
+        assertPosition(44, cache.get(key(DESC2, 1)));
+
+        assertFalse(cache.replace(key(DESC1, 1), new RowIndexEntry(42), new RowIndexEntry(45)));
+        assertTrue(cache.replace(key(DESC1, 1), new RowIndexEntry(43), new RowIndexEntry(45)));
+        assertPosition(45, cache.get(key(DESC1, 1)));
+
+        cache.remove(key(DESC1, 1));
+        assertNull(cache.get(key(DESC1, 1)));
+        assertEquals(1, cache.size());
+
+        cache.clear();
+        assertNull(cache.get(key(DESC2, 1)));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    public void testEviction()
+    {
+        // 4KB per segment
+        OffHeapKeyCache cache = new OffHeapKeyCache(256 * 1024);
+        for (int i = 0; i < 100000; i++)
+            cache.put(key(DESC1, i), new RowIndexEntry(i));
+
+        assertTrue(cache.size() < 100000);
+        assertTrue(cache.weightedSize() <= cache.capacity());
+
+        // the most recent keys are kept
+        assertPosition(99999, cache.get(key(DESC1, 99999)));
+        assertNull(cache.get(key(DESC1, 0)));
+
+        int cached = 0;
+        for (int i = 0; i < 100000; i++)
+        {
+            RowIndexEntry entry = cache.get(key(DESC1, i));
+            if (entry != null)
+            {
+                assertEquals(i, entry.position);
+                cached++;
+            }
+        }
+        assertEquals(cache.size(), cached);
+        assertEquals(cached, cache.keySet().size());
+    }
+
+    @Test
+    public void testSecondChance()
+    {
+        OffHeapKeyCache cache = new OffHeapKeyCache(256 * 1024);
+        for (int i = 0; i < 1000; i++)
+            cache.put(key(DESC1, i), new RowIndexEntry(i));
+
+        // keep reading the first key while writing others, so that it survives
+        for (int i = 1000; i < 100000; i++)
+        {
+            cache.put(key(DESC1, i), new RowIndexEntry(i));
+            assertPosition(0, cache.get(key(DESC1, 0)));
+        }
+    }
+
+    @Test
+    public void testKeySets()
+    {
+        OffHeapKeyCache cache = new OffHeapKeyCache(1024 * 1024);
+        for (int i = 0; i < 1000; i++)
+            cache.put(key(i % 2 == 0 ? DESC1 : DESC2, i), new RowIndexEntry(i));
+
+        Set<KeyCacheKey> keys = cache.keySet();
+        assertEquals(1000, keys.size());
+        for (int i = 0; i < 1000; i++)
+            assertTrue(keys.contains(key(i % 2 == 0 ? DESC1 : DESC2, i)));
+
+        Set<KeyCacheKey> hot = cache.hotKeySet(100);
+        assertEquals(100, hot.size());
+        assertTrue(keys.containsAll(hot));
+        assertEquals(1000, cache.hotKeySet(2000).size());
+    }
+
+    @Test
+    public void testSetCapacity()
+    {
+        OffHeapKeyCache cache = new OffHeapKeyCache(1024 * 1024);
+        for (int i = 0; i < 1000; i++)
+            cache.put(key(DESC1, i), new RowIndexEntry(i));
+        assertEquals(1000, cache.size());
+
+        cache.setCapacity(2 * 1024 * 1024);
+        assertEquals(2 * 1024 * 1024, cache.capacity());
+        assertEquals(1000, cache.size());
+        for (int i = 0; i < 1000; i++)
+            assertPosition(i, cache.get(key(DESC1, i)));
+
+        // shrinking evicts the oldest keys
+        cache.setCapacity(32 * 1024);
+        assertTrue(cache.size() < 1000);
+        assertTrue(cache.weightedSize() <= cache.capacity());
+        assertPosition(999, cache.get(key(DESC1, 999)));
+
+        cache.setCapacity(0);
+        assertEquals(0, cache.size());
+        cache.put(key(DESC1, 1), new RowIndexEntry(1));
+        assertNull(cache.get(key(DESC1, 1)));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import com.google.common.base.Functions;
+import org.junit.Test;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.filter.ColumnSlice;
+import org.apache.cassandra.db.index.SecondaryIndexManager;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.HeapAllocator;
+import org.apache.cassandra.utils.Pair;
+
+import static org.junit.Assert.*;
+
+public class AtomicBTreeColumnsTest
+{
+    private static final CFMetaData metadata = new CFMetaData("Keyspace1", "Standard1", ColumnFamilyType.Standard, Int32Type.instance);
+
+    private static Column column(int name, long timestamp)
+    {
+        return new Column(ByteBufferUtil.bytes(name), ByteBufferUtil.bytes(timestamp), timestamp);
+    }
+
+    private static List<Integer> names(Iterator<Column> iter)
+    {
+        List<Integer> names = new ArrayList<>();
+        while (iter.hasNext())
+            names.add(iter.next().name().getInt(0));
+        return names;
+    }
+
+    @Test
+    public void testAddAll()
+    {
+        AtomicBTreeColumns columns = AtomicBTreeColumns.factory.create(metadata);
+
+        ColumnFamily update = UnsortedColumns.factory.create(metadata);
+        for (int i : new int[]{ 5, 1, 3, 1 })
+            update.addColumn(column(i, i));
+        Pair<Long, Long> delta = columns.addAllWithSizeDelta(update, HeapAllocator.instance, Functions.<Column>identity(), SecondaryIndexManager.nullUpdater);
+        assertEquals(Arrays.asList(1, 3, 5), names(columns.iterator()));
+        assertEquals(3 * AtomicBTreeColumns.COLUMN_OVERHEAD_SIZE, (long) delta.right);
+
+        // reconciles with the existing columns
+        update = ArrayBackedSortedColumns.factory.create(metadata);
+        update.addColumn(column(3, 10));
+        update.addColumn(column(4, 10));
+        delta = columns.addAllWithSizeDelta(update, HeapAllocator.instance, Functions.<Column>identity(), SecondaryIndexManager.nullUpdater);
+        assertEquals(Arrays.asList(1, 3, 4, 5), names(columns.iterator()));
+        assertEquals(10, columns.getColumn(ByteBufferUtil.bytes(3)).timestamp());
+        assertEquals(AtomicBTreeColumns.COLUMN_OVERHEAD_SIZE, (long) delta.right);
+        assertEquals(4, columns.getColumnCount());
+
+        assertTrue(columns.replace(column(4, 10), column(4, 20)));
+        assertFalse(columns.replace(column(4, 10), column(4, 30)));
+        assertEquals(20, columns.getColumn(ByteBufferUtil.bytes(4)).timestamp());
+        assertNull(columns.getColumn(ByteBufferUtil.bytes(2)));
+    }
+
+    @Test
+    public void testSlices()
+    {
+        AtomicBTreeColumns columns = AtomicBTreeColumns.factory.create(metadata);
+        for (int i = 0; i < 1000; i++)
+            columns.addColumn(column(i, 0), HeapAllocator.instance);
+
+        ColumnSlice[] slices = new ColumnSlice[]{ new ColumnSlice(ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.bytes(2)),
+                                                  new ColumnSlice(ByteBufferUtil.bytes(500), ByteBufferUtil.bytes(502)),
+                                                  new ColumnSlice(ByteBufferUtil.bytes(998), ByteBufferUtil.EMPTY_BYTE_BUFFER) };
+        assertEquals(Arrays.asList(0, 1, 2, 500, 501, 502, 998, 999), names(columns.iterator(slices)));
+
+        ColumnSlice[] reversed = new ColumnSlice[]{ new ColumnSlice(ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.bytes(998)),
+                                                    new ColumnSlice(ByteBufferUtil.bytes(502), ByteBufferUtil.bytes(500)),
+                                                    new ColumnSlice(ByteBufferUtil.bytes(2), ByteBufferUtil.EMPTY_BYTE_BUFFER) };
+        assertEquals(Arrays.asList(999, 998, 502, 501, 500, 2, 1, 0), names(columns.reverseIterator(reversed)));
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception
+    {
+        final AtomicBTreeColumns columns = AtomicBTreeColumns.factory.create(metadata);
+        int threads = 8;
+        final int updates = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            final int thread = t;
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    for (int i = 0; i < updates; i++)
+                    {
+                        ColumnFamily update = ArrayBackedSortedColumns.factory.create(metadata);
+                        update.addColumn(column(-1, i));
+                        update.addColumn(column(i * 100 + thread, i));
+                        columns.addAll(update, HeapAllocator.instance, Functions.<Column>identity());
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        assertEquals(threads * updates + 1, columns.getColumnCount());
+        assertEquals(updates - 1, columns.getColumn(ByteBufferUtil.bytes(-1)).timestamp());
+    }
+}
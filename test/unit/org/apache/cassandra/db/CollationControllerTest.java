@@ -19,6 +19,7 @@
 package org.apache.cassandra.db;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -84,6 +85,91 @@ public class CollationControllerTest extends SchemaLoader
         assertEquals(2, controller.getSstablesIterated());
     }
 
+    @Test
+    public void getTopLevelColumnsCountsNonIntersectingSSTables()
+    throws IOException, ExecutionException, InterruptedException
+    {
+        Keyspace keyspace = Keyspace.open("Keyspace1");
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore("Standard1");
+        cfs.disableAutoCompaction();
+        RowMutation rm;
+        DecoratedKey dk = Util.dk("key3");
+
+        rm = new RowMutation(keyspace.getName(), dk.key);
+        rm.add(cfs.name, ByteBufferUtil.bytes("a"), ByteBufferUtil.bytes("asdf"), 0);
+        rm.add(cfs.name, ByteBufferUtil.bytes("c"), ByteBufferUtil.bytes("asdf"), 0);
+        rm.apply();
+        cfs.forceBlockingFlush();
+
+        rm = new RowMutation(keyspace.getName(), dk.key);
+        rm.add(cfs.name, ByteBufferUtil.bytes("x"), ByteBufferUtil.bytes("zxcv"), 10);
+        rm.add(cfs.name, ByteBufferUtil.bytes("z"), ByteBufferUtil.bytes("zxcv"), 10);
+        rm.apply();
+        cfs.forceBlockingFlush();
+
+        // spans key3 without holding it
+        for (String key : new String[]{ "key2", "key4" })
+        {
+            rm = new RowMutation(keyspace.getName(), Util.dk(key).key);
+            rm.add(cfs.name, ByteBufferUtil.bytes("y"), ByteBufferUtil.bytes("zxcv"), 20);
+            rm.apply();
+        }
+        cfs.forceBlockingFlush();
+
+        // neither of the two most recent sstables can hold Column "b": the one without the row is skipped, while
+        // the other one has to be read to find out it has no tombstones
+        QueryFilter filter = QueryFilter.getNamesFilter(dk, cfs.name, ByteBufferUtil.bytes("b"), System.currentTimeMillis());
+        CollationController controller = new CollationController(cfs, filter, Integer.MIN_VALUE);
+        controller.getTopLevelColumns();
+        assertEquals(2, controller.getSstablesIterated());
+        assertEquals(1, controller.getSstablesPruned());
+    }
+
+    @Test
+    public void getTopLevelColumnsAppliesTombstonesOfNonIntersectingSSTables()
+    throws IOException, ExecutionException, InterruptedException
+    {
+        Keyspace keyspace = Keyspace.open("Keyspace1");
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore("Standard2");
+        cfs.disableAutoCompaction();
+        RowMutation rm;
+        DecoratedKey dk = Util.dk("key1");
+        int gcBefore = cfs.gcBefore(System.currentTimeMillis());
+
+        rm = new RowMutation(keyspace.getName(), dk.key);
+        rm.add(cfs.name, ByteBufferUtil.bytes("b"), ByteBufferUtil.bytes("asdf"), 0);
+        rm.add(cfs.name, ByteBufferUtil.bytes("c"), ByteBufferUtil.bytes("asdf"), 0);
+        rm.apply();
+        cfs.forceBlockingFlush();
+
+        // neither tombstone is accounted in the maxLocalDeletionTime of the most recent sstable, whose only column is live
+        rm = new RowMutation(keyspace.getName(), dk.key);
+        rm.deleteRange(cfs.name, ByteBufferUtil.bytes("a"), ByteBufferUtil.bytes("b"), 10);
+        rm.add(cfs.name, ByteBufferUtil.bytes("x"), ByteBufferUtil.bytes("zxcv"), 10);
+        rm.apply();
+        cfs.forceBlockingFlush();
+
+        QueryFilter filter = QueryFilter.getNamesFilter(dk, cfs.name, ByteBufferUtil.bytes("b"), System.currentTimeMillis());
+        CollationController controller = new CollationController(cfs, filter, gcBefore);
+        assertNoColumns(ColumnFamilyStore.removeDeleted(controller.getTopLevelColumns(), gcBefore));
+
+        rm = new RowMutation(keyspace.getName(), dk.key);
+        rm.delete(cfs.name, 5);
+        rm.add(cfs.name, ByteBufferUtil.bytes("y"), ByteBufferUtil.bytes("zxcv"), 10);
+        rm.apply();
+        cfs.forceBlockingFlush();
+
+        filter = QueryFilter.getNamesFilter(dk, cfs.name, ByteBufferUtil.bytes("c"), System.currentTimeMillis());
+        controller = new CollationController(cfs, filter, gcBefore);
+        assertNoColumns(ColumnFamilyStore.removeDeleted(controller.getTopLevelColumns(), gcBefore));
+    }
+
+    // the tombstones are not gcable yet, so they are returned along with what they shadow
+    private static void assertNoColumns(ColumnFamily cf)
+    {
+        assertTrue(cf == null || cf.getColumnCount() == 0);
+    }
+
     @Test
     public void ensureTombstonesAppliedAfterGCGS()
     throws IOException, ExecutionException, InterruptedException
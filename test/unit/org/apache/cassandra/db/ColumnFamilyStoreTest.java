@@ -159,6 +159,35 @@ public class ColumnFamilyStoreTest extends SchemaLoader
         KeyspaceTest.reTest(store, r);
     }
 
+    @Test
+    public void testMemtableSize() throws Exception
+    {
+        Keyspace keyspace = Keyspace.open("Keyspace1");
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore("Standard1");
+        cfs.forceBlockingFlush();
+
+        Memtable memtable = cfs.getDataTracker().getMemtable();
+        assertEquals(0, memtable.getLiveSize());
+
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("key1"));
+        rm.add("Standard1", ByteBufferUtil.bytes("c1"), ByteBufferUtil.bytes("v1"), 0);
+        rm.apply();
+        long oneColumn = memtable.getLiveSize();
+        // at least the key, name and value data, and the objects holding them
+        assertTrue(oneColumn > 4 + 2 + 2 + AtomicSortedColumns.COLUMN_OVERHEAD_SIZE);
+
+        // overwriting a column only adds its new data
+        rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("key1"));
+        rm.add("Standard1", ByteBufferUtil.bytes("c1"), ByteBufferUtil.bytes("v2"), 1);
+        rm.apply();
+        assertEquals(oneColumn + 2 + 2, memtable.getLiveSize());
+
+        rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("key1"));
+        rm.add("Standard1", ByteBufferUtil.bytes("c2"), ByteBufferUtil.bytes("v2"), 1);
+        rm.apply();
+        assertEquals(oneColumn + 2 + 2 + 2 + 2 + AtomicSortedColumns.COLUMN_OVERHEAD_SIZE, memtable.getLiveSize());
+    }
+
     @Test
     public void testSkipStartKey() throws IOException, ExecutionException, InterruptedException
     {
@@ -22,6 +22,10 @@ package org.apache.cassandra.db;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
@@ -29,9 +33,13 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.CommitLogDescriptor;
+import org.apache.cassandra.db.commitlog.CommitLogSegment;
+import org.apache.cassandra.db.filter.QueryFilter;
 import org.apache.cassandra.net.MessagingService;
 
 import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
@@ -173,6 +181,131 @@ public class CommitLogTest extends SchemaLoader
         CommitLog.instance.add(rm);
     }
 
+    @Test
+    public void testSerializedBufferReuse() throws Exception
+    {
+        RowMutation rm = new RowMutation("Keyspace1", bytes("k"));
+        rm.add("Standard1", bytes("c1"), bytes("v1"), 0);
+
+        byte[] serialized = rm.serializedBuffer(MessagingService.current_version);
+        Assert.assertSame(serialized, rm.serializedBuffer(MessagingService.current_version));
+        Assert.assertEquals(serialized.length, RowMutation.serializer.serializedSize(rm, MessagingService.current_version));
+
+        // modifying the mutation discards its serialized form
+        rm.add("Standard1", bytes("c2"), bytes("v2"), 0);
+        byte[] updated = rm.serializedBuffer(MessagingService.current_version);
+        Assert.assertNotSame(serialized, updated);
+        Assert.assertTrue(updated.length > serialized.length);
+
+        RowMutation deserialized = RowMutation.serializer.deserialize(new DataInputStream(new ByteArrayInputStream(updated)), MessagingService.current_version);
+        Assert.assertEquals(2, deserialized.getColumnFamily(Schema.instance.getId("Keyspace1", "Standard1")).getColumnCount());
+    }
+
+    @Test
+    public void testConcurrentWritesToSegment() throws Exception
+    {
+        final CommitLogSegment segment = CommitLogSegment.freshSegment();
+        final int threads = 8;
+        final int writesPerThread = 100;
+        final CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++)
+        {
+            final int thread = t;
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int i = 0; i < writesPerThread; i++)
+                        {
+                            RowMutation rm = new RowMutation("Keyspace1", bytes("k" + thread + "_" + i));
+                            rm.add("Standard1", bytes("c1"), ByteBuffer.allocate(100), 0);
+                            int length = (int) RowMutation.serializer.serializedSize(rm, MessagingService.current_version);
+                            int position = segment.allocate(length + CommitLogSegment.ENTRY_OVERHEAD_SIZE);
+                            assert position >= 0;
+                            segment.write(rm, length, position);
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await(1, TimeUnit.MINUTES);
+        executor.shutdown();
+
+        segment.sync(segment.position());
+        Assert.assertEquals(segment.position(), segment.getSyncedPosition());
+        Assert.assertEquals(threads * writesPerThread, CommitLog.instance.recover(new File(segment.getPath())));
+        segment.discard(true);
+    }
+
+    @Test
+    public void testClosedSegmentIsSynced() throws Exception
+    {
+        CommitLogSegment segment = CommitLogSegment.freshSegment();
+        RowMutation rm = new RowMutation("Keyspace1", bytes("k"));
+        rm.add("Standard1", bytes("c1"), ByteBuffer.allocate(100), 0);
+        segment.write(rm);
+        int position = segment.position();
+        Assert.assertTrue(segment.getSyncedPosition() < position);
+
+        // the writes waiting for a sync of a segment closed before it must not wait forever
+        segment.close();
+        Assert.assertTrue(segment.getSyncedPosition() >= position);
+        Assert.assertEquals(1, CommitLog.instance.recover(new File(segment.getPath())));
+        segment.discard(true);
+    }
+
+    @Test
+    public void testReplayOfSeveralSegments() throws Exception
+    {
+        // several segments, so that they are read in parallel if there is more than one reader, with the writes to
+        // each key spread over all of them and the latest write in the latest segment
+        int segments = 4;
+        int keys = 100;
+        File[] files = new File[segments];
+        for (int s = 0; s < segments; s++)
+        {
+            CommitLogSegment segment = CommitLogSegment.freshSegment();
+            for (int i = 0; i < keys; i++)
+            {
+                RowMutation rm = new RowMutation("Keyspace1", bytes("replay" + i));
+                rm.add("Standard1", bytes("c1"), bytes(s), s);
+                segment.write(rm);
+                // and a write to the same key right after, in the same segment
+                rm = new RowMutation("Keyspace1", bytes("replay" + i));
+                rm.add("Standard1", bytes("c2"), bytes(s), s);
+                segment.write(rm);
+            }
+            segment.sync();
+            segment.close();
+            files[s] = new File(segment.getPath());
+        }
+
+        Assert.assertEquals(segments * keys * 2, CommitLog.instance.recover(files));
+
+        ColumnFamilyStore cfs = Keyspace.open("Keyspace1").getColumnFamilyStore("Standard1");
+        for (int i = 0; i < keys; i++)
+        {
+            QueryFilter filter = QueryFilter.getIdentityFilter(Util.dk("replay" + i), "Standard1", System.currentTimeMillis());
+            ColumnFamily cf = cfs.getColumnFamily(filter);
+            Assert.assertEquals(bytes(segments - 1), cf.getColumn(bytes("c1")).value());
+            Assert.assertEquals(bytes(segments - 1), cf.getColumn(bytes("c2")).value());
+        }
+
+        for (File file : files)
+            file.delete();
+    }
+
     protected void testRecoveryWithBadSizeArgument(int size, int dataSize) throws Exception
     {
         Checksum checksum = new CRC32();
@@ -204,12 +337,37 @@ public class CommitLogTest extends SchemaLoader
         File logFile = tmpFile();
         try (OutputStream lout = new FileOutputStream(logFile))
         {
+            // a valid header, so that the recovery does get to the data
+            CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(logFile.getName());
+            ByteBuffer header = ByteBuffer.allocate(desc.headerSize());
+            CommitLogDescriptor.writeHeader(header, desc);
+            lout.write(header.array());
             lout.write(logData);
             //statics make it annoying to test things correctly
             CommitLog.instance.recover(new File[]{ logFile }); //CASSANDRA-1119 / CASSANDRA-1179 throw on failure*/
         }
     }
     
+    @Test
+    public void testHeader() throws Exception
+    {
+        CommitLogDescriptor desc = new CommitLogDescriptor(1340512736956320000L, "LZ4Compressor");
+        ByteBuffer header = ByteBuffer.allocate(desc.headerSize());
+        CommitLogDescriptor.writeHeader(header, desc);
+        Assert.assertFalse(header.hasRemaining());
+
+        CommitLogDescriptor read = CommitLogDescriptor.readHeader(new DataInputStream(new ByteArrayInputStream(header.array())));
+        Assert.assertEquals(desc.version, read.version);
+        Assert.assertEquals(desc.id, read.id);
+        Assert.assertEquals(desc.compression, read.compression);
+        Assert.assertNotNull(read.getCompressor());
+
+        // a corrupted header must be rejected rather than misread
+        header.put(5, (byte) (header.get(5) + 1));
+        Assert.assertNull(CommitLogDescriptor.readHeader(new DataInputStream(new ByteArrayInputStream(header.array()))));
+        Assert.assertNull(CommitLogDescriptor.readHeader(new DataInputStream(new ByteArrayInputStream(new byte[4]))));
+    }
+
     @Test
     public void testVersions()
     {
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.io.sstable.SSTableReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+
+public class MemtableFlushTest extends SchemaLoader
+{
+    private static final String KEYSPACE = "Keyspace1";
+    private static final String CF = "Standard2";
+    // rows big enough for the memtable to be worth splitting, which takes 16MB per range
+    private static final int ROWS = 40;
+    private static final int VALUE_SIZE = 1024 * 1024;
+
+    private static final int DEFAULT_SPLITS = DatabaseDescriptor.getFlushSplits();
+
+    @After
+    public void resetSplits()
+    {
+        DatabaseDescriptor.setFlushSplits(DEFAULT_SPLITS);
+    }
+
+    private static ColumnFamilyStore populate()
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(CF);
+        cfs.truncateBlocking();
+        for (int i = 0; i < ROWS; i++)
+        {
+            RowMutation rm = new RowMutation(KEYSPACE, bytes("key" + i));
+            rm.add(CF, bytes("c"), ByteBuffer.allocate(VALUE_SIZE), 0);
+            rm.apply();
+        }
+        return cfs;
+    }
+
+    private static void assertAllRowsReadable(ColumnFamilyStore cfs)
+    {
+        for (int i = 0; i < ROWS; i++)
+        {
+            ColumnFamily cf = cfs.getColumnFamily(QueryFilter.getIdentityFilter(Util.dk("key" + i), CF, System.currentTimeMillis()));
+            assertNotNull(cf);
+            assertEquals(VALUE_SIZE, cf.getColumn(bytes("c")).value().remaining());
+        }
+    }
+
+    @Test
+    public void testUnsplitFlush()
+    {
+        DatabaseDescriptor.setFlushSplits(1);
+        ColumnFamilyStore cfs = populate();
+        cfs.forceBlockingFlush();
+
+        assertEquals(1, cfs.getSSTables().size());
+        assertAllRowsReadable(cfs);
+    }
+
+    @Test
+    public void testSplitFlush()
+    {
+        DatabaseDescriptor.setFlushSplits(4);
+        ColumnFamilyStore cfs = populate();
+        cfs.forceBlockingFlush();
+
+        // 40MB of data only makes for two ranges of at least 16MB
+        assertEquals(2, cfs.getSSTables().size());
+        assertTrue(cfs.getDataTracker().getMemtablesPendingFlush().isEmpty());
+        assertAllRowsReadable(cfs);
+
+        // the ranges don't overlap
+        List<SSTableReader> sstables = new ArrayList<SSTableReader>(cfs.getSSTables());
+        Collections.sort(sstables, new Comparator<SSTableReader>()
+        {
+            public int compare(SSTableReader s1, SSTableReader s2)
+            {
+                return s1.first.compareTo(s2.first);
+            }
+        });
+        assertTrue(sstables.get(0).last.compareTo(sstables.get(1).first) < 0);
+    }
+}
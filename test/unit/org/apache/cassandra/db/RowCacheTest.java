@@ -173,6 +173,64 @@ public class RowCacheTest extends SchemaLoader
         CacheService.instance.setRowCacheCapacityInMB(0);
     }
 
+    @Test
+    public void testRowCacheHead() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+        CacheService.instance.setRowCacheCapacityInMB(1);
+
+        ColumnFamilyStore store = Keyspace.open(KEYSPACE).getColumnFamilyStore("CachedHeadCF");
+        DecoratedKey key = Util.dk("head");
+        RowMutation rm = new RowMutation(KEYSPACE, key.key);
+        for (int i = 0; i < 100; i++)
+            rm.add(store.name, ByteBufferUtil.bytes(String.format("c%03d", i)), ByteBufferUtil.bytes(i), 0);
+        rm.apply();
+
+        // reading the head of the partition caches its first 10 columns only
+        ColumnFamily cf = store.getColumnFamily(key, ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, 5, System.currentTimeMillis());
+        assertEquals(5, cf.getColumnCount());
+        assertEquals(10, store.getRawCachedRow(key).getColumnCount());
+
+        // slices past the cached head are read from the sstables and memtables
+        cf = store.getColumnFamily(key, ByteBufferUtil.bytes("c050"), ByteBufferUtil.bytes("c060"), false, 100, System.currentTimeMillis());
+        assertEquals(11, cf.getColumnCount());
+        cf = store.getColumnFamily(key, ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.EMPTY_BYTE_BUFFER, false, 20, System.currentTimeMillis());
+        assertEquals(20, cf.getColumnCount());
+
+        // writes within the head update it in place
+        rm = new RowMutation(KEYSPACE, key.key);
+        rm.add(store.name, ByteBufferUtil.bytes("c003"), ByteBufferUtil.bytes(-1), 1);
+        rm.apply();
+        ColumnFamily cached = store.getRawCachedRow(key);
+        assertEquals(10, cached.getColumnCount());
+        assertEquals(ByteBufferUtil.bytes(-1), cached.getColumn(ByteBufferUtil.bytes("c003")).value());
+
+        // writes past the head leave it alone
+        rm = new RowMutation(KEYSPACE, key.key);
+        rm.add(store.name, ByteBufferUtil.bytes("c500"), ByteBufferUtil.bytes(500), 1);
+        rm.apply();
+        cached = store.getRawCachedRow(key);
+        assertEquals(10, cached.getColumnCount());
+        assert cached.getColumn(ByteBufferUtil.bytes("c500")) == null;
+
+        // and writes before its end push its last columns out
+        rm = new RowMutation(KEYSPACE, key.key);
+        rm.add(store.name, ByteBufferUtil.bytes("a"), ByteBufferUtil.bytes(0), 1);
+        rm.apply();
+        cached = store.getRawCachedRow(key);
+        assertEquals(10, cached.getColumnCount());
+        assert cached.getColumn(ByteBufferUtil.bytes("a")) != null;
+        assert cached.getColumn(ByteBufferUtil.bytes("c009")) == null;
+
+        // deletions within the head leave us not knowing what follows it anymore
+        rm = new RowMutation(KEYSPACE, key.key);
+        rm.delete(store.name, ByteBufferUtil.bytes("c001"), 2);
+        rm.apply();
+        assert !store.containsCachedRow(key);
+
+        CacheService.instance.setRowCacheCapacityInMB(0);
+    }
+
     public void rowCacheLoad(int totalKeys, int keysToSave, int offset) throws Exception
     {
         CompactionManager.instance.disableAutoCompaction();
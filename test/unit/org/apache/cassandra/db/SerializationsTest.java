@@ -28,16 +28,19 @@ import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.net.CallbackInfo;
 import org.apache.cassandra.net.MessageIn;
 import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.DigestAlgorithm;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -334,6 +337,38 @@ public class SerializationsTest extends AbstractSerializationsTester
         in.close();
     }
 
+    private ReadResponse readResponseRoundTrip(ReadResponse response, int version) throws IOException
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        ReadResponse.serializer.serialize(response, out, version);
+        assert out.getLength() == ReadResponse.serializer.serializedSize(response, version);
+        return ReadResponse.serializer.deserialize(new DataInputStream(new ByteArrayInputStream(out.getData(), 0, out.getLength())), version);
+    }
+
+    @Test
+    public void testReadResponseVersions() throws IOException
+    {
+        ByteBuffer md5 = ColumnFamily.digest(statics.StandardCf, DigestAlgorithm.MD5);
+        ByteBuffer murmur3 = ColumnFamily.digest(statics.StandardCf, DigestAlgorithm.MURMUR3);
+
+        // digest responses carry their algorithm from VERSION_21 on, and are MD5 before
+        for (int version : new int[]{ MessagingService.VERSION_20, MessagingService.VERSION_21 })
+        {
+            ReadResponse response = readResponseRoundTrip(new ReadResponse(md5, DigestAlgorithm.MD5), version);
+            assert response.isDigestQuery();
+            assert response.digest().equals(md5);
+            assert response.digestAlgorithm() == DigestAlgorithm.MD5;
+
+            response = readResponseRoundTrip(new ReadResponse(statics.StandardRow), version);
+            assert !response.isDigestQuery();
+            assert response.row().cf.getColumnCount() == statics.StandardCf.getColumnCount();
+        }
+
+        ReadResponse response = readResponseRoundTrip(new ReadResponse(murmur3, DigestAlgorithm.MURMUR3), MessagingService.VERSION_21);
+        assert response.digest().equals(murmur3);
+        assert response.digestAlgorithm() == DigestAlgorithm.MURMUR3;
+    }
+
     private static ByteBuffer bb(String s) {
         return ByteBufferUtil.bytes(s);
     }
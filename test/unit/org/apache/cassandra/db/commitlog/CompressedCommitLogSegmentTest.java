@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.db.RowMutation;
+
+import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
+
+public class CompressedCommitLogSegmentTest extends SchemaLoader
+{
+    private static final String COMPRESSION = "LZ4Compressor";
+
+    private static int write(CommitLogSegment segment, int count) throws Exception
+    {
+        for (int i = 0; i < count; i++)
+        {
+            RowMutation rm = new RowMutation("Keyspace1", bytes("k" + i));
+            rm.add("Standard1", bytes("c1"), ByteBuffer.allocate(1000), 0);
+            segment.write(rm);
+        }
+        return count;
+    }
+
+    @Test
+    public void testWriteAndReplay() throws Exception
+    {
+        CommitLogSegment segment = new CompressedCommitLogSegment(COMPRESSION);
+        try
+        {
+            int written = write(segment, 100);
+            segment.sync();
+            // more than one frame, so that replay goes through several of them
+            Assert.assertTrue(segment.getSyncedPosition() > 64 * 1024);
+            Assert.assertEquals(written, CommitLog.instance.recover(new File(segment.getPath())));
+
+            // what is written after a sync is appended to the file by the next one
+            written += write(segment, 10);
+            segment.sync();
+            Assert.assertEquals(written, CommitLog.instance.recover(new File(segment.getPath())));
+        }
+        finally
+        {
+            segment.discard(true);
+        }
+    }
+
+    @Test
+    public void testUnsyncedWritesAreNotOnDisk() throws Exception
+    {
+        CommitLogSegment segment = new CompressedCommitLogSegment(COMPRESSION);
+        try
+        {
+            int written = write(segment, 10);
+            // the content of the file is what archiving a segment right after replacing it used to copy
+            Assert.assertEquals(0, CommitLog.instance.recover(new File(segment.getPath())));
+
+            // a replaced segment is complete once synced, which seals it
+            segment.finish();
+            segment.sync();
+            Assert.assertEquals(written, CommitLog.instance.recover(new File(segment.getPath())));
+            Assert.assertFalse(segment.hasCapacityFor(1));
+        }
+        finally
+        {
+            segment.discard(true);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.index;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.index.composites.CoveringCompositesIndex;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.apache.cassandra.cql3.QueryProcessor.processInternal;
+
+public class CoveringCompositesIndexTest extends SchemaLoader
+{
+    private static final String KEYSPACE = "cql_keyspace";
+    private static final String TABLE = "covered";
+
+    @Before
+    public void truncate()
+    {
+        Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE).truncateBlocking();
+    }
+
+    private static UntypedResultSet execute(String query, Object... values)
+    {
+        return processInternal(String.format(query, values));
+    }
+
+    @Test
+    public void testIndexIsCovering()
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE);
+        assertTrue(cfs.indexManager.getIndexForColumn(ByteBufferUtil.bytes("v")) instanceof CoveringCompositesIndex);
+    }
+
+    @Test
+    public void testIncludedColumnUpdates()
+    {
+        execute("INSERT INTO %s.%s (k, c, v, w, x) VALUES (0, 0, 1, 'a', 'b')", KEYSPACE, TABLE);
+        execute("INSERT INTO %s.%s (k, c, v, w) VALUES (0, 1, 1, 'c')", KEYSPACE, TABLE);
+
+        UntypedResultSet result = execute("SELECT k, c, w FROM %s.%s WHERE v = 1", KEYSPACE, TABLE);
+        assertEquals(2, result.size());
+
+        // updating an included column must update the entry, not only the base row
+        execute("UPDATE %s.%s SET w = 'd' WHERE k = 0 AND c = 0", KEYSPACE, TABLE);
+        result = execute("SELECT w FROM %s.%s WHERE v = 1 AND k = 0 AND c = 0 ALLOW FILTERING", KEYSPACE, TABLE);
+        assertEquals(1, result.size());
+        assertEquals("d", result.one().getString("w"));
+
+        // and so must deleting it
+        execute("DELETE w FROM %s.%s WHERE k = 0 AND c = 0", KEYSPACE, TABLE);
+        result = execute("SELECT w FROM %s.%s WHERE v = 1 AND k = 0 AND c = 0 ALLOW FILTERING", KEYSPACE, TABLE);
+        assertEquals(1, result.size());
+        assertFalse(result.one().has("w"));
+    }
+
+    @Test
+    public void testIndexedColumnUpdates()
+    {
+        execute("INSERT INTO %s.%s (k, c, v, w) VALUES (0, 0, 1, 'a')", KEYSPACE, TABLE);
+        execute("UPDATE %s.%s SET v = 2 WHERE k = 0 AND c = 0", KEYSPACE, TABLE);
+
+        assertEquals(0, execute("SELECT k, c, w FROM %s.%s WHERE v = 1", KEYSPACE, TABLE).size());
+        UntypedResultSet result = execute("SELECT k, c, w FROM %s.%s WHERE v = 2", KEYSPACE, TABLE);
+        assertEquals(1, result.size());
+        assertEquals("a", result.one().getString("w"));
+    }
+
+    @Test
+    public void testRowAndPartitionDeletions()
+    {
+        execute("INSERT INTO %s.%s (k, c, v, w) VALUES (0, 0, 1, 'a')", KEYSPACE, TABLE);
+        execute("INSERT INTO %s.%s (k, c, v, w) VALUES (0, 1, 1, 'b')", KEYSPACE, TABLE);
+        execute("INSERT INTO %s.%s (k, c, v, w) VALUES (1, 0, 1, 'c')", KEYSPACE, TABLE);
+
+        execute("DELETE FROM %s.%s WHERE k = 0 AND c = 0", KEYSPACE, TABLE);
+        assertEquals(2, execute("SELECT k, c, w FROM %s.%s WHERE v = 1", KEYSPACE, TABLE).size());
+
+        execute("DELETE FROM %s.%s WHERE k = 0", KEYSPACE, TABLE);
+        UntypedResultSet result = execute("SELECT k, c, w FROM %s.%s WHERE v = 1", KEYSPACE, TABLE);
+        assertEquals(1, result.size());
+        assertEquals("c", result.one().getString("w"));
+
+        // the entries of the deleted rows must be gone from the index itself, not just filtered out
+        SecondaryIndex index = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE).indexManager.getIndexForColumn(ByteBufferUtil.bytes("v"));
+        ColumnFamilyStore indexCfs = index.getIndexCfs();
+        long now = System.currentTimeMillis();
+        ColumnFamily entries = indexCfs.getColumnFamily(QueryFilter.getIdentityFilter(index.getIndexKeyFor(Int32Type.instance.decompose(1)), indexCfs.name, now));
+        int live = 0;
+        for (Column entry : entries)
+        {
+            if (!entry.isMarkedForDelete(now))
+                live++;
+        }
+        assertEquals(1, live);
+    }
+
+    @Test
+    public void testDeletionsAndReinsertsWithTimestamps()
+    {
+        execute("INSERT INTO %s.%s (k, c, v, w) VALUES (0, 0, 1, 'a') USING TIMESTAMP 10", KEYSPACE, TABLE);
+        execute("DELETE FROM %s.%s USING TIMESTAMP 20 WHERE k = 0 AND c = 0", KEYSPACE, TABLE);
+        assertEquals(0, execute("SELECT k, c, w FROM %s.%s WHERE v = 1", KEYSPACE, TABLE).size());
+
+        // a write older than the deletion stays deleted...
+        execute("INSERT INTO %s.%s (k, c, v, w) VALUES (0, 0, 1, 'b') USING TIMESTAMP 15", KEYSPACE, TABLE);
+        assertEquals(0, execute("SELECT k, c, w FROM %s.%s WHERE v = 1", KEYSPACE, TABLE).size());
+
+        // ...and one right after it brings the row back
+        execute("INSERT INTO %s.%s (k, c, v, w) VALUES (0, 0, 1, 'c') USING TIMESTAMP 21", KEYSPACE, TABLE);
+        UntypedResultSet result = execute("SELECT k, c, w FROM %s.%s WHERE v = 1", KEYSPACE, TABLE);
+        assertEquals(1, result.size());
+        assertEquals("c", result.one().getString("w"));
+
+        // the entry is written at the timestamp of the row, so a deletion right after it removes it
+        execute("DELETE FROM %s.%s USING TIMESTAMP 22 WHERE k = 0 AND c = 0", KEYSPACE, TABLE);
+        assertEquals(0, execute("SELECT k, c, w FROM %s.%s WHERE v = 1", KEYSPACE, TABLE).size());
+    }
+
+    @Test
+    public void testCoveredQueriesSkipBaseRows()
+    {
+        execute("INSERT INTO %s.%s (k, c, v, w, x) VALUES (0, 0, 1, 'a', 'b')", KEYSPACE, TABLE);
+        execute("INSERT INTO %s.%s (k, c, v, w, x) VALUES (1, 0, 1, 'c', 'd')", KEYSPACE, TABLE);
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE);
+
+        long reads = cfs.metric.readLatency.latency.count();
+        UntypedResultSet result = execute("SELECT k, c, w FROM %s.%s WHERE v = 1", KEYSPACE, TABLE);
+        assertEquals(2, result.size());
+        assertEquals(reads, cfs.metric.readLatency.latency.count());
+    }
+
+    @Test
+    public void testNonCoveredQueries()
+    {
+        execute("INSERT INTO %s.%s (k, c, v, w, x) VALUES (0, 0, 1, 'a', 'b')", KEYSPACE, TABLE);
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE);
+
+        // x is not included, so this reads the base rows
+        long reads = cfs.metric.readLatency.latency.count();
+        UntypedResultSet result = execute("SELECT x FROM %s.%s WHERE v = 1", KEYSPACE, TABLE);
+        assertEquals(1, result.size());
+        assertEquals("b", result.one().getString("x"));
+        assertTrue(cfs.metric.readLatency.latency.count() > reads);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.index;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.Keyspace;
+
+import static org.junit.Assert.assertEquals;
+import static org.apache.cassandra.cql3.QueryProcessor.processInternal;
+
+public class IndexOnlyKeysTest extends SchemaLoader
+{
+    private static final String KEYSPACE = "cql_keyspace";
+    private static final String TABLE = "indexed";
+
+    @Before
+    public void truncate()
+    {
+        Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE).truncateBlocking();
+    }
+
+    private static UntypedResultSet execute(String query, Object... values)
+    {
+        return processInternal(String.format(query, values));
+    }
+
+    @Test
+    public void testKeysOnlyQuery()
+    {
+        execute("INSERT INTO %s.%s (k, c, v, w) VALUES (0, 0, 1, 'a')", KEYSPACE, TABLE);
+        execute("INSERT INTO %s.%s (k, c, v) VALUES (0, 1, 1)", KEYSPACE, TABLE);
+        execute("INSERT INTO %s.%s (k, c, v) VALUES (1, 0, 1)", KEYSPACE, TABLE);
+        execute("INSERT INTO %s.%s (k, c, v) VALUES (1, 1, 2)", KEYSPACE, TABLE);
+
+        assertEquals(3, execute("SELECT k, c FROM %s.%s WHERE v = 1", KEYSPACE, TABLE).size());
+        assertEquals(2, execute("SELECT k, c FROM %s.%s WHERE v = 1 AND k = 0 ALLOW FILTERING", KEYSPACE, TABLE).size());
+        assertEquals(2, execute("SELECT k FROM %s.%s WHERE v = 1 LIMIT 2", KEYSPACE, TABLE).size());
+
+        UntypedResultSet result = execute("SELECT k, c FROM %s.%s WHERE v = 2", KEYSPACE, TABLE);
+        assertEquals(1, result.size());
+        assertEquals(1, result.one().getInt("k"));
+        assertEquals(1, result.one().getInt("c"));
+    }
+
+    @Test
+    public void testKeysOnlyQueryIgnoresStaleEntries()
+    {
+        execute("INSERT INTO %s.%s (k, c, v) VALUES (0, 0, 1)", KEYSPACE, TABLE);
+        execute("INSERT INTO %s.%s (k, c, v) VALUES (0, 1, 1)", KEYSPACE, TABLE);
+        execute("INSERT INTO %s.%s (k, c, v) VALUES (0, 2, 1)", KEYSPACE, TABLE);
+        // flush so the memtable doesn't know the old values anymore, leaving their entries behind
+        Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE).forceBlockingFlush();
+
+        execute("UPDATE %s.%s SET v = 2 WHERE k = 0 AND c = 0", KEYSPACE, TABLE);
+        execute("DELETE FROM %s.%s WHERE k = 0 AND c = 1", KEYSPACE, TABLE);
+
+        UntypedResultSet result = execute("SELECT k, c FROM %s.%s WHERE v = 1", KEYSPACE, TABLE);
+        assertEquals(1, result.size());
+        assertEquals(2, result.one().getInt("c"));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.index;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.db.marshal.Int32Type;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.apache.cassandra.cql3.QueryProcessor.processInternal;
+
+public class IndexedRowPrefetcherTest extends SchemaLoader
+{
+    private static final String KEYSPACE = "cql_keyspace";
+    private static final String TABLE = "indexed";
+    private static final int ROWS = 50;
+
+    @Before
+    public void populate()
+    {
+        Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE).truncateBlocking();
+        for (int k = 0; k < ROWS; k++)
+            execute("INSERT INTO %s.%s (k, c, v, x) VALUES (%d, 0, 1, 'x%d')", KEYSPACE, TABLE, k, k);
+    }
+
+    private static UntypedResultSet execute(String query, Object... values)
+    {
+        return processInternal(String.format(query, values));
+    }
+
+    @Test
+    public void testPrefetchedRowsAreReturnedInOrder()
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE);
+        long now = System.currentTimeMillis();
+        IndexedRowPrefetcher prefetcher = new IndexedRowPrefetcher(cfs);
+
+        List<ByteBuffer> ids = new ArrayList<>();
+        List<QueryFilter> filters = new ArrayList<>();
+        for (int k = 0; k < 10; k++)
+        {
+            ByteBuffer key = Int32Type.instance.decompose(k);
+            ids.add(key);
+            filters.add(QueryFilter.getIdentityFilter(cfs.partitioner.decorateKey(key), TABLE, now));
+            prefetcher.prefetch(key, filters.get(k));
+        }
+        assertEquals(10, prefetcher.pendingCount());
+
+        // whatever order the reads complete in, each get() returns the row it is asked for
+        for (int k = 0; k < 10; k++)
+        {
+            assertTrue(prefetcher.isPending(ids.get(k)));
+            ColumnFamily expected = cfs.getColumnFamily(QueryFilter.getIdentityFilter(filters.get(k).key, TABLE, now));
+            assertEquals(expected, prefetcher.get(ids.get(k), filters.get(k)));
+            assertFalse(prefetcher.isPending(ids.get(k)));
+        }
+        assertEquals(0, prefetcher.pendingCount());
+
+        // rows that were not prefetched are read by get() itself
+        ByteBuffer key = Int32Type.instance.decompose(ROWS - 1);
+        QueryFilter filter = QueryFilter.getIdentityFilter(cfs.partitioner.decorateKey(key), TABLE, now);
+        assertEquals(cfs.getColumnFamily(filter), prefetcher.get(key, filter));
+
+        prefetcher.prefetch(key, filter);
+        prefetcher.cancel();
+        assertEquals(0, prefetcher.pendingCount());
+    }
+
+    @Test
+    public void testQueriesStopAtTheirLimit()
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE);
+        UntypedResultSet all = execute("SELECT k, x FROM %s.%s WHERE v = 1", KEYSPACE, TABLE);
+        assertEquals(ROWS, all.size());
+
+        int limit = 2 * IndexedRowPrefetcher.prefetchSize() - 1;
+        long reads = cfs.metric.readLatency.latency.count();
+        UntypedResultSet page = execute("SELECT k, x FROM %s.%s WHERE v = 1 LIMIT %d", KEYSPACE, TABLE, limit);
+        assertEquals(limit, page.size());
+        // no read is started for the hits past the limit
+        assertEquals(limit, cfs.metric.readLatency.latency.count() - reads);
+
+        // and the rows come in the same order as in the whole result
+        List<Integer> expected = new ArrayList<>();
+        for (UntypedResultSet.Row row : all)
+        {
+            if (expected.size() < limit)
+                expected.add(row.getInt("k"));
+        }
+        List<Integer> actual = new ArrayList<>();
+        for (UntypedResultSet.Row row : page)
+        {
+            actual.add(row.getInt("k"));
+            assertEquals("x" + row.getInt("k"), row.getString("x"));
+        }
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.index;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.columniterator.IdentityQueryFilter;
+import org.apache.cassandra.db.filter.QueryFilter;
+import org.apache.cassandra.thrift.IndexExpression;
+import org.apache.cassandra.thrift.IndexOperator;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StaleIndexEntryCleanerTest extends SchemaLoader
+{
+    @Test
+    public void testStaleEntriesArePurged() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open("Keyspace1").getColumnFamilyStore("Indexed1");
+        ByteBuffer indexed = ByteBufferUtil.bytes("birthdate");
+        ColumnFamilyStore indexCfs = cfs.indexManager.getIndexForColumn(indexed).getIndexCfs();
+
+        RowMutation rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("k1"));
+        rm.add("Indexed1", indexed, ByteBufferUtil.bytes(100L), 1);
+        rm.apply();
+        // flush so the memtable doesn't know the old value anymore, leaving its entry behind
+        cfs.forceBlockingFlush();
+
+        rm = new RowMutation("Keyspace1", ByteBufferUtil.bytes("k1"));
+        rm.add("Indexed1", indexed, ByteBufferUtil.bytes(200L), 2);
+        rm.apply();
+
+        long found = indexCfs.metric.staleIndexEntriesFound.count();
+        long purged = indexCfs.metric.staleIndexEntriesPurged.count();
+
+        List<IndexExpression> clause = Arrays.asList(new IndexExpression(indexed, IndexOperator.EQ, ByteBufferUtil.bytes(100L)));
+        List<Row> rows = cfs.search(Util.range("", ""), clause, new IdentityQueryFilter(), 100);
+        assertTrue(rows.isEmpty());
+        assertEquals(found + 1, indexCfs.metric.staleIndexEntriesFound.count());
+
+        // the background task may have drained the queue already, cleanup() waits for it to finish
+        StaleIndexEntryCleaner.instance.cleanup();
+        assertEquals(0, StaleIndexEntryCleaner.instance.pendingEntries());
+        assertEquals(purged + 1, indexCfs.metric.staleIndexEntriesPurged.count());
+
+        DecoratedKey indexKey = indexCfs.partitioner.decorateKey(ByteBufferUtil.bytes(100L));
+        ColumnFamily entries = indexCfs.getColumnFamily(QueryFilter.getIdentityFilter(indexKey, indexCfs.name, System.currentTimeMillis()));
+        assertTrue(entries == null || entries.hasOnlyTombstones(System.currentTimeMillis()));
+    }
+}
@@ -19,7 +19,10 @@
 package org.apache.cassandra.io.compress;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.util.Collections;
 import java.util.Random;
+import java.util.TreeMap;
 
 import org.junit.Test;
 
@@ -28,6 +31,7 @@ import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.SSTableMetadata;
 import org.apache.cassandra.io.util.*;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
@@ -95,6 +99,52 @@ public class CompressedRandomAccessReaderTest
         }
     }
 
+    @Test
+    public void testMmappedRead() throws IOException
+    {
+        File file = File.createTempFile("mmapped", "1");
+        file.deleteOnExit();
+        File metadata = new File(file.getPath() + ".metadata");
+        metadata.deleteOnExit();
+
+        SSTableMetadata.Collector sstableMetadataCollector = SSTableMetadata.createCollector(BytesType.instance).replayPosition(null);
+        SequentialWriter writer = new CompressedSequentialWriter(file, metadata.getPath(), false, new CompressionParameters(LZ4Compressor.create(Collections.<String, String>emptyMap())), sstableMetadataCollector);
+
+        // several chunks of incompressible data
+        byte[] data = new byte[CompressionParameters.DEFAULT_CHUNK_LENGTH * 4 + 100];
+        new Random(42).nextBytes(data);
+        writer.write(data);
+        writer.close();
+
+        long maxSegmentSize = MmappedSegmentedFile.MAX_SEGMENT_SIZE;
+        try
+        {
+            // force each full chunk in its own segment, the last (small) one shares the segment of the one before
+            MmappedSegmentedFile.MAX_SEGMENT_SIZE = CompressionParameters.DEFAULT_CHUNK_LENGTH + 1024;
+
+            CompressionMetadata meta = new CompressionMetadata(metadata.getPath(), file.length(), true);
+            TreeMap<Long, MappedByteBuffer> segments = CompressedMmappedSegmentedFile.Builder.createSegments(file.getPath(), meta);
+            assertEquals(4, segments.size());
+
+            RandomAccessReader reader = CompressedRandomAccessReader.open(file.getPath(), meta, null, segments);
+            byte[] read = new byte[data.length];
+            reader.readFully(read);
+            assertArrayEquals(data, read);
+
+            // and backwards, chunk by chunk
+            for (int i = 4; i >= 0; i--)
+            {
+                reader.seek(i * CompressionParameters.DEFAULT_CHUNK_LENGTH);
+                assertEquals(data[i * CompressionParameters.DEFAULT_CHUNK_LENGTH], reader.readByte());
+            }
+            reader.close();
+        }
+        finally
+        {
+            MmappedSegmentedFile.MAX_SEGMENT_SIZE = maxSegmentSize;
+        }
+    }
+
     @Test
     public void testDataCorruptionDetection() throws IOException
     {
@@ -40,6 +40,53 @@ public class IndexHelperTest
         indexes.add(new IndexInfo(bytes(10L), bytes(15L), 0, 0));
         indexes.add(new IndexInfo(bytes(20L), bytes(25L), 0, 0));
 
+        assertIndexFor(indexes);
+    }
+
+    @Test
+    public void testSerializedIndex()
+    {
+        List<IndexInfo> indexes = new ArrayList<IndexInfo>();
+        indexes.add(new IndexInfo(bytes(0L), bytes(5L), 0, 10));
+        indexes.add(new IndexInfo(bytes(10L), bytes(15L), 10, 20));
+        indexes.add(new IndexInfo(bytes(20L), bytes(25L), 30, 40));
+
+        IndexHelper.SerializedIndex serialized = IndexHelper.SerializedIndex.create(indexes);
+        assertEquals(indexes.size(), serialized.size());
+        for (int i = 0; i < indexes.size(); i++)
+        {
+            assertEquals(indexes.get(i).firstName, serialized.get(i).firstName);
+            assertEquals(indexes.get(i).lastName, serialized.get(i).lastName);
+            assertEquals(indexes.get(i).offset, serialized.get(i).offset);
+            assertEquals(indexes.get(i).width, serialized.get(i).width);
+        }
+
+        // as read back from an sstable
+        assertIndexFor(new IndexHelper.SerializedIndex(serialized.buffer(), indexes.size()));
+
+        // as cached
+        IndexHelper.SerializedIndex offHeap = serialized.offHeap();
+        assertTrue(offHeap.buffer().isDirect());
+        assertSame(offHeap, offHeap.offHeap());
+        assertEquals(serialized.get(1).firstName, offHeap.get(1).firstName);
+        assertIndexFor(offHeap);
+
+        // as read from the cache, searched in place
+        assertTrue(offHeap.reference());
+        assertIndexFor(offHeap);
+
+        // evicted during the read: the memory outlives the cache's reference
+        offHeap.release();
+        assertIndexFor(offHeap);
+        offHeap.release();
+        assertFalse(offHeap.reference());
+
+        // on-heap indexes are always readable
+        assertTrue(serialized.reference());
+    }
+
+    private static void assertIndexFor(List<IndexInfo> indexes)
+    {
         AbstractType comp = IntegerType.instance;
 
         assertEquals(0, IndexHelper.indexFor(bytes(-1L), indexes, comp, false, -1));
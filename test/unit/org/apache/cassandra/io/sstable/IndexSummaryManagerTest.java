@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import org.junit.Test;
+
+import static org.apache.cassandra.io.sstable.IndexSummaryManager.MAX_INTERVAL_MULTIPLIER;
+import static org.apache.cassandra.io.sstable.IndexSummaryManager.targetIntervals;
+import static org.junit.Assert.assertArrayEquals;
+
+public class IndexSummaryManagerTest
+{
+    private static final int MAX = 128 * MAX_INTERVAL_MULTIPLIER;
+
+    @Test
+    public void testEnoughCapacity()
+    {
+        int[] intervals = targetIntervals(new int[]{ 128, 256 }, new long[]{ 1 << 20, 1 << 20 }, new double[]{ 0, 5 }, 2 << 20);
+        assertArrayEquals(new int[]{ 128, 256 }, intervals);
+    }
+
+    @Test
+    public void testNotEnoughCapacity()
+    {
+        int[] intervals = targetIntervals(new int[]{ 128, 128 }, new long[]{ 1 << 20, 1 << 20 }, new double[]{ 1, 1 }, 1 << 10);
+        assertArrayEquals(new int[]{ MAX, MAX }, intervals);
+    }
+
+    @Test
+    public void testHotSSTablesKeepFullSummaries()
+    {
+        // enough for one full summary besides the smallest ones, and a bit more for the next hottest sstable
+        long capacity = (1 << 20) + 4 * (1 << 20) / MAX_INTERVAL_MULTIPLIER;
+        int[] intervals = targetIntervals(new int[]{ 128, 128, 128 },
+                                          new long[]{ 1 << 20, 1 << 20, 1 << 20 },
+                                          new double[]{ 0.1, 100, 0 },
+                                          capacity);
+        assertArrayEquals(new int[]{ MAX / 2, 128, MAX }, intervals);
+    }
+
+    @Test
+    public void testLeftoverGoesToColderSSTables()
+    {
+        // the hot sstable has a small summary, so the cold one gets what it doesn't need
+        int[] intervals = targetIntervals(new int[]{ 128, 128 },
+                                          new long[]{ 1 << 10, 1 << 20 },
+                                          new double[]{ 100, 1 },
+                                          (1 << 19) + (1 << 10));
+        assertArrayEquals(new int[]{ 128, 256 }, intervals);
+    }
+
+    @Test
+    public void testSharesBySizeWithoutReads()
+    {
+        int[] intervals = targetIntervals(new int[]{ 128, 128 },
+                                          new long[]{ 1 << 20, 1 << 18 },
+                                          new double[]{ 0, 0 },
+                                          (1 << 19) + (1 << 17));
+        assertArrayEquals(new int[]{ 256, 256 }, intervals);
+    }
+}
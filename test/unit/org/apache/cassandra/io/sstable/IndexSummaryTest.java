@@ -110,6 +110,21 @@ public class IndexSummaryTest
         assertArrayEquals(summary.getKey(0), summary.getKey(0));
     }
 
+    @Test
+    public void testDownsample()
+    {
+        Pair<List<DecoratedKey>, IndexSummary> random = generateRandomIndex(100, 2);
+        IndexSummary downsampled = IndexSummaryBuilder.downsample(random.right, 4, DatabaseDescriptor.getPartitioner());
+        assertEquals(8, downsampled.getIndexInterval());
+        assertEquals(13, downsampled.size());
+        for (int i = 0; i < 13; i++)
+        {
+            assertEquals(random.left.get(i * 8).key, ByteBuffer.wrap(downsampled.getKey(i)));
+            assertEquals(i * 8, downsampled.getPosition(i));
+        }
+        assertEquals(6, downsampled.binarySearch(random.left.get(48)));
+    }
+
     private Pair<List<DecoratedKey>, IndexSummary> generateRandomIndex(int size, int interval)
     {
         List<DecoratedKey> list = Lists.newArrayList();
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.*;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionIndexTest
+{
+    private static final Random random = new Random(42);
+
+    @Test
+    public void testMurmur3() throws IOException
+    {
+        testLookups(new Murmur3Partitioner(), randomKeys(10000));
+    }
+
+    @Test
+    public void testRandom() throws IOException
+    {
+        testLookups(new RandomPartitioner(), randomKeys(10000));
+    }
+
+    @Test
+    public void testByteOrderedPrefixes() throws IOException
+    {
+        // keys that are prefixes of other keys are indexed by inner nodes of the trie
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+            keys.add("key" + i);
+        keys.add("");
+        keys.add("k");
+        testLookups(new ByteOrderedPartitioner(), keys);
+    }
+
+    @Test
+    public void testSingleKey() throws IOException
+    {
+        testLookups(new Murmur3Partitioner(), Collections.singletonList("key"));
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        File file = File.createTempFile("PartitionIndex", ".db");
+        file.deleteOnExit();
+        new PartitionIndexBuilder(file, true).close();
+        PartitionIndex index = PartitionIndex.open(file);
+        assertEquals(-1, index.floor(new Murmur3Partitioner().decorateKey(ByteBufferUtil.bytes("key"))));
+        index.close();
+    }
+
+    private static List<String> randomKeys(int count)
+    {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            keys.add(Long.toHexString(random.nextLong()));
+        return keys;
+    }
+
+    private static void testLookups(IPartitioner partitioner, List<String> keys) throws IOException
+    {
+        List<DecoratedKey> indexed = new ArrayList<>();
+        List<DecoratedKey> absent = new ArrayList<>();
+        for (String key : keys)
+        {
+            indexed.add(partitioner.decorateKey(ByteBufferUtil.bytes(key)));
+            absent.add(partitioner.decorateKey(ByteBufferUtil.bytes(key + "-")));
+        }
+        Collections.sort(indexed);
+
+        File file = File.createTempFile("PartitionIndex", ".db");
+        file.deleteOnExit();
+        PartitionIndexBuilder builder = new PartitionIndexBuilder(file, true);
+        for (int i = 0; i < indexed.size(); i++)
+            builder.append(indexed.get(i), i * 10);
+        builder.close();
+
+        PartitionIndex index = PartitionIndex.open(file);
+        for (int i = 0; i < indexed.size(); i++)
+            assertEquals(i * 10, index.floor(indexed.get(i)));
+
+        // the entry found is the first one greater than the key, or the last one less than it
+        for (DecoratedKey key : absent)
+        {
+            long position = index.floor(key);
+            assertEquals(0, position % 10);
+            int i = (int) (position / 10);
+            if (indexed.get(i).compareTo(key) < 0)
+                assertTrue(i == indexed.size() - 1 || indexed.get(i + 1).compareTo(key) > 0);
+            else
+                assertTrue(i == 0 || indexed.get(i - 1).compareTo(key) < 0);
+        }
+        index.close();
+    }
+}
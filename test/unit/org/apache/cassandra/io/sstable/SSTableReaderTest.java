@@ -143,6 +143,55 @@ public class SSTableReaderTest extends SchemaLoader
         }
     }
 
+    @Test
+    public void testCloneWithNewSummary() throws IOException, ExecutionException, InterruptedException
+    {
+        Keyspace keyspace = Keyspace.open("Keyspace1");
+        ColumnFamilyStore store = keyspace.getColumnFamilyStore("Standard1");
+
+        // insert a bunch of data and compact to a single sstable
+        CompactionManager.instance.disableAutoCompaction();
+        for (int j = 0; j < 1000; j++)
+        {
+            ByteBuffer key = ByteBufferUtil.bytes("resample" + j);
+            RowMutation rm = new RowMutation("Keyspace1", key);
+            rm.add("Standard1", ByteBufferUtil.bytes("0"), ByteBufferUtil.EMPTY_BYTE_BUFFER, j);
+            rm.apply();
+        }
+        store.forceBlockingFlush();
+        CompactionManager.instance.performMaximal(store);
+
+        SSTableReader sstable = store.getSSTables().iterator().next();
+        int interval = sstable.getEffectiveIndexInterval();
+        long summarySize = sstable.getIndexSummaryOffHeapSize();
+
+        // downsampling shrinks the summary, and upsampling rebuilds it from the primary index
+        SSTableReader downsampled = sstable.cloneWithNewSummary(interval * 4);
+        sstable.markReplacedBy(downsampled);
+        store.getDataTracker().replaceReaders(Arrays.asList(sstable), Arrays.asList(downsampled));
+        Assert.assertEquals(interval * 4, downsampled.getEffectiveIndexInterval());
+        assertTrue(downsampled.getIndexSummaryOffHeapSize() < summarySize);
+        assertResampledKeysFound(store, downsampled);
+
+        SSTableReader upsampled = downsampled.cloneWithNewSummary(interval);
+        downsampled.markReplacedBy(upsampled);
+        store.getDataTracker().replaceReaders(Arrays.asList(downsampled), Arrays.asList(upsampled));
+        Assert.assertEquals(interval, upsampled.getEffectiveIndexInterval());
+        Assert.assertEquals(summarySize, upsampled.getIndexSummaryOffHeapSize());
+        assertResampledKeysFound(store, upsampled);
+    }
+
+    private void assertResampledKeysFound(ColumnFamilyStore store, SSTableReader sstable)
+    {
+        assertTrue(store.getSSTables().contains(sstable));
+        CacheService.instance.keyCache.clear();
+        for (int j = 0; j < 1000; j++)
+        {
+            DecoratedKey dk = Util.dk("resample" + j);
+            assert sstable.getPosition(dk, SSTableReader.Operator.EQ) != null : dk;
+        }
+    }
+
     @Test
     public void testPersistentStatistics() throws IOException, ExecutionException, InterruptedException
     {
@@ -278,7 +327,7 @@ public class SSTableReaderTest extends SchemaLoader
 
         SegmentedFile.Builder ibuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode());
         SegmentedFile.Builder dbuilder = sstable.compression
-                                          ? SegmentedFile.getCompressedBuilder()
+                                          ? SegmentedFile.getCompressedBuilder(DatabaseDescriptor.getDiskAccessMode())
                                           : SegmentedFile.getBuilder(DatabaseDescriptor.getDiskAccessMode());
         SSTableReader.saveSummary(sstable, ibuilder, dbuilder);
 
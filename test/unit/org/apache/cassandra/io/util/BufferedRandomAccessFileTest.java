@@ -419,6 +419,33 @@ public class BufferedRandomAccessFileTest
         r.bytesPastMark(mark);
     }
 
+    @Test
+    public void testReadAhead() throws IOException
+    {
+        final SequentialWriter w = createTempFile("brafReadAhead");
+        byte[] data = generateByteArray(1024 * 20 + 10);
+        w.write(data);
+        w.close();
+
+        RandomAccessReader r = RandomAccessReader.open(new File(w.getPath()), 1024, null);
+        r.enableReadAhead(4);
+        byte[] read = new byte[data.length];
+        for (int i = 0; i < read.length; i += 100)
+        {
+            r.readFully(read, i, Math.min(100, read.length - i));
+            // without JNA nothing is read ahead, otherwise from one to four buffers past the current one are
+            long limit = r.getReadAheadLimit();
+            assertTrue(limit == 0 || (limit >= Math.min(r.getFilePointer() + 1024, r.length()) && limit <= r.getFilePointer() + 4 * 1024));
+        }
+        assertTrue(Arrays.equals(data, read));
+
+        // seeking back starts a new window
+        r.seek(10);
+        r.read();
+        assertTrue(r.getReadAheadLimit() == 0 || r.getReadAheadLimit() == 10 + 4 * 1024);
+        r.close();
+    }
+
     @Test
     public void testClose() throws IOException
     {
@@ -21,14 +21,24 @@ package org.apache.cassandra.service;
  */
 
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.Collections;
 
 import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
 import org.apache.cassandra.db.ColumnFamily;
 import org.apache.cassandra.db.DeletionInfo;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.Row;
 import org.apache.cassandra.db.TreeMapBackedSortedColumns;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.DigestAlgorithm;
 
 import static org.junit.Assert.*;
 import static org.apache.cassandra.Util.column;
@@ -140,4 +150,50 @@ public class RowResolverTest extends SchemaLoader
         assertTrue(resolved.isMarkedForDelete());
         assertEquals(2, resolved.deletionInfo().getTopLevelDeletion().markedForDeleteAt);
     }
+
+    @Test
+    public void testDigestResolveMixedAlgorithms() throws Exception
+    {
+        ColumnFamily cf1 = TreeMapBackedSortedColumns.factory.create("Keyspace1", "Standard1");
+        cf1.addColumn(column("c1", "v1", 0));
+
+        ColumnFamily cf2 = TreeMapBackedSortedColumns.factory.create("Keyspace1", "Standard1");
+        cf2.addColumn(column("c1", "v2", 1));
+
+        // older replicas send MD5 digests, newer ones MURMUR3 ones: the data reply is checked against both
+        RowDigestResolver resolver = digestResolver(new ReadResponse(new Row(Util.dk("key1"), cf1)),
+                                                    new ReadResponse(ColumnFamily.digest(cf1, DigestAlgorithm.MD5), DigestAlgorithm.MD5),
+                                                    new ReadResponse(ColumnFamily.digest(cf1, DigestAlgorithm.MURMUR3), DigestAlgorithm.MURMUR3));
+        assertEquals(cf1, resolver.resolve().cf);
+
+        // a mismatch is detected whichever the algorithm of the digest it's in
+        for (DigestAlgorithm algorithm : Arrays.asList(DigestAlgorithm.MD5, DigestAlgorithm.MURMUR3))
+        {
+            DigestAlgorithm other = algorithm == DigestAlgorithm.MD5 ? DigestAlgorithm.MURMUR3 : DigestAlgorithm.MD5;
+            resolver = digestResolver(new ReadResponse(new Row(Util.dk("key1"), cf1)),
+                                      new ReadResponse(ColumnFamily.digest(cf1, other), other),
+                                      new ReadResponse(ColumnFamily.digest(cf2, algorithm), algorithm));
+            try
+            {
+                resolver.resolve();
+                fail("Expected a digest mismatch for " + algorithm);
+            }
+            catch (DigestMismatchException e)
+            {
+                // expected
+            }
+        }
+    }
+
+    private static RowDigestResolver digestResolver(ReadResponse... responses) throws UnknownHostException
+    {
+        RowDigestResolver resolver = new RowDigestResolver("Keyspace1", ByteBufferUtil.bytes("key1"));
+        for (ReadResponse response : responses)
+            resolver.preprocess(MessageIn.create(InetAddress.getByName("127.0.0.1"),
+                                                 response,
+                                                 Collections.<String, byte[]>emptyMap(),
+                                                 MessagingService.Verb.REQUEST_RESPONSE,
+                                                 MessagingService.current_version));
+        return resolver;
+    }
 }
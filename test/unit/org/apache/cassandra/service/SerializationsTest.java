@@ -18,6 +18,7 @@
  */
 package org.apache.cassandra.service;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
@@ -32,11 +33,14 @@ import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.RandomPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.util.DataOutputBuffer;
 import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.NodePair;
 import org.apache.cassandra.repair.RepairJobDesc;
 import org.apache.cassandra.repair.Validator;
 import org.apache.cassandra.repair.messages.*;
+import org.apache.cassandra.utils.DigestAlgorithm;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.MerkleTree;
 
@@ -89,6 +93,32 @@ public class SerializationsTest extends AbstractSerializationsTester
         }
     }
 
+    private ValidationRequest validationRequestRoundTrip(ValidationRequest message, int version) throws IOException
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        ValidationRequest.serializer.serialize(message, out, version);
+        assert out.getLength() == ValidationRequest.serializer.serializedSize(message, version);
+        return (ValidationRequest) ValidationRequest.serializer.deserialize(new DataInputStream(new ByteArrayInputStream(out.getData(), 0, out.getLength())), version);
+    }
+
+    @Test
+    public void testValidationRequestVersions() throws IOException
+    {
+        // the digest algorithm is sent from VERSION_21 on, older peers always using SHA_256
+        for (DigestAlgorithm algorithm : new DigestAlgorithm[]{ DigestAlgorithm.SHA_256, DigestAlgorithm.MURMUR3 })
+        {
+            ValidationRequest message = validationRequestRoundTrip(new ValidationRequest(DESC, 1234, algorithm), MessagingService.VERSION_21);
+            assert DESC.equals(message.desc);
+            assert message.gcBefore == 1234;
+            assert message.digestAlgorithm == algorithm;
+        }
+
+        ValidationRequest message = validationRequestRoundTrip(new ValidationRequest(DESC, 1234), MessagingService.VERSION_20);
+        assert DESC.equals(message.desc);
+        assert message.gcBefore == 1234;
+        assert message.digestAlgorithm == DigestAlgorithm.SHA_256;
+    }
+
     private void testValidationCompleteWrite() throws IOException
     {
         // empty validation
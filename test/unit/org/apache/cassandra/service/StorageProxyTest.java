@@ -240,4 +240,19 @@ public class StorageProxyTest extends SchemaLoader
         testGRRKeys(exBounds(rp(""), rp("")), range(rp(""), endOf("1")), range(endOf("1"), endOf("6")), exBounds(endOf("6"), rp("")));
         testGRRKeys(incExBounds(rp(""), rp("")), bounds(rp(""), endOf("1")), range(endOf("1"), endOf("6")), exBounds(endOf("6"), rp("")));
     }
+
+    @Test
+    public void testConcurrencyFactor()
+    {
+        // nothing known, one range at a time
+        assertEquals(1, StorageProxy.estimateConcurrencyFactor(Double.NaN, 100, 256));
+        assertEquals(1, StorageProxy.estimateConcurrencyFactor(0, 100, 256));
+
+        // enough rows per range to satisfy the limit with a single range
+        assertEquals(1, StorageProxy.estimateConcurrencyFactor(1000, 100, 256));
+
+        // sparse results, query enough ranges to get the limit (with some margin), but not more than there is
+        assertEquals(12, StorageProxy.estimateConcurrencyFactor(10, 100, 256));
+        assertEquals(256, StorageProxy.estimateConcurrencyFactor(0.01, 100, 256));
+    }
 }
@@ -41,10 +41,12 @@ import org.apache.cassandra.io.util.FileUtils;
 public class BloomFilterTest
 {
     public IFilter bf;
+    public IFilter blocked;
 
     public BloomFilterTest()
     {
         bf = FilterFactory.getFilter(10000L, FilterTestHelper.MAX_FAILURE_RATE, true);
+        blocked = FilterFactory.getFilter(10000L, FilterTestHelper.MAX_FAILURE_RATE, true, true);
     }
 
     public static IFilter testSerialize(IFilter f) throws IOException
@@ -54,7 +56,7 @@ public class BloomFilterTest
         FilterFactory.serialize(f, out);
 
         ByteArrayInputStream in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
-        IFilter f2 = FilterFactory.deserialize(new DataInputStream(in), true);
+        IFilter f2 = FilterFactory.deserialize(new DataInputStream(in), true, true);
 
         assert f2.isPresent(ByteBufferUtil.bytes("a"));
         assert !f2.isPresent(ByteBufferUtil.bytes("b"));
@@ -66,6 +68,7 @@ public class BloomFilterTest
     public void clear()
     {
         bf.clear();
+        blocked.clear();
     }
 
     @Test(expected = UnsupportedOperationException.class)
@@ -121,6 +124,60 @@ public class BloomFilterTest
         BloomFilterTest.testSerialize(bf);
     }
 
+    @Test
+    public void testSerializeBlocked() throws IOException
+    {
+        Assert.assertTrue(BloomFilterTest.testSerialize(blocked) instanceof BlockedBloomFilter);
+    }
+
+    @Test
+    public void testDeserializeWithoutType() throws IOException
+    {
+        // filters of sstables older than jd are always Murmur3BloomFilter, serialized without their type
+        bf.add(ByteBufferUtil.bytes("a"));
+        DataOutputBuffer out = new DataOutputBuffer();
+        Murmur3BloomFilter.serializer.serialize((Murmur3BloomFilter) bf, out);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
+        IFilter f2 = FilterFactory.deserialize(new DataInputStream(in), true, false);
+        Assert.assertTrue(f2 instanceof Murmur3BloomFilter);
+        Assert.assertTrue(f2.isPresent(ByteBufferUtil.bytes("a")));
+        Assert.assertFalse(f2.isPresent(ByteBufferUtil.bytes("b")));
+    }
+
+    @Test
+    public void testBlockedOne()
+    {
+        blocked.add(ByteBufferUtil.bytes("a"));
+        assert blocked.isPresent(ByteBufferUtil.bytes("a"));
+        assert !blocked.isPresent(ByteBufferUtil.bytes("b"));
+    }
+
+    @Test
+    public void testBlockedFalsePositivesInt()
+    {
+        FilterTestHelper.testFalsePositives(blocked, FilterTestHelper.intKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    @Test
+    public void testBlockedFalsePositivesRandom()
+    {
+        FilterTestHelper.testFalsePositives(blocked, FilterTestHelper.randomKeys(), FilterTestHelper.randomKeys2());
+    }
+
+    @Test
+    public void testBlockedHashesInOneBlock()
+    {
+        Iterator<ByteBuffer> keys = FilterTestHelper.randomKeys();
+        BlockedBloomFilter filter = (BlockedBloomFilter) FilterFactory.getFilter(10000, 0.01, false, true);
+        while (keys.hasNext())
+        {
+            long[] buckets = filter.getHashBuckets(keys.next(), filter.hashCount, filter.bitset.capacity());
+            for (long bucket : buckets)
+                Assert.assertEquals(buckets[0] / BlockedBloomFilter.BLOCK_BITS, bucket / BlockedBloomFilter.BLOCK_BITS);
+        }
+    }
+
     public void testManyHashes(Iterator<ByteBuffer> keys)
     {
         int MAX_HASH_COUNT = 128;
@@ -168,7 +225,7 @@ public class BloomFilterTest
         out.close();
         
         DataInputStream in = new DataInputStream(new FileInputStream(file));
-        BloomFilter filter2 = (BloomFilter) FilterFactory.deserialize(in, true);
+        BloomFilter filter2 = (BloomFilter) FilterFactory.deserialize(in, true, true);
         Assert.assertTrue(filter2.isPresent(test));
         FileUtils.closeQuietly(in);
     }
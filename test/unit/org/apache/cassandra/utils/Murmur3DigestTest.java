@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class Murmur3DigestTest
+{
+    private static final Random random = new Random(42);
+
+    @Test
+    public void testSameAsMurmurHash()
+    {
+        Murmur3Digest digest = new Murmur3Digest();
+        for (int length = 0; length < 100; length++)
+        {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            // in one go, byte by byte, and in random chunks straddling the blocks
+            digest.update(data);
+            assertArrayEquals(expected(data), digest.digest());
+
+            for (byte b : data)
+                digest.update(b);
+            assertArrayEquals(expected(data), digest.digest());
+
+            for (int offset = 0; offset < length; )
+            {
+                int chunk = Math.min(length - offset, random.nextInt(20));
+                digest.update(data, offset, chunk);
+                offset += chunk;
+            }
+            assertArrayEquals(expected(data), digest.digest());
+        }
+    }
+
+    @Test
+    public void testReset()
+    {
+        byte[] data = new byte[37];
+        random.nextBytes(data);
+
+        Murmur3Digest digest = new Murmur3Digest();
+        digest.update(new byte[21]);
+        digest.reset();
+        digest.update(data);
+        assertArrayEquals(expected(data), digest.digest());
+    }
+
+    private static byte[] expected(byte[] data)
+    {
+        long[] hash = MurmurHash.hash3_x64_128(ByteBuffer.wrap(data), 0, data.length, 0);
+        return ByteBuffer.allocate(16).putLong(hash[0]).putLong(hash[1]).array();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapSlabAllocatorTest
+{
+    @Test
+    public void testClone()
+    {
+        OffHeapSlabAllocator allocator = new OffHeapSlabAllocator();
+        try
+        {
+            ByteBuffer value = ByteBufferUtil.bytes(0x01020304);
+            ByteBuffer cloned = allocator.clone(value);
+            assertTrue(cloned.isDirect());
+            assertEquals(value, cloned);
+            assertEquals(0x01020304, cloned.getInt(cloned.position()));
+
+            // bigger than a slab allocation
+            ByteBuffer big = ByteBuffer.allocate(256 * 1024);
+            big.putLong(big.capacity() - 8, 42L);
+            assertEquals(big, allocator.clone(big));
+
+            assertEquals(ByteBufferUtil.EMPTY_BYTE_BUFFER, allocator.clone(ByteBufferUtil.EMPTY_BYTE_BUFFER));
+            assertTrue(allocator.getMinimumSize() >= 256 * 1024 + 4);
+        }
+        finally
+        {
+            allocator.free();
+        }
+    }
+
+    @Test
+    public void testAllocationsDontOverlap()
+    {
+        OffHeapSlabAllocator allocator = new OffHeapSlabAllocator();
+        try
+        {
+            // enough to span several regions
+            ByteBuffer[] buffers = new ByteBuffer[1000];
+            for (int i = 0; i < buffers.length; i++)
+                buffers[i] = allocator.clone(ByteBuffer.wrap(new byte[3000]).putInt(0, i));
+            for (int i = 0; i < buffers.length; i++)
+            {
+                assertEquals(3000, buffers[i].remaining());
+                assertEquals(i, buffers[i].getInt(0));
+            }
+        }
+        finally
+        {
+            allocator.free();
+        }
+    }
+}
@@ -35,8 +35,9 @@ public class SerializationsTest extends AbstractSerializationsTester
         IFilter bf = FilterFactory.getFilter(1000000, 0.0001, offheap);
         for (int i = 0; i < 100; i++)
             bf.add(StorageService.getPartitioner().getTokenFactory().toByteArray(StorageService.getPartitioner().getRandomToken()));
+        // the filters of the sstables of this version aren't preceded by their type
         DataOutputStream out = getOutput("utils.BloomFilter.bin");
-        FilterFactory.serialize(bf, out);
+        Murmur3BloomFilter.serializer.serialize((Murmur3BloomFilter) bf, out);
         out.close();
     }
 
@@ -47,7 +48,7 @@ public class SerializationsTest extends AbstractSerializationsTester
             testBloomFilterWrite(true);
 
         DataInputStream in = getInput("utils.BloomFilter.bin");
-        assert FilterFactory.deserialize(in, true) != null;
+        assert FilterFactory.deserialize(in, true, false) != null;
         in.close();
     }
 
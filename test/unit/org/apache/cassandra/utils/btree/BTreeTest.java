@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.btree;
+
+import java.util.*;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BTreeTest
+{
+    private static final Comparator<Integer> CMP = Ordering.natural();
+
+    private static final UpdateFunction<Integer> REPLACE = new UpdateFunction<Integer>()
+    {
+        public Integer apply(Integer insert)
+        {
+            return insert;
+        }
+
+        public Integer apply(Integer existing, Integer update)
+        {
+            return update;
+        }
+
+        public boolean abortEarly()
+        {
+            return false;
+        }
+    };
+
+    @Test
+    public void testBuild()
+    {
+        for (int size = 0; size < 2000; size += 7)
+        {
+            Integer[] values = new Integer[size];
+            for (int i = 0; i < size; i++)
+                values[i] = i;
+            Object[] btree = BTree.build(values, CMP);
+            assertEquals(size, BTree.count(btree));
+            assertEquals(Arrays.asList(values), Lists.newArrayList(BTree.slice(btree, CMP, null, null, true)));
+            assertEquals(Lists.reverse(Arrays.asList(values)), Lists.newArrayList(BTree.slice(btree, CMP, null, null, false)));
+        }
+    }
+
+    @Test
+    public void testRandomUpdates()
+    {
+        Random random = new Random(0);
+        for (int run = 0; run < 20; run++)
+        {
+            TreeSet<Integer> expected = new TreeSet<>();
+            Object[] btree = BTree.empty();
+            for (int batch = 0; batch < 100; batch++)
+            {
+                TreeSet<Integer> updates = new TreeSet<>();
+                int count = random.nextInt(run * 10 + 1);
+                for (int i = 0; i < count; i++)
+                    updates.add(random.nextInt(10000));
+
+                Object[] previous = btree;
+                int previousSize = expected.size();
+                btree = BTree.update(btree, CMP, updates.toArray(new Integer[updates.size()]), REPLACE);
+                expected.addAll(updates);
+
+                assertEquals(expected.size(), BTree.count(btree));
+                assertEquals(Lists.newArrayList(expected), Lists.newArrayList(BTree.slice(btree, CMP, null, null, true)));
+                // updates don't modify the original tree
+                assertEquals(previousSize, BTree.count(previous));
+            }
+
+            for (int i = 0; i < 100; i++)
+            {
+                int start = random.nextInt(10000);
+                int end = start + random.nextInt(1000);
+                assertEquals(Lists.newArrayList(expected.subSet(start, true, end, true)),
+                             Lists.newArrayList(BTree.slice(btree, CMP, start, end, true)));
+                assertEquals(Lists.newArrayList(expected.subSet(start, true, end, true).descendingIterator()),
+                             Lists.newArrayList(BTree.slice(btree, CMP, end, start, false)));
+                assertEquals(expected.contains(start) ? Integer.valueOf(start) : null, BTree.find(btree, CMP, start));
+            }
+        }
+    }
+
+    @Test
+    public void testUpdateFunction()
+    {
+        Integer[] values = new Integer[100];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i;
+        Object[] btree = BTree.build(values, CMP);
+
+        final List<Integer> inserted = new ArrayList<>();
+        final List<Integer> replaced = new ArrayList<>();
+        btree = BTree.update(btree, CMP, new Integer[]{ 50, 150 }, new UpdateFunction<Integer>()
+        {
+            public Integer apply(Integer insert)
+            {
+                inserted.add(insert);
+                return insert;
+            }
+
+            public Integer apply(Integer existing, Integer update)
+            {
+                replaced.add(existing);
+                return update;
+            }
+
+            public boolean abortEarly()
+            {
+                return false;
+            }
+        });
+        assertEquals(Arrays.asList(150), inserted);
+        assertEquals(Arrays.asList(50), replaced);
+        assertEquals(101, BTree.count(btree));
+
+        UpdateFunction<Integer> aborting = new UpdateFunction<Integer>()
+        {
+            public Integer apply(Integer insert)
+            {
+                return insert;
+            }
+
+            public Integer apply(Integer existing, Integer update)
+            {
+                return update;
+            }
+
+            public boolean abortEarly()
+            {
+                return true;
+            }
+        };
+        assertNull(BTree.update(btree, CMP, new Integer[]{ 200 }, aborting));
+    }
+}